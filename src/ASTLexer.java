@@ -286,7 +286,63 @@ class ASTLexer implements java_cup.runtime.Scanner {
   /* user code: */
     StringBuffer buf = new StringBuffer();
 
+    /* scratch array for interning string constants */
+    char[] strChars = new char[256];
+
+    /* value of the last LINENO token */
+    int lineno;
+
+    /* value of the last ID, INT_CONST or STR_CONST token */
+    AbstractSymbol symbol;
+
     int line() { return yyline; }
+
+    /* Returns the next token as a CUP symbol, for the generated parser.
+       Readers that take the kind from next() and the value from the
+       fields above allocate nothing per token. */
+    public Symbol next_token() throws java.io.IOException {
+        int kind = next();
+        switch (kind) {
+        case ASTConstants.LINENO:
+            return new Symbol(kind, Integer.valueOf(lineno));
+        case ASTConstants.ID:
+        case ASTConstants.INT_CONST:
+        case ASTConstants.STR_CONST:
+            return new Symbol(kind, symbol);
+        default:
+            return new Symbol(kind);
+        }
+    }
+
+    /* Sets the line the scanner is at, for input that does not start
+       at the beginning of a file. */
+    void setLine(int line) { yyline = line; }
+
+    /* Interns the matched text straight from the scanner buffer, so
+       that no String is created for text already in the table. */
+    AbstractSymbol addMatched(AbstractTable table) {
+        return table.addString(zzBuffer, zzStartRead, zzMarkedPos - zzStartRead);
+    }
+
+    /* Interns the string constant collected in buf. */
+    AbstractSymbol addStringConst() {
+        int len = buf.length();
+        if (len > strChars.length) {
+            strChars = new char[Math.max(len, 2 * strChars.length)];
+        }
+        buf.getChars(0, len, strChars, 0);
+        return AbstractTable.stringtable.addString(strChars, 0, len);
+    }
+
+    /* Parses the matched text from the given offset as an integer in
+       the given radix, without creating a String. */
+    int parseMatched(int from, int radix) {
+        int n = 0;
+        for (int i = zzStartRead + from; i < zzMarkedPos; i++) {
+            n = n * radix + Character.digit(zzBuffer[i], radix);
+        }
+        return n;
+    }
 
 
   /**
@@ -497,10 +553,11 @@ class ASTLexer implements java_cup.runtime.Scanner {
    * Resumes scanning until the next regular expression is matched,
    * the end of input is encountered or an I/O-Error occurs.
    *
-   * @return      the next token
+   * @return      the kind of the next token; its value, if any, is in
+   *              lineno or symbol
    * @exception   java.io.IOException  if any I/O-Error occurs
    */
-  public java_cup.runtime.Symbol next_token() throws java.io.IOException {
+  public int next() throws java.io.IOException {
     int zzInput;
     int zzAction;
 
@@ -618,31 +675,31 @@ class ASTLexer implements java_cup.runtime.Scanner {
 
       switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {
         case 34: 
-          { return new Symbol(ASTConstants.OBJECT);
+          { return ASTConstants.OBJECT;
           }
         case 48: break;
         case 37: 
-          { return new Symbol(ASTConstants.STR);
+          { return ASTConstants.STR;
           }
         case 49: break;
         case 28: 
-          { return new Symbol(ASTConstants.COMP);
+          { return ASTConstants.COMP;
           }
         case 50: break;
         case 25: 
-          { return new Symbol(ASTConstants.INT);
+          { return ASTConstants.INT;
           }
         case 51: break;
         case 17: 
-          { return new Symbol(ASTConstants.EQ);
+          { return ASTConstants.EQ;
           }
         case 52: break;
         case 5: 
-          { return new Symbol(ASTConstants.LPAREN);
+          { return ASTConstants.LPAREN;
           }
         case 53: break;
         case 32: 
-          { return new Symbol(ASTConstants.CLASS);
+          { return ASTConstants.CLASS;
           }
         case 54: break;
         case 15: 
@@ -651,8 +708,8 @@ class ASTLexer implements java_cup.runtime.Scanner {
         case 55: break;
         case 9: 
           { yybegin(YYINITIAL);
-                          return new Symbol(ASTConstants.STR_CONST, 
-					    AbstractTable.stringtable.addString(buf.toString()));
+                          symbol = addStringConst();
+					    return ASTConstants.STR_CONST;
           }
         case 56: break;
         case 14: 
@@ -660,102 +717,102 @@ class ASTLexer implements java_cup.runtime.Scanner {
           }
         case 57: break;
         case 27: 
-          { return new Symbol(ASTConstants.ATTR);
+          { return ASTConstants.ATTR;
           }
         case 58: break;
         case 22: 
-          { return new Symbol(ASTConstants.SUB);
+          { return ASTConstants.SUB;
           }
         case 59: break;
         case 40: 
-          { return new Symbol(ASTConstants.BRANCH);
+          { return ASTConstants.BRANCH;
           }
         case 60: break;
         case 10: 
-          { return new Symbol(ASTConstants.LINENO, 
-					    new Integer(yytext().substring(1)));
+          { lineno = parseMatched(1, 10);
+					    return ASTConstants.LINENO;
           }
         case 61: break;
         case 41: 
-          { return new Symbol(ASTConstants.ISVOID);
+          { return ASTConstants.ISVOID;
           }
         case 62: break;
         case 39: 
-          { return new Symbol(ASTConstants.FORMAL);
+          { return ASTConstants.FORMAL;
           }
         case 63: break;
         case 3: 
-          { return new Symbol(ASTConstants.INT_CONST,
-					    AbstractTable.inttable.addString(yytext()));
+          { symbol = addMatched(AbstractTable.inttable);
+					    return ASTConstants.INT_CONST;
           }
         case 64: break;
         case 38: 
-          { return new Symbol(ASTConstants.DIVIDE);
+          { return ASTConstants.DIVIDE;
           }
         case 65: break;
         case 45: 
-          { return new Symbol(ASTConstants.NO_TYPE);
+          { return ASTConstants.NO_TYPE;
           }
         case 66: break;
         case 11: 
-          { buf.append(yytext().substring(1));
+          { buf.append(zzBuffer, zzStartRead + 1, yylength() - 1);
           }
         case 67: break;
         case 2: 
-          { return new Symbol(ASTConstants.ID,
-					    AbstractTable.idtable.addString(yytext()));
+          { symbol = addMatched(AbstractTable.idtable);
+					    return ASTConstants.ID;
           }
         case 68: break;
         case 44: 
-          { return new Symbol(ASTConstants.NO_EXPR);
+          { return ASTConstants.NO_EXPR;
           }
         case 69: break;
         case 30: 
-          { return new Symbol(ASTConstants.LOOP);
+          { return ASTConstants.LOOP;
           }
         case 70: break;
         case 8: 
-          { buf.append(yytext());
+          { buf.append(zzBuffer, zzStartRead, yylength());
           }
         case 71: break;
         case 23: 
-          { return new Symbol(ASTConstants.NEG);
+          { return ASTConstants.NEG;
           }
         case 72: break;
         case 26: 
-          { return new Symbol(ASTConstants.PLUS);
+          { return ASTConstants.PLUS;
           }
         case 73: break;
         case 20: 
-          { return new Symbol(ASTConstants.LET);
+          { return ASTConstants.LET;
           }
         case 74: break;
         case 47: 
-          { return new Symbol(ASTConstants.STATIC_DISPATCH);
+          { return ASTConstants.STATIC_DISPATCH;
           }
         case 75: break;
         case 46: 
-          { return new Symbol(ASTConstants.DISPATCH);
+          { return ASTConstants.DISPATCH;
           }
         case 76: break;
         case 6: 
-          { return new Symbol(ASTConstants.RPAREN);
+          { return ASTConstants.RPAREN;
           }
         case 77: break;
         case 42: 
-          { return new Symbol(ASTConstants.PROGRAM);
+          { return ASTConstants.PROGRAM;
           }
         case 78: break;
         case 16: 
-          { return new Symbol(ASTConstants.LT);
+          { return ASTConstants.LT;
           }
         case 79: break;
         case 24: 
-          { return new Symbol(ASTConstants.NEW);
+          { return ASTConstants.NEW;
           }
         case 80: break;
         case 4: 
-          { return new Symbol(ASTConstants.COLON);
+          { return ASTConstants.COLON;
           }
         case 81: break;
         case 12: 
@@ -763,35 +820,35 @@ class ASTLexer implements java_cup.runtime.Scanner {
           }
         case 82: break;
         case 33: 
-          { return new Symbol(ASTConstants.BLOCK);
+          { return ASTConstants.BLOCK;
           }
         case 83: break;
         case 43: 
-          { return new Symbol(ASTConstants.TYPCASE);
+          { return ASTConstants.TYPCASE;
           }
         case 84: break;
         case 19: 
-          { return new Symbol(ASTConstants.MUL);
+          { return ASTConstants.MUL;
           }
         case 85: break;
         case 31: 
-          { return new Symbol(ASTConstants.BOOL);
+          { return ASTConstants.BOOL;
           }
         case 86: break;
         case 29: 
-          { return new Symbol(ASTConstants.COND);
+          { return ASTConstants.COND;
           }
         case 87: break;
         case 35: 
-          { return new Symbol(ASTConstants.ASSIGN);
+          { return ASTConstants.ASSIGN;
           }
         case 88: break;
         case 18: 
-          { buf.append((char)Integer.parseInt(yytext().substring(2), 16));
+          { buf.append((char)parseMatched(2, 16));
           }
         case 89: break;
         case 21: 
-          { return new Symbol(ASTConstants.LEQ);
+          { return ASTConstants.LEQ;
           }
         case 90: break;
         case 13: 
@@ -803,7 +860,7 @@ class ASTLexer implements java_cup.runtime.Scanner {
           }
         case 92: break;
         case 36: 
-          { return new Symbol(ASTConstants.METHOD);
+          { return ASTConstants.METHOD;
           }
         case 93: break;
         case 1: 
@@ -814,7 +871,7 @@ class ASTLexer implements java_cup.runtime.Scanner {
           if (zzInput == YYEOF && zzStartRead == zzCurrentPos) {
             zzAtEOF = true;
             zzDoEOF();
-              {     return new Symbol(ASTConstants.EOF); 
+              {     return ASTConstants.EOF; 
  }
           } 
           else {
@@ -38,35 +38,39 @@ import java.io.PrintStream;
  *
  * codeDef and codeRef (defined by subclasses) are used by the code to
  * produce definitions and references (respectively) to constants.
+ * <p>
+ *
+ * A symbol does not hold a copy of its string: the characters live in
+ * the string table, and the symbol only records the table and the index
+ * of its entry.
  *
  * @see AbstractTable
  * */
 abstract class AbstractSymbol {
-    /** The stored string */
-    protected String str;
+    /** The string table holding this entry */
+    protected AbstractTable table;
 
     /** The index of this entry in the string table */
     protected int index;
 
     /** Constructs a new table entry.
      * 
-     * @param str the entry string 
-     * @param len the length of the str prefix that is acually used
+     * @param table the string table holding the entry
      * @param index the table index
      * */
-    public AbstractSymbol(String str, int len, int index) {
-	this.str = str.length() == len ? str : str.substring(0, len);
+    public AbstractSymbol(AbstractTable table, int index) {
+	this.table = table;
 	this.index = index;
     }
 
     /** Tests if the string argument is equal to the string in this symbol.
      *
      * @param str the string to compare
+     * @param len the length of the str prefix to compare
      * @return true if the strings are equal
      * */
     public boolean equalString(String str, int len) {
-	String other = str.length() == len ? str : str.substring(0, len);
-	return this.str.equals(other);
+	return table.equalsAt(index, str, len);
     }
 
     /** Tests if the index argument is equal to the index of this symbol.
@@ -95,14 +99,24 @@ abstract class AbstractSymbol {
 	    ((AbstractSymbol)another).index == this.index;
     }
 
+    /** Returns a hash code consistent with equals: the index itself.
+     *
+     * Indices are dense and unique within a table, so they hash well
+     * and make hashed collections of symbols iterate in the same order
+     * on every run.
+     * */
+    public int hashCode() {
+	return index;
+    }
+
     /** Returns the string representation of this symbol. */
     public String getString() {
-	return str;
+	return table.getString(index);
     }
 
     /** Returns a printable representation of this symbol. */
     public String toString() {
-	return str;
+	return getString();
     }
 
     /** Returns a copy of this symbol */
@@ -19,8 +19,9 @@ ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
 PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 */
 
-import java.util.Vector;
 import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /** Abstract string table implementation.
     
@@ -38,13 +39,14 @@ import java.util.Enumeration;
     
     A string table is a lookup table that maintains a single copy of
     each string.  The Cool string table class provides methods for
-    inserting and querying string tables in a variety of ways.  While
-    production compilers use hashed data structures to implement string
-    tables, the Cool string tables are implemented as vectors.  The
+    inserting and querying string tables in a variety of ways.  Like
+    the tables of production compilers, the Cool string tables are
+    hashed, so that inserting or looking up a string takes constant
+    time regardless of the size of the table.  The
     components of Cool string tables are of type <a
     href="AbstractSymbol.html"> AbstractSymbol</a>).  Each
-    AbstractSymbol stores a string, and an integer index unique to the
-    string.
+    AbstractSymbol stands for a string, and holds an integer index
+    unique to the string.
 
     <p>
 
@@ -75,6 +77,35 @@ import java.util.Enumeration;
     with StringSymbols as these are guaranteed to be different even if
     the strings are the same.
 
+    <p>
+
+    String tables may be shared by several threads, e.g. when several
+    inputs are lexed at the same time.  Looking up a string that is
+    already in the table never locks; adding a new string locks only
+    one of a fixed number of stripes, selected by the hash of the
+    string, so that threads adding different strings rarely wait for
+    each other.  Indices are handed out densely in the order in which
+    strings are first added.
+
+    <p>
+
+    The characters of the entries are kept in a <a
+    href="SymbolStore.html">SymbolStore</a>, and symbols are small views
+    holding the table and the index of their entry.  There is exactly
+    one symbol object per entry.
+
+    <p>
+
+    The static tables only grow, so a process that compiles many
+    programs calls <a href="#newCompilation()">newCompilation</a>
+    before each of them.  The first call freezes the current tables as
+    a shared base holding the predefined symbols of <a
+    href="TreeConstants.html">TreeConstants</a>; every call then
+    installs fresh tables layered over that base, and the entries of
+    the previous compilation become garbage together with its tables.
+    Entries of a layered table are numbered after the entries of its
+    base, so symbols of one compilation still have distinct indices.
+
     @see AbstractSymbol
     @see StringSymbol
     @see IdSymbol
@@ -89,14 +120,72 @@ abstract class AbstractTable {
     /** Global string table of integer constants */
     public static IntTable inttable = new IntTable();
 
+    /** Tables shared by all compilations, set by the first call to
+     * newCompilation */
+    private static StringTable sharedStringtable;
+    private static IdTable sharedIdtable;
+    private static IntTable sharedInttable;
+
     private static int MAXSIZE = 1000000;
 
-    /** Vector of table entries */
-    protected Vector tbl = new Vector();
+    /** log2 of the number of entries held by one storage chunk */
+    private static final int CHUNK_BITS = 10;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** Characters of the table entries and the hashed index over them */
+    protected final SymbolStore store = new SymbolStore();
+
+    /** The table whose entries precede the entries of this table, or
+     * null.  The base must not change once tables are layered over it. */
+    protected final AbstractTable base;
+
+    /** Number of entries in the base; the index of an entry of this
+     * table is its index in the store plus offset */
+    private final int offset;
+
+    /** Symbols of the table entries, in chunks of CHUNK_SIZE symbols
+     * indexed by symbol index.  Chunks are never moved once allocated,
+     * so a symbol can be stored while other threads add symbols to
+     * other chunks. */
+    private volatile AtomicReferenceArray<AbstractSymbol>[] chunks = 
+	newChunkDirectory(16);
+
+    /** Creates an empty string table layered over base.
+     *
+     * @param base the table holding the shared entries, or null
+     * */
+    protected AbstractTable(AbstractTable base) {
+	this.base = base;
+	this.offset = base == null ? 0 : base.size();
+    }
+
+    /** Starts a new compilation.
+     *
+     * Replaces the global string tables by empty tables layered over
+     * the shared tables, dropping every entry added since the previous
+     * call.  The first call makes the current tables the shared tables,
+     * after entering the predefined symbols of TreeConstants, so it
+     * must precede the first compilation.
+     * */
+    public static synchronized void newCompilation() {
+	if (sharedIdtable == null) {
+	    // reading a field of TreeConstants enters all its symbols
+	    if (TreeConstants.Object_ == null) {
+		Utilities.fatalError("newCompilation: TreeConstants not initialized");
+	    }
+	    stringtable.addString("<basic class>");
+	    sharedStringtable = stringtable;
+	    sharedIdtable = idtable;
+	    sharedInttable = inttable;
+	}
+	stringtable = new StringTable(sharedStringtable);
+	idtable = new IdTable(sharedIdtable);
+	inttable = new IntTable(sharedInttable);
+    }
 
     /** Creates a new symbol of the appropriate type */
-    protected abstract AbstractSymbol getNewSymbol(String s, 
-						   int len, int index);
+    protected abstract AbstractSymbol getNewSymbol(int index);
 
     /** Adds prefix of the specified length to this string table
      *
@@ -105,21 +194,9 @@ abstract class AbstractTable {
      * @return the symbol for the string s
      * */
     public AbstractSymbol addString(String s, int maxchars) {
-	int len = Math.min(s.length(), maxchars);
-	AbstractSymbol sym = null;
-	for (int i = 0; i < tbl.size(); i++) {
-	    try {
-		sym = (AbstractSymbol)tbl.elementAt(i);
-	    } catch (ArrayIndexOutOfBoundsException ex) {
-		Utilities.fatalError("Unexpected exception: " + ex);
-	    }
-	    if (sym.equalString(s, len)) {
-		return sym;
-	    }
-	}
-	sym = getNewSymbol(s, len, tbl.size());
-	tbl.addElement(sym);
-	return sym;
+	String key = s.length() <= maxchars ? s : s.substring(0, maxchars);
+	int i = base == null ? -1 : base.indexOf(key);
+	return i >= 0 ? base.lookup(i) : symbolAt(offset + store.intern(key));
     }
 		
 
@@ -132,6 +209,21 @@ abstract class AbstractTable {
 	return addString(s, MAXSIZE);
     }
 
+    /** Adds the string held in buf[off .. off+len) to this string table.
+     * The characters are copied only if the string is not in the table
+     * yet, so scanners can intern tokens straight from their buffers.
+     *
+     * @param buf the characters
+     * @param off the offset of the string in buf
+     * @param len the length of the string
+     * @return the symbol for the string
+     * */
+    public AbstractSymbol addString(char[] buf, int off, int len) {
+	len = Math.min(len, MAXSIZE);
+	int i = base == null ? -1 : base.indexOf(buf, off, len);
+	return i >= 0 ? base.lookup(i) : symbolAt(offset + store.intern(buf, off, len));
+    }
+
     /** Adds the string representation of the specified integer to this
      * string table
      *
@@ -141,14 +233,39 @@ abstract class AbstractTable {
     public AbstractSymbol addInt(int i) {
 	return addString(Integer.toString(i), MAXSIZE);
     }
+
+    /** Returns the number of symbols in this string table
+     *
+     * While other threads are adding strings, the entry for an index
+     * below this number may not have been stored yet.
+     *
+     * @return the number of symbols
+     * */
+    public int size() {
+	return offset + store.size();
+    }
     
     /** Returns an enumeration of symbols in this string table
      *
      * @return an enumeration of symbols
      * @see java.util.Enumeration
      * */
-    public Enumeration getSymbols() {
-	return tbl.elements();
+    public Enumeration<AbstractSymbol> getSymbols() {
+	final int n = size();
+	return new Enumeration<AbstractSymbol>() {
+	    private int next = 0;
+
+	    public boolean hasMoreElements() {
+		return next < n;
+	    }
+
+	    public AbstractSymbol nextElement() {
+		if (next >= n) {
+		    throw new NoSuchElementException();
+		}
+		return lookup(next++);
+	    }
+	};
     }
     
     /** Looks up a symbol in this string table by its index
@@ -159,13 +276,10 @@ abstract class AbstractTable {
      * @return a symbol corresponding to the index
      * */
     public AbstractSymbol lookup(int index) { 
-	AbstractSymbol sym = null;
-	try {
-	    sym = (AbstractSymbol)tbl.elementAt(index);
-	} catch (ArrayIndexOutOfBoundsException ex) {
+	if (index < 0 || index >= size()) {
 	    Utilities.fatalError("Symbol index out of bounds: " + index);
 	}
-	return sym;
+	return index < offset ? base.lookup(index) : symbolAt(index);
     }
 	    
 
@@ -177,35 +291,92 @@ abstract class AbstractTable {
      * @return a symbol corresponding to the string
      * */
     public AbstractSymbol lookup(String s) {
-	int len = s.length();
-	AbstractSymbol sym = null;
-	for (int i = 0; i < tbl.size(); i++) {
-	    try {
-		sym = (AbstractSymbol)tbl.elementAt(i);
-	    } catch (ArrayIndexOutOfBoundsException ex) {
-		Utilities.fatalError("Unexpected exception: " + ex);
-	    }
-	    if (sym.equalString(s, len)) {
-		return sym;
-	    }
+	int i = indexOf(s);
+	if (i < 0) {
+	    Utilities.fatalError("String table lookup failed on string: " + s);
+	}
+	return lookup(i);
+    }
+
+    /** Returns the index of the string in this table or its base, or -1 */
+    int indexOf(String s) {
+	int i = base == null ? -1 : base.indexOf(s);
+	if (i < 0) {
+	    i = store.indexOf(s);
+	    return i < 0 ? -1 : offset + i;
+	}
+	return i;
+    }
+
+    /** Returns the index of the string held in buf[off .. off+len) in
+     * this table or its base, or -1 */
+    int indexOf(char[] buf, int off, int len) {
+	int i = base == null ? -1 : base.indexOf(buf, off, len);
+	if (i < 0) {
+	    i = store.indexOf(buf, off, len);
+	    return i < 0 ? -1 : offset + i;
 	}
-	Utilities.fatalError("String table lookup failed on string: " + s);
-	return null;
+	return i;
+    }
+
+    /** Returns the characters of the entry with the given index */
+    String getString(int index) {
+	return index < offset ? base.getString(index)
+	                      : store.stringAt(index - offset);
+    }
+
+    /** Tests whether the entry with the given index holds the first len
+     * characters of s */
+    boolean equalsAt(int index, String s, int len) {
+	return index < offset ? base.equalsAt(index, s, len)
+	                      : store.equalsAt(index - offset, s, len);
     }
 
     /** Produces a printable representation of the string table */
     public String toString() {
-	String res = "[\n";
-	AbstractSymbol sym = null;
-	for (int i = 0; i < tbl.size(); i++) {
-	    try {
-		sym = (AbstractSymbol)tbl.elementAt(i);
-	    } catch (ArrayIndexOutOfBoundsException ex) {
-		Utilities.fatalError("Unexpected exception: " + ex);
-	    }
-	    res += "  " + sym.toString() + "\n";
+	StringBuilder res = new StringBuilder("[\n");
+	for (int i = 0; i < size(); i++) {
+	    res.append("  ").append(lookup(i)).append("\n");
+	}
+	res.append("]\n");
+	return res.toString();
+    }
+
+    /** Returns the symbol for the given index, creating it on first use */
+    private AbstractSymbol symbolAt(int index) {
+	int c = (index - offset) >>> CHUNK_BITS;
+	AtomicReferenceArray<AbstractSymbol>[] dir = chunks;
+	if (c >= dir.length || dir[c] == null) {
+	    dir = growChunks(c);
 	}
-	res += "]\n";
-	return res;
+	AtomicReferenceArray<AbstractSymbol> chunk = dir[c];
+	int slot = (index - offset) & (CHUNK_SIZE - 1);
+	AbstractSymbol sym = chunk.get(slot);
+	if (sym == null) {
+	    chunk.compareAndSet(slot, null, getNewSymbol(index));
+	    sym = chunk.get(slot);
+	}
+	return sym;
+    }
+
+    /** Makes sure that chunk c exists, and returns the chunk directory */
+    private synchronized AtomicReferenceArray<AbstractSymbol>[] growChunks(int c) {
+	AtomicReferenceArray<AbstractSymbol>[] dir = chunks;
+	if (c >= dir.length) {
+	    AtomicReferenceArray<AbstractSymbol>[] bigger = 
+		newChunkDirectory(Math.max(dir.length * 2, c + 1));
+	    System.arraycopy(dir, 0, bigger, 0, dir.length);
+	    dir = bigger;
+	}
+	if (dir[c] == null) {
+	    dir[c] = new AtomicReferenceArray<AbstractSymbol>(CHUNK_SIZE);
+	}
+	chunks = dir;
+	return dir;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<AbstractSymbol>[] newChunkDirectory(int n) {
+	return (AtomicReferenceArray<AbstractSymbol>[]) new AtomicReferenceArray<?>[n];
     }
 }
@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Reads an AST written by AstBinaryWriter, building the same
+    cool_tree nodes as the text parser.
+
+    <p>
+
+    The strings of the file are entered in the global string tables
+    before the tree is read, so each symbol of the tree costs one array
+    access.  Expression types found in the file are skipped, as the
+    parser skips those of the text format: the types of a tree are
+    those a check finds, kept in its AstTypes table.
+
+    @see AstBinaryWriter */
+class AstBinaryReader {
+    private final ByteBuffer in;
+
+    /** Symbols of the file, by kind and index in the file */
+    private final AbstractSymbol[][] symbols = new AbstractSymbol[3][];
+
+    /** Line number of the previous node */
+    private int lastLine;
+
+    /** Makes the leaves of the tree */
+    private final AstLeaves leaves = new AstLeaves();
+
+    /** Creates a reader over the given bytes */
+    AstBinaryReader(ByteBuffer in) {
+	this.in = in;
+    }
+
+    /** Tests whether the named file holds a binary AST.
+     *
+     * @param filename the file
+     * @return true if the file starts with the magic bytes
+     * */
+    static boolean isBinary(String filename) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    byte[] head = new byte[AstBinaryWriter.MAGIC.length];
+	    return file.read(head) == head.length
+		&& Arrays.equals(head, AstBinaryWriter.MAGIC);
+	} finally {
+	    file.close();
+	}
+    }
+
+    /** Tests whether the stream holds a binary AST, without consuming
+     * anything.
+     *
+     * @param stream a stream supporting mark and reset
+     * @return true if the stream starts with the magic bytes
+     * */
+    static boolean isBinary(InputStream stream) throws IOException {
+	byte[] head = new byte[AstBinaryWriter.MAGIC.length];
+	stream.mark(head.length);
+	int n = 0;
+	for (int r; n < head.length && (r = stream.read(head, n, head.length - n)) > 0; ) {
+	    n += r;
+	}
+	stream.reset();
+	return n == head.length && Arrays.equals(head, AstBinaryWriter.MAGIC);
+    }
+
+    /** Maps the named file for reading */
+    static ByteBuffer map(String filename) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	try {
+	    FileChannel channel = file.getChannel();
+	    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	} finally {
+	    file.close();
+	}
+    }
+
+    /** Reads the whole stream into a buffer */
+    static ByteBuffer readAll(InputStream stream) throws IOException {
+	byte[] buf = new byte[1 << 16];
+	int len = 0;
+	for (int r; (r = stream.read(buf, len, buf.length - len)) > 0; ) {
+	    len += r;
+	    if (len == buf.length) {
+		buf = Arrays.copyOf(buf, 2 * buf.length);
+	    }
+	}
+	return ByteBuffer.wrap(buf, 0, len);
+    }
+
+    /** Reads the program.
+     *
+     * @return the root of the AST
+     * */
+    public Program readProgram() throws IOException {
+	for (int i = 0; i < AstBinaryWriter.MAGIC.length; i++) {
+	    if (in.get() != AstBinaryWriter.MAGIC[i]) {
+		throw new IOException("not a binary AST");
+	    }
+	}
+	int version = in.get();
+	if (version != AstBinaryWriter.VERSION) {
+	    throw new IOException("unsupported binary AST version " + version);
+	}
+	readTable(AstBinaryWriter.IDS, AbstractTable.idtable);
+	readTable(AstBinaryWriter.STRINGS, AbstractTable.stringtable);
+	readTable(AstBinaryWriter.INTS, AbstractTable.inttable);
+
+	int line = readNode(ASTConstants.PROGRAM);
+	int n = readVarint();
+	Classes classes = new Classes(line);
+	for (int i = 0; i < n; i++) {
+	    classes.appendElement(readClass());
+	}
+	return new programc(line, classes);
+    }
+
+    private void readTable(int kind, AbstractTable table) {
+	int n = readVarint();
+	AbstractSymbol[] syms = new AbstractSymbol[n];
+	for (int i = 0; i < n; i++) {
+	    int len = readVarint();
+	    byte[] bytes = new byte[len];
+	    in.get(bytes);
+	    syms[i] = table.addString(new String(bytes, StandardCharsets.UTF_8));
+	}
+	symbols[kind] = syms;
+    }
+
+    private Class_ readClass() throws IOException {
+	int line = readNode(ASTConstants.CLASS);
+	AbstractSymbol name = readId();
+	AbstractSymbol parent = readId();
+	AbstractSymbol filename = readSymbol(AstBinaryWriter.STRINGS);
+	int n = readVarint();
+	Features features = new Features(line);
+	for (int i = 0; i < n; i++) {
+	    features.appendElement(readFeature());
+	}
+	class_c c = new class_c(line, name, parent, features, filename);
+	c.setLeafLines(leaves.takeLines());
+	return c;
+    }
+
+    private Feature readFeature() throws IOException {
+	int tag = in.get();
+	int line = readLine();
+	switch (tag) {
+	case ASTConstants.METHOD: {
+	    AbstractSymbol name = readId();
+	    int n = readVarint();
+	    Formals formals = new Formals(line);
+	    for (int i = 0; i < n; i++) {
+		int fline = readNode(ASTConstants.FORMAL);
+		formals.appendElement(new formalc(fline, readId(), readId()));
+	    }
+	    AbstractSymbol returnType = readId();
+	    return new method(line, name, formals, returnType, readExpression());
+	}
+	case ASTConstants.ATTR: {
+	    AbstractSymbol name = readId();
+	    AbstractSymbol typeDecl = readId();
+	    return new attr(line, name, typeDecl, readExpression());
+	}
+	default:
+	    throw new IOException("bad feature tag " + tag);
+	}
+    }
+
+    /** An expression being read, whose children are not all read yet */
+    private static class Frame {
+	final int tag;
+	final int line;
+	final Frame parent;
+
+	/** The symbols of the expression, such as the name of a dispatch */
+	AbstractSymbol s0, s1;
+
+	/** The children read so far, and how many there are */
+	Expression[] kids;
+	int k;
+	int n;
+
+	/** The line, name and type of each branch of a case, by child */
+	int[] lines;
+	AbstractSymbol[] names;
+	AbstractSymbol[] types;
+
+	Frame(int tag, int line, Frame parent) {
+	    this.tag = tag;
+	    this.line = line;
+	    this.parent = parent;
+	}
+    }
+
+    /** Reads an expression.  The expressions it is in are kept in a
+     * stack of frames rather than on the thread stack, so that the
+     * depth of the tree is only bounded by the memory. */
+    private Expression readExpression() throws IOException {
+	Frame top = null;
+	for (;;) {
+	    int tag = in.get();
+	    int line = readLine();
+	    Expression e = readLeaf(tag, line);
+	    if (e == null) {
+		top = new Frame(tag, line, top);
+		start(top);
+		if (next(top)) {
+		    continue;
+		}
+		e = build(top);
+		top = top.parent;
+	    }
+	    // pass the expression up to the frames it completes
+	    for (;;) {
+		// the type is found again by the checker
+		readVarint();
+		if (top == null) {
+		    return e;
+		}
+		top.kids[top.k++] = e;
+		if (next(top)) {
+		    break;
+		}
+		e = build(top);
+		top = top.parent;
+	    }
+	}
+    }
+
+    /** Reads an expression that has no children, or returns null if the
+     * tag is not that of one */
+    private Expression readLeaf(int tag, int line) {
+	switch (tag) {
+	case ASTConstants.INT:
+	    return leaves.intConst(line, readSymbol(AstBinaryWriter.INTS));
+	case ASTConstants.BOOL:
+	    return leaves.boolConst(line, in.get() != 0 ? Boolean.TRUE : Boolean.FALSE);
+	case ASTConstants.STR:
+	    return leaves.stringConst(line, readSymbol(AstBinaryWriter.STRINGS));
+	case ASTConstants.NEW:
+	    return new new_(line, readId());
+	case ASTConstants.NO_EXPR:
+	    return leaves.noExpr(line);
+	case ASTConstants.OBJECT:
+	    return leaves.object(line, readId());
+	default:
+	    return null;
+	}
+    }
+
+    /** Reads what an expression has before its first child, and the
+     * number of its children as far as it is known there */
+    private void start(Frame f) throws IOException {
+	switch (f.tag) {
+	case ASTConstants.ASSIGN:
+	    f.s0 = readId();
+	    f.n = 1;
+	    break;
+	case ASTConstants.LET:
+	    f.s0 = readId();
+	    f.s1 = readId();
+	    f.n = 2;
+	    break;
+	case ASTConstants.BLOCK:
+	    f.n = readVarint();
+	    break;
+	case ASTConstants.COND:
+	    f.n = 3;
+	    break;
+	case ASTConstants.LOOP:
+	case ASTConstants.PLUS:
+	case ASTConstants.SUB:
+	case ASTConstants.MUL:
+	case ASTConstants.DIVIDE:
+	case ASTConstants.LT:
+	case ASTConstants.EQ:
+	case ASTConstants.LEQ:
+	    f.n = 2;
+	    break;
+	case ASTConstants.STATIC_DISPATCH:
+	case ASTConstants.DISPATCH:
+	case ASTConstants.TYPCASE:
+	case ASTConstants.NEG:
+	case ASTConstants.COMP:
+	case ASTConstants.ISVOID:
+	    f.n = 1;
+	    break;
+	default:
+	    throw new IOException("bad expression tag " + f.tag);
+	}
+	f.kids = new Expression[f.n];
+    }
+
+    /** Reads what an expression has before its next child, and tells
+     * whether it has one */
+    private boolean next(Frame f) throws IOException {
+	if (f.k == 1 && f.n == 1) {
+	    // what follows the first child of a dispatch or a case
+	    switch (f.tag) {
+	    case ASTConstants.STATIC_DISPATCH:
+		f.s0 = readId();
+		f.s1 = readId();
+		f.n += readVarint();
+		break;
+	    case ASTConstants.DISPATCH:
+		f.s1 = readId();
+		f.n += readVarint();
+		break;
+	    case ASTConstants.TYPCASE:
+		f.n += readVarint();
+		f.lines = new int[f.n];
+		f.names = new AbstractSymbol[f.n];
+		f.types = new AbstractSymbol[f.n];
+		break;
+	    }
+	    if (f.n > 1) {
+		f.kids = Arrays.copyOf(f.kids, f.n);
+	    }
+	}
+	if (f.k == f.n) {
+	    return false;
+	}
+	if (f.tag == ASTConstants.TYPCASE && f.k > 0) {
+	    f.lines[f.k] = readNode(ASTConstants.BRANCH);
+	    f.names[f.k] = readId();
+	    f.types[f.k] = readId();
+	}
+	return true;
+    }
+
+    /** Makes the expression of a frame whose children are all read */
+    private Expression build(Frame f) {
+	Expression[] c = f.kids;
+	int line = f.line;
+	switch (f.tag) {
+	case ASTConstants.ASSIGN:
+	    return new assign(line, f.s0, c[0]);
+	case ASTConstants.STATIC_DISPATCH:
+	    return new static_dispatch(line, c[0], f.s0, f.s1, expressions(line, c, 1));
+	case ASTConstants.DISPATCH:
+	    return new dispatch(line, c[0], f.s1, expressions(line, c, 1));
+	case ASTConstants.COND:
+	    return new cond(line, c[0], c[1], c[2]);
+	case ASTConstants.LOOP:
+	    return new loop(line, c[0], c[1]);
+	case ASTConstants.TYPCASE: {
+	    Cases cases = new Cases(line);
+	    for (int i = 1; i < f.n; i++) {
+		cases.appendElement(new branch(f.lines[i], f.names[i], f.types[i], c[i]));
+	    }
+	    return new typcase(line, c[0], cases);
+	}
+	case ASTConstants.BLOCK:
+	    return new block(line, expressions(line, c, 0));
+	case ASTConstants.LET:
+	    return new let(line, f.s0, f.s1, c[0], c[1]);
+	case ASTConstants.PLUS:
+	    return new plus(line, c[0], c[1]);
+	case ASTConstants.SUB:
+	    return new sub(line, c[0], c[1]);
+	case ASTConstants.MUL:
+	    return new mul(line, c[0], c[1]);
+	case ASTConstants.DIVIDE:
+	    return new divide(line, c[0], c[1]);
+	case ASTConstants.NEG:
+	    return new neg(line, c[0]);
+	case ASTConstants.LT:
+	    return new lt(line, c[0], c[1]);
+	case ASTConstants.EQ:
+	    return new eq(line, c[0], c[1]);
+	case ASTConstants.LEQ:
+	    return new leq(line, c[0], c[1]);
+	case ASTConstants.COMP:
+	    return new comp(line, c[0]);
+	default:
+	    return new isvoid(line, c[0]);
+	}
+    }
+
+    /** Makes a list of the expressions from the given index on */
+    private static Expressions expressions(int line, Expression[] c, int from) {
+	Expressions list = new Expressions(line);
+	for (int i = from; i < c.length; i++) {
+	    list.appendElement(c[i]);
+	}
+	return list;
+    }
+
+    /** Reads the header of a node that must have the given tag, and
+     * returns its line number */
+    private int readNode(int tag) throws IOException {
+	int t = in.get();
+	if (t != tag) {
+	    throw new IOException("bad tag " + t + ", expected " + tag);
+	}
+	return readLine();
+    }
+
+    private int readLine() {
+	int z = readVarint();
+	lastLine += (z >>> 1) ^ -(z & 1);
+	return lastLine;
+    }
+
+    private AbstractSymbol readId() {
+	return readSymbol(AstBinaryWriter.IDS);
+    }
+
+    private AbstractSymbol readSymbol(int kind) {
+	return symbols[kind][readVarint()];
+    }
+
+    private int readVarint() {
+	int n = 0;
+	for (int shift = 0; ; shift += 7) {
+	    byte b = in.get();
+	    n |= (b & 0x7f) << shift;
+	    if (b >= 0) {
+		return n;
+	    }
+	}
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Writes a (typed) AST in the binary AST format.
+
+    <p>
+
+    The binary format carries the same information as the text written
+    by dump_with_types, in a form that is much cheaper to write and to
+    read back (see <a href="AstBinaryReader.html">AstBinaryReader</a>).
+    A file consists of:
+
+    <ul>
+      <li>the magic bytes <code>COOLAST</code> and a version byte;
+      <li>three string tables (identifiers, string constants, integer
+          constants), each a count followed by the strings, each string
+          a length followed by its UTF-8 bytes;
+      <li>the tree, in the same preorder as dump_with_types.
+    </ul>
+
+    Each node starts with its tag, the ASTConstants terminal of its
+    keyword in the text format (e.g. <code>ASTConstants.PLUS</code> for
+    <code>_plus</code>), followed by its line number as the difference
+    from the previous node's line.  Symbols are written as indices into
+    the tables of the file, lists as their length followed by the
+    elements, and the type of an expression, after its subexpressions,
+    as an identifier index plus one, zero standing for
+    <code>_no_type</code>.  All integers are varints: seven bits per
+    byte, low bits first, the high bit set on all bytes but the last;
+    signed values are zigzag encoded first.
+
+    <p>
+
+    Nodes write themselves a step at a time through their binaryStep
+    methods, which call back into this class; a TreeWalker runs the
+    steps, so the depth of the tree does not depend on the thread stack.
+
+    @see AstBinaryReader */
+class AstBinaryWriter {
+    /** First bytes of every binary AST */
+    static final byte[] MAGIC = { 'C', 'O', 'O', 'L', 'A', 'S', 'T' };
+
+    /** Version of the format written */
+    static final int VERSION = 1;
+
+    /** Kinds of symbols, one string table each */
+    static final int IDS = 0;
+    static final int STRINGS = 1;
+    static final int INTS = 2;
+
+    /** The encoded tree */
+    private byte[] buf = new byte[1 << 16];
+    private int len;
+
+    /** Line number of the previous node */
+    private int lastLine;
+
+    /** The lines of the shared leaves of the class being written */
+    private final AstLeaves.Lines lines = new AstLeaves.Lines();
+
+    /** For each kind, the index in the file of each symbol written so
+     * far plus one, indexed by the symbol index */
+    private final int[][] local = new int[3][];
+
+    /** For each kind, the symbols in the order of their index in the
+     * file */
+    private final AbstractSymbol[][] symbols = new AbstractSymbol[3][];
+    private final int[] counts = new int[3];
+
+    AstBinaryWriter() {
+	for (int k = 0; k < 3; k++) {
+	    local[k] = new int[64];
+	    symbols[k] = new AbstractSymbol[64];
+	}
+    }
+
+    /** Writes the program to the stream in the binary format.
+     *
+     * @param program the root of the AST
+     * @param out the output stream
+     * */
+    public void write(Program program, OutputStream out) throws IOException {
+	program.dump_binary(this);
+	byte[] tree = buf;
+	int treeLen = len;
+	buf = new byte[1 << 12];
+	len = 0;
+	for (int i = 0; i < MAGIC.length; i++) {
+	    putByte(MAGIC[i]);
+	}
+	putByte(VERSION);
+	for (int k = 0; k < 3; k++) {
+	    putVarint(counts[k]);
+	    for (int i = 0; i < counts[k]; i++) {
+		byte[] bytes = symbols[k][i].getString().getBytes(StandardCharsets.UTF_8);
+		putVarint(bytes.length);
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buf, len, bytes.length);
+		len += bytes.length;
+	    }
+	}
+	out.write(buf, 0, len);
+	out.write(tree, 0, treeLen);
+	out.flush();
+    }
+
+    /** Starts a node: writes its tag and line number */
+    void writeNode(int tag, TreeNode node) {
+	putByte(tag);
+	if (tag == ASTConstants.CLASS) {
+	    lines.enter((class_c)node);
+	}
+	int line = lines.line(node);
+	putVarint(zigzag(line - lastLine));
+	lastLine = line;
+    }
+
+    /** Writes an identifier */
+    void writeId(AbstractSymbol sym) {
+	putVarint(localIndex(IDS, sym));
+    }
+
+    /** Writes a string constant */
+    void writeString(AbstractSymbol sym) {
+	putVarint(localIndex(STRINGS, sym));
+    }
+
+    /** Writes an integer constant */
+    void writeInt(AbstractSymbol sym) {
+	putVarint(localIndex(INTS, sym));
+    }
+
+    /** Writes a boolean constant */
+    void writeBoolean(Boolean b) {
+	putByte(b.booleanValue() ? 1 : 0);
+    }
+
+    /** Writes the length of a list, which precedes its elements */
+    void writeLength(ListNode list) {
+	putVarint(list.getLength());
+    }
+
+    /** Writes the type of an expression, as dump_type prints it */
+    void writeType(Expression e) {
+	AbstractSymbol rt = e.getRt();
+	AbstractSymbol type = rt != null ? rt : e.get_type();
+	putVarint(type == null ? 0 : localIndex(IDS, type) + 1);
+    }
+
+    /** Returns the index in the file of the symbol, assigning the next
+     * one on first use */
+    private int localIndex(int kind, AbstractSymbol sym) {
+	int[] map = local[kind];
+	if (sym.index >= map.length) {
+	    map = local[kind] = Arrays.copyOf(map, Math.max(2 * map.length, sym.index + 1));
+	}
+	if (map[sym.index] == 0) {
+	    if (counts[kind] == symbols[kind].length) {
+		symbols[kind] = Arrays.copyOf(symbols[kind], 2 * counts[kind]);
+	    }
+	    symbols[kind][counts[kind]] = sym;
+	    map[sym.index] = ++counts[kind];
+	}
+	return map[sym.index] - 1;
+    }
+
+    private static int zigzag(int n) {
+	return (n << 1) ^ (n >> 31);
+    }
+
+    private void putVarint(int n) {
+	ensure(5);
+	while ((n & ~0x7f) != 0) {
+	    buf[len++] = (byte)((n & 0x7f) | 0x80);
+	    n >>>= 7;
+	}
+	buf[len++] = (byte)n;
+    }
+
+    private void putByte(int b) {
+	ensure(1);
+	buf[len++] = (byte)b;
+    }
+
+    private void ensure(int n) {
+	if (len + n > buf.length) {
+	    buf = Arrays.copyOf(buf, Math.max(2 * buf.length, len + n));
+	}
+    }
+}
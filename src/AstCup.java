@@ -220,6 +220,7 @@ class CUP$AstCup$actions {
 
 
        Integer curr_lineno = new Integer(0);
+       AstLeaves leaves = new AstLeaves();
 
   private final AstCup parser;
 
@@ -345,7 +346,7 @@ class CUP$AstCup$actions {
 		int lleft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).left;
 		int lright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).right;
 		Integer l = (Integer)((java_cup.runtime.Symbol) CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).value;
-		 curr_lineno = l; RESULT = new no_expr(l.intValue()); 
+		 curr_lineno = l; RESULT = leaves.noExpr(l.intValue()); 
               CUP$AstCup$result = new java_cup.runtime.Symbol(9/*expr_aux*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
@@ -360,7 +361,7 @@ class CUP$AstCup$actions {
 		int nleft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).left;
 		int nright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right;
 		AbstractSymbol n = (AbstractSymbol)((java_cup.runtime.Symbol) CUP$AstCup$stack.peek()).value;
-		 curr_lineno = l; RESULT = new object(l.intValue(), n); 
+		 curr_lineno = l; RESULT = leaves.object(l.intValue(), n); 
               CUP$AstCup$result = new java_cup.runtime.Symbol(9/*expr_aux*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-2)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
@@ -377,9 +378,9 @@ class CUP$AstCup$actions {
 		AbstractSymbol b = (AbstractSymbol)((java_cup.runtime.Symbol) CUP$AstCup$stack.peek()).value;
 		 curr_lineno = l; 
             if (b.getString().charAt(0) == '1')
-	      RESULT = new bool_const(l.intValue(), Boolean.TRUE);
+	      RESULT = leaves.boolConst(l.intValue(), Boolean.TRUE);
 	    else
-              RESULT = new bool_const(l.intValue(), Boolean.FALSE);
+              RESULT = leaves.boolConst(l.intValue(), Boolean.FALSE);
           
               CUP$AstCup$result = new java_cup.runtime.Symbol(9/*expr_aux*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-2)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
@@ -395,7 +396,7 @@ class CUP$AstCup$actions {
 		int sleft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).left;
 		int sright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right;
 		AbstractSymbol s = (AbstractSymbol)((java_cup.runtime.Symbol) CUP$AstCup$stack.peek()).value;
-		 curr_lineno = l; RESULT = new string_const(l.intValue(), s); 
+		 curr_lineno = l; RESULT = leaves.stringConst(l.intValue(), s); 
               CUP$AstCup$result = new java_cup.runtime.Symbol(9/*expr_aux*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-2)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
@@ -410,7 +411,7 @@ class CUP$AstCup$actions {
 		int ileft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).left;
 		int iright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right;
 		AbstractSymbol i = (AbstractSymbol)((java_cup.runtime.Symbol) CUP$AstCup$stack.peek()).value;
-		 curr_lineno = l; RESULT = new int_const(l.intValue(), i); 
+		 curr_lineno = l; RESULT = leaves.intConst(l.intValue(), i); 
               CUP$AstCup$result = new java_cup.runtime.Symbol(9/*expr_aux*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-2)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
@@ -782,7 +783,7 @@ class CUP$AstCup$actions {
 		int tleft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).left;
 		int tright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right;
 		AbstractSymbol t = (AbstractSymbol)((java_cup.runtime.Symbol) CUP$AstCup$stack.peek()).value;
-		 RESULT = e; e.set_type(t); 
+		 RESULT = e; 
               CUP$AstCup$result = new java_cup.runtime.Symbol(10/*expr*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-2)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
@@ -965,7 +966,7 @@ class CUP$AstCup$actions {
 		int fleft = ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).left;
 		int fright = ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).right;
 		Features f = (Features)((java_cup.runtime.Symbol) CUP$AstCup$stack.elementAt(CUP$AstCup$top-1)).value;
-		 curr_lineno = l; RESULT = new class_c(l.intValue(), n, p, f, file); 
+		 curr_lineno = l; class_c c = new class_c(l.intValue(), n, p, f, file); c.setLeafLines(leaves.takeLines()); RESULT = c; 
               CUP$AstCup$result = new java_cup.runtime.Symbol(2/*class*/, ((java_cup.runtime.Symbol)CUP$AstCup$stack.elementAt(CUP$AstCup$top-7)).left, ((java_cup.runtime.Symbol)CUP$AstCup$stack.peek()).right, RESULT);
             }
           return CUP$AstCup$result;
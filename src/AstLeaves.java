@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/** Makes the leaves of a tree, sharing equal ones.
+
+    <p>
+
+    Programs repeat the same literals over and over, and each occurrence
+    used to be a node of its own; the basic classes alone hold a dozen
+    <code>no_expr</code> placeholders.  With the -H flag the readers,
+    the parsers and the class table get their constants, their
+    <code>no_expr</code> nodes and their <code>self</code> objects from
+    a factory of their own, and equal ones are the same node throughout
+    the program.
+
+    <p>
+
+    The line number is printed with the node, and differs from one
+    occurrence to the next, so a shared leaf keeps only the line of its
+    first occurrence, marked as shared, which getLineNumber gives and
+    isSharedLeaf tells apart; the lines of its occurrences are kept by
+    the class they are in, in an array with one entry per occurrence of
+    a shared leaf, in the order a walk of the class meets them.  The
+    factory records the line of each occurrence it hands out, and the
+    reader hands them to the class it builds with takeLines; since every
+    reader builds the leaves of a class in the order of the walk, the
+    lines come out in that order.  The walks that print or copy the
+    lines, the typed dump, the binary writer and FlatAst, read them back
+    with a Lines cursor; a walk that does not start at a class, such as
+    the dump of a method, gives each shared leaf its own line.  The type
+    checker gives a constant the type of its kind and <code>self</code>
+    the type SELF_TYPE wherever they are, so the types of a shared node
+    are the same for all of its occurrences.  Other objects are not
+    shared, since their type depends on the scope they are in.  Without
+    the flag every call returns a new node, with its line.
+
+    <p>
+
+    Only leaves are shared.  A subtree holds objects, whose types
+    depend on the scope, or constants, whose lines would have to be
+    kept for the subtree; the few equal subtrees a program has that are
+    made of constants alone are not worth it.
+
+    <p>
+
+    A factory is not thread safe: each reader has its own.
+
+    @see Flags#share_leaves
+    @see class_c#setLeafLines */
+class AstLeaves {
+    /** Returns the line number a shared leaf keeps for the line of its
+     * first occurrence: a negative one, which marks it as shared.
+     * @see TreeNode#isSharedLeaf */
+    static int share(int line) {
+	return -1 - line;
+    }
+
+    /** Returns the line of the first occurrence of a shared leaf from
+     * the line number it keeps */
+    static int unshare(int lineNumber) {
+	return -1 - lineNumber;
+    }
+
+    private final SymbolMap<int_const> ints = new SymbolMap<int_const>();
+    private final SymbolMap<string_const> strings = new SymbolMap<string_const>();
+    private bool_const trueConst;
+    private bool_const falseConst;
+    private no_expr noExpr;
+    private object self;
+
+    /** Lines of the occurrences handed out since the last takeLines */
+    private int[] lines = new int[64];
+    private int count;
+
+    /** Returns an integer constant */
+    int_const intConst(int line, AbstractSymbol token) {
+	if (!record(line)) {
+	    return new int_const(line, token);
+	}
+	int_const e = ints.get(token);
+	if (e == null) {
+	    ints.put(token, e = new int_const(share(line), token));
+	}
+	return e;
+    }
+
+    /** Returns a string constant */
+    string_const stringConst(int line, AbstractSymbol token) {
+	if (!record(line)) {
+	    return new string_const(line, token);
+	}
+	string_const e = strings.get(token);
+	if (e == null) {
+	    strings.put(token, e = new string_const(share(line), token));
+	}
+	return e;
+    }
+
+    /** Returns a boolean constant */
+    bool_const boolConst(int line, Boolean val) {
+	if (!record(line)) {
+	    return new bool_const(line, val);
+	}
+	if (val.booleanValue()) {
+	    return trueConst != null ? trueConst : (trueConst = new bool_const(share(line), Boolean.TRUE));
+	}
+	return falseConst != null ? falseConst : (falseConst = new bool_const(share(line), Boolean.FALSE));
+    }
+
+    /** Returns a missing expression */
+    no_expr noExpr(int line) {
+	if (!record(line)) {
+	    return new no_expr(line);
+	}
+	return noExpr != null ? noExpr : (noExpr = new no_expr(share(line)));
+    }
+
+    /** Returns an object, shared if it is self */
+    object object(int line, AbstractSymbol name) {
+	if (!name.equals(TreeConstants.self) || !record(line)) {
+	    return new object(line, name);
+	}
+	return self != null ? self : (self = new object(share(line), name));
+    }
+
+    /** Returns the lines of the occurrences of shared leaves handed out
+     * since the last call, for the class built from them.
+     *
+     * @return the lines, or null if there are none
+     * */
+    int[] takeLines() {
+	if (count == 0) {
+	    return null;
+	}
+	int[] taken = Arrays.copyOf(lines, count);
+	count = 0;
+	return taken;
+    }
+
+    /** Returns whether leaves are shared, recording the line of the
+     * occurrence if they are */
+    private boolean record(int line) {
+	if (!Flags.share_leaves) {
+	    return false;
+	}
+	if (count == lines.length) {
+	    lines = Arrays.copyOf(lines, 2 * count);
+	}
+	lines[count++] = line;
+	return true;
+    }
+
+    /** Gives the line of each node of a walk, reading those of the
+     * shared leaves from the class the walk is in.  A walk calls
+     * enter() at each class, then line() at each node, in the order of
+     * the dump; outside a class, a shared leaf gives its own line. */
+    static class Lines {
+	private int[] lines;
+	private int next;
+
+	/** Starts the nodes of a class */
+	void enter(class_c c) {
+	    lines = c.getLeafLines();
+	    next = 0;
+	}
+
+	/** Returns the line of the next node of the walk */
+	int line(TreeNode t) {
+	    if (!t.isSharedLeaf() || lines == null || next == lines.length) {
+		return t.getLineNumber();
+	    }
+	    return lines[next++];
+	}
+    }
+}
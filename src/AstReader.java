@@ -0,0 +1,489 @@
+import java.util.List;
+
+/** A recursive-descent reader for the text AST format.
+
+    <p>
+
+    Every node of the text format starts with its line number and a
+    keyword naming the node (<code>_class</code>, <code>_plus</code>,
+    ...), so one token of lookahead always tells which node comes next.
+    This reader builds the cool_tree nodes directly from the tokens of
+    ASTLexer, as the actions of AstCup do, without parse tables; the
+    expressions being read are kept on a stack of frames, so that deep
+    trees do not overflow the thread stack.  It takes the kind of each token from ASTLexer.next
+    and its value from the fields of the lexer, so that reading a token
+    allocates nothing.  It accepts the same inputs, builds the same trees
+    (line numbers of lists included) and reports syntax errors the same
+    way.
+
+    @see AstCup */
+class AstReader {
+    private final ASTLexer lexer;
+
+    /** Kind of the lookahead token; its value is in the lexer */
+    private int tok;
+
+    /** Line number of the last node built.  AstCup gives each list the
+     * line number of the node built just before the list itself, so
+     * this reader does too. */
+    private int currLine;
+
+    /** True if this reader works on a part of a program: the caller
+     * registers the classes read in the class table, and reports syntax
+     * errors */
+    private final boolean partial;
+
+    /** Makes the leaves of the tree */
+    private final AstLeaves leaves = new AstLeaves();
+
+    /** Creates a reader over the tokens of the lexer */
+    AstReader(ASTLexer lexer) {
+	this(lexer, false);
+    }
+
+    /** Creates a reader over the tokens of the lexer.
+     *
+     * @param partial true if the reader works on a part of a program
+     * */
+    AstReader(ASTLexer lexer, boolean partial) {
+	this.lexer = lexer;
+	this.partial = partial;
+    }
+
+    /** Reads the program.
+     *
+     * @return the root of the AST
+     * */
+    public Program readProgram() throws Exception {
+	int line = readProgramHeader();
+	Classes classes = null;
+	do {
+	    Class_ c = readClass();
+	    if (classes == null) {
+		classes = new Classes(currLine);
+	    }
+	    classes.appendElement(c);
+	} while (tok == ASTConstants.LINENO);
+	expect(ASTConstants.EOF);
+	currLine = line;
+	return new programc(line, classes);
+    }
+
+    /** Reads the line number and keyword that start a program, and
+     * returns the line number.
+     * */
+    int readProgramHeader() throws Exception {
+	tok = lexer.next();
+	if (tok == ASTConstants.EOF) {
+	    // as the empty program rule of AstCup
+	    System.exit(1);
+	}
+	return lineno(ASTConstants.PROGRAM);
+    }
+
+    /** Reads classes up to the end of the input, for a reader working on
+     * a part of a program.
+     *
+     * @param prevLine line number of the class before the first one read,
+     * or 0 if there is none
+     * @param classes the list the classes are added to
+     * */
+    void readClasses(int prevLine, List<Class_> classes) throws Exception {
+	currLine = prevLine;
+	tok = lexer.next();
+	while (tok == ASTConstants.LINENO) {
+	    classes.add(readClass());
+	}
+	expect(ASTConstants.EOF);
+    }
+
+    /** Tests whether a class comes next, for a reader reading the
+     * classes of a program one at a time after its header; at the end
+     * of the classes the input must end too.
+     * */
+    boolean atClass() throws Exception {
+	if (tok == ASTConstants.LINENO) {
+	    return true;
+	}
+	expect(ASTConstants.EOF);
+	return false;
+    }
+
+    /** Reads a class */
+    Class_ readClass() throws Exception {
+	int line = lineno(ASTConstants.CLASS);
+	AbstractSymbol name = symbol(ASTConstants.ID);
+	AbstractSymbol parent = symbol(ASTConstants.ID);
+	AbstractSymbol filename = symbol(ASTConstants.STR_CONST);
+	expect(ASTConstants.LPAREN);
+	Features features = null;
+	while (tok == ASTConstants.LINENO) {
+	    Feature f = readFeature();
+	    if (features == null) {
+		features = new Features(currLine);
+	    }
+	    features.appendElement(f);
+	}
+	if (features == null) {
+	    features = new Features(currLine);
+	}
+	expect(ASTConstants.RPAREN);
+	currLine = line;
+	class_c c = new class_c(line, name, parent, features, filename, !partial);
+	c.setLeafLines(leaves.takeLines());
+	return c;
+    }
+
+    private Feature readFeature() throws Exception {
+	int line = lineno();
+	int kind = tok;
+	if (kind != ASTConstants.METHOD && kind != ASTConstants.ATTR) {
+	    throw syntaxError();
+	}
+	advance();
+	switch (kind) {
+	case ASTConstants.METHOD: {
+	    AbstractSymbol name = symbol(ASTConstants.ID);
+	    Formals formals = null;
+	    while (tok == ASTConstants.LINENO) {
+		int fline = lineno(ASTConstants.FORMAL);
+		AbstractSymbol fname = symbol(ASTConstants.ID);
+		AbstractSymbol ftype = symbol(ASTConstants.ID);
+		currLine = fline;
+		if (formals == null) {
+		    formals = new Formals(currLine);
+		}
+		formals.appendElement(new formalc(fline, fname, ftype));
+	    }
+	    if (formals == null) {
+		formals = new Formals(currLine);
+	    }
+	    AbstractSymbol returnType = symbol(ASTConstants.ID);
+	    Expression expr = readExpression();
+	    currLine = line;
+	    return new method(line, name, formals, returnType, expr);
+	}
+	case ASTConstants.ATTR: {
+	    AbstractSymbol name = symbol(ASTConstants.ID);
+	    AbstractSymbol typeDecl = symbol(ASTConstants.ID);
+	    Expression init = readExpression();
+	    currLine = line;
+	    return new attr(line, name, typeDecl, init);
+	}
+	default:
+	    throw syntaxError();
+	}
+    }
+
+    /** An expression being read, whose children are not all read yet */
+    private static class Frame {
+	final int kind;
+	final int line;
+	final Frame parent;
+
+	/** The symbols of the expression, such as the name of a dispatch */
+	AbstractSymbol s0, s1;
+
+	/** The children read so far that are not in a list, and how many
+	 * children were read */
+	Expression c0, c1, c2;
+	int k;
+
+	/** The arguments of a dispatch, the body of a block, or the
+	 * branches of a case, once the first one is read */
+	Expressions list;
+	Cases cases;
+
+	/** The header of the branch being read */
+	int bline;
+	AbstractSymbol bname, btype;
+
+	Frame(int kind, int line, Frame parent) {
+	    this.kind = kind;
+	    this.line = line;
+	    this.parent = parent;
+	}
+    }
+
+    /** Reads an expression and skips its type, which the checker finds
+     * again.  The expressions it is in are kept in a stack of frames
+     * rather than on the thread stack, so that the depth of the tree is
+     * only bounded by the memory; the tokens are read in the order of a
+     * recursive descent. */
+    private Expression readExpression() throws Exception {
+	Frame top = null;
+	for (;;) {
+	    int line = lineno();
+	    int kind = tok;
+	    if (kind < ASTConstants.ASSIGN || kind > ASTConstants.OBJECT
+		|| (kind > ASTConstants.DISPATCH && kind < ASTConstants.COND)) {
+		throw syntaxError();
+	    }
+	    advance();
+	    Expression e = readLeaf(kind, line);
+	    if (e == null) {
+		top = new Frame(kind, line, top);
+		start(top);
+		// every expression that is not a leaf has a first child
+		next(top);
+		continue;
+	    }
+	    currLine = line;
+	    // pass the expression up to the frames it completes
+	    for (;;) {
+		expect(ASTConstants.COLON);
+		if (tok == ASTConstants.ID) {
+		    symbol(ASTConstants.ID);
+		} else {
+		    expect(ASTConstants.NO_TYPE);
+		}
+		if (top == null) {
+		    return e;
+		}
+		add(top, e);
+		if (next(top)) {
+		    break;
+		}
+		e = build(top);
+		currLine = top.line;
+		top = top.parent;
+	    }
+	}
+    }
+
+    /** Reads the rest of an expression that has no children, or returns
+     * null if the keyword is not that of one */
+    private Expression readLeaf(int kind, int line) throws Exception {
+	switch (kind) {
+	case ASTConstants.INT:
+	    return leaves.intConst(line, symbol(ASTConstants.INT_CONST));
+	case ASTConstants.BOOL:
+	    return leaves.boolConst(line, symbol(ASTConstants.INT_CONST).getString().charAt(0) == '1'
+				    ? Boolean.TRUE : Boolean.FALSE);
+	case ASTConstants.STR:
+	    return leaves.stringConst(line, symbol(ASTConstants.STR_CONST));
+	case ASTConstants.NEW:
+	    return new new_(line, symbol(ASTConstants.ID));
+	case ASTConstants.NO_EXPR:
+	    return leaves.noExpr(line);
+	case ASTConstants.OBJECT:
+	    return leaves.object(line, symbol(ASTConstants.ID));
+	default:
+	    return null;
+	}
+    }
+
+    /** Reads what an expression has before its first child */
+    private void start(Frame f) throws Exception {
+	switch (f.kind) {
+	case ASTConstants.ASSIGN:
+	    f.s0 = symbol(ASTConstants.ID);
+	    break;
+	case ASTConstants.LET:
+	    f.s0 = symbol(ASTConstants.ID);
+	    f.s1 = symbol(ASTConstants.ID);
+	    break;
+	}
+    }
+
+    /** Reads what an expression has before its next child, and tells
+     * whether it has one; if it has none, reads what ends it */
+    private boolean next(Frame f) throws Exception {
+	switch (f.kind) {
+	case ASTConstants.ASSIGN:
+	case ASTConstants.NEG:
+	case ASTConstants.COMP:
+	case ASTConstants.ISVOID:
+	    return f.k < 1;
+	case ASTConstants.COND:
+	    return f.k < 3;
+	case ASTConstants.STATIC_DISPATCH:
+	case ASTConstants.DISPATCH:
+	    if (f.k == 0) {
+		return true;
+	    }
+	    if (f.k == 1) {
+		if (f.kind == ASTConstants.STATIC_DISPATCH) {
+		    f.s0 = symbol(ASTConstants.ID);
+		}
+		f.s1 = symbol(ASTConstants.ID);
+		expect(ASTConstants.LPAREN);
+	    }
+	    if (tok != ASTConstants.RPAREN) {
+		return true;
+	    }
+	    if (f.list == null) {
+		f.list = new Expressions(currLine);
+	    }
+	    advance();
+	    return false;
+	case ASTConstants.TYPCASE:
+	    if (f.k == 0) {
+		return true;
+	    }
+	    if (f.k > 1 && tok != ASTConstants.LINENO) {
+		return false;
+	    }
+	    f.bline = lineno(ASTConstants.BRANCH);
+	    f.bname = symbol(ASTConstants.ID);
+	    f.btype = symbol(ASTConstants.ID);
+	    return true;
+	case ASTConstants.BLOCK:
+	    return f.k == 0 || tok == ASTConstants.LINENO;
+	default:
+	    // loop, let, and the arithmetic and comparison operators
+	    return f.k < 2;
+	}
+    }
+
+    /** Adds a child to an expression, as the recursive descent did once
+     * it had read the child */
+    private void add(Frame f, Expression e) {
+	switch (f.kind) {
+	case ASTConstants.STATIC_DISPATCH:
+	case ASTConstants.DISPATCH:
+	case ASTConstants.BLOCK:
+	    if (f.k == 0 && f.kind != ASTConstants.BLOCK) {
+		f.c0 = e;
+	    } else {
+		if (f.list == null) {
+		    f.list = new Expressions(currLine);
+		}
+		f.list.appendElement(e);
+	    }
+	    break;
+	case ASTConstants.TYPCASE:
+	    if (f.k == 0) {
+		f.c0 = e;
+	    } else {
+		currLine = f.bline;
+		if (f.cases == null) {
+		    f.cases = new Cases(currLine);
+		}
+		f.cases.appendElement(new branch(f.bline, f.bname, f.btype, e));
+	    }
+	    break;
+	default:
+	    if (f.k == 0) {
+		f.c0 = e;
+	    } else if (f.k == 1) {
+		f.c1 = e;
+	    } else {
+		f.c2 = e;
+	    }
+	    break;
+	}
+	f.k++;
+    }
+
+    /** Makes the expression of a frame whose children are all read */
+    private Expression build(Frame f) {
+	int line = f.line;
+	switch (f.kind) {
+	case ASTConstants.ASSIGN:
+	    return new assign(line, f.s0, f.c0);
+	case ASTConstants.STATIC_DISPATCH:
+	    return new static_dispatch(line, f.c0, f.s0, f.s1, f.list);
+	case ASTConstants.DISPATCH:
+	    return new dispatch(line, f.c0, f.s1, f.list);
+	case ASTConstants.COND:
+	    return new cond(line, f.c0, f.c1, f.c2);
+	case ASTConstants.LOOP:
+	    return new loop(line, f.c0, f.c1);
+	case ASTConstants.TYPCASE:
+	    return new typcase(line, f.c0, f.cases);
+	case ASTConstants.BLOCK:
+	    return new block(line, f.list);
+	case ASTConstants.LET:
+	    return new let(line, f.s0, f.s1, f.c0, f.c1);
+	case ASTConstants.PLUS:
+	    return new plus(line, f.c0, f.c1);
+	case ASTConstants.SUB:
+	    return new sub(line, f.c0, f.c1);
+	case ASTConstants.MUL:
+	    return new mul(line, f.c0, f.c1);
+	case ASTConstants.DIVIDE:
+	    return new divide(line, f.c0, f.c1);
+	case ASTConstants.NEG:
+	    return new neg(line, f.c0);
+	case ASTConstants.LT:
+	    return new lt(line, f.c0, f.c1);
+	case ASTConstants.EQ:
+	    return new eq(line, f.c0, f.c1);
+	case ASTConstants.LEQ:
+	    return new leq(line, f.c0, f.c1);
+	case ASTConstants.COMP:
+	    return new comp(line, f.c0);
+	default:
+	    return new isvoid(line, f.c0);
+	}
+    }
+
+    /** Reads a line number followed by the given node keyword, and
+     * returns the line number */
+    private int lineno(int keyword) throws Exception {
+	int line = lineno();
+	expect(keyword);
+	return line;
+    }
+
+    private int lineno() throws Exception {
+	if (tok != ASTConstants.LINENO) {
+	    throw syntaxError();
+	}
+	int line = lexer.lineno;
+	advance();
+	return line;
+    }
+
+    private AbstractSymbol symbol(int kind) throws Exception {
+	if (tok != kind) {
+	    throw syntaxError();
+	}
+	AbstractSymbol sym = lexer.symbol;
+	advance();
+	return sym;
+    }
+
+    private void expect(int kind) throws Exception {
+	if (tok != kind) {
+	    throw syntaxError();
+	}
+	if (kind != ASTConstants.EOF) {
+	    advance();
+	}
+    }
+
+    /** Reads the next token */
+    private void advance() throws Exception {
+	tok = lexer.next();
+    }
+
+    /** Returns a syntax error at the current line, after reporting it
+     * unless this reader works on a part of a program */
+    private SyntaxError syntaxError() {
+	SyntaxError err = new SyntaxError(lexer.line());
+	if (!partial) {
+	    err.report();
+	}
+	return err;
+    }
+
+    /** A syntax error in the input */
+    static class SyntaxError extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+
+	SyntaxError(int line) {
+	    super("unexpected error in ast parsing: " + line);
+	    this.line = line;
+	}
+
+	/** Reports the error as AstCup does, which ends the program */
+	void report() {
+	    System.err.println("??? unexpected error in ast parsing: " + line);
+	    System.exit(1);
+	}
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/** What the type checker finds out about the nodes of a program, kept
+    apart from the nodes.
+
+    <p>
+
+    The structure of a tree does not change once it is built, so a
+    changed program can share every subtree it does not change with the
+    original one: withNth, withClasses, withFeatures, withExpr and the
+    like copy only the nodes on the path to the change.  For the nodes
+    to be shared, what a check finds about them cannot be stored in
+    them, since checking the changed program would overwrite what was
+    found for the original one.  A check therefore writes in a table of
+    its own: the type of each expression, the rt annotation of the nodes
+    that have one, whether the type of an expression was found to be
+    undefined, the scopes opened for each class and the types of the
+    branches of each case.
+
+    <p>
+
+    The nodes read and write their annotations, with get_type, setRt and
+    the like, in the current table, which a check makes with the new
+    compilation and which use() replaces.  The types, the rt annotations
+    and the undefined flags are in arrays indexed by the index of the
+    node, which grow as nodes are annotated; since the nodes are
+    numbered from 0 in each compilation, they are the size of the
+    program being checked, however many were compiled before.  The
+    rest, a few entries per class, is in a map.  Several threads may annotate different nodes at
+    once, provided reserve() was called after the last of them was built.
+
+    @see TreeNode#index */
+class AstTypes {
+    /** The table the nodes are annotated in */
+    private static AstTypes current = new AstTypes();
+
+    /** The type of each expression, by node index */
+    private AbstractSymbol[] types;
+
+    /** The rt annotation of each node, by node index */
+    private AbstractSymbol[] rtypes;
+
+    /** Whether the type of each expression was found to be undefined */
+    private boolean[] undefined;
+
+    /** The number of scopes opened for each class, and the types of the
+     * branches of each case list */
+    private final Map<TreeNode, Object> walks = new IdentityHashMap<TreeNode, Object>();
+
+    /** Creates an empty table, with room for the nodes built so far */
+    AstTypes() {
+	int n = TreeNode.count();
+	types = new AbstractSymbol[n];
+	rtypes = new AbstractSymbol[n];
+	undefined = new boolean[n];
+    }
+
+    /** Returns the table the nodes are annotated in */
+    static AstTypes getInstance() {
+	return current;
+    }
+
+    /** Makes this table the one the nodes are annotated in.
+     *
+     * @return the table they were annotated in until now
+     * */
+    AstTypes use() {
+	AstTypes previous = current;
+	current = this;
+	return previous;
+    }
+
+    /** Makes room for the nodes built so far, so that several threads
+     * can annotate them without the arrays growing under them */
+    void reserve() {
+	if (types.length < TreeNode.count()) {
+	    grow(TreeNode.count() - 1);
+	}
+    }
+
+    /** Returns the type of an expression, or null if it has none */
+    AbstractSymbol type(TreeNode n) {
+	return n.index < types.length ? types[n.index] : null;
+    }
+
+    void setType(TreeNode n, AbstractSymbol type) {
+	if (n.index >= types.length) {
+	    grow(n.index);
+	}
+	types[n.index] = type;
+    }
+
+    /** Returns the rt annotation of a node, or null if it has none */
+    AbstractSymbol rt(TreeNode n) {
+	return n.index < rtypes.length ? rtypes[n.index] : null;
+    }
+
+    void setRt(TreeNode n, AbstractSymbol rt) {
+	if (n.index >= rtypes.length) {
+	    grow(n.index);
+	}
+	rtypes[n.index] = rt;
+    }
+
+    /** Returns false once the type of the expression was found to be
+     * undefined */
+    boolean isValidType(TreeNode n) {
+	return n.index >= undefined.length || !undefined[n.index];
+    }
+
+    void setValidType(TreeNode n, boolean valid) {
+	if (n.index >= undefined.length) {
+	    grow(n.index);
+	}
+	undefined[n.index] = !valid;
+    }
+
+    /** Returns the number of scopes opened for a class, or 0 */
+    synchronized int numScopes(Class_ c) {
+	Integer n = (Integer) walks.get(c);
+	return n == null ? 0 : n.intValue();
+    }
+
+    synchronized void setNumScopes(Class_ c, int n) {
+	walks.put(c, n);
+    }
+
+    /** Returns the types of the branches of a case list, or null */
+    synchronized AbstractSymbol[] typeList(Cases cases) {
+	return (AbstractSymbol[]) walks.get(cases);
+    }
+
+    synchronized void setTypeList(Cases cases, AbstractSymbol[] typeList) {
+	walks.put(cases, typeList);
+    }
+
+    /** Makes room for the node of the given index */
+    private synchronized void grow(int index) {
+	if (index < types.length) {
+	    return;
+	}
+	int n = Math.max(Math.max(index + 1, TreeNode.count()), 2 * types.length);
+	types = Arrays.copyOf(types, n);
+	rtypes = Arrays.copyOf(rtypes, n);
+	undefined = Arrays.copyOf(undefined, n);
+    }
+}
@@ -0,0 +1,378 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Benchmarks of the string tables, the text AST readers, the lexer
+ * and the dispatch of the type checker, each with a check that the
+ * fast path gives what the path it replaces gave.
+ *
+ * <p>
+ *
+ * Run as <code>java Bench MODE [ARGS]</code>:
+ * <ul>
+ * <li><code>intern [MAX]</code> interns from 1k up to MAX (1M)
+ * distinct identifiers, and checks a sample of them against a scan of
+ * the table, as lookups were done before the table was hashed</li>
+ * <li><code>read FILE...</code> parses text ASTs with AstCup and with
+ * AstReader, checks that the typed dumps of both trees are the same,
+ * and times both parsers</li>
+ * <li><code>tokens FILE...</code> lexes text ASTs with next() and with
+ * next_token(), checks that both give the same tokens, and counts the
+ * bytes each allocates per token</li>
+ * <li><code>dispatch FILE...</code> replays the pre- and post-order
+ * dispatch of the type checker on the expressions of text ASTs through
+ * ExpressionTypeSelector and through a selector keyed by the class of
+ * the node, as the checker had, checks that both pick the same action
+ * for every node, and times both</li>
+ * </ul>
+ * The files are the corpus: any text AST without syntax errors will
+ * do, and large generated programs show the differences best.  Times
+ * are the best of ROUNDS rounds, after as many rounds to warm up.
+ * Prints a line per measure and exits with status 1 if a check fails.
+ *
+ * @see Semant
+ * */
+class Bench {
+	/** Rounds timed, after as many rounds run to warm up */
+	private static final int ROUNDS = 5;
+
+	/** Number of identifiers checked against a scan of the table */
+	private static final int SAMPLE = 20;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			usage();
+		}
+		String[] rest = Arrays.copyOfRange(args, 1, args.length);
+		boolean same;
+		if (args[0].equals("intern")) {
+			same = intern(rest.length > 0 ? Integer.parseInt(rest[0]) : 1000000);
+		} else if (args[0].equals("read")) {
+			same = read(rest);
+		} else if (args[0].equals("tokens")) {
+			same = tokens(rest);
+		} else if (args[0].equals("dispatch")) {
+			same = dispatch(rest);
+		} else {
+			usage();
+			return;
+		}
+		System.out.println(same ? "same" : "DIFFERENT");
+		System.exit(same ? 0 : 1);
+	}
+
+	private static void usage() {
+		System.err.println("usage: Bench intern [MAX] | read FILE... | tokens FILE... | dispatch FILE...");
+		System.exit(1);
+	}
+
+	/** Interns n distinct identifiers in a new table, for n from 1k to
+	 * max by factors of ten, then looks each of them up again.  A
+	 * sample of them is looked up by a scan of the table too, which
+	 * must find the same symbols, with the indices they were added
+	 * with.  The whole series runs once to warm up before it is
+	 * timed.
+	 *
+	 * @param max the largest number of identifiers
+	 * @return whether the scan found the same symbols
+	 * */
+	static boolean intern(int max) {
+		boolean same = true;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int n = 1000; n <= max; n *= 10) {
+				same &= intern(n, pass == 1);
+			}
+		}
+		return same;
+	}
+
+	/** Interns n distinct identifiers, and prints the times if asked */
+	private static boolean intern(int n, boolean print) {
+		boolean same = true;
+		String[] names = new String[n];
+		for (int i = 0; i < n; i++) {
+			names[i] = "id" + i;
+		}
+		IdTable table = new IdTable();
+		long t0 = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			table.addString(names[i]);
+		}
+		long t1 = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			table.lookup(names[i]);
+		}
+		long t2 = System.nanoTime();
+		long scan = 0;
+		int step = Math.max(1, n / SAMPLE);
+		for (int i = 0; i < n; i += step) {
+			AbstractSymbol s = table.lookup(names[i]);
+			long t = System.nanoTime();
+			AbstractSymbol found = scan(table, names[i]);
+			scan += System.nanoTime() - t;
+			if (s != found || !s.equalsIndex(i)) {
+				System.out.println(names[i] + ": " + s + " by hash, " + found + " by scan");
+				same = false;
+			}
+		}
+		if (print) {
+			System.out.printf("%8d ids: add %.3f us, lookup %.3f us, scan %.3f us per call%n",
+					  n, (t1 - t0) / 1e3 / n, (t2 - t1) / 1e3 / n, scan / 1e3 / ((n + step - 1) / step));
+		}
+		return same;
+	}
+
+	/** Looks a string up the way the table did before it was hashed */
+	private static AbstractSymbol scan(AbstractTable table, String s) {
+		for (int i = 0; i < table.size(); i++) {
+			AbstractSymbol sym = table.lookup(i);
+			if (sym.equalString(s, s.length())) {
+				return sym;
+			}
+		}
+		return null;
+	}
+
+	/** Parses each file with AstCup and with AstReader, compares the
+	 * typed dumps of the trees, and times both parsers.
+	 *
+	 * @param files the text ASTs
+	 * @return whether the parsers built the same trees
+	 * */
+	static boolean read(String[] files) throws Exception {
+		boolean same = true;
+		for (String file : files) {
+			byte[] cup = dump(parse(file, false));
+			byte[] descent = dump(parse(file, true));
+			if (!Arrays.equals(cup, descent)) {
+				System.out.println(file + ": the trees differ");
+				same = false;
+			}
+			long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+			for (int r = 0; r < 2 * ROUNDS; r++) {
+				for (int p = 0; p < 2; p++) {
+					long t = System.nanoTime();
+					parse(file, p == 1);
+					t = System.nanoTime() - t;
+					if (r >= ROUNDS) {
+						best[p] = Math.min(best[p], t);
+					}
+				}
+			}
+			System.out.printf("%s: AstCup %.1f ms, AstReader %.1f ms%n", file, best[0] / 1e6, best[1] / 1e6);
+		}
+		return same;
+	}
+
+	/** Parses a text AST in a new compilation */
+	private static Program parse(String file, boolean descent) throws Exception {
+		Semant.newCompilation();
+		Flags.descent_parser = descent;
+		return Semant.parse(new ASTLexer(new MappedFileReader(file)));
+	}
+
+	/** Returns the typed dump of a tree */
+	private static byte[] dump(Program program) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes);
+		program.dump_with_types(out, 0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/** Lexes each file with next() and with next_token(), compares the
+	 * tokens, and counts the bytes each allocates per token.  The
+	 * tables are filled by a first pass, so that the entries they add
+	 * are not counted.
+	 *
+	 * @param files the text ASTs
+	 * @return whether the tokens are the same
+	 * */
+	static boolean tokens(String[] files) throws Exception {
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		boolean same = true;
+		for (String file : files) {
+			Semant.newCompilation();
+			same &= sameTokens(file);
+			double[] least = { Double.MAX_VALUE, Double.MAX_VALUE };
+			long count = 0;
+			for (int r = 0; r < 2 * ROUNDS; r++) {
+				for (int p = 0; p < 2; p++) {
+					ASTLexer lexer = new ASTLexer(new MappedFileReader(file));
+					long bytes = threads.getThreadAllocatedBytes(thread);
+					count = 0;
+					if (p == 0) {
+						while (lexer.next() != ASTConstants.EOF) {
+							count++;
+						}
+					} else {
+						while (lexer.next_token().sym != ASTConstants.EOF) {
+							count++;
+						}
+					}
+					bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+					if (r >= ROUNDS) {
+						least[p] = Math.min(least[p], bytes / (double) count);
+					}
+				}
+			}
+			System.out.printf("%s: %d tokens, next() %.2f bytes, next_token() %.2f bytes per token%n",
+					  file, count, least[0], least[1]);
+		}
+		return same;
+	}
+
+	/** Returns whether next() and next_token() give the same tokens on
+	 * a file */
+	private static boolean sameTokens(String file) throws IOException {
+		ASTLexer lexer = new ASTLexer(new MappedFileReader(file));
+		ASTLexer boxed = new ASTLexer(new MappedFileReader(file));
+		for (int n = 0; ; n++) {
+			int kind = lexer.next();
+			java_cup.runtime.Symbol token = boxed.next_token();
+			Object value = kind == ASTConstants.LINENO ? Integer.valueOf(lexer.lineno)
+				: kind == ASTConstants.ID || kind == ASTConstants.INT_CONST
+				|| kind == ASTConstants.STR_CONST ? lexer.symbol : null;
+			if (kind != token.sym || (value == null ? token.value != null : !value.equals(token.value))) {
+				System.out.println(file + ": token " + n + " differs");
+				return false;
+			}
+			if (kind == ASTConstants.EOF) {
+				return true;
+			}
+		}
+	}
+
+	/** Replays the pre- and post-order dispatch of the type checker on
+	 * the expressions of each file, through ExpressionTypeSelector and
+	 * through a selector keyed by the class of the node, and times
+	 * both.  Each kind has an action of its own class, as in the
+	 * checker, so that the call of a selector sees as many classes as
+	 * it does there.
+	 *
+	 * @param files the text ASTs
+	 * @return whether both selectors picked the same action for every
+	 * node
+	 * */
+	static boolean dispatch(String[] files) throws Exception {
+		boolean same = true;
+		for (String file : files) {
+			Expression[] nodes = expressions(parse(file, true));
+			ExpressionTypeSelector pre = new ExpressionTypeSelector();
+			ExpressionTypeSelector post = new ExpressionTypeSelector();
+			ClassSelector oldPre = new ClassSelector();
+			ClassSelector oldPost = new ClassSelector();
+			for (Expression e : nodes) {
+				if (oldPost.actions.get(e.getClass()) == null) {
+					IAction<Expression> a = action(e.getKind());
+					post.register(e.getKind(), a);
+					oldPost.actions.put(e.getClass(), a);
+				}
+			}
+			for (Expression e : nodes) {
+				if (post.execute(e) != oldPost.execute(e)) {
+					System.out.println(file + ": line " + e.getLineNumber() + ": the selectors differ");
+					same = false;
+					break;
+				}
+			}
+			long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+			for (int r = 0; r < 2 * ROUNDS; r++) {
+				long t = System.nanoTime();
+				for (Expression e : nodes) {
+					oldPre.execute(e);
+					oldPost.execute(e);
+				}
+				long t1 = System.nanoTime();
+				for (Expression e : nodes) {
+					pre.execute(e);
+					post.execute(e);
+				}
+				long t2 = System.nanoTime();
+				if (r >= ROUNDS) {
+					best[0] = Math.min(best[0], t1 - t);
+					best[1] = Math.min(best[1], t2 - t1);
+				}
+			}
+			System.out.printf("%s: %d nodes, by class %.1f ns, by kind %.1f ns per node%n",
+					  file, nodes.length, best[0] / (double) nodes.length, best[1] / (double) nodes.length);
+		}
+		return same;
+	}
+
+	/** Returns the expressions of a tree, in pre-order */
+	private static Expression[] expressions(Program program) {
+		final List<Expression> nodes = new ArrayList<Expression>();
+		program.accept(new DefaultVisitor() {
+			@Override
+			public Object onVisitPreOrder(Expression expr) {
+				nodes.add(expr);
+				return null;
+			}
+		});
+		return nodes.toArray(new Expression[nodes.size()]);
+	}
+
+	/** Selects actions the way ExpressionTypeSelector did before it
+	 * switched on the kind of the node */
+	private static class ClassSelector {
+		final Map<Class<?>, IAction<Expression>> actions = new HashMap<Class<?>, IAction<Expression>>();
+
+		final IAction<Expression> dummy = new IAction<Expression>() {
+			@Override
+			public Object action(Expression obj) {
+				return null;
+			}
+		};
+
+		Object execute(Expression object) {
+			Class<?> c = object.getClass();
+			if (actions.containsKey(c)) {
+				return actions.get(c).action(object);
+			}
+			return dummy.action(object);
+		}
+	}
+
+	/** Number of actions run for each kind */
+	private static final int[] runs = new int[ASTConstants.LINENO + 1];
+
+	/** Returns an action of a class of its own for a kind of node,
+	 * which counts its runs and returns itself */
+	private static IAction<Expression> action(int kind) {
+		switch (kind) {
+		case ASTConstants.ASSIGN:          return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.ASSIGN]++; return this; } };
+		case ASTConstants.STATIC_DISPATCH: return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.STATIC_DISPATCH]++; return this; } };
+		case ASTConstants.DISPATCH:        return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.DISPATCH]++; return this; } };
+		case ASTConstants.COND:            return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.COND]++; return this; } };
+		case ASTConstants.LOOP:            return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.LOOP]++; return this; } };
+		case ASTConstants.TYPCASE:         return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.TYPCASE]++; return this; } };
+		case ASTConstants.BLOCK:           return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.BLOCK]++; return this; } };
+		case ASTConstants.LET:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.LET]++; return this; } };
+		case ASTConstants.PLUS:            return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.PLUS]++; return this; } };
+		case ASTConstants.SUB:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.SUB]++; return this; } };
+		case ASTConstants.MUL:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.MUL]++; return this; } };
+		case ASTConstants.DIVIDE:          return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.DIVIDE]++; return this; } };
+		case ASTConstants.NEG:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.NEG]++; return this; } };
+		case ASTConstants.LT:              return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.LT]++; return this; } };
+		case ASTConstants.EQ:              return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.EQ]++; return this; } };
+		case ASTConstants.LEQ:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.LEQ]++; return this; } };
+		case ASTConstants.COMP:            return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.COMP]++; return this; } };
+		case ASTConstants.INT:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.INT]++; return this; } };
+		case ASTConstants.BOOL:            return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.BOOL]++; return this; } };
+		case ASTConstants.STR:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.STR]++; return this; } };
+		case ASTConstants.NEW:             return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.NEW]++; return this; } };
+		case ASTConstants.ISVOID:          return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.ISVOID]++; return this; } };
+		case ASTConstants.NO_EXPR:         return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.NO_EXPR]++; return this; } };
+		default:                           return new IAction<Expression>() { public Object action(Expression e) { runs[ASTConstants.OBJECT]++; return this; } };
+		}
+	}
+}
@@ -158,6 +158,7 @@ class CgenClassTable extends SymbolTable {
     private void installBasicClasses() {
 	AbstractSymbol filename 
 	    = AbstractTable.stringtable.addString("<basic class>");
+	AstLeaves leaves = new AstLeaves();
 	
 	// A few special class names are installed in the lookup table
 	// but not the class list.  Thus, these classes exist, but are
@@ -205,18 +206,19 @@ class CgenClassTable extends SymbolTable {
 					      TreeConstants.cool_abort, 
 					      new Formals(0), 
 					      TreeConstants.Object_, 
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.type_name,
 					      new Formals(0),
 					      TreeConstants.Str,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.copy,
 					      new Formals(0),
 					      TreeConstants.SELF_TYPE,
-					      new no_expr(0))),
+					      leaves.noExpr(0))),
 		       filename);
+	Object_class.setLeafLines(leaves.takeLines());
 
 	installClass(new CgenNode(Object_class, CgenNode.Basic, this));
 	
@@ -238,7 +240,7 @@ class CgenClassTable extends SymbolTable {
 								     TreeConstants.arg,
 								     TreeConstants.Str)),
 					      TreeConstants.SELF_TYPE,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.out_int,
 					      new Formals(0)
@@ -246,18 +248,19 @@ class CgenClassTable extends SymbolTable {
 								     TreeConstants.arg,
 								     TreeConstants.Int)),
 					      TreeConstants.SELF_TYPE,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.in_string,
 					      new Formals(0),
 					      TreeConstants.Str,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.in_int,
 					      new Formals(0),
 					      TreeConstants.Int,
-					      new no_expr(0))),
+					      leaves.noExpr(0))),
 		       filename);
+	IO_class.setLeafLines(leaves.takeLines());
 
 	CgenNode IO_node = new CgenNode(IO_class, CgenNode.Basic, this);
 	installClass(IO_node);
@@ -273,8 +276,9 @@ class CgenClassTable extends SymbolTable {
 			   .appendElement(new attr(0,
 					    TreeConstants.val,
 					    TreeConstants.prim_slot,
-					    new no_expr(0))),
+					    leaves.noExpr(0))),
 		       filename);
+	Int_class.setLeafLines(leaves.takeLines());
 
 	installClass(new CgenNode(Int_class, CgenNode.Basic, this));
 
@@ -287,8 +291,9 @@ class CgenClassTable extends SymbolTable {
 			   .appendElement(new attr(0,
 					    TreeConstants.val,
 					    TreeConstants.prim_slot,
-					    new no_expr(0))),
+					    leaves.noExpr(0))),
 		       filename);
+	Bool_class.setLeafLines(leaves.takeLines());
 
 	installClass(new CgenNode(Bool_class, CgenNode.Basic, this));
 
@@ -307,16 +312,16 @@ class CgenClassTable extends SymbolTable {
 			   .appendElement(new attr(0,
 					    TreeConstants.val,
 					    TreeConstants.Int,
-					    new no_expr(0)))
+					    leaves.noExpr(0)))
 			   .appendElement(new attr(0,
 					    TreeConstants.str_field,
 					    TreeConstants.prim_slot,
-					    new no_expr(0)))
+					    leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.length,
 					      new Formals(0),
 					      TreeConstants.Int,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.concat,
 					      new Formals(0)
@@ -324,7 +329,7 @@ class CgenClassTable extends SymbolTable {
 								     TreeConstants.arg, 
 								     TreeConstants.Str)),
 					      TreeConstants.Str,
-					      new no_expr(0)))
+					      leaves.noExpr(0)))
 			   .appendElement(new method(0,
 					      TreeConstants.substr,
 					      new Formals(0)
@@ -335,8 +340,9 @@ class CgenClassTable extends SymbolTable {
 								     TreeConstants.arg2,
 								     TreeConstants.Int)),
 					      TreeConstants.Str,
-					      new no_expr(0))),
+					      leaves.noExpr(0))),
 		       filename);
+	Str_class.setLeafLines(leaves.takeLines());
 
 	installClass(new CgenNode(Str_class, CgenNode.Basic, this));
     }
@@ -24,6 +24,9 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import org.jgrapht.alg.CycleDetector;
@@ -46,7 +49,7 @@ class ClassTable {
     private DefaultDirectedGraph<AbstractSymbol, DefaultEdge> dag;
     
     /**
-     * Hash Table containing the association 
+     * Symbol Map containing the association 
      * < ClassName, ReferenceToClassNodeInAST >
      * 
      * It simplifies retrieving what fields and methods
@@ -55,7 +58,12 @@ class ClassTable {
      * What about a more meaningful name? xD
      * classRegister sounds nice to me :)
      */
-    private HashMap<AbstractSymbol, Class_> table;
+    private SymbolMap<Class_> table;
+    
+    /**
+     * The features table of each registered class, by class name
+     */
+    private SymbolMap<FeaturesTable> features;
     
 
     /** Creates data structures representing basic Cool classes (Object,
@@ -66,6 +74,7 @@ class ClassTable {
     public void installBasicClasses() {
 		AbstractSymbol filename 
 		    = AbstractTable.stringtable.addString("<basic class>");
+		AstLeaves leaves = new AstLeaves();
 		
 		// The following demonstrates how to create dummy parse trees to
 		// refer to basic Cool classes.  There's no need for method
@@ -92,18 +101,19 @@ class ClassTable {
 						      TreeConstants.cool_abort, 
 						      new Formals(0), 
 						      TreeConstants.Object_, 
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.type_name,
 						      new Formals(0),
 						      TreeConstants.Str,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.copy,
 						      new Formals(0),
 						      TreeConstants.SELF_TYPE,
-						      new no_expr(0))),
+						      leaves.noExpr(0))),
 			       filename);
+		Object_class.setLeafLines(leaves.takeLines());
 		
 		// The IO class inherits from Object. Its methods are
 		//        out_string(Str) : SELF_TYPE  writes a string to the output
@@ -123,7 +133,7 @@ class ClassTable {
 									     TreeConstants.arg,
 									     TreeConstants.Str)),
 						      TreeConstants.SELF_TYPE,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.out_int,
 						      new Formals(0)
@@ -131,18 +141,19 @@ class ClassTable {
 									     TreeConstants.arg,
 									     TreeConstants.Int)),
 						      TreeConstants.SELF_TYPE,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.in_string,
 						      new Formals(0),
 						      TreeConstants.Str,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.in_int,
 						      new Formals(0),
 						      TreeConstants.Int,
-						      new no_expr(0))),
+						      leaves.noExpr(0))),
 			       filename);
+		IO_class.setLeafLines(leaves.takeLines());
 	
 		// The Int class has no methods and only a single attribute, the
 		// "val" for the integer.
@@ -155,8 +166,9 @@ class ClassTable {
 				   .appendElement(new attr(0,
 						    TreeConstants.val,
 						    TreeConstants.prim_slot,
-						    new no_expr(0))),
+						    leaves.noExpr(0))),
 			       filename);
+		Int_class.setLeafLines(leaves.takeLines());
 	
 		// Bool also has only the "val" slot.
 		class_c Bool_class = 
@@ -167,8 +179,9 @@ class ClassTable {
 				   .appendElement(new attr(0,
 						    TreeConstants.val,
 						    TreeConstants.prim_slot,
-						    new no_expr(0))),
+						    leaves.noExpr(0))),
 			       filename);
+		Bool_class.setLeafLines(leaves.takeLines());
 	
 		// The class Str has a number of slots and operations:
 		//       val                              the length of the string
@@ -185,16 +198,16 @@ class ClassTable {
 				   .appendElement(new attr(0,
 						    TreeConstants.val,
 						    TreeConstants.Int,
-						    new no_expr(0)))
+						    leaves.noExpr(0)))
 				   .appendElement(new attr(0,
 						    TreeConstants.str_field,
 						    TreeConstants.prim_slot,
-						    new no_expr(0)))
+						    leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.length,
 						      new Formals(0),
 						      TreeConstants.Int,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.concat,
 						      new Formals(0)
@@ -202,7 +215,7 @@ class ClassTable {
 									     TreeConstants.arg, 
 									     TreeConstants.Str)),
 						      TreeConstants.Str,
-						      new no_expr(0)))
+						      leaves.noExpr(0)))
 				   .appendElement(new method(0,
 						      TreeConstants.substr,
 						      new Formals(0)
@@ -213,8 +226,9 @@ class ClassTable {
 									     TreeConstants.arg2,
 									     TreeConstants.Int)),
 						      TreeConstants.Str,
-						      new no_expr(0))),
+						      leaves.noExpr(0))),
 			       filename);
+		Str_class.setLeafLines(leaves.takeLines());
 	
 		/* Do somethind with Object_class, IO_class, Int_class,
 	           Bool_class, and Str_class here */
@@ -238,12 +252,13 @@ class ClassTable {
     }
 	/**
 	 * This method registers in the class table and its dag, the given class 
-	 * described by its reference, its node and its parent's reference
+	 * described by its reference, its node and its parent's reference.
+	 * Classes may be registered from several threads.
 	 * @param cls reference to class
 	 * @param impl reference to node
 	 * @param parent reference to the parent
 	 */
-    public void registerClass(AbstractSymbol cls, Class_ impl, AbstractSymbol parent)
+    public synchronized void registerClass(AbstractSymbol cls, Class_ impl, AbstractSymbol parent)
     {
     	if (table.containsKey(cls))
     	{
@@ -251,19 +266,12 @@ class ClassTable {
     		return;
     	}
     	
-    	HashMap<AbstractSymbol, Object> basicClass = new HashMap<AbstractSymbol, Object>(){
-			{
-				put(TreeConstants.Int, true);
-				put(TreeConstants.Bool, true);
-				put(TreeConstants.Str, true);
-			}
-		};
-		
-		if (basicClass.containsKey(parent))
+		if (basicClasses.contains(parent))
 			SemantErrorsManager.getInstance().fatal("Class " + cls + " cannot inherit class " + parent +".");
 		
 //    	System.out.println("registering " + cls + " inherits " + parent);
     	table.put(cls, impl);
+    	features.put(cls, new FeaturesTable(impl));
     	dag.addVertex(cls);
     
 		//dag.addEdge(cls, parent);
@@ -291,8 +299,30 @@ class ClassTable {
     {
     	registerClass(impl.getName(), impl, impl.getParent());
     }
+    
+    /**
+     * Forgets the classes and the features of the program analyzed last,
+     * and registers the given classes in their place. A program derived
+     * from the one analyzed shares the classes it does not change with
+     * it, and has new nodes for those it changes, which were not
+     * registered when they were built; once re-registered, the program
+     * can be analyzed in turn.
+     * @param classes the classes of the program
+     */
+    public void reregister(Classes classes)
+    {
+    	reset();
+    	for (int i = 0; i < classes.getLength(); i++)
+    		registerClass(classes.getNth(i));
+    }
 
     
+    /**
+     * The basic classes that cannot be inherited from
+     */
+    private static final SymbolSet basicClasses = 
+    		new SymbolSet(TreeConstants.Int, TreeConstants.Bool, TreeConstants.Str);
+    
     private static ClassTable instance = null;
     
     public static synchronized ClassTable getInstance()
@@ -306,11 +336,21 @@ class ClassTable {
     {
     	
 		/* fill this in */
-		table = new HashMap<AbstractSymbol, Class_>();
-		dag = new DefaultDirectedGraph<AbstractSymbol, DefaultEdge>(DefaultEdge.class);
+		reset();
 	
 	
     }
+    
+    /**
+     * Forgets all registered classes, so that the table can be used
+     * for a new compilation
+     */
+    public void reset()
+    {
+		table = new SymbolMap<Class_>();
+		features = new SymbolMap<FeaturesTable>();
+		dag = new DefaultDirectedGraph<AbstractSymbol, DefaultEdge>(DefaultEdge.class);
+    }
 
    
     
@@ -321,7 +361,7 @@ class ClassTable {
 	public void validateDag() 
 	{
 		CycleDetector<AbstractSymbol, DefaultEdge> detector = new CycleDetector<AbstractSymbol, DefaultEdge>(dag); 
-		HashMap<AbstractSymbol, AbstractSymbol> error_vertices = new HashMap<AbstractSymbol, AbstractSymbol>();
+		SymbolMap<AbstractSymbol> error_vertices = new SymbolMap<AbstractSymbol>();
 		if (detector.detectCycles())
 		{
 			//semantError(c.getFilename(), c.getName(), c);
@@ -339,7 +379,7 @@ class ClassTable {
 				error_vertices.put(sym, sym);
 			}
 		}
-		for (AbstractSymbol sym : error_vertices.keySet())
+		for (AbstractSymbol sym : error_vertices.keys())
 		{
 			Class_ cls = table.get(sym);
 			SemantErrorsManager.getInstance().semantError(cls, "Class %s, or an ancestor of %s, is envolved in an inheritance cycle.", sym, error_vertices.get(sym));
@@ -361,7 +401,7 @@ class ClassTable {
 				put("_no_type", true);
 			}
 		};
-		for (AbstractSymbol sym : table.keySet())
+		for (AbstractSymbol sym : table.keys())
 		{
 			if (excluded.containsKey(sym.getString()))
 				continue;
@@ -400,6 +440,66 @@ class ClassTable {
 		return null;
 	}
 	
+	/**
+	 * retrieves the features table of a registered class, which is made
+	 * when the class is registered, so that several threads may look it up
+	 * @param cls the class
+	 * @return the features table of the class registered under its name
+	 */
+	public FeaturesTable getFeaturesTable(Class_ cls)
+	{
+		return features.get(cls.getName());
+	}
+	
+	/**
+	 * gives a registered class an empty features table, in which its
+	 * features may be registered again
+	 * @param cls the class
+	 */
+	public void renewFeaturesTable(Class_ cls)
+	{
+		features.put(cls.getName(), new FeaturesTable(cls));
+	}
+	
+	/**
+	 * orders the classes of a program so that each class comes after its
+	 * parent, and otherwise in source order: the features of a class are
+	 * registered in this order, so that they are checked against all the
+	 * features the class inherits. The classes of a program whose parents
+	 * come first are left in source order.
+	 * @param classes the classes of a program whose table is validated
+	 * @return the classes, each after its parent
+	 */
+	public List<Class_> inHierarchyOrder(Classes classes)
+	{
+		int n = classes.getLength();
+		IdentityHashMap<Class_, Integer> index = new IdentityHashMap<Class_, Integer>();
+		List<List<Integer>> subclasses = new ArrayList<List<Integer>>(n);
+		for (int i = 0; i < n; i++)
+		{
+			index.put(classes.getNth(i), i);
+			subclasses.add(new ArrayList<Integer>());
+		}
+		/*	the classes whose parent is ordered, first in source order	*/
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+		for (int i = 0; i < n; i++)
+		{
+			Integer parent = index.get(lookup(classes.getNth(i).getParent()));
+			if (parent == null)
+				ready.add(i);
+			else
+				subclasses.get(parent).add(i);
+		}
+		List<Class_> order = new ArrayList<Class_>(n);
+		while (!ready.isEmpty())
+		{
+			int i = ready.poll();
+			order.add(classes.getNth(i));
+			ready.addAll(subclasses.get(i));
+		}
+		return order;
+	}
+	
 	/**
 	 * checks if the given symbol is registered into the table
 	 * @param symb the symbol to check
@@ -444,8 +544,8 @@ class ClassTable {
      */
     public AbstractSymbol leastUpperBound(AbstractSymbol... symbols)
     {
-    	HashMap<AbstractSymbol, ArrayList<AbstractSymbol>> inheritance_lists = 
-    			new HashMap<AbstractSymbol, ArrayList<AbstractSymbol>>();
+    	SymbolMap<ArrayList<AbstractSymbol>> inheritance_lists = 
+    			new SymbolMap<ArrayList<AbstractSymbol>>();
     	
     	for (AbstractSymbol sym : symbols)
     	{
@@ -476,14 +576,14 @@ class ClassTable {
      */
     private AbstractSymbol leastUpperBound(ArrayList<AbstractSymbol> list_sym1, ArrayList<AbstractSymbol> list_sym2)
     {
-    	HashMap<AbstractSymbol, Boolean> map = new HashMap<AbstractSymbol, Boolean>();
+    	SymbolSet set = new SymbolSet();
     	for (AbstractSymbol it : list_sym2)
     	{
-    		map.put(it, true);
+    		set.add(it);
 		}
     	for (AbstractSymbol it : list_sym1)
     	{
-    		if (map.containsKey(it)) 
+    		if (set.contains(it)) 
     			return it;
     	}    	
     	return AbstractTable.idtable.addString("Object");
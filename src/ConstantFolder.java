@@ -0,0 +1,390 @@
+import java.util.Arrays;
+
+/** Folds the arithmetic and the comparisons of constants of a program
+    into constants, in a program derived from it.
+
+    <p>
+
+    The derived program shares every node the folding does not change
+    with the original one: a method or attribute whose expression folds
+    gets a new node, and so do the features, the class and the class
+    list above it, through withExpr, withInit, withFeatures, withNth and
+    withClasses.  Folding does not change the types, since an operation
+    on constants has the type of the constant it folds into; checking
+    the derived program with Semant.recheck finds them again, in a
+    table of its own.
+
+    <p>
+
+    An operator folds when its operands are constants once folded:
+    +, -, * and / on integers, ~ on an integer; &lt;, &lt;= and = on
+    integers, = on booleans, and not on a boolean.  An integer
+    operation folds only if its exact value can be written as a Cool
+    literal, which has no sign and fits in 32 bits, so that the dump of
+    the folded program can be read back: a negative result, one that
+    would wrap around, and a division by zero, which is left for the
+    program to fail on, stay as they are.  Neither does an operation on
+    a literal too large for 32 bits fold.  The expressions are walked
+    with a stack of their own, as in TreeWalker, so that a long chain of
+    additions does not overflow the thread stack.
+
+    <p>
+
+    A changed class gets the lines of the shared leaves it keeps: the
+    walk reads those of the original class in the order of the dump,
+    and drops those of the subexpressions that fold.
+
+    @see Semant#recheck
+    @see TreeWalker
+    @see AstLeaves */
+class ConstantFolder {
+    /** The lines of the shared leaves of the class being folded */
+    private final AstLeaves.Lines in = new AstLeaves.Lines();
+
+    /** The lines of the shared leaves of the folded class */
+    private int[] lines = new int[16];
+    private int count;
+
+    /** Folds the constants of a program.
+     *
+     * @param program a program that passed semantic analysis
+     * @return the derived program, or the program itself if nothing folds
+     * */
+    static Program fold(Program program) {
+	programc p = (programc) program;
+	Classes classes = p.classes;
+	ConstantFolder folder = new ConstantFolder();
+	for (int i = 0; i < classes.getLength(); i++) {
+	    class_c c = (class_c) classes.getNth(i);
+	    folder.in.enter(c);
+	    folder.count = 0;
+	    Features features = c.features;
+	    for (int j = 0; j < features.getLength(); j++) {
+		Feature f = features.getNth(j);
+		Feature folded = f;
+		if (f instanceof method) {
+		    Expression e = folder.fold(((method) f).expr);
+		    if (e != ((method) f).expr) {
+			folded = ((method) f).withExpr(e);
+		    }
+		} else {
+		    Expression e = folder.fold(((attr) f).init);
+		    if (e != ((attr) f).init) {
+			folded = ((attr) f).withInit(e);
+		    }
+		}
+		if (folded != f) {
+		    features = features.withNth(j, folded);
+		}
+	    }
+	    if (features != c.features) {
+		class_c folded = c.withFeatures(features);
+		folded.setLeafLines(folder.count == 0 ? null : Arrays.copyOf(folder.lines, folder.count));
+		classes = classes.withNth(i, folded);
+	    }
+	}
+	return classes == p.classes ? p : p.withClasses(classes);
+    }
+
+    /** An expression the walk is in */
+    private static class Frame {
+	final Expression e;
+
+	final Frame parent;
+
+	/** The subexpressions of the expression, and what they fold into */
+	final Expression[] children;
+	final Expression[] folded;
+
+	/** The number of subexpressions folded */
+	int k;
+
+	/** The number of lines of shared leaves before the expression */
+	final int first;
+
+	Frame(Expression e, Frame parent, int first) {
+	    this.e = e;
+	    this.parent = parent;
+	    this.first = first;
+	    children = children(e);
+	    folded = new Expression[children.length];
+	}
+    }
+
+    /** Folds an expression, bottom up */
+    private Expression fold(Expression root) {
+	Frame top = enter(root, null);
+	while (true) {
+	    if (top.k < top.children.length) {
+		top = enter(top.children[top.k], top);
+		continue;
+	    }
+	    Expression rebuilt = rebuild(top.e, top.children, top.folded);
+	    Expression e = foldConstants(rebuilt);
+	    if (e != rebuilt) {
+		// the constant has a line of its own
+		count = top.first;
+	    }
+	    top = top.parent;
+	    if (top == null) {
+		return e;
+	    }
+	    top.folded[top.k++] = e;
+	}
+    }
+
+    /** Starts the walk of an expression, keeping its line if it is a
+     * shared leaf */
+    private Frame enter(Expression e, Frame parent) {
+	Frame f = new Frame(e, parent, count);
+	if (e.isSharedLeaf()) {
+	    if (count == lines.length) {
+		lines = Arrays.copyOf(lines, 2 * count);
+	    }
+	    lines[count++] = in.line(e);
+	}
+	return f;
+    }
+
+    private static final Expression[] NONE = new Expression[0];
+
+    /** Returns the subexpressions of an expression, those of its lists
+     * included, in the order accept visits them */
+    private static Expression[] children(Expression e) {
+	switch (e.getKind()) {
+	case ASTConstants.ASSIGN:
+	    return new Expression[] { ((assign) e).expr };
+	case ASTConstants.STATIC_DISPATCH:
+	    return prepend(((static_dispatch) e).expr, ((static_dispatch) e).actual);
+	case ASTConstants.DISPATCH:
+	    return prepend(((dispatch) e).expr, ((dispatch) e).actual);
+	case ASTConstants.COND: {
+	    cond c = (cond) e;
+	    return new Expression[] { c.pred, c.then_exp, c.else_exp };
+	}
+	case ASTConstants.LOOP:
+	    return new Expression[] { ((loop) e).pred, ((loop) e).body };
+	case ASTConstants.TYPCASE: {
+	    typcase t = (typcase) e;
+	    Expression[] r = new Expression[1 + t.cases.getLength()];
+	    r[0] = t.expr;
+	    for (int i = 0; i < t.cases.getLength(); i++) {
+		r[1 + i] = ((branch) t.cases.getNth(i)).expr;
+	    }
+	    return r;
+	}
+	case ASTConstants.BLOCK: {
+	    Expressions body = ((block) e).body;
+	    Expression[] r = new Expression[body.getLength()];
+	    for (int i = 0; i < r.length; i++) {
+		r[i] = body.getNth(i);
+	    }
+	    return r;
+	}
+	case ASTConstants.LET:
+	    return new Expression[] { ((let) e).init, ((let) e).body };
+	case ASTConstants.PLUS:
+	    return new Expression[] { ((plus) e).e1, ((plus) e).e2 };
+	case ASTConstants.SUB:
+	    return new Expression[] { ((sub) e).e1, ((sub) e).e2 };
+	case ASTConstants.MUL:
+	    return new Expression[] { ((mul) e).e1, ((mul) e).e2 };
+	case ASTConstants.DIVIDE:
+	    return new Expression[] { ((divide) e).e1, ((divide) e).e2 };
+	case ASTConstants.LT:
+	    return new Expression[] { ((lt) e).e1, ((lt) e).e2 };
+	case ASTConstants.EQ:
+	    return new Expression[] { ((eq) e).e1, ((eq) e).e2 };
+	case ASTConstants.LEQ:
+	    return new Expression[] { ((leq) e).e1, ((leq) e).e2 };
+	case ASTConstants.NEG:
+	    return new Expression[] { ((neg) e).e1 };
+	case ASTConstants.COMP:
+	    return new Expression[] { ((comp) e).e1 };
+	case ASTConstants.ISVOID:
+	    return new Expression[] { ((isvoid) e).e1 };
+	default:
+	    return NONE;
+	}
+    }
+
+    private static Expression[] prepend(Expression first, Expressions rest) {
+	Expression[] r = new Expression[1 + rest.getLength()];
+	r[0] = first;
+	for (int i = 0; i < rest.getLength(); i++) {
+	    r[1 + i] = rest.getNth(i);
+	}
+	return r;
+    }
+
+    /** Returns an expression with the folded subexpressions, which is
+     * the expression itself if none of them changed */
+    private static Expression rebuild(Expression e, Expression[] children, Expression[] f) {
+	boolean changed = false;
+	for (int i = 0; i < f.length; i++) {
+	    changed |= f[i] != children[i];
+	}
+	if (!changed) {
+	    return e;
+	}
+	int line = e.lineNumber;
+	switch (e.getKind()) {
+	case ASTConstants.ASSIGN:
+	    return new assign(line, ((assign) e).name, f[0]);
+	case ASTConstants.STATIC_DISPATCH: {
+	    static_dispatch d = (static_dispatch) e;
+	    return new static_dispatch(line, f[0], d.type_name, d.name, withList(d.actual, children, f, 1));
+	}
+	case ASTConstants.DISPATCH: {
+	    dispatch d = (dispatch) e;
+	    return new dispatch(line, f[0], d.name, withList(d.actual, children, f, 1));
+	}
+	case ASTConstants.COND:
+	    return new cond(line, f[0], f[1], f[2]);
+	case ASTConstants.LOOP:
+	    return new loop(line, f[0], f[1]);
+	case ASTConstants.TYPCASE: {
+	    Cases cases = ((typcase) e).cases;
+	    for (int i = 0; i < cases.getLength(); i++) {
+		if (f[1 + i] != children[1 + i]) {
+		    branch b = (branch) cases.getNth(i);
+		    cases = cases.withNth(i, new branch(b.lineNumber, b.name, b.type_decl, f[1 + i]));
+		}
+	    }
+	    return new typcase(line, f[0], cases);
+	}
+	case ASTConstants.BLOCK:
+	    return new block(line, withList(((block) e).body, children, f, 0));
+	case ASTConstants.LET: {
+	    let l = (let) e;
+	    return new let(line, l.identifier, l.type_decl, f[0], f[1]);
+	}
+	case ASTConstants.PLUS:
+	    return new plus(line, f[0], f[1]);
+	case ASTConstants.SUB:
+	    return new sub(line, f[0], f[1]);
+	case ASTConstants.MUL:
+	    return new mul(line, f[0], f[1]);
+	case ASTConstants.DIVIDE:
+	    return new divide(line, f[0], f[1]);
+	case ASTConstants.LT:
+	    return new lt(line, f[0], f[1]);
+	case ASTConstants.EQ:
+	    return new eq(line, f[0], f[1]);
+	case ASTConstants.LEQ:
+	    return new leq(line, f[0], f[1]);
+	case ASTConstants.NEG:
+	    return new neg(line, f[0]);
+	case ASTConstants.COMP:
+	    return new comp(line, f[0]);
+	case ASTConstants.ISVOID:
+	    return new isvoid(line, f[0]);
+	default:
+	    throw new IllegalStateException("no subexpressions in kind " + e.getKind());
+	}
+    }
+
+    /** Returns a list with the folded elements, the elements of the list
+     * being those of children from the given index */
+    private static Expressions withList(Expressions list, Expression[] children, Expression[] f, int from) {
+	for (int i = 0; i < list.getLength(); i++) {
+	    if (f[from + i] != children[from + i]) {
+		list = list.withNth(i, f[from + i]);
+	    }
+	}
+	return list;
+    }
+
+    /** Returns the constant an operation on constants folds into, or the
+     * expression itself */
+    private static Expression foldConstants(Expression e) {
+	int line = e.lineNumber;
+	switch (e.getKind()) {
+	case ASTConstants.PLUS:
+	    if (isInt(((plus) e).e1) && isInt(((plus) e).e2)) {
+		return intConst(e, line, value(((plus) e).e1) + value(((plus) e).e2));
+	    }
+	    return e;
+	case ASTConstants.SUB:
+	    if (isInt(((sub) e).e1) && isInt(((sub) e).e2)) {
+		return intConst(e, line, value(((sub) e).e1) - value(((sub) e).e2));
+	    }
+	    return e;
+	case ASTConstants.MUL:
+	    if (isInt(((mul) e).e1) && isInt(((mul) e).e2)) {
+		return intConst(e, line, value(((mul) e).e1) * value(((mul) e).e2));
+	    }
+	    return e;
+	case ASTConstants.DIVIDE:
+	    if (isInt(((divide) e).e1) && isInt(((divide) e).e2) && value(((divide) e).e2) != 0) {
+		return intConst(e, line, value(((divide) e).e1) / value(((divide) e).e2));
+	    }
+	    return e;
+	case ASTConstants.NEG:
+	    if (isInt(((neg) e).e1)) {
+		return intConst(e, line, -value(((neg) e).e1));
+	    }
+	    return e;
+	case ASTConstants.LT:
+	    if (isInt(((lt) e).e1) && isInt(((lt) e).e2)) {
+		return new bool_const(line, value(((lt) e).e1) < value(((lt) e).e2));
+	    }
+	    return e;
+	case ASTConstants.LEQ:
+	    if (isInt(((leq) e).e1) && isInt(((leq) e).e2)) {
+		return new bool_const(line, value(((leq) e).e1) <= value(((leq) e).e2));
+	    }
+	    return e;
+	case ASTConstants.EQ: {
+	    Expression e1 = ((eq) e).e1;
+	    Expression e2 = ((eq) e).e2;
+	    if (isInt(e1) && isInt(e2)) {
+		return new bool_const(line, value(e1) == value(e2));
+	    }
+	    if (isBool(e1) && isBool(e2)) {
+		return new bool_const(line, ((bool_const) e1).val.equals(((bool_const) e2).val));
+	    }
+	    return e;
+	}
+	case ASTConstants.COMP:
+	    if (isBool(((comp) e).e1)) {
+		return new bool_const(line, !((bool_const) ((comp) e).e1).val);
+	    }
+	    return e;
+	default:
+	    return e;
+	}
+    }
+
+    /** Returns whether an expression is an integer constant whose text
+     * is the decimal form of its value, which that of a literal too large
+     * for 32 bits is not */
+    private static boolean isInt(Expression e) {
+	if (e.getKind() != ASTConstants.INT) {
+	    return false;
+	}
+	AbstractSymbol token = ((int_const) e).token;
+	return token instanceof IntSymbol
+	    && token.getString().equals(Integer.toString(((IntSymbol) token).getValue()));
+    }
+
+    private static boolean isBool(Expression e) {
+	return e.getKind() == ASTConstants.BOOL;
+    }
+
+    /** Returns the value of an integer constant, widened so that the
+     * operations on it do not overflow */
+    private static long value(Expression e) {
+	return ((IntSymbol) ((int_const) e).token).getValue();
+    }
+
+    /** Returns the constant an operation folds into, or the operation
+     * itself if its value cannot be written as a Cool literal, which
+     * has no sign and fits in 32 bits */
+    private static Expression intConst(Expression e, int line, long value) {
+	if (value < 0 || value > Integer.MAX_VALUE) {
+	    return e;
+	}
+	return new int_const(line, AbstractTable.inttable.addInt((int) value));
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import java_cup.runtime.Symbol;
+
+/** A scanner for COOL source files.
+
+    <p>
+
+    The scanner follows the lexical structure of the COOL manual: the
+    keywords are case insensitive (except for the first letter of
+    <code>true</code> and <code>false</code>), comments nest, and
+    string constants may hold the escapes <code>\b \t \n \f</code> and
+    escaped newlines.  Lexical errors are returned as ERROR tokens
+    whose value is the message of the reference COOL scanner, so that
+    the parser reports them as syntax errors.
+
+    <p>
+
+    As with ASTLexer, next() returns the kind of the next token (one of
+    TokenConstants) and leaves its value in a field of the scanner, and
+    identifiers and constants are entered in the string tables straight
+    from the input buffer.  Reading a token allocates nothing unless
+    its text is new to the tables.
+
+    @see CoolParser */
+class CoolLexer {
+    /** Longest string constant, as in the reference scanner */
+    private static final int MAX_STR_CONST = 1024;
+
+    private static final String[] KEYWORDS = {
+	"class", "else", "fi", "if", "in", "inherits", "isvoid", "let",
+	"loop", "pool", "then", "while", "case", "esac", "new", "of", "not"
+    };
+
+    private static final int[] KEYWORD_TOKENS = {
+	TokenConstants.CLASS, TokenConstants.ELSE, TokenConstants.FI,
+	TokenConstants.IF, TokenConstants.IN, TokenConstants.INHERITS,
+	TokenConstants.ISVOID, TokenConstants.LET, TokenConstants.LOOP,
+	TokenConstants.POOL, TokenConstants.THEN, TokenConstants.WHILE,
+	TokenConstants.CASE, TokenConstants.ESAC, TokenConstants.NEW,
+	TokenConstants.OF, TokenConstants.NOT
+    };
+
+    /** The whole input */
+    private final char[] buf;
+    private final int end;
+    private int pos;
+
+    /** Line of the current position */
+    private int curr_lineno = 1;
+
+    /** Line of the last token */
+    int lineno;
+
+    /** Value of the last TYPEID, OBJECTID, INT_CONST or STR_CONST token */
+    AbstractSymbol symbol;
+
+    /** Value of the last BOOL_CONST token */
+    boolean bool;
+
+    /** Message of the last ERROR token */
+    String error;
+
+    /** Characters of the string constant being scanned */
+    private char[] str = new char[64];
+
+    /** Creates a scanner over the characters of the reader, which it
+     * reads to the end.
+     *
+     * @param in the source
+     * */
+    CoolLexer(Reader in) throws IOException {
+	char[] b = new char[1 << 12];
+	int n = 0;
+	for (int r; (r = in.read(b, n, b.length - n)) > 0; ) {
+	    n += r;
+	    if (n == b.length) {
+		b = Arrays.copyOf(b, 2 * b.length);
+	    }
+	}
+	buf = b;
+	end = n;
+    }
+
+    /** Returns the kind of the next token; its line is in lineno and its
+     * value, if any, in symbol, bool or error. */
+    int next() {
+	while (true) {
+	    skipSpace();
+	    lineno = curr_lineno;
+	    if (pos >= end) {
+		return TokenConstants.EOF;
+	    }
+	    char c = buf[pos];
+	    char d = pos + 1 < end ? buf[pos + 1] : 0;
+	    if (c == '-' && d == '-') {
+		while (pos < end && buf[pos] != '\n') {
+		    pos++;
+		}
+		continue;
+	    }
+	    if (c == '(' && d == '*') {
+		pos += 2;
+		if (!skipComment()) {
+		    return error("EOF in comment");
+		}
+		continue;
+	    }
+	    if (c == '*' && d == ')') {
+		pos += 2;
+		return error("Unmatched *)");
+	    }
+	    if (isLetter(c)) {
+		return word();
+	    }
+	    if (c >= '0' && c <= '9') {
+		int start = pos;
+		while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+		    pos++;
+		}
+		symbol = AbstractTable.inttable.addString(buf, start, pos - start);
+		return TokenConstants.INT_CONST;
+	    }
+	    if (c == '"') {
+		pos++;
+		return string();
+	    }
+	    pos++;
+	    switch (c) {
+	    case '<':
+		if (d == '-') {
+		    pos++;
+		    return TokenConstants.ASSIGN;
+		}
+		if (d == '=') {
+		    pos++;
+		    return TokenConstants.LE;
+		}
+		return TokenConstants.LT;
+	    case '=':
+		if (d == '>') {
+		    pos++;
+		    return TokenConstants.DARROW;
+		}
+		return TokenConstants.EQ;
+	    case '+': return TokenConstants.PLUS;
+	    case '-': return TokenConstants.MINUS;
+	    case '*': return TokenConstants.MULT;
+	    case '/': return TokenConstants.DIV;
+	    case '~': return TokenConstants.NEG;
+	    case '.': return TokenConstants.DOT;
+	    case '@': return TokenConstants.AT;
+	    case ',': return TokenConstants.COMMA;
+	    case ';': return TokenConstants.SEMI;
+	    case ':': return TokenConstants.COLON;
+	    case '(': return TokenConstants.LPAREN;
+	    case ')': return TokenConstants.RPAREN;
+	    case '{': return TokenConstants.LBRACE;
+	    case '}': return TokenConstants.RBRACE;
+	    default:
+		return error(String.valueOf(c));
+	    }
+	}
+    }
+
+    /** Returns the line the scanner is at */
+    int line() {
+	return curr_lineno;
+    }
+
+    /** Returns the last token as a CUP symbol, for error messages */
+    Symbol token(int kind) {
+	switch (kind) {
+	case TokenConstants.TYPEID:
+	case TokenConstants.OBJECTID:
+	case TokenConstants.INT_CONST:
+	case TokenConstants.STR_CONST:
+	    return new Symbol(kind, symbol);
+	case TokenConstants.BOOL_CONST:
+	    return new Symbol(kind, Boolean.valueOf(bool));
+	case TokenConstants.ERROR:
+	    return new Symbol(kind, error);
+	default:
+	    return new Symbol(kind);
+	}
+    }
+
+    private void skipSpace() {
+	for (; pos < end; pos++) {
+	    char c = buf[pos];
+	    if (c == '\n') {
+		curr_lineno++;
+	    } else if (c != ' ' && c != '\t' && c != '\r' && c != '\f' && c != '\013') {
+		return;
+	    }
+	}
+    }
+
+    /** Skips a comment whose opening has been read; returns false at the
+     * end of the input */
+    private boolean skipComment() {
+	int depth = 1;
+	while (pos < end) {
+	    char c = buf[pos++];
+	    if (c == '\n') {
+		curr_lineno++;
+	    } else if (c == '(' && pos < end && buf[pos] == '*') {
+		pos++;
+		depth++;
+	    } else if (c == '*' && pos < end && buf[pos] == ')') {
+		pos++;
+		if (--depth == 0) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    private static boolean isLetter(char c) {
+	return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /** Scans a keyword, a boolean constant or an identifier */
+    private int word() {
+	int start = pos;
+	while (pos < end && (isLetter(buf[pos]) || buf[pos] == '_'
+			     || (buf[pos] >= '0' && buf[pos] <= '9'))) {
+	    pos++;
+	}
+	int len = pos - start;
+	for (int k = 0; k < KEYWORDS.length; k++) {
+	    if (matches(start, len, KEYWORDS[k])) {
+		return KEYWORD_TOKENS[k];
+	    }
+	}
+	if (buf[start] == 't' && matches(start, len, "true")) {
+	    bool = true;
+	    return TokenConstants.BOOL_CONST;
+	}
+	if (buf[start] == 'f' && matches(start, len, "false")) {
+	    bool = false;
+	    return TokenConstants.BOOL_CONST;
+	}
+	symbol = AbstractTable.idtable.addString(buf, start, len);
+	return buf[start] >= 'A' && buf[start] <= 'Z'
+	    ? TokenConstants.TYPEID : TokenConstants.OBJECTID;
+    }
+
+    /** Tests whether buf[start .. start+len) is the keyword, ignoring case */
+    private boolean matches(int start, int len, String keyword) {
+	if (len != keyword.length()) {
+	    return false;
+	}
+	for (int k = 0; k < len; k++) {
+	    if (Character.toLowerCase(buf[start + k]) != keyword.charAt(k)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /** Scans a string constant whose opening quote has been read */
+    private int string() {
+	int len = 0;
+	String err = null;
+	while (true) {
+	    if (pos >= end) {
+		return error("EOF in string constant");
+	    }
+	    char c = buf[pos++];
+	    if (c == '"') {
+		break;
+	    }
+	    if (c == '\n') {
+		curr_lineno++;
+		return error(err != null ? err : "Unterminated string constant");
+	    }
+	    if (c == '\\') {
+		if (pos >= end) {
+		    return error("EOF in string constant");
+		}
+		c = buf[pos++];
+		switch (c) {
+		case 'b': c = '\b'; break;
+		case 't': c = '\t'; break;
+		case 'n': c = '\n'; break;
+		case 'f': c = '\f'; break;
+		case '\n': curr_lineno++; break;
+		case 0:
+		    if (err == null) {
+			err = "String contains escaped null character.";
+		    }
+		    break;
+		default: break;
+		}
+	    } else if (c == 0 && err == null) {
+		err = "String contains null character.";
+	    }
+	    if (err == null) {
+		if (len == MAX_STR_CONST) {
+		    err = "String constant too long";
+		} else {
+		    if (len == str.length) {
+			str = Arrays.copyOf(str, 2 * len);
+		    }
+		    str[len++] = c;
+		}
+	    }
+	}
+	if (err != null) {
+	    return error(err);
+	}
+	symbol = AbstractTable.stringtable.addString(str, 0, len);
+	return TokenConstants.STR_CONST;
+    }
+
+    private int error(String msg) {
+	error = msg;
+	return TokenConstants.ERROR;
+    }
+}
@@ -0,0 +1,477 @@
+/** A recursive-descent parser for COOL source files.
+
+    <p>
+
+    The parser builds the same cool_tree nodes as AstReader builds from
+    an AST dump, so that Semant can check a program straight from its
+    source, without running a separate parser and reading back its
+    output.  Each node gets the line of its first token, as in the
+    dumps of the reference parser.
+
+    <p>
+
+    Expressions are parsed by precedence climbing over the operator
+    precedences of the COOL manual, from highest to lowest:
+
+    <pre>
+    .
+    &#64;
+    ~
+    isvoid
+    * /
+    + -
+    &lt;= &lt; =
+    not
+    &lt;-
+    </pre>
+
+    The comparisons do not associate, the other binary operators
+    associate to the left.  Assignments and let expressions extend as
+    far to the right as possible.
+
+    <p>
+
+    Syntax errors are reported as by the reference parser.  After an
+    error the parser skips to the end of the feature or class it was
+    in, and goes on; the program is not checked if there were errors.
+
+    @see CoolLexer */
+class CoolParser {
+    /** Precedence levels of the operators */
+    private static final int PREC_ASSIGN = 1;
+    private static final int PREC_NOT = 2;
+    private static final int PREC_COMPARE = 3;
+    private static final int PREC_ADD = 4;
+    private static final int PREC_MUL = 5;
+    private static final int PREC_ISVOID = 6;
+    private static final int PREC_NEG = 7;
+    private static final int PREC_DISPATCH = 8;
+
+    /** Errors reported before giving up */
+    private static final int MAX_ERRORS = 50;
+
+    private final CoolLexer lexer;
+
+    /** The source file name, for the class nodes and error messages */
+    private final AbstractSymbol filename;
+
+    /** Kind and line of the lookahead token */
+    private int tok;
+    private int tokLine;
+
+    /** Line of the last token consumed */
+    private int lastLine;
+
+    /** Makes the leaves of the tree */
+    private final AstLeaves leaves = new AstLeaves();
+
+    /** Number of syntax errors reported */
+    private int errors;
+
+    /** Line of the feature list of the last class parsed */
+    private int featuresLine;
+
+    /** Number of braces opened and not closed by the tokens consumed */
+    private int braces;
+
+    /** Signals a syntax error, which has already been reported */
+    private static class SyntaxError extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	SyntaxError() {
+	    super(null, null, false, false);
+	}
+    }
+
+    /** Creates a parser over the tokens of the lexer.
+     *
+     * @param lexer the scanner of the source
+     * @param filename the name of the source file
+     * */
+    CoolParser(CoolLexer lexer, String filename) {
+	this.lexer = lexer;
+	this.filename = AbstractTable.stringtable.addString(filename);
+	advance();
+    }
+
+    /** Returns the line of the feature list of the last class parsed.
+     * The reference parser gives the program node this line (line 14
+     * for 0_good.cl, whose last class starts on line 13). */
+    int featuresLine() {
+	return featuresLine;
+    }
+
+    /** Returns the number of syntax errors reported so far */
+    int errors() {
+	return errors;
+    }
+
+    /** Parses the classes of the source, adding them to the list.
+     *
+     * @param classes the classes of the program, or null
+     * @return the list, created if it was null
+     * */
+    Classes parseClasses(Classes classes) {
+	do {
+	    try {
+		Class_ c = parseClass();
+		if (classes == null) {
+		    classes = new Classes(c.getLineNumber());
+		}
+		classes.appendElement(c);
+	    } catch (SyntaxError ex) {
+		// skip to the next class, and drop the leaves of this one
+		leaves.takeLines();
+		while (tok != TokenConstants.EOF && tok != TokenConstants.CLASS) {
+		    advance();
+		}
+	    }
+	} while (tok != TokenConstants.EOF);
+	return classes;
+    }
+
+    private Class_ parseClass() throws SyntaxError {
+	int line = tokLine;
+	expect(TokenConstants.CLASS);
+	AbstractSymbol name = symbol(TokenConstants.TYPEID);
+	AbstractSymbol parent = TreeConstants.Object_;
+	if (accept(TokenConstants.INHERITS)) {
+	    parent = symbol(TokenConstants.TYPEID);
+	}
+	expect(TokenConstants.LBRACE);
+	Features features = new Features(tokLine);
+	featuresLine = tok == TokenConstants.RBRACE ? line : tokLine;
+	int depth = braces;
+	while (tok != TokenConstants.RBRACE && tok != TokenConstants.EOF) {
+	    try {
+		features.appendElement(parseFeature());
+		expect(TokenConstants.SEMI);
+	    } catch (SyntaxError ex) {
+		skipFeature(depth);
+	    }
+	}
+	expect(TokenConstants.RBRACE);
+	expect(TokenConstants.SEMI);
+	class_c c = new class_c(line, name, parent, features, filename);
+	c.setLeafLines(leaves.takeLines());
+	return c;
+    }
+
+    /** Skips to the end of the feature in which an error was found:
+     * the next semicolon, or the brace closing the class, outside of the
+     * braces opened in the feature.
+     *
+     * @param depth the number of open braces in the class body
+     * */
+    private void skipFeature(int depth) throws SyntaxError {
+	while (tok != TokenConstants.EOF) {
+	    if (braces <= depth) {
+		if (tok == TokenConstants.RBRACE) {
+		    return;
+		}
+		if (tok == TokenConstants.SEMI) {
+		    advance();
+		    return;
+		}
+	    }
+	    advance();
+	}
+	throw new SyntaxError();
+    }
+
+    private Feature parseFeature() throws SyntaxError {
+	int line = tokLine;
+	AbstractSymbol name = symbol(TokenConstants.OBJECTID);
+	if (accept(TokenConstants.LPAREN)) {
+	    Formals formals = new Formals(tokLine);
+	    if (tok != TokenConstants.RPAREN) {
+		do {
+		    int fline = tokLine;
+		    AbstractSymbol fname = symbol(TokenConstants.OBJECTID);
+		    expect(TokenConstants.COLON);
+		    formals.appendElement(new formalc(fline, fname, symbol(TokenConstants.TYPEID)));
+		} while (accept(TokenConstants.COMMA));
+	    }
+	    expect(TokenConstants.RPAREN);
+	    expect(TokenConstants.COLON);
+	    AbstractSymbol returnType = symbol(TokenConstants.TYPEID);
+	    expect(TokenConstants.LBRACE);
+	    Expression body = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.RBRACE);
+	    return new method(line, name, formals, returnType, body);
+	}
+	expect(TokenConstants.COLON);
+	AbstractSymbol typeDecl = symbol(TokenConstants.TYPEID);
+	Expression init = accept(TokenConstants.ASSIGN)
+	    ? parseExpression(PREC_ASSIGN) : leaves.noExpr(lastLine);
+	return new attr(line, name, typeDecl, init);
+    }
+
+    /** Parses an expression whose binary operators all have at least
+     * the given precedence */
+    private Expression parseExpression(int prec) throws SyntaxError {
+	int line = tokLine;
+	Expression e = parsePrefix();
+	while (true) {
+	    int p = precedence(tok);
+	    if (p < prec) {
+		return e;
+	    }
+	    int op = tok;
+	    advance();
+	    switch (op) {
+	    case TokenConstants.DOT: {
+		AbstractSymbol name = symbol(TokenConstants.OBJECTID);
+		e = new dispatch(line, e, name, parseActuals());
+		break;
+	    }
+	    case TokenConstants.AT: {
+		AbstractSymbol typeName = symbol(TokenConstants.TYPEID);
+		expect(TokenConstants.DOT);
+		AbstractSymbol name = symbol(TokenConstants.OBJECTID);
+		e = new static_dispatch(line, e, typeName, name, parseActuals());
+		break;
+	    }
+	    case TokenConstants.MULT:
+		e = new mul(line, e, parseExpression(p + 1));
+		break;
+	    case TokenConstants.DIV:
+		e = new divide(line, e, parseExpression(p + 1));
+		break;
+	    case TokenConstants.PLUS:
+		e = new plus(line, e, parseExpression(p + 1));
+		break;
+	    case TokenConstants.MINUS:
+		e = new sub(line, e, parseExpression(p + 1));
+		break;
+	    case TokenConstants.LT:
+		e = new lt(line, e, parseExpression(p + 1));
+		break;
+	    case TokenConstants.LE:
+		e = new leq(line, e, parseExpression(p + 1));
+		break;
+	    default:
+		e = new eq(line, e, parseExpression(p + 1));
+		break;
+	    }
+	    if (p == PREC_COMPARE && precedence(tok) == PREC_COMPARE) {
+		// comparisons do not associate
+		throw syntaxError();
+	    }
+	}
+    }
+
+    /** Returns the precedence of a binary operator, or 0 if the token is
+     * not one */
+    private static int precedence(int kind) {
+	switch (kind) {
+	case TokenConstants.DOT:
+	case TokenConstants.AT:
+	    return PREC_DISPATCH;
+	case TokenConstants.MULT:
+	case TokenConstants.DIV:
+	    return PREC_MUL;
+	case TokenConstants.PLUS:
+	case TokenConstants.MINUS:
+	    return PREC_ADD;
+	case TokenConstants.LT:
+	case TokenConstants.LE:
+	case TokenConstants.EQ:
+	    return PREC_COMPARE;
+	default:
+	    return 0;
+	}
+    }
+
+    /** Parses a prefix operator and its operand, or a primary expression */
+    private Expression parsePrefix() throws SyntaxError {
+	int line = tokLine;
+	switch (tok) {
+	case TokenConstants.NOT:
+	    advance();
+	    return new comp(line, parseExpression(PREC_NOT + 1));
+	case TokenConstants.ISVOID:
+	    advance();
+	    return new isvoid(line, parseExpression(PREC_ISVOID + 1));
+	case TokenConstants.NEG:
+	    advance();
+	    return new neg(line, parseExpression(PREC_NEG + 1));
+	default:
+	    return parsePrimary();
+	}
+    }
+
+    private Expression parsePrimary() throws SyntaxError {
+	int line = tokLine;
+	switch (tok) {
+	case TokenConstants.OBJECTID: {
+	    AbstractSymbol name = lexer.symbol;
+	    advance();
+	    if (accept(TokenConstants.ASSIGN)) {
+		return new assign(line, name, parseExpression(PREC_ASSIGN));
+	    }
+	    if (tok == TokenConstants.LPAREN) {
+		return new dispatch(line, leaves.object(line, TreeConstants.self), name, parseActuals());
+	    }
+	    return leaves.object(line, name);
+	}
+	case TokenConstants.INT_CONST: {
+	    AbstractSymbol value = lexer.symbol;
+	    advance();
+	    return leaves.intConst(line, value);
+	}
+	case TokenConstants.STR_CONST: {
+	    AbstractSymbol value = lexer.symbol;
+	    advance();
+	    return leaves.stringConst(line, value);
+	}
+	case TokenConstants.BOOL_CONST: {
+	    Boolean value = lexer.bool ? Boolean.TRUE : Boolean.FALSE;
+	    advance();
+	    return leaves.boolConst(line, value);
+	}
+	case TokenConstants.NEW:
+	    advance();
+	    return new new_(line, symbol(TokenConstants.TYPEID));
+	case TokenConstants.LPAREN: {
+	    advance();
+	    Expression e = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.RPAREN);
+	    return e;
+	}
+	case TokenConstants.LBRACE: {
+	    advance();
+	    Expressions body = new Expressions(tokLine);
+	    do {
+		body.appendElement(parseExpression(PREC_ASSIGN));
+		expect(TokenConstants.SEMI);
+	    } while (tok != TokenConstants.RBRACE);
+	    advance();
+	    return new block(line, body);
+	}
+	case TokenConstants.IF: {
+	    advance();
+	    Expression pred = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.THEN);
+	    Expression thenExp = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.ELSE);
+	    Expression elseExp = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.FI);
+	    return new cond(line, pred, thenExp, elseExp);
+	}
+	case TokenConstants.WHILE: {
+	    advance();
+	    Expression pred = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.LOOP);
+	    Expression body = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.POOL);
+	    return new loop(line, pred, body);
+	}
+	case TokenConstants.CASE: {
+	    advance();
+	    Expression expr = parseExpression(PREC_ASSIGN);
+	    expect(TokenConstants.OF);
+	    Cases cases = new Cases(tokLine);
+	    do {
+		int bline = tokLine;
+		AbstractSymbol name = symbol(TokenConstants.OBJECTID);
+		expect(TokenConstants.COLON);
+		AbstractSymbol typeDecl = symbol(TokenConstants.TYPEID);
+		expect(TokenConstants.DARROW);
+		Expression body = parseExpression(PREC_ASSIGN);
+		expect(TokenConstants.SEMI);
+		cases.appendElement(new branch(bline, name, typeDecl, body));
+	    } while (tok != TokenConstants.ESAC);
+	    advance();
+	    return new typcase(line, expr, cases);
+	}
+	case TokenConstants.LET:
+	    advance();
+	    return parseLet(line);
+	default:
+	    throw syntaxError();
+	}
+    }
+
+    /** Parses the bindings and body of a let, whose keyword has been
+     * read.  Each binding after the first is a let nested in the body
+     * of the one before. */
+    private Expression parseLet(int line) throws SyntaxError {
+	AbstractSymbol identifier = symbol(TokenConstants.OBJECTID);
+	expect(TokenConstants.COLON);
+	AbstractSymbol typeDecl = symbol(TokenConstants.TYPEID);
+	Expression init = accept(TokenConstants.ASSIGN)
+	    ? parseExpression(PREC_ASSIGN) : leaves.noExpr(lastLine);
+	Expression body;
+	if (tok == TokenConstants.COMMA) {
+	    advance();
+	    body = parseLet(tokLine);
+	} else {
+	    expect(TokenConstants.IN);
+	    body = parseExpression(PREC_ASSIGN);
+	}
+	return new let(line, identifier, typeDecl, init, body);
+    }
+
+    /** Parses the parenthesized arguments of a dispatch */
+    private Expressions parseActuals() throws SyntaxError {
+	expect(TokenConstants.LPAREN);
+	Expressions actuals = new Expressions(tokLine);
+	if (tok != TokenConstants.RPAREN) {
+	    do {
+		actuals.appendElement(parseExpression(PREC_ASSIGN));
+	    } while (accept(TokenConstants.COMMA));
+	}
+	expect(TokenConstants.RPAREN);
+	return actuals;
+    }
+
+    private AbstractSymbol symbol(int kind) throws SyntaxError {
+	if (tok != kind) {
+	    throw syntaxError();
+	}
+	AbstractSymbol sym = lexer.symbol;
+	advance();
+	return sym;
+    }
+
+    private void expect(int kind) throws SyntaxError {
+	if (tok != kind) {
+	    throw syntaxError();
+	}
+	advance();
+    }
+
+    /** Reads the lookahead token if it has the given kind */
+    private boolean accept(int kind) {
+	if (tok != kind) {
+	    return false;
+	}
+	advance();
+	return true;
+    }
+
+    private void advance() {
+	if (tok == TokenConstants.LBRACE) {
+	    braces++;
+	} else if (tok == TokenConstants.RBRACE) {
+	    braces--;
+	}
+	lastLine = tokLine;
+	tok = lexer.next();
+	tokLine = lexer.lineno;
+    }
+
+    /** Reports a syntax error at the lookahead token, as the reference
+     * parser does */
+    private SyntaxError syntaxError() {
+	System.err.print("\"" + filename + "\", line " + lexer.line()
+			 + ": parse error at or near ");
+	Utilities.printToken(lexer.token(tok));
+	if (++errors > MAX_ERRORS) {
+	    System.err.println("More than " + MAX_ERRORS + " errors");
+	    System.exit(1);
+	}
+	return new SyntaxError();
+    }
+}
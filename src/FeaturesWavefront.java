@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Registers the features of the classes of a program on several
+    threads, down the inheritance tree.
+
+    <p>
+
+    Registering a feature checks it against the features the class
+    inherits, so a class is registered once its parent is.  Each class
+    is registered by a task of a fork/join pool.  The classes whose
+    parent is a basic class start at once.  The task of a class starts
+    those of its subclasses when it is done, so the subclasses of a
+    class are registered at the same time as each other, and a wide
+    hierarchy keeps every thread busy.  As in ParallelTypeChecker, each
+    task has a SemantState and an error manager of its own, and the
+    errors are merged in the order FeaturesVisitor registers the
+    classes in, so they are those of the sequential registration.
+
+    @see FeaturesVisitor
+    @see ClassTable#inHierarchyOrder
+    @see ParallelTypeChecker */
+class FeaturesWavefront {
+    private final Classes classes;
+
+    private final int threads;
+
+    /** Creates a scheduler for the classes of a program whose class
+     * table is validated.
+     *
+     * @param classes the classes of the program
+     * @param threads the number of worker threads
+     * */
+    FeaturesWavefront(Classes classes, int threads) {
+	this.classes = classes;
+	this.threads = threads;
+    }
+
+    /** Registers the features of the classes, and reports their errors
+     * in hierarchy order.  The visitor keeps nothing from one node to the
+     * next, so the tasks share it.
+     *
+     * @param features a visitor that has installed the basic classes
+     * */
+    void register(FeaturesVisitor features) {
+	Registration[] tasks = new Registration[classes.getLength()];
+	Map<Class_, Registration> byClass = new IdentityHashMap<Class_, Registration>();
+	for (int i = 0; i < tasks.length; i++) {
+	    tasks[i] = new Registration(classes.getNth(i), features);
+	    byClass.put(tasks[i].c, tasks[i]);
+	}
+	List<Registration> roots = new ArrayList<Registration>();
+	for (Registration task : tasks) {
+	    Registration parent = byClass.get(ClassTable.getInstance().lookup(task.c.getParent()));
+	    if (parent != null) {
+		parent.subclasses.add(task);
+	    } else {
+		roots.add(task);
+	    }
+	}
+
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	try {
+	    for (Registration root : roots) {
+		pool.execute(root);
+	    }
+	    SemantErrorsManager errors = SemantErrorsManager.getInstance();
+	    for (Class_ c : ClassTable.getInstance().inHierarchyOrder(classes)) {
+		Registration task = byClass.get(c);
+		task.join();
+		errors.merge(task.errors);
+		if (task.failure != null) {
+		    throw task.failure;
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    /** Registers the features of one class, then starts the
+     * registration of its subclasses */
+    private static class Registration extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	final Class_ c;
+
+	private final FeaturesVisitor features;
+
+	/** The registrations of the classes that inherit from this one */
+	final List<Registration> subclasses = new ArrayList<Registration>();
+
+	/** The errors of the class */
+	SemantErrorsManager errors;
+
+	/** What the registration threw, if it did not complete */
+	RuntimeException failure;
+
+	Registration(Class_ c, FeaturesVisitor features) {
+	    this.c = c;
+	    this.features = features;
+	}
+
+	protected void compute() {
+	    SemantState.enterTask();
+	    errors = SemantErrorsManager.enterTask();
+	    try {
+		c.accept(features);
+	    } catch (SemantErrorsManager.Halted ex) {
+		// the errors end with the message, and merge() stops
+	    } catch (RuntimeException ex) {
+		failure = ex;
+	    } finally {
+		SemantErrorsManager.exitTask();
+		SemantState.exitTask();
+		// the subclasses run even if this failed, since the
+		// driver waits for every task
+		for (Registration s : subclasses) {
+		    s.fork();
+		}
+	    }
+	}
+    }
+}
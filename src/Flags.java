@@ -69,12 +69,58 @@ class Flags {
     /** Enable parser debugging */
     public static boolean parser_debug = false;
 
-    /** Enable semantic analysis debugging */
+    /** Enable semantic analysis debugging
+     * @see SemantStatsVisitor
+     */
     public static boolean semant_debug = false;
 
     /** Enable code gen debugging */
     public static boolean cgen_debug = false;
 
+    /** Write the AST in the binary format
+     * @see AstBinaryWriter
+     */
+    public static boolean binary_ast = false;
+
+    /** Read text ASTs with the recursive-descent reader instead of the
+     * generated parser
+     * @see AstReader
+     */
+    public static boolean descent_parser = false;
+
+    /** Read text ASTs on as many threads as there are processors
+     * @see ParallelAstReader
+     */
+    public static boolean parallel_parser = false;
+
+    /** Check text ASTs in a pipeline of stages running at the same time
+     * @see Pipeline
+     */
+    public static boolean pipeline = false;
+
+    /** Type check a flat copy of the AST instead of the tree
+     * @see FlatAst
+     */
+    public static boolean flat_ast = false;
+
+    /** Share equal leaves of the AST
+     * @see AstLeaves
+     */
+    public static boolean share_leaves = false;
+
+    /** Register the features of the classes and type check them on as
+     * many threads as there are processors
+     * @see FeaturesWavefront
+     * @see ParallelTypeChecker
+     */
+    public static boolean parallel_check = false;
+
+    /** Fold the constants of the checked program, check the folded
+     * program, and dump both
+     * @see ConstantFolder
+     */
+    public static boolean fold_constants = false;
+
     /**
      * Processes command line flags and extracts filenames to be compiled
      *
@@ -123,6 +169,30 @@ class Flags {
 		    case 'c':
 			cgen_debug = true;
 			break;
+		    case 'b':
+			binary_ast = true;
+			break;
+		    case 'r':
+			descent_parser = true;
+			break;
+		    case 'P':
+			parallel_parser = true;
+			break;
+		    case 'S':
+			pipeline = true;
+			break;
+		    case 'F':
+			flat_ast = true;
+			break;
+		    case 'H':
+			share_leaves = true;
+			break;
+		    case 'C':
+			parallel_check = true;
+			break;
+		    case 'K':
+			fold_constants = true;
+			break;
 		    default:
 			unknownopt = true;
 			break;
@@ -137,7 +207,7 @@ class Flags {
 	}
 
 	if (unknownopt) {
-	    System.err.println("usage: <program> [-OgtT -o outname] [input-files]\n");
+	    System.err.println("usage: <program> [-OgtTbrPSFHCK -o outname] [input-files]\n");
 	    System.exit(1);
 	}
 
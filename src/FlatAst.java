@@ -0,0 +1,623 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/** An AST stored as parallel arrays instead of one object per node.
+
+    <p>
+
+    Nodes are numbered in preorder from 0, the program.  For each node
+    the store keeps, in arrays indexed by the node number:
+
+    <ul>
+      <li>its kind: the ASTConstants terminal of its keyword in the text
+          format (e.g. <code>ASTConstants.PLUS</code>), or one of the
+          list kinds below;
+      <li>its line number;
+      <li>its first child and its next sibling, or NONE;
+      <li>where its symbols start in the symbol references, which hold
+          the symbols of each node one after the other, in the order of
+          the arguments of its constructor (for a <code>bool_const</code>,
+          its value instead);
+      <li>its type, and the type dump_with_types shows for it when that
+          is another one (the "rt" decoration of the tree), as symbol
+          numbers, or NONE.
+    </ul>
+
+    Symbols are numbered in the order they are first stored.  The
+    children of a node are those of its cool_tree constructor, in the
+    same order; the elements of a list are the children of the list
+    node.
+
+    <p>
+
+    A store is built from a tree by of(), and turned back into a tree by
+    toTree(), which keeps the line numbers, the types and the "rt"
+    decorations.  FlatVisitors walk it through accept().
+
+    @see FlatVisitor
+    @see FlatTypeChecker */
+class FlatAst {
+    /** Kinds of the list nodes */
+    static final int CLASSES = 40;
+    static final int FEATURES = 41;
+    static final int FORMALS = 42;
+    static final int EXPRESSIONS = 43;
+    static final int CASES = 44;
+
+    /** No node, or no symbol */
+    static final int NONE = -1;
+
+    private int size;
+    private int[] kind = new int[1 << 10];
+    private int[] line = new int[1 << 10];
+    private int[] child = new int[1 << 10];
+    private int[] next = new int[1 << 10];
+    private int[] sym = new int[1 << 10];
+    private int[] type = new int[1 << 10];
+    private int[] rtype = new int[1 << 10];
+
+    /** Symbols of the nodes, by node: sym[n] is the index of the first */
+    private int refCount;
+    private int[] refs = new int[1 << 10];
+
+    /** Symbols by number */
+    private int symbolCount;
+    private AbstractSymbol[] symbols = new AbstractSymbol[1 << 8];
+
+    /** Numbers of the symbols.  Symbols of different tables may have
+     * the same index, so they are told apart by identity. */
+    private final Map<AbstractSymbol, Integer> numbers = new IdentityHashMap<AbstractSymbol, Integer>();
+
+    /** Makes the leaves of the trees built by toTree */
+    private final AstLeaves leaves = new AstLeaves();
+
+    /** The lines of the shared leaves of the class being added */
+    private final AstLeaves.Lines lines = new AstLeaves.Lines();
+
+    /** Builds the flat form of a tree.
+     *
+     * @param program the root of the tree
+     * @return the store, whose node 0 is the program
+     * */
+    static FlatAst of(Program program) {
+	FlatAst ast = new FlatAst();
+	ast.addProgram((programc)program);
+	return ast;
+    }
+
+    /** Returns the number of nodes */
+    int size() {
+	return size;
+    }
+
+    int kind(int n) {
+	return kind[n];
+    }
+
+    int line(int n) {
+	return line[n];
+    }
+
+    /** Returns the first child of a node, or NONE */
+    int child(int n) {
+	return child[n];
+    }
+
+    /** Returns the next sibling of a node, or NONE */
+    int next(int n) {
+	return next[n];
+    }
+
+    /** Returns the k-th child of a node */
+    int child(int n, int k) {
+	int c = child[n];
+	for (; k > 0; k--) {
+	    c = next[c];
+	}
+	return c;
+    }
+
+    /** Returns the number of children of a node */
+    int length(int n) {
+	int len = 0;
+	for (int c = child[n]; c != NONE; c = next[c]) {
+	    len++;
+	}
+	return len;
+    }
+
+    /** Returns the k-th symbol of a node */
+    AbstractSymbol symbol(int n, int k) {
+	return symbols[refs[sym[n] + k]];
+    }
+
+    /** Returns the value of a boolean constant */
+    boolean bool(int n) {
+	return sym[n] != 0;
+    }
+
+    /** Returns the type of a node, or null */
+    AbstractSymbol type(int n) {
+	return type[n] == NONE ? null : symbols[type[n]];
+    }
+
+    void setType(int n, AbstractSymbol t) {
+	type[n] = number(t);
+    }
+
+    /** Returns the type dump_with_types shows for a node when it is not
+     * its type, or null */
+    AbstractSymbol rtype(int n) {
+	return rtype[n] == NONE ? null : symbols[rtype[n]];
+    }
+
+    void setRtype(int n, AbstractSymbol t) {
+	rtype[n] = number(t);
+    }
+
+    /** Walks the subtree of a node, calling enter on each node before
+     * its children, afterChild after each child and leave after the
+     * last one.  The nodes the walk is in are kept on a stack of its
+     * own, so that the depth of the tree is only bounded by the memory.
+     *
+     * @param v the visitor
+     * @param n the root of the walk
+     * */
+    void accept(FlatVisitor v, int n) {
+	int[] path = new int[64];
+	int top = 0;
+	path[0] = n;
+	// the next child to walk of the node on top of the path
+	int c = v.enter(this, n) ? child[n] : NONE;
+	for (;;) {
+	    if (c != NONE) {
+		if (++top == path.length) {
+		    path = Arrays.copyOf(path, 2 * path.length);
+		}
+		path[top] = c;
+		c = v.enter(this, c) ? child[c] : NONE;
+		continue;
+	    }
+	    int m = path[top];
+	    v.leave(this, m);
+	    if (top == 0) {
+		return;
+	    }
+	    v.afterChild(this, path[--top], m);
+	    c = next[m];
+	}
+    }
+
+    /** Returns the symbol number of a symbol, or NONE for null,
+     * numbering it if it is new */
+    private int number(AbstractSymbol s) {
+	if (s == null) {
+	    return NONE;
+	}
+	Integer k = numbers.get(s);
+	if (k != null) {
+	    return k;
+	}
+	if (symbolCount == symbols.length) {
+	    symbols = Arrays.copyOf(symbols, 2 * symbolCount);
+	}
+	symbols[symbolCount] = s;
+	numbers.put(s, symbolCount);
+	return symbolCount++;
+    }
+
+    /** Adds a node with no children, symbols or type */
+    private int node(int k, TreeNode t) {
+	if (size == kind.length) {
+	    int len = 2 * size;
+	    kind = Arrays.copyOf(kind, len);
+	    line = Arrays.copyOf(line, len);
+	    child = Arrays.copyOf(child, len);
+	    next = Arrays.copyOf(next, len);
+	    sym = Arrays.copyOf(sym, len);
+	    type = Arrays.copyOf(type, len);
+	    rtype = Arrays.copyOf(rtype, len);
+	}
+	int n = size++;
+	kind[n] = k;
+	if (k == ASTConstants.CLASS) {
+	    lines.enter((class_c)t);
+	}
+	line[n] = lines.line(t);
+	child[n] = NONE;
+	next[n] = NONE;
+	sym[n] = NONE;
+	type[n] = NONE;
+	rtype[n] = number(t.getRt());
+	return n;
+    }
+
+    /** Adds a node with the given symbols */
+    private int node(int k, TreeNode t, AbstractSymbol... syms) {
+	int n = node(k, t);
+	if (refCount + syms.length > refs.length) {
+	    refs = Arrays.copyOf(refs, 2 * refs.length);
+	}
+	sym[n] = refCount;
+	for (AbstractSymbol s : syms) {
+	    refs[refCount++] = number(s);
+	}
+	return n;
+    }
+
+    /** Makes c the next child of p after last, and returns c */
+    private int link(int p, int last, int c) {
+	if (last == NONE) {
+	    child[p] = c;
+	} else {
+	    next[last] = c;
+	}
+	return c;
+    }
+
+    private void addProgram(programc p) {
+	int n = node(ASTConstants.PROGRAM, p);
+	int list = link(n, NONE, node(CLASSES, p.classes));
+	int last = NONE;
+	for (int i = 0; i < p.classes.getLength(); i++) {
+	    last = link(list, last, addClass((class_c)p.classes.getNth(i)));
+	}
+    }
+
+    private int addClass(class_c c) {
+	int n = node(ASTConstants.CLASS, c, c.name, c.parent, c.filename);
+	int list = link(n, NONE, node(FEATURES, c.features));
+	int last = NONE;
+	for (int i = 0; i < c.features.getLength(); i++) {
+	    last = link(list, last, addFeature(c.features.getNth(i)));
+	}
+	return n;
+    }
+
+    private int addFeature(Feature f) {
+	if (f instanceof method) {
+	    method m = (method)f;
+	    int n = node(ASTConstants.METHOD, m, m.name, m.return_type);
+	    int list = link(n, NONE, node(FORMALS, m.formals));
+	    int last = NONE;
+	    for (int i = 0; i < m.formals.getLength(); i++) {
+		formalc fm = (formalc)m.formals.getNth(i);
+		last = link(list, last, node(ASTConstants.FORMAL, fm, fm.name, fm.type_decl));
+	    }
+	    link(n, list, addExpression(m.expr));
+	    return n;
+	}
+	attr a = (attr)f;
+	int n = node(ASTConstants.ATTR, a, a.name, a.type_decl);
+	link(n, NONE, addExpression(a.init));
+	return n;
+    }
+
+    /** Adds an expression and its subexpressions, in preorder.  The
+     * nodes the walk is in are kept on a stack of its own, as in
+     * accept(). */
+    private int addExpression(Expression root) {
+	TreeNode[] nodes = new TreeNode[64];
+	int[] numbers = new int[64];
+	int[] steps = new int[64];
+	int[] lasts = new int[64];
+	int top = 0;
+	nodes[0] = root;
+	numbers[0] = addNode(root);
+	lasts[0] = NONE;
+	while (top >= 0) {
+	    TreeNode t = childOf(nodes[top], steps[top]++);
+	    if (t != null) {
+		int c = addNode(t);
+		lasts[top] = link(numbers[top], lasts[top], c);
+		if (++top == nodes.length) {
+		    int len = 2 * nodes.length;
+		    nodes = Arrays.copyOf(nodes, len);
+		    numbers = Arrays.copyOf(numbers, len);
+		    steps = Arrays.copyOf(steps, len);
+		    lasts = Arrays.copyOf(lasts, len);
+		}
+		nodes[top] = t;
+		numbers[top] = c;
+		steps[top] = 0;
+		lasts[top] = NONE;
+	    } else {
+		if (nodes[top] instanceof Expression) {
+		    type[numbers[top]] = number(((Expression)nodes[top]).get_type());
+		}
+		nodes[top--] = null;
+	    }
+	}
+	return numbers[0];
+    }
+
+    /** Adds a node of an expression, without its children: an
+     * expression, a list of expressions or of branches, or a branch */
+    private int addNode(TreeNode t) {
+	if (t instanceof Expressions) {
+	    return node(EXPRESSIONS, t);
+	}
+	if (t instanceof Cases) {
+	    return node(CASES, t);
+	}
+	if (t instanceof branch) {
+	    branch b = (branch)t;
+	    return node(ASTConstants.BRANCH, b, b.name, b.type_decl);
+	}
+	Expression e = (Expression)t;
+	switch (e.getKind()) {
+	case ASTConstants.ASSIGN:
+	    return node(ASTConstants.ASSIGN, e, ((assign)e).name);
+	case ASTConstants.STATIC_DISPATCH:
+	    return node(ASTConstants.STATIC_DISPATCH, e, ((static_dispatch)e).type_name, ((static_dispatch)e).name);
+	case ASTConstants.DISPATCH:
+	    return node(ASTConstants.DISPATCH, e, ((dispatch)e).name);
+	case ASTConstants.LET:
+	    return node(ASTConstants.LET, e, ((let)e).identifier, ((let)e).type_decl);
+	case ASTConstants.INT:
+	    return node(ASTConstants.INT, e, ((int_const)e).token);
+	case ASTConstants.STR:
+	    return node(ASTConstants.STR, e, ((string_const)e).token);
+	case ASTConstants.BOOL: {
+	    int n = node(ASTConstants.BOOL, e);
+	    sym[n] = ((bool_const)e).val.booleanValue() ? 1 : 0;
+	    return n;
+	}
+	case ASTConstants.NEW:
+	    return node(ASTConstants.NEW, e, ((new_)e).type_name);
+	case ASTConstants.OBJECT:
+	    return node(ASTConstants.OBJECT, e, ((object)e).name);
+	default:
+	    return node(e.getKind(), e);
+	}
+    }
+
+    /** Returns the kth child of a node of an expression, in the order
+     * of the store, or null */
+    private static TreeNode childOf(TreeNode t, int k) {
+	if (t instanceof ListNode) {
+	    ListNode list = (ListNode)t;
+	    return k < list.getLength() ? list.getNth(k) : null;
+	}
+	if (t instanceof branch) {
+	    return k == 0 ? ((branch)t).expr : null;
+	}
+	Expression e = (Expression)t;
+	switch (e.getKind()) {
+	case ASTConstants.ASSIGN:
+	    return k == 0 ? ((assign)e).expr : null;
+	case ASTConstants.STATIC_DISPATCH:
+	    return k == 0 ? ((static_dispatch)e).expr : k == 1 ? ((static_dispatch)e).actual : null;
+	case ASTConstants.DISPATCH:
+	    return k == 0 ? ((dispatch)e).expr : k == 1 ? ((dispatch)e).actual : null;
+	case ASTConstants.COND:
+	    return k == 0 ? ((cond)e).pred : k == 1 ? ((cond)e).then_exp : k == 2 ? ((cond)e).else_exp : null;
+	case ASTConstants.LOOP:
+	    return k == 0 ? ((loop)e).pred : k == 1 ? ((loop)e).body : null;
+	case ASTConstants.TYPCASE:
+	    return k == 0 ? ((typcase)e).expr : k == 1 ? ((typcase)e).cases : null;
+	case ASTConstants.BLOCK:
+	    return k == 0 ? ((block)e).body : null;
+	case ASTConstants.LET:
+	    return k == 0 ? ((let)e).init : k == 1 ? ((let)e).body : null;
+	case ASTConstants.PLUS:
+	    return k == 0 ? ((plus)e).e1 : k == 1 ? ((plus)e).e2 : null;
+	case ASTConstants.SUB:
+	    return k == 0 ? ((sub)e).e1 : k == 1 ? ((sub)e).e2 : null;
+	case ASTConstants.MUL:
+	    return k == 0 ? ((mul)e).e1 : k == 1 ? ((mul)e).e2 : null;
+	case ASTConstants.DIVIDE:
+	    return k == 0 ? ((divide)e).e1 : k == 1 ? ((divide)e).e2 : null;
+	case ASTConstants.LT:
+	    return k == 0 ? ((lt)e).e1 : k == 1 ? ((lt)e).e2 : null;
+	case ASTConstants.EQ:
+	    return k == 0 ? ((eq)e).e1 : k == 1 ? ((eq)e).e2 : null;
+	case ASTConstants.LEQ:
+	    return k == 0 ? ((leq)e).e1 : k == 1 ? ((leq)e).e2 : null;
+	case ASTConstants.NEG:
+	    return k == 0 ? ((neg)e).e1 : null;
+	case ASTConstants.COMP:
+	    return k == 0 ? ((comp)e).e1 : null;
+	case ASTConstants.ISVOID:
+	    return k == 0 ? ((isvoid)e).e1 : null;
+	default:
+	    return null;
+	}
+    }
+
+    /** Builds the tree of the program.  The classes are not registered
+     * in the class table.
+     *
+     * @return the root of the tree
+     * */
+    Program toTree() {
+	int list = child[0];
+	Classes classes = new Classes(line[list]);
+	decorate(classes, list);
+	for (int c = child[list]; c != NONE; c = next[c]) {
+	    classes.appendElement(toClass(c));
+	}
+	return new programc(line[0], classes);
+    }
+
+    private Class_ toClass(int n) {
+	int list = child[n];
+	Features features = new Features(line[list]);
+	decorate(features, list);
+	for (int f = child[list]; f != NONE; f = next[f]) {
+	    features.appendElement(toFeature(f));
+	}
+	class_c c = new class_c(line[n], symbol(n, 0), symbol(n, 1), features, symbol(n, 2), false);
+	c.setLeafLines(leaves.takeLines());
+	decorate(c, n);
+	return c;
+    }
+
+    private Feature toFeature(int n) {
+	Feature f;
+	if (kind[n] == ASTConstants.METHOD) {
+	    int list = child[n];
+	    Formals formals = new Formals(line[list]);
+	    decorate(formals, list);
+	    for (int c = child[list]; c != NONE; c = next[c]) {
+		formalc fm = new formalc(line[c], symbol(c, 0), symbol(c, 1));
+		decorate(fm, c);
+		formals.appendElement(fm);
+	    }
+	    f = new method(line[n], symbol(n, 0), formals, symbol(n, 1), toExpression(next[list]));
+	} else {
+	    f = new attr(line[n], symbol(n, 0), symbol(n, 1), toExpression(child[n]));
+	}
+	decorate(f, n);
+	return f;
+    }
+
+    /** Builds an expression and its subexpressions */
+    private Expression toExpression(int n) {
+	TreeBuilder b = new TreeBuilder();
+	accept(b, n);
+	return (Expression)b.values[0];
+    }
+
+    /** Builds the nodes of an expression after their children, which
+     * it keeps on a stack until their parent is built.  The leaves are
+     * made in the order of the walk, as the shared leaves record their
+     * lines in that order. */
+    private class TreeBuilder implements FlatVisitor {
+	TreeNode[] values = new TreeNode[64];
+	int count;
+
+	public boolean enter(FlatAst ast, int n) {
+	    return true;
+	}
+
+	public void afterChild(FlatAst ast, int n, int c) {
+	}
+
+	public void leave(FlatAst ast, int n) {
+	    int k = length(n);
+	    count -= k;
+	    TreeNode t = build(n, values, count, k);
+	    Arrays.fill(values, count, count + k, null);
+	    if (count == values.length) {
+		values = Arrays.copyOf(values, 2 * values.length);
+	    }
+	    values[count++] = t;
+	}
+    }
+
+    /** Builds a node of an expression from its children, which are in
+     * c from index i on */
+    private TreeNode build(int n, TreeNode[] c, int i, int k) {
+	int l = line[n];
+	switch (kind[n]) {
+	case EXPRESSIONS: {
+	    Expressions list = new Expressions(l);
+	    decorate(list, n);
+	    for (int j = 0; j < k; j++) {
+		list.appendElement(c[i + j]);
+	    }
+	    return list;
+	}
+	case CASES: {
+	    Cases list = new Cases(l);
+	    decorate(list, n);
+	    for (int j = 0; j < k; j++) {
+		list.appendElement(c[i + j]);
+	    }
+	    return list;
+	}
+	case ASTConstants.BRANCH: {
+	    branch br = new branch(l, symbol(n, 0), symbol(n, 1), (Expression)c[i]);
+	    decorate(br, n);
+	    return br;
+	}
+	}
+	Expression e;
+	switch (kind[n]) {
+	case ASTConstants.ASSIGN:
+	    e = new assign(l, symbol(n, 0), (Expression)c[i]);
+	    break;
+	case ASTConstants.STATIC_DISPATCH:
+	    e = new static_dispatch(l, (Expression)c[i], symbol(n, 0), symbol(n, 1), (Expressions)c[i + 1]);
+	    break;
+	case ASTConstants.DISPATCH:
+	    e = new dispatch(l, (Expression)c[i], symbol(n, 0), (Expressions)c[i + 1]);
+	    break;
+	case ASTConstants.COND:
+	    e = new cond(l, (Expression)c[i], (Expression)c[i + 1], (Expression)c[i + 2]);
+	    break;
+	case ASTConstants.LOOP:
+	    e = new loop(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.TYPCASE:
+	    e = new typcase(l, (Expression)c[i], (Cases)c[i + 1]);
+	    break;
+	case ASTConstants.BLOCK:
+	    e = new block(l, (Expressions)c[i]);
+	    break;
+	case ASTConstants.LET:
+	    e = new let(l, symbol(n, 0), symbol(n, 1), (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.PLUS:
+	    e = new plus(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.SUB:
+	    e = new sub(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.MUL:
+	    e = new mul(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.DIVIDE:
+	    e = new divide(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.LT:
+	    e = new lt(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.EQ:
+	    e = new eq(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.LEQ:
+	    e = new leq(l, (Expression)c[i], (Expression)c[i + 1]);
+	    break;
+	case ASTConstants.NEG:
+	    e = new neg(l, (Expression)c[i]);
+	    break;
+	case ASTConstants.COMP:
+	    e = new comp(l, (Expression)c[i]);
+	    break;
+	case ASTConstants.ISVOID:
+	    e = new isvoid(l, (Expression)c[i]);
+	    break;
+	case ASTConstants.INT:
+	    e = leaves.intConst(l, symbol(n, 0));
+	    break;
+	case ASTConstants.STR:
+	    e = leaves.stringConst(l, symbol(n, 0));
+	    break;
+	case ASTConstants.BOOL:
+	    e = leaves.boolConst(l, bool(n) ? Boolean.TRUE : Boolean.FALSE);
+	    break;
+	case ASTConstants.NEW:
+	    e = new new_(l, symbol(n, 0));
+	    break;
+	case ASTConstants.OBJECT:
+	    e = leaves.object(l, symbol(n, 0));
+	    break;
+	default:
+	    e = leaves.noExpr(l);
+	    break;
+	}
+	e.set_type(type(n));
+	decorate(e, n);
+	return e;
+    }
+
+    /** Gives a tree node the rt annotation of a node */
+    private void decorate(TreeNode t, int n) {
+	if (rtype[n] != NONE) {
+	    t.setRt(symbols[rtype[n]]);
+	}
+    }
+}
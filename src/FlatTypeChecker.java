@@ -0,0 +1,589 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/** Type checks the flat form of a program.
+
+    <p>
+
+    This is the TypeCheckerVisitor working on a FlatAst: it makes the
+    same checks in the same order, reports the same errors, and leaves
+    in the type columns of the store the types and "rt" decorations the
+    tree checker leaves on the nodes.  What the tree checker passes from
+    a node to its parent through decorations and the return values of
+    accept is read from the columns of the children instead.
+
+    <p>
+
+    The class table and the features tables are built on the tree, by
+    FeaturesVisitor, and hold tree nodes.  The checker takes the classes
+    of the tree along with the store, and matches them to the class
+    nodes of the store by position.
+
+    @see TypeCheckerVisitor */
+class FlatTypeChecker implements FlatVisitor {
+    private final FlatAst ast;
+
+    /** The classes of the tree, in the order of the class nodes */
+    private final Classes classes;
+
+    private int nextClass;
+
+    /** Number of scopes opened for the current class */
+    private int numScopes;
+
+    private final SemantState semant_state = SemantState.getInstance();
+    private final SemantErrorsManager semant_errors = SemantErrorsManager.getInstance();
+    private final ClassTable class_table = ClassTable.getInstance();
+
+    /** Object nodes whose identifier has no valid type (the
+     * "validType" decoration of the tree) */
+    private final BitSet invalidType = new BitSet();
+
+    /** The case lists being checked, innermost first */
+    private final Deque<CaseList> caseLists = new ArrayDeque<CaseList>();
+
+    /** Creates a checker for a program.
+     *
+     * @param ast the flat form of the program
+     * @param classes the classes of the program, as registered
+     * */
+    FlatTypeChecker(FlatAst ast, Classes classes) {
+	this.ast = ast;
+	this.classes = classes;
+    }
+
+    /** Checks the program, setting the types of its expressions */
+    void check() {
+	ast.accept(this, 0);
+    }
+
+    public boolean enter(FlatAst ast, int n) {
+	switch (ast.kind(n)) {
+	case ASTConstants.CLASS: {
+	    Class_ cls = classes.getNth(nextClass++);
+	    semant_state.setCurrentClass(cls);
+	    numScopes = cls.getFeaturesTable().loadClassScope(cls.getName());
+	    return true;
+	}
+	case ASTConstants.METHOD:
+	    semant_state.getCurrentClass().getFeaturesTable().loadMethodScope(ast.symbol(n, 0));
+	    return true;
+	case ASTConstants.BRANCH:
+	    enterBranch(n);
+	    return true;
+	case FlatAst.CASES:
+	    caseLists.push(new CaseList());
+	    return true;
+	default:
+	    return true;
+	}
+    }
+
+    public void afterChild(FlatAst ast, int n, int c) {
+	// the tree checker enters a let after its initialization
+	if (ast.kind(n) == ASTConstants.LET && c == ast.child(n)) {
+	    enterLet(n, c);
+	}
+    }
+
+    public void leave(FlatAst ast, int n) {
+	int c = ast.child(n);
+	switch (ast.kind(n)) {
+	case ASTConstants.CLASS:
+	    for (; numScopes > 0; numScopes--) {
+		semant_state.getScopeManager().exitScope();
+	    }
+	    semant_state.setCurrentClass(null);
+	    break;
+	case ASTConstants.METHOD:
+	    leaveMethod(n, ast.next(c));
+	    break;
+	case ASTConstants.ATTR:
+	    leaveAttr(n, c);
+	    break;
+	case ASTConstants.BRANCH:
+	    leaveBranch(n, c);
+	    break;
+	case FlatAst.CASES:
+	    leaveCases(n);
+	    break;
+	case FlatAst.EXPRESSIONS:
+	    if (c != FlatAst.NONE) {
+		int last = c;
+		while (ast.next(last) != FlatAst.NONE) {
+		    last = ast.next(last);
+		}
+		ast.setRtype(n, ast.rtype(last));
+		ast.setType(n, ast.type(last));
+	    }
+	    break;
+	case ASTConstants.ASSIGN:
+	    leaveAssign(n, c);
+	    break;
+	case ASTConstants.STATIC_DISPATCH:
+	    leaveStaticDispatch(n, c);
+	    break;
+	case ASTConstants.DISPATCH:
+	    leaveDispatch(n, c);
+	    break;
+	case ASTConstants.COND:
+	    leaveCond(n, c);
+	    break;
+	case ASTConstants.LOOP: {
+	    AbstractSymbol pred_type = ast.type(c);
+	    try {
+		TypeCheckerHelper.validateType(pred_type);
+		TypeCheckerHelper.typeMatch(pred_type, TreeConstants.Bool);
+	    } catch (SemanticException e) {
+		semant_errors.semantError(ast.line(n), "Loop condition does not have type Bool.");
+	    }
+	    ast.setType(n, TreeConstants.Object_);
+	    break;
+	}
+	case ASTConstants.TYPCASE: {
+	    int cases = ast.next(c);
+	    ast.setRtype(n, ast.rtype(cases));
+	    ast.setType(n, ast.type(cases));
+	    break;
+	}
+	case ASTConstants.BLOCK: {
+	    AbstractSymbol ret_block = ast.type(c);
+	    try {
+		TypeCheckerHelper.validateType(ret_block);
+	    } catch (SemanticException e) {
+	    }
+	    ast.setType(n, ret_block);
+	    ast.setRtype(n, ast.rtype(c));
+	    break;
+	}
+	case ASTConstants.LET:
+	    semant_state.getScopeManager().exitScope();
+	    ast.setRtype(n, ast.rtype(ast.next(c)));
+	    ast.setType(n, ast.type(ast.next(c)));
+	    break;
+	case ASTConstants.PLUS:
+	    leaveArith(n, c, "+");
+	    break;
+	case ASTConstants.SUB:
+	    leaveArith(n, c, "-");
+	    break;
+	case ASTConstants.MUL:
+	    leaveArith(n, c, "*");
+	    break;
+	case ASTConstants.DIVIDE:
+	    leaveArith(n, c, "/");
+	    break;
+	case ASTConstants.NEG: {
+	    AbstractSymbol child_type = ast.type(c);
+	    try {
+		TypeCheckerHelper.validateType(child_type);
+		TypeCheckerHelper.typeMatch(child_type, TreeConstants.Int);
+	    } catch (SemanticException e) {
+		semant_errors.semantError(ast.line(n), "Argument of '~' has type %s instead of Int.", child_type);
+	    }
+	    ast.setType(n, TreeConstants.Int);
+	    break;
+	}
+	case ASTConstants.LT:
+	    leaveCompare(n, c, "<");
+	    break;
+	case ASTConstants.LEQ:
+	    leaveCompare(n, c, "<=");
+	    break;
+	case ASTConstants.EQ:
+	    leaveEq(n, c);
+	    break;
+	case ASTConstants.COMP: {
+	    AbstractSymbol child_type = ast.type(c);
+	    try {
+		TypeCheckerHelper.validateType(child_type);
+		TypeCheckerHelper.typeMatch(child_type, TreeConstants.Bool);
+	    } catch (SemanticException e) {
+		semant_errors.semantError(ast.line(n), "Argument of 'not' has type %s instead of Bool.", child_type);
+	    }
+	    ast.setType(n, TreeConstants.Bool);
+	    break;
+	}
+	case ASTConstants.INT:
+	    ast.setType(n, TreeConstants.Int);
+	    break;
+	case ASTConstants.BOOL:
+	case ASTConstants.ISVOID:
+	    ast.setType(n, TreeConstants.Bool);
+	    break;
+	case ASTConstants.STR:
+	    ast.setType(n, TreeConstants.Str);
+	    break;
+	case ASTConstants.NEW: {
+	    AbstractSymbol type = ast.symbol(n, 0);
+	    try {
+		TypeCheckerHelper.validateType(type);
+		ast.setType(n, type);
+	    } catch (SemanticException e) {
+		semant_errors.semantError(ast.line(n), "'new' used with undefined class %s", type);
+		ast.setType(n, TreeConstants.Object_);
+	    }
+	    break;
+	}
+	case ASTConstants.NO_EXPR:
+	    ast.setType(n, TreeConstants.No_type);
+	    break;
+	case ASTConstants.OBJECT:
+	    leaveObject(n);
+	    break;
+	default:
+	    break;
+	}
+    }
+
+    private void leaveMethod(int n, int expr) {
+	AbstractSymbol absym = ast.rtype(expr) != null ? ast.rtype(expr) : ast.type(expr);
+	AbstractSymbol dynamic_return_type_symbol = TypeCheckerHelper.inferSelfType(absym, semant_state.getCurrentClass().getName());
+	AbstractSymbol static_return_type_symbol = TypeCheckerHelper.inferSelfType(ast.symbol(n, 1));
+	try {
+	    TypeCheckerHelper.validateType(dynamic_return_type_symbol);
+	    TypeCheckerHelper.validateType(static_return_type_symbol);
+	    validateCast(ast.line(n), dynamic_return_type_symbol, static_return_type_symbol,
+			 "Inferred return type %s of method " + ast.symbol(n, 0)
+			 + " does not conform to declared return type %s.");
+	} catch (SemanticException e) {
+	}
+	semant_state.getScopeManager().exitScope();
+    }
+
+    private void leaveAttr(int n, int init) {
+	AbstractSymbol init_type_symbol = TypeCheckerHelper.inferSelfType(ast.type(init));
+	AbstractSymbol static_type_symbol = TypeCheckerHelper.inferSelfType(ast.symbol(n, 1));
+	try {
+	    TypeCheckerHelper.validateType(init_type_symbol);
+	    TypeCheckerHelper.validateType(static_type_symbol);
+	    if (!class_table.isSubClass(init_type_symbol, static_type_symbol)) {
+		semant_errors.semantError(ast.line(n),
+			"Inferred type %s of initialization of attribute %s does not conform to declared type %s.",
+			init_type_symbol, ast.symbol(n, 0), static_type_symbol);
+	    }
+	} catch (Exception e) {
+	}
+    }
+
+    private void enterBranch(int n) {
+	AbstractSymbol name = ast.symbol(n, 0);
+	AbstractSymbol static_type_symbol = ast.symbol(n, 1);
+	if (name.equals(TreeConstants.self)) {
+	    semant_errors.semantError(ast.line(n), "'self' bound in 'case'.");
+	}
+	if (static_type_symbol.equals(TreeConstants.SELF_TYPE)) {
+	    semant_errors.semantError(ast.line(n), "Identifier %s declared with type SELF_TYPE in case branch.", name);
+	}
+	try {
+	    TypeCheckerHelper.validateType(static_type_symbol);
+	} catch (Exception e) {
+	}
+	semant_state.getScopeManager().enterScope();
+	semant_state.getScopeManager().addId(name, static_type_symbol);
+    }
+
+    /** Checks a branch, then does what the case list does with each of
+     * its branches */
+    private void leaveBranch(int n, int expr) {
+	AbstractSymbol branch_type_symbol = TypeCheckerHelper.inferSelfType(ast.type(expr));
+	try {
+	    TypeCheckerHelper.validateType(branch_type_symbol);
+	} catch (SemanticException e) {
+	}
+	semant_state.getScopeManager().exitScope();
+	ast.setType(n, branch_type_symbol);
+	ast.setRtype(n, ast.type(expr));
+
+	CaseList list = caseLists.peek();
+	AbstractSymbol rt = ast.rtype(n);
+	AbstractSymbol toAdd = ast.symbol(n, 1);
+	if (rt != null) {
+	    if (rt.equals(TreeConstants.SELF_TYPE)) {
+		list.howManySelfType++;
+	    }
+	} else {
+	    list.containsNULL = true;
+	}
+	list.lubRT.add(rt);
+	if (list.branches.contains(toAdd)) {
+	    semant_errors.semantError(ast.line(n), "Duplicate branch %s in case statement.", toAdd);
+	    semant_errors.validate(true);
+	} else {
+	    list.branches.add(toAdd);
+	    list.lub.add(branch_type_symbol);
+	}
+    }
+
+    private void leaveCases(int n) {
+	CaseList list = caseLists.pop();
+	AbstractSymbol[] lubRTArray = list.lubRT.toArray(new AbstractSymbol[list.lubRT.size()]);
+	if (!list.containsNULL) {
+	    if (list.howManySelfType == list.lubRT.size()) {
+		ast.setRtype(n, TreeConstants.SELF_TYPE);
+	    } else if (list.howManySelfType == 0) {
+		ast.setRtype(n, class_table.leastUpperBound(lubRTArray));
+	    } else {
+		ast.setRtype(n, class_table.leastUpperBound(TypeCheckerHelper.inferSelfType(lubRTArray)));
+	    }
+	}
+	ast.setType(n, class_table.leastUpperBound(list.lub.toArray(new AbstractSymbol[list.lub.size()])));
+    }
+
+    private void enterLet(int n, int init) {
+	AbstractSymbol letId = ast.symbol(n, 0);
+	AbstractSymbol letIdType = ast.symbol(n, 1);
+	if (letId.equals(TreeConstants.self)) {
+	    semant_errors.semantError(ast.line(n), "'self' cannot be bound in a 'let' expression.");
+	}
+	try {
+	    TypeCheckerHelper.validateType(letIdType);
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "Class " + letIdType
+				      + " of let-bound identifier " + letId + " is undefined.");
+	}
+	AbstractSymbol initType = ast.type(init);
+	if (!initType.equals(TreeConstants.No_type)) {
+	    try {
+		TypeCheckerHelper.validateType(initType);
+		TypeCheckerHelper.validateCast(null, letIdType, initType);
+	    } catch (SemanticException e) {
+		semant_errors.semantError(ast.line(n), "Inferred type " + initType + " of initialization of "
+					  + letId + " does not conform to identifier's declared type " + letIdType + ".");
+	    }
+	}
+	semant_state.getScopeManager().enterScope();
+	semant_state.getScopeManager().addId(letId, letIdType);
+    }
+
+    private void leaveObject(int n) {
+	AbstractSymbol name = ast.symbol(n, 0);
+	if (name.equals(TreeConstants.self)) {
+	    ast.setType(n, TreeConstants.SELF_TYPE);
+	    return;
+	}
+	AbstractSymbol stype = semant_state.getScopeManager().lookup(name);
+	Class_ type = null;
+	if (stype == null) {
+	    semant_errors.semantError(ast.line(n), "Undeclared identifier %s.", name);
+	} else {
+	    type = class_table.lookup(TypeCheckerHelper.inferSelfType(stype));
+	}
+	ast.setRtype(n, stype);
+	if (type == null) {
+	    invalidType.set(n);
+	    type = class_table.lookup(TreeConstants.Object_);
+	}
+	ast.setType(n, type.getName());
+    }
+
+    private void leaveArith(int n, int c, String op) {
+	AbstractSymbol left_type = ast.type(c);
+	AbstractSymbol right_type = ast.type(ast.next(c));
+	try {
+	    TypeCheckerHelper.validateType(left_type);
+	    TypeCheckerHelper.typeMatch(left_type, TreeConstants.Int);
+	    TypeCheckerHelper.validateType(right_type);
+	    TypeCheckerHelper.typeMatch(right_type, TreeConstants.Int);
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "non-Int arguments: %s " + op + " %s", left_type, right_type);
+	}
+	ast.setType(n, TreeConstants.Int);
+    }
+
+    private void leaveCompare(int n, int c, String op) {
+	AbstractSymbol left_type = ast.type(c);
+	AbstractSymbol right_type = ast.type(ast.next(c));
+	try {
+	    TypeCheckerHelper.validateType(left_type);
+	    TypeCheckerHelper.validateType(right_type);
+	    TypeCheckerHelper.typeMatch(left_type, TreeConstants.Int);
+	    TypeCheckerHelper.typeMatch(right_type, TreeConstants.Int);
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "non-Int arguments: %s " + op + " %s", left_type, right_type);
+	}
+	ast.setType(n, TreeConstants.Bool);
+    }
+
+    private void leaveEq(int n, int c) {
+	AbstractSymbol inf_left_type = TypeCheckerHelper.inferSelfType(ast.type(c));
+	AbstractSymbol inf_right_type = TypeCheckerHelper.inferSelfType(ast.type(ast.next(c)));
+	try {
+	    TypeCheckerHelper.validateType(inf_left_type);
+	    TypeCheckerHelper.validateType(inf_right_type);
+	    boolean leftPtrCheck = !TypeCheckerHelper.typeMatchAny(inf_left_type, TreeConstants.Int,
+								    TreeConstants.Bool, TreeConstants.Str);
+	    boolean rightPtrCheck = !TypeCheckerHelper.typeMatchAny(inf_right_type, TreeConstants.Int,
+								     TreeConstants.Bool, TreeConstants.Str);
+	    if (!(leftPtrCheck && rightPtrCheck)) {
+		TypeCheckerHelper.typeMatch(inf_left_type, inf_right_type);
+	    }
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "Illegal comparison with a basic type");
+	}
+	ast.setType(n, TreeConstants.Bool);
+    }
+
+    private void leaveCond(int n, int pred) {
+	int thenExp = ast.next(pred);
+	int elseExp = ast.next(thenExp);
+	AbstractSymbol ret_pred = ast.type(pred);
+	AbstractSymbol ret_then_exp = ast.type(thenExp);
+	AbstractSymbol ret_else_exp = ast.type(elseExp);
+	AbstractSymbol inf_ret_then_exp = TypeCheckerHelper.inferSelfType(ret_then_exp);
+	AbstractSymbol inf_ret_else_exp = TypeCheckerHelper.inferSelfType(ret_else_exp);
+	if (ret_then_exp.equals(TreeConstants.SELF_TYPE) && ret_else_exp.equals(TreeConstants.SELF_TYPE)) {
+	    ast.setRtype(n, TreeConstants.SELF_TYPE);
+	}
+	if (!class_table.isSubClass(ret_pred, TreeConstants.Bool)) {
+	    semant_errors.semantError(ast.line(n), "Predicate of 'if' does not have type Bool.");
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	try {
+	    TypeCheckerHelper.validateType(inf_ret_then_exp);
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "Undeclared identifier %s", inf_ret_then_exp);
+	    return;
+	}
+	try {
+	    TypeCheckerHelper.validateType(inf_ret_else_exp);
+	} catch (SemanticException e) {
+	    semant_errors.semantError(ast.line(n), "Undeclared identifier %s", inf_ret_else_exp);
+	    return;
+	}
+	ast.setType(n, class_table.leastUpperBound(inf_ret_then_exp, inf_ret_else_exp));
+    }
+
+    private void leaveDispatch(int n, int expr) {
+	AbstractSymbol name = ast.symbol(n, 0);
+	AbstractSymbol clsName = TypeCheckerHelper.inferSelfType(ast.type(expr));
+	Class_ myCls = class_table.lookup(clsName);
+	if (myCls == null || invalidType.get(expr)) {
+	    semant_errors.semantError(ast.line(n), "Dispatch to undefined class %s.", ast.rtype(expr));
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	method meth = FeaturesTable.lookupMethod(myCls.getName(), name);
+	if (meth == null) {
+	    semant_errors.semantError(ast.line(n), "Dispatch to undefined method %s.", name);
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	if (!validateDispatch(n, myCls.getName(), name, ast.next(expr))) {
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	ast.setType(n, TypeCheckerHelper.inferSelfType(meth.getReturnType(), ast.type(expr)));
+    }
+
+    private void leaveStaticDispatch(int n, int expr) {
+	AbstractSymbol typeSym = ast.symbol(n, 0);
+	AbstractSymbol name = ast.symbol(n, 1);
+	AbstractSymbol mySym = TypeCheckerHelper.inferSelfType(ast.type(expr));
+	if (typeSym.equals(TreeConstants.SELF_TYPE)) {
+	    semant_errors.semantError(ast.line(n), "Static dispatch to SELF_TYPE.");
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	Class_ myCls = class_table.lookup(mySym);
+	Class_ typeCls = class_table.lookup(typeSym);
+	if (myCls == null || invalidType.get(expr)) {
+	    semant_errors.semantError(ast.line(n), "Static dispatch to undefined class %s.", ast.rtype(expr));
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	method meth = FeaturesTable.lookupMethod(typeSym, name);
+	if (meth == null) {
+	    semant_errors.semantError(ast.line(n), "Static dispatch to undefined method %s.", name);
+	}
+	AbstractSymbol returnType = TypeCheckerHelper.inferSelfType(meth.getReturnType(), myCls.getName());
+	if (!class_table.isSubClass(myCls, typeCls)) {
+	    semant_errors.semantError(ast.line(n),
+		    "Expression type %s does not conform to declared static dispatch type %s.",
+		    mySym, typeSym);
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	if (!validateDispatch(n, typeSym, name, ast.next(expr))) {
+	    ast.setType(n, TreeConstants.Object_);
+	    return;
+	}
+	ast.setType(n, returnType);
+    }
+
+    private void leaveAssign(int n, int expr) {
+	AbstractSymbol varName = ast.symbol(n, 0);
+	if (varName.equals(TreeConstants.self)) {
+	    semant_errors.semantError(ast.line(n), "Cannot assign to 'self'.");
+	}
+	AbstractSymbol exprType = ast.type(expr);
+	AbstractSymbol symType = semant_state.getScopeManager().lookup(varName);
+	Class_ cls = symType != null ? class_table.lookup(TypeCheckerHelper.inferSelfType(symType)) : null;
+	if (cls == null) {
+	    semant_errors.semantError(ast.line(n), "Type %s of identifier %s is undeclared.", symType, varName);
+	}
+	AbstractSymbol varType = cls.getName();
+	if (varType == null) {
+	    semant_errors.semantError(ast.line(n), "Assignment to undeclared variable %s.", varName);
+	}
+	if (!class_table.isSubClass(TypeCheckerHelper.inferSelfType(exprType), varType)) {
+	    semant_errors.semantError(ast.line(n), "Type " + exprType
+				      + " of assigned expression does not conform to declared type "
+				      + symType + " of identifier " + varName + ".");
+	}
+	ast.setType(n, symType);
+    }
+
+    /** Checks the actuals of a dispatch against the formals of the
+     * method of the class, as FeaturesTable.validateDispatch does */
+    private boolean validateDispatch(int n, AbstractSymbol sym, AbstractSymbol methodName, int actuals) {
+	Class_ owner = class_table.lookup(sym);
+	method meth = owner.getFeaturesTable().lookupMethod(methodName);
+	if (meth == null) {
+	    return false;
+	}
+	Formals formals = meth.getFormals();
+	Class_ currentClass = semant_state.getCurrentClass();
+	int a = ast.child(actuals);
+	int k = 0;
+	for (; k < formals.getLength() && a != FlatAst.NONE; k++, a = ast.next(a)) {
+	    Formal formalParam = formals.getNth(k);
+	    if (!class_table.isSubClass(
+		    TypeCheckerHelper.inferSelfType(ast.type(a), currentClass.getName()),
+		    TypeCheckerHelper.inferSelfType(formalParam.getTypeDecl(), owner.getName()))) {
+		semant_errors.semantError(ast.line(n),
+			"In call of method %s, type %s of parameter %s does not conform to declared type %s.",
+			methodName, ast.type(a), formalParam.getName(), formalParam.getTypeDecl());
+		return false;
+	    }
+	}
+	if (k < formals.getLength() || a != FlatAst.NONE) {
+	    semant_errors.semantError(ast.line(n), "Method %s called with wrong number of arguments.", methodName);
+	    return false;
+	}
+	return true;
+    }
+
+    /** Checks that child conforms to parent, as TypeCheckerHelper
+     * .validateCast does for a tree node */
+    private void validateCast(int line, AbstractSymbol child, AbstractSymbol parent, String msg)
+	throws SemanticException {
+	if (!(child.equals(parent) || class_table.isSubClass(child, parent))) {
+	    semant_errors.semantError(line, msg, child, parent);
+	    throw new SemanticException();
+	}
+    }
+
+    /** What a case list collects from its branches */
+    private static class CaseList {
+	final SymbolSet branches = new SymbolSet();
+	final List<AbstractSymbol> lub = new ArrayList<AbstractSymbol>();
+	final List<AbstractSymbol> lubRT = new ArrayList<AbstractSymbol>();
+	boolean containsNULL;
+	int howManySelfType;
+    }
+}
@@ -0,0 +1,34 @@
+/** A walk over the nodes of a FlatAst.
+
+    <p>
+
+    FlatAst.accept calls enter on each node before its children,
+    afterChild after each of them, and leave after the last one.  A
+    visitor that returns false from enter skips the children of the
+    node; leave is still called.
+
+    @see FlatAst */
+interface FlatVisitor {
+    /** Called before the children of a node.
+     *
+     * @param ast the store
+     * @param n the node
+     * @return true to walk the children of the node
+     * */
+    boolean enter(FlatAst ast, int n);
+
+    /** Called after each child of a node, before the next one.
+     *
+     * @param ast the store
+     * @param n the node
+     * @param c the child
+     * */
+    void afterChild(FlatAst ast, int n, int c);
+
+    /** Called after the children of a node.
+     *
+     * @param ast the store
+     * @param n the node
+     * */
+    void leave(FlatAst ast, int n);
+}
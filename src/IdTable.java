@@ -20,11 +20,24 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 */
 
 class IdTable extends AbstractTable {
+    /** Creates an empty table. */
+    public IdTable() {
+	super(null);
+    }
+
+    /** Creates an empty table layered over base.
+     *
+     * @see AbstractTable#newCompilation()
+     * */
+    public IdTable(IdTable base) {
+	super(base);
+    }
+
     /** Creates a new IdSymbol object. 
      * 
      * @see IdSymbol
      * */
-    protected AbstractSymbol getNewSymbol(String s, int len, int index) {
-	return new IdSymbol(s, len, index);
+    protected AbstractSymbol getNewSymbol(int index) {
+	return new IdSymbol(this, index);
     }
 }
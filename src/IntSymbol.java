@@ -29,12 +29,37 @@ import java.io.PrintStream;
  * @see AbstractSymbol
  * */
 class IntSymbol extends AbstractSymbol {
+    /** The value of the constant */
+    protected int value;
+
     /* Creates a new symbol.
      * 
      * @see AbstractSymbol
      * */
-    public IntSymbol(String str, int len, int index) {
-	super(str, len, index);
+    public IntSymbol(AbstractTable table, int index, int value) {
+	super(table, index);
+	this.value = value;
+    }
+
+    /** Returns the value of this integer constant. */
+    public int getValue() {
+	return value;
+    }
+
+    /** Parses the text of an integer constant.  Cool integers are 32
+     * bits, so literals that do not fit wrap around, as they would in
+     * the generated code.
+     *
+     * @param text an optional minus sign followed by decimal digits
+     * @return the value of text
+     * */
+    static int parse(String text) {
+	boolean neg = text.startsWith("-");
+	int n = 0;
+	for (int i = neg ? 1 : 0; i < text.length(); i++) {
+	    n = n * 10 + Character.digit(text.charAt(i), 10);
+	}
+	return neg ? -n : n;
     }
 
     /** Generates code for the integer constant definition.  This method
@@ -56,7 +81,7 @@ class IntSymbol extends AbstractSymbol {
 	/* Add code to reference the dispatch table for class Int here */
 
 	s.println("");		// dispatch table
-	s.println(CgenSupport.WORD + str); // integer value
+	s.println(CgenSupport.WORD + getString()); // integer value
     }
 
     /** Emits a reference to this integer constant.
@@ -68,7 +93,7 @@ class IntSymbol extends AbstractSymbol {
 
     /** Returns a copy of this symbol */
     public Object clone() {
-	return new IntSymbol(str, str.length(), index);
+	return new IntSymbol(table, index, value);
     }
 }
 
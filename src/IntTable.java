@@ -20,14 +20,120 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 */
 
 import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+/** String table for integer constants.
+ *
+ * Besides the strings, this table keeps a hashed index from integer
+ * values to symbol indices, so that addInt finds a constant that is
+ * already present without building its string.  Every symbol whose
+ * text is the canonical decimal form of its value is entered in the
+ * index when the symbol is created.
+ *
+ * @see IntSymbol
+ * */
 class IntTable extends AbstractTable {
+    /** Open addressing table of (value, index + 1) pairs; an index of
+     * zero marks an empty slot */
+    private volatile AtomicIntegerArray values = new AtomicIntegerArray(2 * 16);
+
+    /** Number of occupied slots in values */
+    private int entries;
+
+    /** Creates an empty table. */
+    public IntTable() {
+	super(null);
+    }
+
+    /** Creates an empty table layered over base.
+     *
+     * @see AbstractTable#newCompilation()
+     * */
+    public IntTable(IntTable base) {
+	super(base);
+    }
+
     /** Creates a new IntSymbol object.
      * 
      * @see IntSymbol
      * */
-    protected AbstractSymbol getNewSymbol(String s, int len, int index) {
-	return new IntSymbol(s, len, index);
+    protected AbstractSymbol getNewSymbol(int index) {
+	String text = getString(index);
+	int value = IntSymbol.parse(text);
+	if (text.equals(Integer.toString(value))) {
+	    putValue(value, index);
+	}
+	return new IntSymbol(this, index, value);
+    }
+
+    /** Adds the specified integer to this table.  If the integer is
+     * already present, its symbol is found without allocating.
+     *
+     * @param i the integer to add
+     * @return the symbol for the integer i
+     * */
+    public AbstractSymbol addInt(int i) {
+	int index = indexOfValue(i);
+	return index >= 0 ? lookup(index) : super.addInt(i);
+    }
+
+    /** Returns the index of the canonical symbol for the value in this
+     * table or its base, or -1 */
+    private int indexOfValue(int value) {
+	if (base != null) {
+	    int index = ((IntTable)base).indexOfValue(value);
+	    if (index >= 0) {
+		return index;
+	    }
+	}
+	AtomicIntegerArray t = values;
+	int mask = (t.length() >> 1) - 1;
+	for (int p = slot(value, mask); ; p = (p + 1) & mask) {
+	    int id = t.get(2 * p + 1);
+	    if (id == 0) {
+		return -1;
+	    }
+	    if (t.get(2 * p) == value) {
+		return id - 1;
+	    }
+	}
+    }
+
+    /** Enters a value in the hashed index, unless already there */
+    private synchronized void putValue(int value, int index) {
+	AtomicIntegerArray t = values;
+	if (2 * (entries + 1) > (t.length() >> 1)) {
+	    AtomicIntegerArray bigger = new AtomicIntegerArray(2 * t.length());
+	    int mask = (bigger.length() >> 1) - 1;
+	    for (int p = 0; p < t.length() >> 1; p++) {
+		if (t.get(2 * p + 1) != 0) {
+		    int q = slot(t.get(2 * p), mask);
+		    while (bigger.get(2 * q + 1) != 0) {
+			q = (q + 1) & mask;
+		    }
+		    bigger.set(2 * q, t.get(2 * p));
+		    bigger.set(2 * q + 1, t.get(2 * p + 1));
+		}
+	    }
+	    t = bigger;
+	    values = t;
+	}
+	int mask = (t.length() >> 1) - 1;
+	int q = slot(value, mask);
+	for (int id; (id = t.get(2 * q + 1)) != 0; q = (q + 1) & mask) {
+	    if (t.get(2 * q) == value) {
+		return;
+	    }
+	}
+	t.set(2 * q, value);
+	// publishes the value written above
+	t.set(2 * q + 1, index + 1);
+	entries++;
+    }
+
+    private static int slot(int value, int mask) {
+	int h = value * 0x9E3779B9;
+	return (h ^ (h >>> 16)) & mask;
     }
 
     /** Generates code for all int constants in the int table.  
@@ -35,15 +141,9 @@ class IntTable extends AbstractTable {
      * @param s the output stream
      * */
     public void codeStringTable(int intclasstag, PrintStream s) {
-	IntSymbol sym = null;
-	for (int i = tbl.size() - 1; i >= 0; i--) {
-	    try {
-		sym = (IntSymbol)tbl.elementAt(i);
-	    } catch (ArrayIndexOutOfBoundsException ex) {
-		Utilities.fatalError("Unexpected exception: " + ex);
-	    }
+	for (int i = size() - 1; i >= 0; i--) {
+	    IntSymbol sym = (IntSymbol)lookup(i);
 	    sym.codeDef(intclasstag, s);
 	}
     }
 }
-
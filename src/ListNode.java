@@ -20,8 +20,9 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 */
 
 import java.io.PrintStream;
-import java.util.Vector;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.NoSuchElementException;
 
 /** Base class for lists of AST elements.
 
@@ -44,6 +45,7 @@ import java.util.Enumeration;
     or <code>appendElement()</code>.  <code>appendElement</code> returns
     the list itself, so calls to it may be chained, as in <code>
     list.appendElement(Foo).appendElement(Bar).appendElement(Baz)</code>.
+    A list is built this way, and only until it is complete: see below.
 
     <p>
     
@@ -68,20 +70,45 @@ import java.util.Enumeration;
 </pre>
 
     Note: <code>nextElement()</code> returns the value of type
-    <code>Object</code> and <code>getNth()</code> returns the value of
-    type <code>TreeNode</code>.  You will most likely need to cast it to
-    the type appropriate for the list element. <em>This is one of the
-    very few cases where casting is actually necessary and
-    appropriate</em>.
+    <code>Object</code>, which you will need to cast to the type of the
+    list elements.  <code>getNth()</code> returns the value of the
+    element type of each list (<code>Class_</code> for
+    <code>Classes</code>, and so on), so the indexed loop needs no
+    cast, and it is the faster of the two.
+
+    <p>
+
+    The elements are kept in an array, which grows as elements are
+    appended.  Once a list is complete it is trimmed to its exact
+    length: the constructors of the nodes that own lists call
+    <code>trim()</code> on them, which every parser does after it has
+    read the last element of the list.  A trimmed list cannot be
+    appended to any more, nor can the lists that withNth makes, which
+    are complete from the start: lists are shared between trees, and a
+    list changed by one owner would change under the others.
 
 */
     
 abstract class ListNode extends TreeNode {
-    private Vector elements;
+    private static final TreeNode[] EMPTY = new TreeNode[0];
+
+    /** The elements; the slots after the first size are unused */
+    private TreeNode[] elements;
+    private int size;
+
+    /** Whether the list is complete, after which it cannot change */
+    private boolean complete;
 
-    protected ListNode(int lineNumber, Vector elements) {
+    /** Builds a complete list of the given elements
+     *
+     * @param lineNumber line in the source file from which this node came.
+     * @param elements the elements, which the list takes over
+     * */
+    protected ListNode(int lineNumber, TreeNode[] elements) {
 	super(lineNumber);
 	this.elements = elements;
+	this.size = elements.length;
+	this.complete = true;
     }
 
     /** Builds a new list node
@@ -90,7 +117,7 @@ abstract class ListNode extends TreeNode {
      * */
     protected ListNode(int lineNumber) {
 	super(lineNumber);
-	elements = new Vector();
+	elements = EMPTY;
     }
 
     /** Creates a deep copy of this list.
@@ -98,16 +125,30 @@ abstract class ListNode extends TreeNode {
      * None of the elements are shared between the lists, e.g. all
      * elements are duplicated (which is what "deep copy" means).
      *
-     * @return a copy of this elements vector
+     * @return a copy of this elements array
      * */
-    protected Vector copyElements() {
-	Vector cp = new Vector();
-	for (int i = 0; i < elements.size(); i++) {
-	    cp.addElement(((TreeNode)elements.elementAt(i)).copy());
+    protected TreeNode[] copyElements() {
+	TreeNode[] cp = new TreeNode[size];
+	for (int i = 0; i < size; i++) {
+	    cp[i] = elements[i].copy();
 	}
 	return cp;
     }
 
+    /** Returns a copy of the elements with the nth one replaced by the
+     * given node.  Used by the withNth methods of the subclasses, which
+     * share the other elements with this list.
+     *
+     * @param n the index of the element
+     * @param node the new element
+     * @return the elements of the new list
+     * */
+    protected TreeNode[] replaceNth(int n, TreeNode node) {
+	TreeNode[] cp = Arrays.copyOf(elements, size);
+	cp[n] = node;
+	return cp;
+    }
+
     /** Returns the class of list elements.
      *
      * @return the element class
@@ -120,7 +161,10 @@ abstract class ListNode extends TreeNode {
      * @return the element
      * */
     public TreeNode getNth(int n) {
-	return (TreeNode)elements.elementAt(n);
+	if (n >= size) {
+	    throw new ArrayIndexOutOfBoundsException(n + " >= " + size);
+	}
+	return elements[n];
     }
 
     /** Retreives the length of the list.
@@ -128,7 +172,7 @@ abstract class ListNode extends TreeNode {
      * @return the length of the list
      * */
     public int getLength() {
-	return elements.size();
+	return size;
     }
 
     /** Retreives the elements of the list as Enumeration.
@@ -136,18 +180,23 @@ abstract class ListNode extends TreeNode {
      * @return the elements
      * */
     public Enumeration getElements() {
-	return elements.elements();
-    }
-    
-    /** Retreives the elements of the list as Enumeration.
-    *
-    * @return the elements
-    * */
-    public Vector getElementsVector() {
-    	return elements;
+	return new Enumeration() {
+	    private int next = 0;
+
+	    public boolean hasMoreElements() {
+		return next < size;
+	    }
+
+	    public Object nextElement() {
+		if (next >= size) {
+		    throw new NoSuchElementException();
+		}
+		return elements[next++];
+	    }
+	};
     }
 
-    /** Appends an element to the list.
+    /** Appends an element to a list being built.
      * 
      * <p>Note: each generated subclass of ListNode also has an
      * appendElement() method, which calls addElement() and returns the
@@ -155,9 +204,26 @@ abstract class ListNode extends TreeNode {
      * <code>l.appendElement(i).appendElement(j).appendElement(k);</code>
      *
      * @param node a node to append
+     * @throws IllegalStateException if the list is complete
      * */
-    public void addElement(TreeNode node) {
-	elements.addElement(node);
+    void addElement(TreeNode node) {
+	if (complete) {
+	    throw new IllegalStateException("append to a complete list");
+	}
+	if (size == elements.length) {
+	    elements = Arrays.copyOf(elements, Math.max(4, 2 * size));
+	}
+	elements[size++] = node;
+    }
+
+    /** Completes the list, once no more elements are to be appended,
+     * and shrinks its storage to its length.  The list cannot be
+     * appended to after this. */
+    public void trim() {
+	if (size < elements.length) {
+	    elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+	}
+	complete = true;
     }
 
     /** Pretty-prints this list to this output stream.
@@ -175,21 +241,30 @@ abstract class ListNode extends TreeNode {
 	out.print("(end_of_list)\n");
     }
 
+    /** Dumps the elements of the list with their types.  Lists have no
+     * line of their own in the dump: the nodes that have lists dump the
+     * elements themselves, and this is only used when a list is dumped
+     * on its own.
+     * */
+    TreeNode dumpStep(PrintStream out, int n, int k) {
+	return k < getLength() ? getNth(k) : null;
+    }
+
+    /** Writes the length of the list, then its elements, as they are
+     * written in the binary format.
+     * */
+    TreeNode binaryStep(AstBinaryWriter out, int k) {
+	if (k == 0) {
+	    out.writeLength(this);
+	}
+	return k < getLength() ? getNth(k) : null;
+    }
+
     /** Returns a string representation of this list.
      *
      * @return a string representation
      * */
     public String toString() {
-	return elements.toString();
+	return Arrays.asList(elements).subList(0, size).toString();
     }
 }
-	
-
-
-    
-    
-
-    
-
-    
-    
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/** A reader over a memory-mapped file.
+ *
+ * <p>
+ *
+ * The file is mapped in windows of up to WINDOW bytes, so that large
+ * inputs are read without copying them through a stream buffer.  When
+ * the charset is ASCII-compatible, runs of ASCII bytes are widened to
+ * chars by a fast path; only the bytes above 0x7f go through the
+ * decoder of the charset.  The default charset is used, as with the
+ * InputStreamReader the lexer builds around System.in.
+ *
+ * @see ASTLexer
+ * */
+class MappedFileReader extends Reader {
+    /** Largest number of bytes mapped at a time */
+    private static final int WINDOW = 1 << 30;
+
+    /** Longest byte sequence of one character in the charsets that
+     * have an ASCII fast path */
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    /** File position of the current window */
+    private long start;
+
+    /** The current window */
+    private MappedByteBuffer in;
+
+    private final CharsetDecoder decoder;
+
+    /** Stops at the first byte above 0x7f */
+    private final CharsetDecoder asciiDecoder =
+	StandardCharsets.US_ASCII.newDecoder();
+
+    /** True if every ASCII byte stands for the same char in the charset */
+    private final boolean ascii;
+
+    /** Bytes copied from the window for the ASCII fast path */
+    private byte[] scratch = new byte[0];
+
+    /** A char decoded but not returned yet (second half of a surrogate
+     * pair read into a one-char buffer), or -1 */
+    private int pending = -1;
+
+    /** Opens and maps the named file.
+     *
+     * @param filename the file to read
+     * @exception IOException if the file cannot be opened or mapped
+     * */
+    public MappedFileReader(String filename) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(filename, "r");
+	channel = file.getChannel();
+	size = channel.size();
+	Charset cs = Charset.defaultCharset();
+	String name = cs.name();
+	ascii = name.equals("UTF-8") || name.equals("US-ASCII")
+	    || name.equals("ISO-8859-1");
+	decoder = cs.newDecoder()
+	    .onMalformedInput(CodingErrorAction.REPLACE)
+	    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+	map(0);
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+	if (len == 0) {
+	    return 0;
+	}
+	int n = 0;
+	if (pending >= 0) {
+	    cbuf[off + n++] = (char)pending;
+	    pending = -1;
+	}
+	while (n < len) {
+	    if (!in.hasRemaining() && !nextWindow()) {
+		break;
+	    }
+	    int m = ascii ? readAscii(cbuf, off + n, len - n) : 0;
+	    if (m == 0) {
+		m = decode(cbuf, off + n, len - n);
+	    }
+	    n += m;
+	    if (m == 0) {
+		break;
+	    }
+	}
+	return n == 0 ? -1 : n;
+    }
+
+    public void close() throws IOException {
+	channel.close();
+    }
+
+    /** Copies the ASCII bytes at the current position, stopping at the
+     * first byte above 0x7f.  The strict US-ASCII decoder does exactly
+     * that over a byte array, with a loop the JVM compiles to vector
+     * instructions, which a hand-written loop does not get. */
+    private int readAscii(char[] cbuf, int off, int len) {
+	int k = Math.min(len, in.remaining());
+	if (scratch.length < k) {
+	    scratch = new byte[Math.max(k, 2 * scratch.length)];
+	}
+	int p = in.position();
+	in.get(scratch, 0, k);
+	ByteBuffer bytes = ByteBuffer.wrap(scratch, 0, k);
+	asciiDecoder.reset();
+	asciiDecoder.decode(bytes, CharBuffer.wrap(cbuf, off, len), false);
+	in.position(p + bytes.position());
+	return bytes.position();
+    }
+
+    /** Decodes the bytes at the current position, up to the next ASCII
+     * byte if there is an ASCII fast path */
+    private int decode(char[] cbuf, int off, int len) throws IOException {
+	if (in.remaining() < MAX_CHAR_BYTES && start + in.limit() < size) {
+	    // a character may be split by the end of the window
+	    map(start + in.position());
+	}
+	ByteBuffer run = in.duplicate();
+	if (ascii) {
+	    int q = run.position();
+	    while (q < run.limit() && run.get(q) < 0) {
+		q++;
+	    }
+	    run.limit(q);
+	}
+	char[] two = null;
+	CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+	if (len == 1) {
+	    // leave room for a surrogate pair
+	    two = new char[2];
+	    out = CharBuffer.wrap(two);
+	}
+	decoder.reset();
+	// the run is complete if it stops at an ASCII byte or at the end
+	// of the file; otherwise the rest is decoded after remapping
+	decoder.decode(run, out,
+		       run.limit() < in.limit() || start + in.limit() >= size);
+	decoder.flush(out);
+	in.position(run.position());
+	int n = out.position() - (two == null ? off : 0);
+	if (two != null && n > 0) {
+	    cbuf[off] = two[0];
+	    if (n == 2) {
+		pending = two[1];
+	    }
+	    n = 1;
+	}
+	return n;
+    }
+
+    /** Maps the window after the current one, if any */
+    private boolean nextWindow() throws IOException {
+	if (start + in.limit() >= size) {
+	    return false;
+	}
+	map(start + in.limit());
+	return true;
+    }
+
+    /** Maps the window starting at the given file position */
+    private void map(long pos) throws IOException {
+	start = pos;
+	in = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+			 Math.min(WINDOW, size - pos));
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Reads a text AST on several threads.
+
+    <p>
+
+    A program is a flat list of classes, and nothing in a class depends
+    on the classes around it.  The input is scanned once for the lines
+    holding the <code>_class</code> keyword, and cut into parts made of
+    whole classes.  Each part is read by an AstReader of its own on a
+    worker thread; the string tables accept symbols from several
+    threads.  The classes are then put together in source order and
+    registered in the class table in that order, so that the tree and
+    the errors about duplicate classes are those of the sequential
+    reader.
+
+    <p>
+
+    Inputs that the scan does not cut into classes are read by a single
+    AstReader, which also reports their syntax errors.
+
+    @see AstReader */
+class ParallelAstReader {
+    /** Smallest number of bytes worth a part of its own */
+    private static final int MIN_PART = 1 << 18;
+
+    /** Number of parts per thread, so that threads given parts with
+     * bigger classes do not hold the others back */
+    private static final int PARTS_PER_THREAD = 4;
+
+    private final ByteBuffer in;
+
+    private final int threads;
+
+    /** Creates a reader over the bytes of a text AST.
+     *
+     * @param in the input
+     * @param threads the number of worker threads
+     * */
+    ParallelAstReader(ByteBuffer in, int threads) {
+	this.in = in;
+	this.threads = threads;
+    }
+
+    /** Reads the program.
+     *
+     * @return the root of the AST
+     * */
+    public Program readProgram() throws Exception {
+	// start offset, line number, and line in the input of each class
+	int[] starts = new int[16];
+	int[] lines = new int[16];
+	int[] inputLines = new int[16];
+	int n = 0;
+	int lineStart = -1;	// start of the last line number line
+	int lineNo = 0;
+	int inputLine = 0;
+	int lineStartLine = 0;
+	int end = in.limit();
+	for (int p = 0; p < end; ) {
+	    for (byte b; p < end && isSpace(b = in.get(p)); p++) {
+		if (b == '\n') {
+		    inputLine++;
+		}
+	    }
+	    if (p < end && in.get(p) == '#') {
+		lineStart = p;
+		lineStartLine = inputLine;
+		lineNo = 0;
+		for (p++; p < end && in.get(p) >= '0' && in.get(p) <= '9'; p++) {
+		    lineNo = 10 * lineNo + in.get(p) - '0';
+		}
+	    } else if (isClassKeyword(p) && lineStart >= 0) {
+		if (n == starts.length) {
+		    starts = Arrays.copyOf(starts, 2 * n);
+		    lines = Arrays.copyOf(lines, 2 * n);
+		    inputLines = Arrays.copyOf(inputLines, 2 * n);
+		}
+		starts[n] = lineStart;
+		lines[n] = lineNo;
+		inputLines[n] = lineStartLine;
+		n++;
+	    }
+	    while (p < end && in.get(p) != '\n') {
+		p++;
+	    }
+	}
+	if (n == 0) {
+	    return new AstReader(lexer(0, end, 0)).readProgram();
+	}
+
+	int programLine = new AstReader(lexer(0, starts[0], 0)).readProgramHeader();
+
+	// cut the classes into parts of about the same size
+	int partSize = Math.max(MIN_PART, (end - starts[0]) / (threads * PARTS_PER_THREAD));
+	List<Integer> firsts = new ArrayList<Integer>();
+	for (int i = 0; i < n; i++) {
+	    if (firsts.isEmpty()
+		|| starts[i] - starts[firsts.get(firsts.size() - 1)] >= partSize) {
+		firsts.add(i);
+	    }
+	}
+
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<List<Class_>>> parts = new ArrayList<Future<List<Class_>>>();
+	    for (int k = 0; k < firsts.size(); k++) {
+		int first = firsts.get(k);
+		int from = starts[first];
+		int to = k + 1 < firsts.size() ? starts[firsts.get(k + 1)] : end;
+		parts.add(pool.submit(new Part(from, to, inputLines[first],
+					       first > 0 ? lines[first - 1] : 0)));
+	    }
+	    Classes classes = null;
+	    for (Future<List<Class_>> part : parts) {
+		for (Class_ c : get(part)) {
+		    if (classes == null) {
+			classes = new Classes(c.getLineNumber());
+		    }
+		    classes.appendElement(c);
+		}
+	    }
+	    for (int i = 0; i < classes.getLength(); i++) {
+		ClassTable.getInstance().registerClass(classes.getNth(i));
+	    }
+	    return new programc(programLine, classes);
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    /** Reads the classes of one part of the input */
+    private class Part implements Callable<List<Class_>> {
+	private final int from;
+	private final int to;
+	private final int inputLine;
+	private final int prevLine;
+
+	Part(int from, int to, int inputLine, int prevLine) {
+	    this.from = from;
+	    this.to = to;
+	    this.inputLine = inputLine;
+	    this.prevLine = prevLine;
+	}
+
+	public List<Class_> call() throws Exception {
+	    List<Class_> classes = new ArrayList<Class_>();
+	    new AstReader(lexer(from, to, inputLine), true).readClasses(prevLine, classes);
+	    return classes;
+	}
+    }
+
+    /** Returns the result of a part, rethrowing what the part threw,
+     * after reporting it if it is a syntax error.  Parts are waited for
+     * in source order, so the syntax error reported is the first one of
+     * the input, as with the sequential reader. */
+    static <T> T get(Future<T> part) throws Exception {
+	try {
+	    return part.get();
+	} catch (ExecutionException ex) {
+	    Throwable cause = ex.getCause();
+	    if (cause instanceof AstReader.SyntaxError) {
+		((AstReader.SyntaxError)cause).report();
+	    }
+	    if (cause instanceof Exception) {
+		throw (Exception)cause;
+	    }
+	    throw (Error)cause;
+	}
+    }
+
+    /** Returns a lexer over in[from .. to), which starts at the given
+     * line of the input */
+    private ASTLexer lexer(int from, int to, int inputLine) {
+	ByteBuffer part = in.duplicate();
+	part.limit(to);
+	part.position(from);
+	ASTLexer lexer = new ASTLexer(new BufferStream(part.slice()));
+	lexer.setLine(inputLine);
+	return lexer;
+    }
+
+    /** Tests whether the line at p holds the class keyword */
+    private boolean isClassKeyword(int p) {
+	byte[] kw = { '_', 'c', 'l', 'a', 's', 's' };
+	if (p + kw.length > in.limit()) {
+	    return false;
+	}
+	for (int k = 0; k < kw.length; k++) {
+	    if (in.get(p + k) != kw[k]) {
+		return false;
+	    }
+	}
+	return p + kw.length == in.limit() || isSpace(in.get(p + kw.length));
+    }
+
+    private static boolean isSpace(byte b) {
+	return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /** An input stream over the remaining bytes of a buffer */
+    private static class BufferStream extends InputStream {
+	private final ByteBuffer buf;
+
+	BufferStream(ByteBuffer buf) {
+	    this.buf = buf;
+	}
+
+	public int read() {
+	    return buf.hasRemaining() ? buf.get() & 0xff : -1;
+	}
+
+	public int read(byte[] b, int off, int len) {
+	    if (len == 0) {
+		return 0;
+	    }
+	    if (!buf.hasRemaining()) {
+		return -1;
+	    }
+	    len = Math.min(len, buf.remaining());
+	    buf.get(b, off, len);
+	    return len;
+	}
+    }
+}
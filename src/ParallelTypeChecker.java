@@ -0,0 +1,102 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Type checks the classes of a program on several threads.
+
+    <p>
+
+    Once the features of every class are registered, checking a class
+    only reads the class table and the feature tables, and sets the
+    types of the nodes of that class, so the classes can be checked
+    independently of each other.  Each class is checked by a task of a
+    fork/join pool, with a TypeCheckerVisitor of its own.  What the
+    checker keeps from one node to the next, the current class and the
+    scopes, is in the SemantState, and each task has a state of its
+    own; it also has an error manager of its own, which keeps the errors
+    of the class until they are merged.  The errors are merged class by
+    class in source order, so they are those of the sequential checker,
+    including when a check stops the compilation.
+
+    <p>
+
+    The types are set in the AstTypes table of the check, which makes
+    room for every node before the tasks start, so that it does not
+    grow while they set them.
+
+    @see TypeCheckerVisitor
+    @see SemantState#enterTask
+    @see SemantErrorsManager#enterTask */
+class ParallelTypeChecker {
+    private final Classes classes;
+
+    private final int threads;
+
+    /** Creates a checker for the classes of a program whose features
+     * are registered.
+     *
+     * @param classes the classes of the program
+     * @param threads the number of worker threads
+     * */
+    ParallelTypeChecker(Classes classes, int threads) {
+	this.classes = classes;
+	this.threads = threads;
+    }
+
+    /** Checks the classes, and reports their errors in source order. */
+    void check() {
+	AstTypes.getInstance().reserve();
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	try {
+	    ClassCheck[] tasks = new ClassCheck[classes.getLength()];
+	    for (int i = 0; i < tasks.length; i++) {
+		tasks[i] = new ClassCheck(classes.getNth(i));
+		pool.execute(tasks[i]);
+	    }
+	    SemantErrorsManager errors = SemantErrorsManager.getInstance();
+	    for (ClassCheck task : tasks) {
+		task.join();
+		errors.merge(task.errors);
+		if (task.failure != null) {
+		    throw task.failure;
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    /** Checks one class with a state and an error manager of its own */
+    private static class ClassCheck extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private final Class_ c;
+
+	/** The errors of the class */
+	SemantErrorsManager errors;
+
+	/** What the check threw, if it did not complete */
+	RuntimeException failure;
+
+	ClassCheck(Class_ c) {
+	    this.c = c;
+	}
+
+	protected void compute() {
+	    SemantState.enterTask();
+	    errors = SemantErrorsManager.enterTask();
+	    try {
+		TypeCheckerVisitor checker = new TypeCheckerVisitor();
+		checker.onVisitStart();
+		c.accept(checker);
+		checker.onVisitEnd();
+	    } catch (SemantErrorsManager.Halted ex) {
+		// the errors end with the message, and merge() stops
+	    } catch (RuntimeException ex) {
+		failure = ex;
+	    } finally {
+		SemantErrorsManager.exitTask();
+		SemantState.exitTask();
+	    }
+	}
+    }
+}
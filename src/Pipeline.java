@@ -0,0 +1,308 @@
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Checks a text AST in stages running at the same time.
+
+    <p>
+
+    A reader thread parses the classes one at a time and hands them to
+    the main thread, which registers them in the class table as they
+    come.  The features of a class are registered as soon as those of
+    its parent are, while the next classes are read.  Once the program
+    is complete the classes are type checked in source order; each
+    checked class is handed to a writer thread, which prints it while
+    the next ones are checked.  The stages are connected by bounded
+    queues, so a stage that gets ahead of the next one waits for it
+    instead of piling up classes.
+
+    <p>
+
+    Some steps of the analysis need the whole program, and there the
+    stages wait for each other.  The inheritance graph is validated
+    once every class is registered, and a failure stops the compilation
+    before any error of the features is reported: the errors of each
+    class registered early are kept until then, and reported in the
+    order FeaturesVisitor registers the classes in.  A class registered
+    before every class was known may have found the type of a feature
+    undefined, so a class that had errors is registered again.  The type
+    checker looks up the features of any class, so it waits for the
+    last one.  Classes go through every stage in source order, so the
+    errors are those of the sequential driver.
+
+    <p>
+
+    The writer prints each class as soon as it gets it, so that it
+    never keeps more than a buffer of the output.  The sequential driver
+    prints nothing for a program with semantic errors, and nothing is
+    printed either when the errors are found before the type checker
+    runs; but the classes checked before the first one that has errors
+    are printed already.  The checker then stops handing classes to the
+    writer, and the compilation stops once the writer is done, so the
+    output of such a program ends before that class.
+
+    @see Semant */
+class Pipeline {
+    /** Number of classes a stage may get ahead of the next one */
+    private static final int QUEUE_SIZE = 64;
+
+    /** Size of the buffer of the writer */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The names the basic classes are installed under */
+    private static final SymbolSet BASIC_CLASSES = new SymbolSet(TreeConstants.Object_, TreeConstants.IO,
+								 TreeConstants.Int, TreeConstants.Bool,
+								 TreeConstants.Str, TreeConstants.No_type);
+
+    private final ASTLexer lexer;
+
+    /** Marks the end of the classes in a queue */
+    private final Class_ end;
+
+    /** Classes read, on their way to the class table */
+    private final BlockingQueue<Class_> parsed = new ArrayBlockingQueue<Class_>(QUEUE_SIZE);
+
+    /** Classes type checked, on their way to the writer */
+    private final BlockingQueue<Class_> checked = new ArrayBlockingQueue<Class_>(QUEUE_SIZE);
+
+    private final FeaturesVisitor features = new FeaturesVisitor();
+
+    /** Whether the features of the classes are registered as they come;
+     * false once a class takes the name of a basic class */
+    private boolean early = true;
+
+    /** The errors of each class whose features are registered */
+    private final Map<Class_, SemantErrorsManager> registered = new IdentityHashMap<Class_, SemantErrorsManager>();
+
+    /** The classes waiting for the features of their parent, by the
+     * name of the parent */
+    private SymbolMap<List<Class_>> waiting = new SymbolMap<List<Class_>>();
+
+    /** Creates a pipeline over the tokens of a text AST.
+     *
+     * @param lexer the input
+     * */
+    Pipeline(ASTLexer lexer) {
+	this.lexer = lexer;
+	end = new class_c(0, TreeConstants.No_class, TreeConstants.No_class,
+			  new Features(0), TreeConstants.No_class, false);
+    }
+
+    /** Checks the program and writes it, or exits after reporting its
+     * errors.
+     *
+     * @param out the stream the program is written to
+     * */
+    void run(PrintStream out) throws Exception {
+	ExecutorService pool = Executors.newFixedThreadPool(2);
+	try {
+	    Future<Integer> reading = pool.submit(new Reader());
+	    ClassTable.getInstance().installBasicClasses();
+	    features.registerBasicFeatures();
+	    Classes classes = null;
+	    for (Class_ c; (c = parsed.take()) != end; ) {
+		if (classes == null) {
+		    classes = new Classes(c.getLineNumber());
+		}
+		classes.appendElement(c);
+		register(classes, c);
+	    }
+	    programc program = new programc(ParallelAstReader.get(reading), classes);
+	    registerFeatures(program);
+	    // the writer reads types as the checker sets them
+	    AstTypes.getInstance().reserve();
+
+	    Future<Void> writing = null;
+	    if (!Flags.binary_ast) {
+		writing = pool.submit(new Writer(program, out));
+	    }
+	    SemantErrorsManager errors = SemantErrorsManager.getInstance();
+	    TypeCheckerVisitor checker = new TypeCheckerVisitor();
+	    checker.onVisitStart();
+	    checker.onVisitPreOrder(program);
+	    for (int i = 0; i < classes.getLength(); i++) {
+		Class_ c = classes.getNth(i);
+		c.accept(checker);
+		if (writing != null && !errors.errors()) {
+		    checked.put(c);
+		}
+	    }
+	    if (writing != null) {
+		checked.put(end);
+		ParallelAstReader.get(writing);
+	    }
+	    checker.onVisitPostOrder(program);
+	    checker.onVisitEnd();
+	    errors.validate(true);
+
+	    if (writing == null) {
+		new AstBinaryWriter().write(program, out);
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    /** Registers a class in the class table, then its features if those
+     * of its parent are registered, and then those of the classes that
+     * were waiting for it.
+     *
+     * @param classes the classes read so far, the class included
+     * @param c the class
+     * */
+    private void register(Classes classes, Class_ c) {
+	ClassTable table = ClassTable.getInstance();
+	if (early && BASIC_CLASSES.contains(c.getName())) {
+	    stopEarly(classes);
+	}
+	table.registerClass(c);
+	if (!early || table.lookup(c.getName()) != c) {
+	    return;
+	}
+	AbstractSymbol parent = c.getParent();
+	if (!parent.equals(TreeConstants.Object_) && !parent.equals(TreeConstants.IO)
+	    && !registered.containsKey(table.lookup(parent))) {
+	    List<Class_> subclasses = waiting.get(parent);
+	    if (subclasses == null) {
+		subclasses = new ArrayList<Class_>();
+		waiting.put(parent, subclasses);
+	    }
+	    subclasses.add(c);
+	    return;
+	}
+	List<Class_> ready = new ArrayList<Class_>();
+	ready.add(c);
+	while (!ready.isEmpty()) {
+	    Class_ r = ready.remove(ready.size() - 1);
+	    registered.put(r, registerFeatures(r));
+	    List<Class_> subclasses = waiting.get(r.getName());
+	    if (subclasses != null) {
+		waiting.put(r.getName(), null);
+		ready.addAll(subclasses);
+	    }
+	}
+    }
+
+    /** Goes back to registering the features once the program is read,
+     * when a class takes the name of a basic class: the sequential
+     * driver installs the basic classes after the classes of the program,
+     * and reports the clash on the basic class.  Forgets the basic
+     * classes and the features registered, and keeps the classes of the
+     * program in the class table.
+     *
+     * @param classes the classes read so far
+     * */
+    private void stopEarly(Classes classes) {
+	early = false;
+	registered.clear();
+	waiting = new SymbolMap<List<Class_>>();
+	ClassTable table = ClassTable.getInstance();
+	List<Class_> kept = new ArrayList<Class_>();
+	for (int i = 0; i < classes.getLength(); i++) {
+	    Class_ c = classes.getNth(i);
+	    if (table.lookup(c.getName()) == c) {
+		kept.add(c);
+	    }
+	}
+	table.reset();
+	for (Class_ c : kept) {
+	    table.registerClass(c);
+	}
+    }
+
+    /** Registers the features of the classes that are not registered
+     * yet, once the inheritance graph is validated, and reports the
+     * errors of all the classes in hierarchy order, as FeaturesVisitor
+     * does; exits if there are inheritance errors */
+    private void registerFeatures(programc program) {
+	if (!early) {
+	    features.onVisitStart();
+	    program.acceptInHierarchyOrder(features);
+	    features.onVisitEnd();
+	    return;
+	}
+	FeaturesVisitor.validateClasses();
+	SemantErrorsManager errors = SemantErrorsManager.getInstance();
+	for (Class_ c : ClassTable.getInstance().inHierarchyOrder(program.classes)) {
+	    SemantErrorsManager task = registered.get(c);
+	    if (task == null || task.errors()) {
+		if (task != null) {
+		    ClassTable.getInstance().renewFeaturesTable(c);
+		}
+		task = registerFeatures(c);
+	    }
+	    errors.merge(task);
+	}
+	features.onVisitEnd();
+    }
+
+    /** Registers the features of a class, keeping its errors to be
+     * reported later.
+     *
+     * @param c the class
+     * @return the errors of the class
+     * */
+    private SemantErrorsManager registerFeatures(Class_ c) {
+	SemantErrorsManager errors = SemantErrorsManager.enterTask();
+	try {
+	    c.accept(features);
+	} catch (SemantErrorsManager.Halted ex) {
+	    // the errors end with the message, and merge() stops
+	} finally {
+	    SemantErrorsManager.exitTask();
+	}
+	return errors;
+    }
+
+    /** Reads the classes into the parsed queue, and returns the line
+     * number of the program */
+    private class Reader implements Callable<Integer> {
+	public Integer call() throws Exception {
+	    try {
+		AstReader reader = new AstReader(lexer, true);
+		int line = reader.readProgramHeader();
+		do {
+		    parsed.put(reader.readClass());
+		} while (reader.atClass());
+		return line;
+	    } finally {
+		parsed.put(end);
+	    }
+	}
+    }
+
+    /** Prints the classes of the checked queue as they come */
+    private class Writer implements Callable<Void> {
+	private final programc program;
+
+	private final PrintStream out;
+
+	Writer(programc program, PrintStream out) {
+	    this.program = program;
+	    this.out = out;
+	}
+
+	public Void call() throws Exception {
+	    PrintStream buf = new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false);
+	    // nothing is printed if the first class has errors
+	    Class_ c = checked.take();
+	    if (c != end) {
+		program.dump_header_with_types(buf, 0);
+		for (; c != end; c = checked.take()) {
+		    c.dump_with_types(buf, 2);
+		}
+	    }
+	    buf.flush();
+	    return null;
+	}
+    }
+}
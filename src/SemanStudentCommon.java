@@ -22,8 +22,6 @@ class SemanticException extends Exception
 class TypeCheckerHelper 
 {
 	static ClassTable class_table = ClassTable.getInstance();
-	static SemantErrorsManager semant_error = SemantErrorsManager.getInstance();
-	static SemantState semant_state = SemantState.getInstance();
 	
 	/**
 	 * This method checks if the class is registered in the classTable.
@@ -61,7 +59,7 @@ class TypeCheckerHelper
 		if (!(child.equals(parent) || class_table.isSubClass(child, parent)))
 		{
 			if (node != null)
-				semant_error.semantError(node, msg, child, parent);	
+				SemantErrorsManager.getInstance().semantError(node, msg, child, parent);	
 			throw new SemanticException();
 		}	
 	}
@@ -79,7 +77,7 @@ class TypeCheckerHelper
 	 * If it's a SELF_TYPE then it returns the current class
 	 */
 	public static AbstractSymbol inferSelfType(AbstractSymbol returnType) {
-		return inferSelfType(returnType, semant_state.getCurrentClass().getName());
+		return inferSelfType(returnType, SemantState.getInstance().getCurrentClass().getName());
 	}
 	
 	public static AbstractSymbol inferSelfType(AbstractSymbol returnType, AbstractSymbol default_type) {
@@ -116,10 +114,26 @@ class TypeCheckerHelper
 class SemantState 
 {
 	static SemantState state=null;
+	
+	/**
+	 * the states of the threads that check classes in parallel, which
+	 * have one each
+	 * @see ParallelTypeChecker
+	 */
+	private static final ThreadLocal<SemantState> local = new ThreadLocal<SemantState>();
+	
 	private Class_ current_class;
 	private SymbolTable<AbstractSymbol> scope_manager;
 	
 	private SemantState()
+	{
+		reset();
+	}
+	
+	/**
+	 * this method clears the state left by a previous compilation
+	 */
+	public void reset()
 	{
 		current_class = null;
 		scope_manager = new SymbolTable<AbstractSymbol>();
@@ -146,12 +160,34 @@ class SemantState
 	 */
 	static SemantState getInstance()
 	{
+		if (Flags.parallel_check) {
+			SemantState s = local.get();
+			if (s != null)
+				return s;
+		}
 		if (state==null) {
 			state = new SemantState();
 		}
 		return state;
 	}
 	
+	/**
+	 * this method gives the current thread a new state of its own,
+	 * with no current class and an empty scope, in place of the shared one
+	 */
+	static void enterTask()
+	{
+		local.set(new SemantState());
+	}
+	
+	/**
+	 * this method gives the current thread back the shared state
+	 */
+	static void exitTask()
+	{
+		local.remove();
+	}
+	
 	/**
 	 * this method retrieves the current class
 	 * @return current class
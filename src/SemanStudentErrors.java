@@ -1,3 +1,4 @@
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 
 
@@ -9,8 +10,34 @@ class SemantErrorsManager
     
     private static SemantErrorsManager instance = null;
     
+    /** The managers of the threads that check classes in parallel,
+     * which have one each, and of the classes the pipeline registers
+     * the features of before the program is read
+     * @see ParallelTypeChecker
+     * @see Pipeline */
+    private static final ThreadLocal<SemantErrorsManager> local = new ThreadLocal<SemantErrorsManager>();
+    
+    /** What the errors of a task were printed to, or null for the
+     * shared manager */
+    private ByteArrayOutputStream buffer;
+    
+    /** Whether a task stopped the compilation */
+    private boolean halted;
+    
+    /** Thrown by validate(true) in a task instead of stopping the
+     * process, so that the errors of the classes before it are printed
+     * first */
+    static class Halted extends RuntimeException {
+    	private static final long serialVersionUID = 1L;
+    }
+    
     public static SemantErrorsManager getInstance()
     {
+    	if (Flags.parallel_check || Flags.pipeline) {
+    		SemantErrorsManager m = local.get();
+    		if (m != null)
+    			return m;
+    	}
     	if (instance == null)
     		instance = new SemantErrorsManager();
     	return instance;
@@ -23,6 +50,50 @@ class SemantErrorsManager
 		errorStream = System.err;
     }
     
+    /** Gives the current thread a manager of its own, in place of the
+     * shared one, which keeps the errors to itself until they are
+     * merged.
+     *
+     * @return the manager of the thread
+     * */
+    static SemantErrorsManager enterTask()
+    {
+    	SemantErrorsManager m = new SemantErrorsManager();
+    	m.buffer = new ByteArrayOutputStream();
+    	m.errorStream = null;
+    	local.set(m);
+    	return m;
+    }
+    
+    /** Gives the current thread back the shared manager. */
+    static void exitTask()
+    {
+    	local.remove();
+    }
+    
+    /** Prints and counts the errors of a task, as if they had been
+     * reported here, and stops the compilation if the task did.
+     *
+     * @param task the manager of the task
+     * */
+    public void merge(SemantErrorsManager task)
+    {
+    	if (task.errorStream != null) {
+    		task.errorStream.flush();
+    		errorStream.write(task.buffer.toByteArray(), 0, task.buffer.size());
+    		errorStream.flush();
+    	}
+    	semantErrors += task.semantErrors;
+    	if (task.halted)
+    		System.exit(1);
+    }
+    
+    /** Clears the error count left by a previous compilation. */
+    public void reset()
+    {
+    	semantErrors = 0;
+    }
+    
 	 /** Prints line number and file name of the given class.
     *
     * Also increments semantic error count.
@@ -86,6 +157,24 @@ class SemantErrorsManager
 	   return stream;
  }
 
+  /** Prints the file name of the current class and the given line
+   * number, prints the custom message, formatting it with args
+   * Also increments semantic error count.
+   *
+   * @param line the line number
+   * @param msg the message to be formatted and printed
+   * @param args the values to be shown
+   * @return a print stream to which the rest of the error message is
+   * to be printed.
+   *
+   * */
+  public PrintStream semantError(int line, String msg, Object... args) {
+	   stream().print(SemantState.getInstance().getCurrentClass().getFilename() + ":" + line + ": ");
+	   PrintStream stream = semantError();
+	   stream.println(String.format(msg, args));
+	   return stream;
+  }
+
    /** Prints the file name and the line number of the given tree node.
     *
     * Also increments semantic error count.
@@ -97,7 +186,7 @@ class SemantErrorsManager
     *
     * */
    public PrintStream semantError(AbstractSymbol filename, TreeNode t) {
-   	errorStream.print(filename + ":" + t.getLineNumber() + ": ");
+   	stream().print(filename + ":" + t.getLineNumber() + ": ");
    	return semantError();
    }
 
@@ -110,6 +199,14 @@ class SemantErrorsManager
     * */
    public PrintStream semantError() {
    	semantErrors++;
+   	return stream();
+   }
+
+   /** Returns the stream for error messages; a task makes it on its
+    * first error, since most classes have none. */
+   private PrintStream stream() {
+   	if (errorStream == null)
+   		errorStream = new PrintStream(buffer);
    	return errorStream;
    }
 
@@ -124,8 +221,12 @@ class SemantErrorsManager
    }
 
 	public void validate(boolean stop) {
-		if (SemantErrorsManager.getInstance().errors()) {
-			System.err.println("Compilation halted due to static semantic errors.");
+		if (errors()) {
+			stream().println("Compilation halted due to static semantic errors.");
+			if (stop && buffer != null) {
+				halted = true;
+				throw new Halted();
+			}
 			if (stop) 
 				System.exit(1);
 		}
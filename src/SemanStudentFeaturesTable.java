@@ -1,11 +1,9 @@
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
 
 /**
  * 	This class is the implementation of the Objects, Methods Table.
  * 	It stores the attributes and the methods that belong to a Class.
- * 	Methods and attributes are mapped into an HashMap < AbstractSymbol , Feature >.
+ * 	Methods and attributes are mapped into a SymbolMap < Feature >.
  *
  */
 class FeaturesTable
@@ -13,8 +11,8 @@ class FeaturesTable
 	/**
 	 * The map that stores attributes and methods.
 	 */
-	private HashMap< AbstractSymbol, method> methodList;
-	private HashMap< AbstractSymbol, attr> attrList;
+	private SymbolMap<method> methodList;
+	private SymbolMap<attr> attrList;
 
 	/**
 	 * The class that owns the features stored in the featureList
@@ -28,15 +26,15 @@ class FeaturesTable
 	public FeaturesTable(Class_ c)
 	{
 		this.owner = c;
-		methodList = new HashMap< AbstractSymbol , method>();
-		attrList = new HashMap< AbstractSymbol , attr>();
+		methodList = new SymbolMap<method>();
+		attrList = new SymbolMap<attr>();
 	}
 	
-	private HashMap<AbstractSymbol, method> getMethodList() {
+	private SymbolMap<method> getMethodList() {
 		return methodList;
 	}
 
-	private HashMap<AbstractSymbol, attr> getAttrList() {
+	private SymbolMap<attr> getAttrList() {
 		return attrList;
 	}
 	
@@ -128,9 +126,10 @@ class FeaturesTable
 		}
 		
 		/*	Formals type checking	*/
-		for (Enumeration e = m.getFormals().getElements(); e.hasMoreElements(); )
+		Formals mFormals = m.getFormals();
+		for (int i = 0; i < mFormals.getLength(); i++)
 		{
-			Formal f = (Formal) e.nextElement();
+			Formal f = mFormals.getNth(i);
 			AbstractSymbol as = f.getTypeDecl();
 			/*	Declared type for Formal is SELF_TYPE*/
 			if (as.equals(TreeConstants.SELF_TYPE))
@@ -164,13 +163,14 @@ class FeaturesTable
 	 * @return True if both methods have got the same formals, false otherwise.
 	 */
 	private boolean validateFormals(method m, method ancestorMeth) {
-		Enumeration mForm = m.getFormals().getElements();
-		Enumeration ancestorMethForm = ancestorMeth.getFormals().getElements();
+		Formals mForm = m.getFormals();
+		Formals ancestorMethForm = ancestorMeth.getFormals();
+		int i = 0;
 
-		while(mForm.hasMoreElements() && ancestorMethForm.hasMoreElements())
+		for (; i < mForm.getLength() && i < ancestorMethForm.getLength(); i++)
 		{
-			Formal ancestorParam = (Formal) ancestorMethForm.nextElement();
-			Formal mParam = (Formal) mForm.nextElement();
+			Formal ancestorParam = ancestorMethForm.getNth(i);
+			Formal mParam = mForm.getNth(i);
 
 			/*	redefined method param does not match original param's type	*/
 			if(!mParam.getTypeDecl().equals(ancestorParam.getTypeDecl()))
@@ -185,7 +185,7 @@ class FeaturesTable
 		}
 
 		/*	If method m has more or less parameters than his ancestor's method	*/
-		if(mForm.hasMoreElements() || ancestorMethForm.hasMoreElements() )
+		if(i < mForm.getLength() || i < ancestorMethForm.getLength())
 		{	SemantErrorsManager.getInstance()
 			.semantError(m,
 					"Incompatible number of formal parameters in redefined method %s.", m.getName().getString());
@@ -269,10 +269,7 @@ class FeaturesTable
 		Expressions actuals = d.getActual();
 		Formals formals = meth.getFormals();
 		
-		Enumeration eForm = formals.getElements();
-		Enumeration eAct = actuals.getElements();
-				
-		return validateActualsFormals(d, dName, eForm, eAct);
+		return validateActualsFormals(d, dName, formals, actuals);
 	}
 	
 	public boolean validateDispatch(static_dispatch d){
@@ -285,10 +282,7 @@ class FeaturesTable
 		Expressions actuals = d.getActual();
 		Formals formals = meth.getFormals();
 		
-		Enumeration eForm = formals.getElements();
-		Enumeration eAct = actuals.getElements();
-				
-		return validateActualsFormals(d, dName, eForm, eAct);
+		return validateActualsFormals(d, dName, formals, actuals);
 	}
 	
 	/**
@@ -354,12 +348,12 @@ class FeaturesTable
 		if (meth == null) return; // it should never be null
 
 		SymbolTable<AbstractSymbol> symTab = SemantState.getInstance().getScopeManager();
-		Enumeration formals = meth.getFormals().getElements();
+		Formals formals = meth.getFormals();
 		symTab.enterScope();
 		
-		while (formals.hasMoreElements())
+		for (int i = 0; i < formals.getLength(); i++)
 		{
-			Formal f = (Formal) formals.nextElement();
+			Formal f = formals.getNth(i);
 			Class_ classOfThisFormal = ClassTable.getInstance().lookup(f.getTypeDecl());
 			//symTab.addId(f.getName(), classOfThisFormal);
 			symTab.addId(f.getName(), f.getTypeDecl());
@@ -367,18 +361,19 @@ class FeaturesTable
 	}
 	
 	/**
-	 * Takes two enumerations parameter list and compare their types.
-	 * @param eForm	List of formals params
-	 * @param eAct	List of actuals params
+	 * Takes two parameter lists and compare their types.
+	 * @param formals	List of formals params
+	 * @param actuals	List of actuals params
 	 * @return True if the actuals' types are same or subclass of formals' types.
 	 */
-	private boolean validateActualsFormals(Expression node, AbstractSymbol methodName, Enumeration eForm, Enumeration eAct)
+	private boolean validateActualsFormals(Expression node, AbstractSymbol methodName, Formals formals, Expressions actuals)
 	{
 		Class_ currentClass = SemantState.getInstance().getCurrentClass();
-		while (eForm.hasMoreElements() && eAct.hasMoreElements())
+		int i = 0;
+		for (; i < formals.getLength() && i < actuals.getLength(); i++)
 		{
-			Expression actualParam = (Expression) eAct.nextElement();
-			Formal formalParam = (Formal) eForm.nextElement();
+			Expression actualParam = actuals.getNth(i);
+			Formal formalParam = formals.getNth(i);
 			//if the actual param is subclass of the formal param then continues, else exit
 			if (!ClassTable.getInstance().isSubClass(
 					TypeCheckerHelper.inferSelfType(actualParam.get_type(), currentClass.getName()),
@@ -392,7 +387,7 @@ class FeaturesTable
 		
 		//if the dispatch uses more params than the params needed, one of the two lists has still some elements
 		//so the invocation is wrong
-		if (eForm.hasMoreElements() || eAct.hasMoreElements() )
+		if (i < formals.getLength() || i < actuals.getLength())
 		{
 			SemantErrorsManager.getInstance().semantError(node, "Method %s called with wrong number of arguments.", methodName);
 			return false;
@@ -1,41 +1,47 @@
 
-import java.util.HashMap;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 
 /**
  * This class implements the decorator pattern
  *
+ * The type checker annotates the nodes it visits in an AstTypes table
+ * of the check rather than in the nodes, so that nodes can be shared
+ * between programs. A node is annotated with only what cannot be read
+ * back from its children:
+ * <ul>
+ * <li>rt, here: the type of a node where it differs from its static
+ * type, SELF_TYPE instead of the class it stands for</li>
+ * <li>validType, on Expression: false once the type was found undefined</li>
+ * <li>numScopes, on Class_: the scopes opened for the class</li>
+ * <li>lub, on typcase, and typeList, on Cases: the types of the branches</li>
+ * </ul>
+ * The types of the children of a node (getLeftType, getBodyType and the
+ * like) are those they were given, so they are read from the children.
+ *
  */
 abstract class Decorator
 {
-	protected HashMap<String, Object> data = null; 
-	
-	
-	 /**
-     * register a key value for the current object
-     * @param key the decorating attribute 
-     * @param value the value of the decorating attribute
-     */
-    protected void decorate(String key, Object value)
-    {
-    	if (data == null)
-    		data = new HashMap<String, Object>();
-    	data.put(key, value);
-    }
-    /**
-     * retrieves the value associated to the given key
-     * it returns null if key is not present
-     * @param keythe decorating attribute
-     * @return the value associated to the given key
-     */
-    public Object getData(String key)
-    {
-    	if (data != null && data.containsKey(key))
-    		return data.get(key);
-    	return null;
-    }
+	/**
+	 * retrieves the type of the node where it differs from its static type
+	 * @return the type, or null if the node has none
+	 */
+	public AbstractSymbol getRt()
+	{
+		return AstTypes.getInstance().rt((TreeNode) this);
+	}
+
+	/**
+	 * sets the type of the node where it differs from its static type
+	 * @param rt the type
+	 */
+	public void setRt(AbstractSymbol rt)
+	{
+		AstTypes.getInstance().setRt((TreeNode) this, rt);
+	}
 }
 
 /**
@@ -100,49 +106,115 @@ interface IAction <T>
 	Object action(T obj);
 }
 
+/**
+ * A visitor that can only start once other visitors have walked the
+ * whole tree, e.g. one that needs the features of every class to be
+ * registered. Visitors that do not implement this interface depend on
+ * no other one.
+ *
+ */
+interface IDependentVisitor extends ITreeVisitor
+{
+	/**
+	 * @param visitor a visitor registered before this one
+	 * @return true if this visitor needs the given one to have ended its walk
+	 */
+	boolean dependsOn(ITreeVisitor visitor);
+}
 
+/**
+ * A visitor that must see each class of the program after its parent,
+ * e.g. one that registers features, which are checked against those the
+ * class inherits. A walk with such a visitor goes through the classes
+ * in hierarchy order, and one without through them in source order.
+ * @see programc#acceptInHierarchyOrder
+ *
+ */
+interface IHierarchyVisitor extends ITreeVisitor
+{
+}
 
 
+
+
+/**
+ * Maps each kind of expression node to the action bound to it.
+ * Actions are kept in an array indexed by the kind of the node, and
+ * execute reads the kind from the field of the node, without a call,
+ * and calls them from a switch with one call per kind, so that each
+ * call only ever sees the actions bound to one kind of node and the
+ * JIT can inline them.
+ *
+ */
 class ExpressionTypeSelector
 {
-	HashMap<Class<?>, IAction<Expression>> binded_actions;
+	/**
+	 * Number of slots in the table: any ASTConstants terminal
+	 */
+	private static final int KINDS = ASTConstants.LINENO + 1;
+	
+	private final IAction<Expression>[] binded_actions;
 	
 	IAction<Expression> dummy = new IAction<Expression>()
 	{
 		@Override
 		public Object action(Expression obj) {
-			// TODO Auto-generated method stub
 			return null;
 		}
 	};
 	
+	@SuppressWarnings("unchecked")
 	public ExpressionTypeSelector()
 	{
-		binded_actions = new HashMap<Class<?>, IAction<Expression>>();
+		binded_actions = new IAction[KINDS];
+		Arrays.fill(binded_actions, dummy);
 	}
 	
-	public <T extends Expression> void register(Class<?> cls, IAction<T> act)
+	@SuppressWarnings("unchecked")
+	public <T extends Expression> void register(int kind, IAction<T> act)
 	{
-		if (!binded_actions.containsKey(cls))
-			binded_actions.put(cls, (IAction<Expression>) act);
+		if (binded_actions[kind] == dummy)
+			binded_actions[kind] = (IAction<Expression>) act;
 		else
-			throw new RuntimeException("already binded action for type " + cls.getName());
-	
-	
+			throw new RuntimeException("already binded action for kind " + kind);
 	}
 	
-	public IAction<Expression> getAction(Class<?> cls)
+	public IAction<Expression> getAction(int kind)
 	{
-		if (binded_actions.containsKey(cls))
-			return binded_actions.get(cls);
-		else
-			return dummy;
-			//throw new RuntimeException("binded action for type " + cls.getName() + " not found");
+		return binded_actions[kind];
 	}
 	
-	public <T extends Expression> Object execute(T object)
+	public Object execute(Expression object)
 	{
-		return getAction(object.getClass()).action(object);				
+		IAction<Expression>[] a = binded_actions;
+		switch (object.kind)
+		{
+		case ASTConstants.ASSIGN:          return a[ASTConstants.ASSIGN].action(object);
+		case ASTConstants.STATIC_DISPATCH: return a[ASTConstants.STATIC_DISPATCH].action(object);
+		case ASTConstants.DISPATCH:        return a[ASTConstants.DISPATCH].action(object);
+		case ASTConstants.COND:            return a[ASTConstants.COND].action(object);
+		case ASTConstants.LOOP:            return a[ASTConstants.LOOP].action(object);
+		case ASTConstants.TYPCASE:         return a[ASTConstants.TYPCASE].action(object);
+		case ASTConstants.BLOCK:           return a[ASTConstants.BLOCK].action(object);
+		case ASTConstants.LET:             return a[ASTConstants.LET].action(object);
+		case ASTConstants.PLUS:            return a[ASTConstants.PLUS].action(object);
+		case ASTConstants.SUB:             return a[ASTConstants.SUB].action(object);
+		case ASTConstants.MUL:             return a[ASTConstants.MUL].action(object);
+		case ASTConstants.DIVIDE:          return a[ASTConstants.DIVIDE].action(object);
+		case ASTConstants.NEG:             return a[ASTConstants.NEG].action(object);
+		case ASTConstants.LT:              return a[ASTConstants.LT].action(object);
+		case ASTConstants.EQ:              return a[ASTConstants.EQ].action(object);
+		case ASTConstants.LEQ:             return a[ASTConstants.LEQ].action(object);
+		case ASTConstants.COMP:            return a[ASTConstants.COMP].action(object);
+		case ASTConstants.INT:             return a[ASTConstants.INT].action(object);
+		case ASTConstants.BOOL:            return a[ASTConstants.BOOL].action(object);
+		case ASTConstants.STR:             return a[ASTConstants.STR].action(object);
+		case ASTConstants.NEW:             return a[ASTConstants.NEW].action(object);
+		case ASTConstants.ISVOID:          return a[ASTConstants.ISVOID].action(object);
+		case ASTConstants.NO_EXPR:         return a[ASTConstants.NO_EXPR].action(object);
+		case ASTConstants.OBJECT:          return a[ASTConstants.OBJECT].action(object);
+		default:                           return a[object.kind].action(object);
+		}
 	}
 }
 
@@ -269,6 +341,330 @@ class DefaultVisitor implements ITreeVisitor
 	}
 }
 
+/**
+ * Runs several visitors in a single walk of the tree.
+ * At each node the visitors are called in the order they were given,
+ * before the children of the node and again after them.
+ * The value a node gets is the one of the visitor that returns one:
+ * the nodes pass the values of their children up the tree, so at most
+ * one of the fused visitors may return values, and the others must
+ * return null. A node that gets a value from two visitors throws an
+ * IllegalStateException.
+ * Errors of fused visitors are reported in the order of the nodes,
+ * not visitor after visitor.
+ *
+ */
+class FusedVisitor implements ITreeVisitor
+{
+	/**
+	 * Calls one of the methods of a visitor on a node.
+	 * There is one call per method, so that every overload goes through
+	 * the same loop.
+	 */
+	private static abstract class Call
+	{
+		abstract Object on(ITreeVisitor v, Object node);
+	}
+	
+	private static final Call POST_METHOD = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((method) node); }
+	};
+	private static final Call POST_ATTR = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((attr) node); }
+	};
+	private static final Call POST_CASES = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Cases) node); }
+	};
+	private static final Call POST_PROGRAM = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Program) node); }
+	};
+	private static final Call POST_CLASS = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Class_) node); }
+	};
+	private static final Call POST_FORMAL = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Formal) node); }
+	};
+	private static final Call POST_CASE = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Case) node); }
+	};
+	private static final Call POST_EXPRESSION = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Expression) node); }
+	};
+	private static final Call POST_EXPRESSIONS = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPostOrder((Expressions) node); }
+	};
+	private static final Call PRE_METHOD = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((method) node); }
+	};
+	private static final Call PRE_ATTR = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((attr) node); }
+	};
+	private static final Call PRE_CASES = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Cases) node); }
+	};
+	private static final Call PRE_PROGRAM = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Program) node); }
+	};
+	private static final Call PRE_CLASS = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Class_) node); }
+	};
+	private static final Call PRE_FORMAL = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Formal) node); }
+	};
+	private static final Call PRE_CASE = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Case) node); }
+	};
+	private static final Call PRE_EXPRESSION = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Expression) node); }
+	};
+	private static final Call PRE_EXPRESSIONS = new Call()
+	{
+		Object on(ITreeVisitor v, Object node) { return v.onVisitPreOrder((Expressions) node); }
+	};
+	
+	private final ITreeVisitor[] visitors;
+	
+	public FusedVisitor(List<ITreeVisitor> visitors)
+	{
+		this.visitors = visitors.toArray(new ITreeVisitor[visitors.size()]);
+	}
+	
+	/**
+	 * Groups the visitors into walks: each visitor joins the walk of the
+	 * visitor before it, unless it depends on a visitor of that walk.
+	 * @param visitors the visitors, in the order they must run
+	 * @return a visitor per walk, fused if the walk has more than one
+	 */
+	public static List<ITreeVisitor> schedule(List<ITreeVisitor> visitors)
+	{
+		List<ITreeVisitor> walks = new ArrayList<ITreeVisitor>();
+		List<ITreeVisitor> walk = new ArrayList<ITreeVisitor>();
+		for (ITreeVisitor v : visitors)
+		{
+			if (v instanceof IDependentVisitor)
+			{
+				for (ITreeVisitor before : walk)
+				{
+					if (((IDependentVisitor) v).dependsOn(before))
+					{
+						walks.add(fuse(walk));
+						walk = new ArrayList<ITreeVisitor>();
+						break;
+					}
+				}
+			}
+			walk.add(v);
+		}
+		if (!walk.isEmpty())
+			walks.add(fuse(walk));
+		return walks;
+	}
+	
+	private static ITreeVisitor fuse(List<ITreeVisitor> walk)
+	{
+		return walk.size() == 1 ? walk.get(0) : new FusedVisitor(walk);
+	}
+	
+	/**
+	 * @param walk a visitor returned by schedule
+	 * @return true if the walk must go through the classes in hierarchy
+	 * order, because one of its visitors needs it
+	 * @see IHierarchyVisitor
+	 */
+	public static boolean inHierarchyOrder(ITreeVisitor walk)
+	{
+		if (!(walk instanceof FusedVisitor))
+			return walk instanceof IHierarchyVisitor;
+		for (ITreeVisitor v : ((FusedVisitor) walk).visitors)
+			if (v instanceof IHierarchyVisitor)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Makes the call on every visitor, in order
+	 * @return the value the one visitor that returned one returned, or null
+	 */
+	private Object visit(Call call, Object node)
+	{
+		Object ret = null;
+		for (ITreeVisitor v : visitors)
+		{
+			Object r = call.on(v, node);
+			if (r == null)
+				continue;
+			if (ret != null)
+				throw new IllegalStateException("two fused visitors returned a value for " + node.getClass().getName());
+			ret = r;
+		}
+		return ret;
+	}
+
+	@Override
+	public Object onVisitPostOrder(method itm) {
+		return visit(POST_METHOD, itm);
+	}
+
+	@Override
+	public Object onVisitPostOrder(attr itm) {
+		return visit(POST_ATTR, itm);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Cases cases) {
+		return visit(POST_CASES, cases);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Program program) {
+		return visit(POST_PROGRAM, program);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Class_ cls) {
+		return visit(POST_CLASS, cls);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Formal formal) {
+		return visit(POST_FORMAL, formal);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Case branch) {
+		return visit(POST_CASE, branch);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Expression expr) {
+		return visit(POST_EXPRESSION, expr);
+	}
+
+	@Override
+	public Object onVisitPostOrder(Expressions expressions) {
+		return visit(POST_EXPRESSIONS, expressions);
+	}
+
+	@Override
+	public Object onVisitPreOrder(method itm) {
+		return visit(PRE_METHOD, itm);
+	}
+
+	@Override
+	public Object onVisitPreOrder(attr itm) {
+		return visit(PRE_ATTR, itm);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Cases cases) {
+		return visit(PRE_CASES, cases);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Program program) {
+		return visit(PRE_PROGRAM, program);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Class_ cls) {
+		return visit(PRE_CLASS, cls);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Formal formal) {
+		return visit(PRE_FORMAL, formal);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Case branch) {
+		return visit(PRE_CASE, branch);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Expression expr) {
+		return visit(PRE_EXPRESSION, expr);
+	}
+
+	@Override
+	public Object onVisitPreOrder(Expressions expressions) {
+		return visit(PRE_EXPRESSIONS, expressions);
+	}
+
+	@Override
+	public void onVisitStart() {
+		for (ITreeVisitor v : visitors)
+			v.onVisitStart();
+	}
+
+	@Override
+	public void onVisitEnd() {
+		for (ITreeVisitor v : visitors)
+			v.onVisitEnd();
+	}
+}
+
+/**
+ * Counts the nodes of the program and prints the counts when the walk
+ * ends; run with the -s flag.
+ * It needs nothing from the other visitors, so it shares the walk of
+ * the feature registration.
+ *
+ */
+class SemantStatsVisitor extends DefaultVisitor
+{
+	private int classes;
+	private int methods;
+	private int attrs;
+	private int expressions;
+	
+	@Override
+	public Object onVisitPostOrder(Class_ cls) {
+		classes++;
+		return null;
+	}
+	
+	@Override
+	public Object onVisitPostOrder(method meth) {
+		methods++;
+		return null;
+	}
+	
+	@Override
+	public Object onVisitPostOrder(attr attr) {
+		attrs++;
+		return null;
+	}
+	
+	@Override
+	public Object onVisitPostOrder(Expression expr) {
+		expressions++;
+		return null;
+	}
+	
+	@Override
+	public void onVisitEnd() {
+		System.err.println("semant: " + classes + " classes, " + methods + " methods, "
+				+ attrs + " attributes, " + expressions + " expressions");
+	}
+}
+
 /**
  * this is the first visit executed on the AST
  * it collects every type declared
@@ -296,9 +692,13 @@ class ClassesVisitor extends DefaultVisitor
 /**
  * This is the second visit executed on the AST.
  * Registers all the features for every Class in the AST. 
+ * The classes are walked in hierarchy order, each after its parent, so
+ * that a class is checked against every feature it inherits even if it
+ * comes before its parent.
+ * @see ClassTable#inHierarchyOrder
  *
  */
-class FeaturesVisitor extends DefaultVisitor
+class FeaturesVisitor extends DefaultVisitor implements IHierarchyVisitor
 {
 	@Override
 	public Object onVisitPostOrder(attr attr) {
@@ -352,14 +752,31 @@ class FeaturesVisitor extends DefaultVisitor
 	public void onVisitStart()
 	{
 		/*	Install basic classes in the class table	*/
-		final ClassTable class_table = ClassTable.getInstance();
-		
-		class_table.installBasicClasses();
-		class_table.validate();
+		ClassTable.getInstance().installBasicClasses();
+		validateClasses();
+		registerBasicFeatures();
+	}
+	
+	/**
+	 * Validates the inheritance graph of the classes registered, and
+	 * stops the compilation if it or the registration of the classes
+	 * found errors
+	 */
+	static void validateClasses()
+	{
+		ClassTable.getInstance().validate();
 		SemantErrorsManager.getInstance().validate(true);
-		/*	And their features in the features table	*/
-		SemantErrorsManager err_mgr = SemantErrorsManager.getInstance();
+	}
+	
+	/**
+	 * Registers the features of the basic classes, once they are
+	 * installed in the class table
+	 */
+	void registerBasicFeatures()
+	{
+		final ClassTable class_table = ClassTable.getInstance();
 		
+		/*	Their features in the features table	*/
 		class_table.lookup(TreeConstants.Object_).accept(this);
 //		class_table.lookup(TreeConstants.Bool).accept(this);
 //		class_table.lookup(TreeConstants.Int).accept(this);
@@ -389,7 +806,7 @@ class FeaturesVisitor extends DefaultVisitor
  * it checks types
  *
  */
-class TypeCheckerVisitor implements ITreeVisitor
+class TypeCheckerVisitor implements IDependentVisitor
 {
 	
 	protected ExpressionTypeSelector postorder_binder, preorder_binder;
@@ -401,7 +818,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 		postorder_binder = new ExpressionTypeSelector();
 		preorder_binder = new ExpressionTypeSelector();
 		
-		preorder_binder.register(let.class, new IAction<let>()
+		preorder_binder.register(ASTConstants.LET, new IAction<let>()
 		{
 			@Override
 			public Object action(let obj) {
@@ -425,7 +842,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 				}
 
 				//check if the init type is conform to the declared objectId type in the let stmt
-				AbstractSymbol initType = (AbstractSymbol) obj.getData("ret_init");
+				AbstractSymbol initType = obj.getInitType();
 				if (!initType.equals(TreeConstants.No_type))
 				{
 					try {
@@ -445,7 +862,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 			}	
 		});
 		
-		postorder_binder.register(object.class, new IAction<object>()
+		postorder_binder.register(ASTConstants.OBJECT, new IAction<object>()
 		{
 			@Override
 			public Object action(object obj) 
@@ -465,10 +882,10 @@ class TypeCheckerVisitor implements ITreeVisitor
 				{
 					type = ClassTable.getInstance().lookup(TypeCheckerHelper.inferSelfType(stype));
 				}
-				obj.decorate("rt", stype);
+				obj.setRt(stype);
 				if (type == null)
 				{		
-					obj.decorate("validType", false);
+					obj.setValidType(false);
 					type = ClassTable.getInstance().lookup(TreeConstants.Object_);
 				}
 //				return obj.set_type(TypeCheckerHelper.inferSelfType(type.getName()));	
@@ -477,7 +894,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(int_const.class, new IAction<int_const>()
+		postorder_binder.register(ASTConstants.INT, new IAction<int_const>()
 		{
 			@Override
 			public Object action(int_const obj) 
@@ -487,7 +904,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(bool_const.class, new IAction<bool_const>()
+		postorder_binder.register(ASTConstants.BOOL, new IAction<bool_const>()
 		{
 			@Override
 			public Object action(bool_const obj) 
@@ -497,7 +914,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(isvoid.class, new IAction<isvoid>()
+		postorder_binder.register(ASTConstants.ISVOID, new IAction<isvoid>()
 		{
 			@Override
 			public Object action(isvoid obj) 
@@ -507,7 +924,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(string_const.class, new IAction<string_const>()
+		postorder_binder.register(ASTConstants.STR, new IAction<string_const>()
 		{
 			@Override
 			public Object action(string_const obj) 
@@ -517,12 +934,12 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(comp.class, new IAction<comp>()
+		postorder_binder.register(ASTConstants.COMP, new IAction<comp>()
 		{
 			@Override
 			public Object action(comp obj) 
 			{
-				AbstractSymbol child_type = ((AbstractSymbol) obj.getData("child"));
+				AbstractSymbol child_type = obj.getChildType();
 				try {
 					TypeCheckerHelper.validateType(child_type);
 					TypeCheckerHelper.typeMatch(child_type, TreeConstants.Bool);
@@ -536,7 +953,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(new_.class, new IAction<new_>()
+		postorder_binder.register(ASTConstants.NEW, new IAction<new_>()
 		{
 			@Override
 			public Object action(new_ obj) 
@@ -556,13 +973,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(leq.class, new IAction<leq>()
+		postorder_binder.register(ASTConstants.LEQ, new IAction<leq>()
 		{
 			@Override
 			public Object action(leq obj) 
 			{
-				AbstractSymbol left_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_type = obj.getLeftType();
+				AbstractSymbol right_type = obj.getRightType();
 				
 				try {
 					TypeCheckerHelper.validateType(left_type);
@@ -579,13 +996,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(eq.class, new IAction<eq>()
+		postorder_binder.register(ASTConstants.EQ, new IAction<eq>()
 		{
 			@Override
 			public Object action(eq obj) 
 			{
-				AbstractSymbol left_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_type = obj.getLeftType();
+				AbstractSymbol right_type = obj.getRightType();
 				
 				AbstractSymbol inf_left_type = TypeCheckerHelper.inferSelfType(left_type);
 				AbstractSymbol inf_right_type = TypeCheckerHelper.inferSelfType(right_type);
@@ -618,7 +1035,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	
 		});
 		
-		postorder_binder.register(no_expr.class, new IAction<no_expr>()
+		postorder_binder.register(ASTConstants.NO_EXPR, new IAction<no_expr>()
 		{
 
 			@Override
@@ -630,13 +1047,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(lt.class, new IAction<lt>()
+		postorder_binder.register(ASTConstants.LT, new IAction<lt>()
 		{
 			@Override
 			public Object action(lt obj) 
 			{
-				AbstractSymbol left_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_type = obj.getLeftType();
+				AbstractSymbol right_type = obj.getRightType();
 				
 				try {
 					TypeCheckerHelper.validateType(left_type);
@@ -653,12 +1070,12 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(neg.class, new IAction<neg>()
+		postorder_binder.register(ASTConstants.NEG, new IAction<neg>()
 		{
 			@Override
 			public Object action(neg obj) 
 			{
-				AbstractSymbol child_type = (AbstractSymbol) obj.getData("child");
+				AbstractSymbol child_type = obj.getChildType();
 				try
 				{
 					TypeCheckerHelper.validateType(child_type);
@@ -674,13 +1091,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(divide.class, new IAction<divide>()
+		postorder_binder.register(ASTConstants.DIVIDE, new IAction<divide>()
 		{
 			@Override
 			public Object action(divide obj) 
 			{	 
-				 AbstractSymbol left_child = (AbstractSymbol) obj.getData("left");
-				 AbstractSymbol right_child = (AbstractSymbol) obj.getData("right");
+				 AbstractSymbol left_child = obj.getLeftType();
+				 AbstractSymbol right_child = obj.getRightType();
 				 
 				 try {
 					TypeCheckerHelper.validateType(left_child);
@@ -697,13 +1114,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(mul.class, new IAction<mul>()
+		postorder_binder.register(ASTConstants.MUL, new IAction<mul>()
 		{
 			@Override
 			public Object action(mul obj) 
 			{
-				AbstractSymbol left_child_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_child_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_child_type = obj.getLeftType();
+				AbstractSymbol right_child_type = obj.getRightType();
 				try{
 					TypeCheckerHelper.validateType(left_child_type);
 					TypeCheckerHelper.typeMatch(left_child_type, TreeConstants.Int);
@@ -718,13 +1135,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(sub.class, new IAction<sub>()
+		postorder_binder.register(ASTConstants.SUB, new IAction<sub>()
 		{
 			@Override
 			public Object action(sub obj) 
 			{
-				AbstractSymbol left_child_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_child_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_child_type = obj.getLeftType();
+				AbstractSymbol right_child_type = obj.getRightType();
 				try{
 					TypeCheckerHelper.validateType(left_child_type);
 					TypeCheckerHelper.typeMatch(left_child_type, TreeConstants.Int);
@@ -739,13 +1156,13 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(plus.class, new IAction<plus>()
+		postorder_binder.register(ASTConstants.PLUS, new IAction<plus>()
 		{
 			@Override
 			public Object action(plus obj) 
 			{
-				AbstractSymbol left_child_type = (AbstractSymbol) obj.getData("left");
-				AbstractSymbol right_child_type = (AbstractSymbol) obj.getData("right");
+				AbstractSymbol left_child_type = obj.getLeftType();
+				AbstractSymbol right_child_type = obj.getRightType();
 				try{
 					TypeCheckerHelper.validateType(left_child_type);
 					TypeCheckerHelper.typeMatch(left_child_type, TreeConstants.Int);
@@ -760,27 +1177,27 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(let.class, new IAction<let>()
+		postorder_binder.register(ASTConstants.LET, new IAction<let>()
 		{
 			@Override
 			public Object action(let obj) 
 			{
 				semant_state.getScopeManager().exitScope();			
 				//set the return type to the block's return type
-				AbstractSymbol ret_type = (AbstractSymbol) obj.getData("ret_body");
-				obj.decorate("rt", obj.getBody().getData("rt"));
+				AbstractSymbol ret_type = obj.getBodyType();
+				obj.setRt(obj.getBody().getRt());
 				return obj.set_type(ret_type);
 			}
 	
 		});
 		
 		
-		postorder_binder.register(block.class, new IAction<block>()
+		postorder_binder.register(ASTConstants.BLOCK, new IAction<block>()
 		{
 			@Override
 			public Object action(block obj) 
 			{
-				AbstractSymbol ret_block=(AbstractSymbol)obj.getData("ret_block");
+				AbstractSymbol ret_block=obj.getBodyType();
 				try {
 					TypeCheckerHelper.validateType(ret_block);
 				} catch (SemanticException e) {
@@ -795,23 +1212,23 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(typcase.class, new IAction<typcase>()
+		postorder_binder.register(ASTConstants.TYPCASE, new IAction<typcase>()
 		{
 			@Override
 			public Object action(typcase obj) 
 			{
-				return obj.set_type((AbstractSymbol) obj.getData("lub"));
+				return obj.set_type(obj.getLub());
 			}
 	
 		});
 		
 		
-		postorder_binder.register(loop.class, new IAction<loop>()
+		postorder_binder.register(ASTConstants.LOOP, new IAction<loop>()
 		{
 			@Override
 			public Object action(loop obj) 
 			{
-				AbstractSymbol pred_type = (AbstractSymbol)obj.getData("pred");
+				AbstractSymbol pred_type = obj.getPredType();
 				try {
 					TypeCheckerHelper.validateType(pred_type);
 					TypeCheckerHelper.typeMatch(pred_type, TreeConstants.Bool);
@@ -824,21 +1241,21 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(cond.class, new IAction<cond>()
+		postorder_binder.register(ASTConstants.COND, new IAction<cond>()
 		{
 			@Override
 			public Object action(cond obj) 
 			{
-				AbstractSymbol ret_pred = (AbstractSymbol) obj.getData("ret_pred");
-				AbstractSymbol ret_then_exp = (AbstractSymbol) obj.getData("ret_then_exp");
-				AbstractSymbol ret_else_exp = (AbstractSymbol) obj.getData("ret_else_exp");
+				AbstractSymbol ret_pred = obj.getPredType();
+				AbstractSymbol ret_then_exp = obj.getThenType();
+				AbstractSymbol ret_else_exp = obj.getElseType();
 				
 				AbstractSymbol inf_ret_then_exp = TypeCheckerHelper.inferSelfType(ret_then_exp);
 				AbstractSymbol inf_ret_else_exp = TypeCheckerHelper.inferSelfType(ret_else_exp);
 				
 				if (ret_then_exp.equals(TreeConstants.SELF_TYPE) && ret_else_exp.equals(TreeConstants.SELF_TYPE))
 				{
-					obj.decorate("rt", TreeConstants.SELF_TYPE);
+					obj.setRt(TreeConstants.SELF_TYPE);
 				}
 				
 				if (!ClassTable.getInstance().isSubClass(ret_pred, TreeConstants.Bool))
@@ -874,19 +1291,19 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(dispatch.class, new IAction<dispatch>()
+		postorder_binder.register(ASTConstants.DISPATCH, new IAction<dispatch>()
 		{
 			@Override
 			public Object action(dispatch obj) 
 			{
 				Expression leftExpr = obj.getExpr();
 				ClassTable cTbl = ClassTable.getInstance();
-				AbstractSymbol clsName = TypeCheckerHelper.inferSelfType((AbstractSymbol) obj.getData("expr_type"));
-				boolean validExpr = leftExpr.getData("validType") != null ? (Boolean) leftExpr.getData("validType") : true;
+				AbstractSymbol clsName = TypeCheckerHelper.inferSelfType(obj.getExprType());
+				boolean validExpr = leftExpr.isValidType();
 				Class_ myCls = cTbl.lookup(clsName); // the expr class, it's self
 				if (myCls == null || !validExpr)	// if the dispatch caller class is not defined
 				{
-					semant_errors.semantError(obj, "Dispatch to undefined class %s.", leftExpr.getData("rt"));
+					semant_errors.semantError(obj, "Dispatch to undefined class %s.", leftExpr.getRt());
 					return obj.set_type(TreeConstants.Object_);
 				}
 				
@@ -906,7 +1323,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 				
 				if (obj.getExpr().equals(TreeConstants.self) && meth.getReturnType().equals(TreeConstants.SELF_TYPE))
 				{
-					obj.decorate("rt", meth.getReturnType());
+					obj.setRt(meth.getReturnType());
 				}
 				
 				return obj.set_type(TypeCheckerHelper.inferSelfType(meth.getReturnType(), obj.getExpr().get_type()));
@@ -916,15 +1333,15 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(static_dispatch.class, new IAction<static_dispatch>()
+		postorder_binder.register(ASTConstants.STATIC_DISPATCH, new IAction<static_dispatch>()
 		{
 			@Override
 			public Object action(static_dispatch obj) 
 			{
 				Expression leftExpr = obj.getExpr();
-				boolean validExpr = leftExpr.getData("validType") != null ? (Boolean) leftExpr.getData("validType") : true;
+				boolean validExpr = leftExpr.isValidType();
 				ClassTable cTbl = ClassTable.getInstance();
-				AbstractSymbol mySym = TypeCheckerHelper.inferSelfType((AbstractSymbol) obj.getData("expr_type"));
+				AbstractSymbol mySym = TypeCheckerHelper.inferSelfType(obj.getExprType());
 				AbstractSymbol typeSym = obj.getTypeName();
 				
 				if (typeSym.equals(TreeConstants.SELF_TYPE))
@@ -938,7 +1355,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 				
 				if (myCls == null || !validExpr)	// if the dispatch caller class is not defined
 				{
-					semant_errors.semantError(obj, "Static dispatch to undefined class %s.", leftExpr.getData("rt"));
+					semant_errors.semantError(obj, "Static dispatch to undefined class %s.", leftExpr.getRt());
 					return obj.set_type(TreeConstants.Object_);	// set dispatch type to object
 				}
 				
@@ -950,7 +1367,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 				
 				if (obj.getExpr().equals(TreeConstants.self) && meth.getReturnType().equals(TreeConstants.SELF_TYPE))
 				{
-					obj.decorate("rt", meth.getReturnType());
+					obj.setRt(meth.getReturnType());
 				}
 				
 				AbstractSymbol returnType = TypeCheckerHelper.inferSelfType(meth.getReturnType(), myCls.getName());
@@ -979,7 +1396,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 		});
 		
 		
-		postorder_binder.register(assign.class, new IAction<assign>()
+		postorder_binder.register(ASTConstants.ASSIGN, new IAction<assign>()
 		{
 			@Override
 			public Object action(assign obj) 
@@ -992,7 +1409,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 					
 				}
 				
-				AbstractSymbol exprType = (AbstractSymbol) obj.getData("expr");
+				AbstractSymbol exprType = obj.getExprType();
 //				boolean validExpr = obj.getExpr().getData("validType") != null ? 
 //						(Boolean) obj.getExpr().getData("validType") : true;
 				
@@ -1027,6 +1444,16 @@ class TypeCheckerVisitor implements ITreeVisitor
 
 	}
 
+	/**
+	 * Type checking a class looks up the features of any class, so it
+	 * needs the features of every class to be registered
+	 */
+	@Override
+	public boolean dependsOn(ITreeVisitor visitor)
+	{
+		return visitor instanceof FeaturesVisitor;
+	}
+
 	@Override
 	public void onVisitStart()
 	{
@@ -1038,7 +1465,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	 * this method analyses if a method node is semantically correct 
 	 */
 	public Object onVisitPostOrder(method mth) {
-		AbstractSymbol absym = (AbstractSymbol) ((mth.getExpr().getData("rt") != null) ? mth.getExpr().getData("rt") : mth.getData("dyn_return_type"));
+		AbstractSymbol absym = (mth.getExpr().getRt() != null) ? mth.getExpr().getRt() : mth.getDynReturnType();
 		AbstractSymbol dynamic_return_type_symbol = TypeCheckerHelper.inferSelfType(absym, semant_state.getCurrentClass().getName());
 		AbstractSymbol static_return_type_symbol = TypeCheckerHelper.inferSelfType(mth.getReturnType());
 		try
@@ -1061,7 +1488,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	 * it checks if attr node is semantically correct
 	 */
 	public Object onVisitPostOrder(attr itm) {
-		AbstractSymbol absym = (AbstractSymbol) itm.getData("init_type");
+		AbstractSymbol absym = itm.getInitType();
 		AbstractSymbol init_type_symbol = TypeCheckerHelper.inferSelfType(absym);
 		AbstractSymbol static_type_symbol = TypeCheckerHelper.inferSelfType(itm.getReturnType());
 		try
@@ -1085,7 +1512,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 
 	@Override
 	public Object onVisitPostOrder(Cases cases) {
-		AbstractSymbol[] type_list = (AbstractSymbol[]) cases.getData("type_list");
+		AbstractSymbol[] type_list = cases.getTypeList();
 		return ClassTable.getInstance().leastUpperBound(type_list);	
 	}
 
@@ -1099,7 +1526,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	public Object onVisitPostOrder(Class_ cls) {
 		 //cls.getFeaturesTable().loadClassScope(cls.getName());
 //		for (int numScopes = (int) cls.getData("numScopes"); numScopes >= 0; numScopes--)
-		for (int numScopes = (int) cls.getData("numScopes"); numScopes > 0; numScopes--)
+		for (int numScopes = cls.getNumScopes(); numScopes > 0; numScopes--)
 			semant_state.getScopeManager().exitScope();
 		return null;
 	}
@@ -1115,7 +1542,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	 * 
 	 */
 	public Object onVisitPostOrder(Case branch) {
-		AbstractSymbol absym = (AbstractSymbol) branch.getData("branch_type");
+		AbstractSymbol absym = branch.getBranchType();
 		AbstractSymbol branch_type_symbol = TypeCheckerHelper.inferSelfType(absym);
 //		AbstractSymbol static_type_symbol = branch.getTypeDecl();
 		
@@ -1148,13 +1575,12 @@ class TypeCheckerVisitor implements ITreeVisitor
 	 * this method returns the type of the last expression
 	 */
 	public Object onVisitPostOrder(Expressions expressions) {
-		Vector vect = expressions.getElementsVector();
-		int size = vect.size();
+		int size = expressions.getLength();
 		Object ret = null;
 		if (size > 0)
 		{
-			Expression expr = (Expression) vect.elementAt(size - 1);
-			expressions.decorate("rt", expr.getData("rt"));
+			Expression expr = expressions.getNth(size - 1);
+			expressions.setRt(expr.getRt());
 			ret = expr.get_type();
 		}
 		return ret;
@@ -1193,7 +1619,7 @@ class TypeCheckerVisitor implements ITreeVisitor
 	@Override
 	public Object onVisitPreOrder(Class_ cls) {
 		int numScopes = cls.getFeaturesTable().loadClassScope(cls.getName());
-		cls.decorate("numScopes", numScopes);
+		cls.setNumScopes(numScopes);
 		return null;
 	}
 
@@ -20,6 +20,7 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
  */
 
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -31,23 +32,199 @@ import java_cup.runtime.Symbol;
 /** Static semantics driver class */
 class Semant {
 
-	/** Reads AST from from consosle, and outputs the new AST */
+	/** Prepares the compiler for a new program, dropping the symbols,
+	 * classes and errors of the previous one.  A process compiling
+	 * many programs calls this before each of them, so that its memory
+	 * use does not grow with the number of programs. */
+	static void newCompilation() {
+		AbstractTable.newCompilation();
+		TreeNode.newCompilation();
+		ClassTable.getInstance().reset();
+		SemantState.getInstance().reset();
+		SemantErrorsManager.getInstance().reset();
+		new AstTypes().use();
+	}
+
+	/** Checks a program derived from one that passed semantic analysis,
+	 * such as one rebuilt with withClasses or withFeatures, in a type
+	 * table of its own.  The classes of the program replace those of
+	 * the class table, so that their features are those registered.
+	 * The table of the original program is left as it was, and the
+	 * nodes the programs share keep their types in it.
+	 *
+	 * @param program the derived program
+	 * @return the types of the derived program, which are those the
+	 * nodes are annotated in on return
+	 * */
+	static AstTypes recheck(Program program) {
+		ClassTable.getInstance().reregister(((programc) program).classes);
+		SemantState.getInstance().reset();
+		SemantErrorsManager.getInstance().reset();
+		AstTypes types = new AstTypes();
+		types.use();
+		program.registerVisitor(new FeaturesVisitor());
+		program.registerVisitor(new TypeCheckerVisitor());
+		program.semant();
+		return types;
+	}
+
+	/** Reads the AST from the input file, or from the console if there
+	 * is none.  The input may be in the text or in the binary format,
+	 * or be COOL source files, whose names end in .cl. */
+	static Program parse(String[] files) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (Flags.in_filename != null && Flags.in_filename.endsWith(".cl")) {
+			return parseSources(files);
+		}
+		if (Flags.in_filename != null) {
+			if (AstBinaryReader.isBinary(Flags.in_filename)) {
+				return new AstBinaryReader(AstBinaryReader.map(Flags.in_filename)).readProgram();
+			}
+			if (Flags.parallel_parser) {
+				return new ParallelAstReader(AstBinaryReader.map(Flags.in_filename), threads).readProgram();
+			}
+			return parse(new ASTLexer(new MappedFileReader(Flags.in_filename)));
+		}
+		InputStream in = stdin();
+		if (AstBinaryReader.isBinary(in)) {
+			return new AstBinaryReader(AstBinaryReader.readAll(in)).readProgram();
+		}
+		if (Flags.parallel_parser) {
+			return new ParallelAstReader(AstBinaryReader.readAll(in), threads).readProgram();
+		}
+		return parse(new ASTLexer(in));
+	}
+
+	/** Returns a lexer over the input if it is a text AST, or null if
+	 * it is a binary AST or COOL source files */
+	static ASTLexer textInput() throws IOException {
+		if (Flags.in_filename != null) {
+			if (Flags.in_filename.endsWith(".cl") || AstBinaryReader.isBinary(Flags.in_filename)) {
+				return null;
+			}
+			return new ASTLexer(new MappedFileReader(Flags.in_filename));
+		}
+		InputStream in = stdin();
+		return AstBinaryReader.isBinary(in) ? null : new ASTLexer(in);
+	}
+
+	/** The console input, buffered so that its first bytes can be
+	 * looked at before it is read */
+	private static InputStream stdin;
+
+	private static InputStream stdin() {
+		if (stdin == null) {
+			stdin = new BufferedInputStream(System.in);
+		}
+		return stdin;
+	}
+
+	/** Parses COOL source files into one program, or exits after
+	 * reporting the syntax errors found in them */
+	static Program parseSources(String[] files) throws IOException {
+		Classes classes = null;
+		int errors = 0;
+		int line = 0;
+		for (String file : files) {
+			CoolParser parser = new CoolParser(new CoolLexer(new MappedFileReader(file)), file);
+			classes = parser.parseClasses(classes);
+			errors += parser.errors();
+			line = parser.featuresLine();
+		}
+		if (errors > 0) {
+			System.err.println("Compilation halted due to lex and parse errors");
+			System.exit(1);
+		}
+		return new programc(line, classes);
+	}
+
+	/** Parses a text AST with the parser selected by the flags */
+	static Program parse(ASTLexer lexer) throws Exception {
+		if (Flags.descent_parser) {
+			return new AstReader(lexer).readProgram();
+		}
+		return (Program) new AstCup(lexer).parse().value;
+	}
+
+	/** Registers the classes and features of the program on the tree,
+	 * then type checks a flat copy of it, and returns a snapshot of the
+	 * checked copy; exits after reporting the errors if there are any */
+	static TypedProgram semantFlat(Program root) {
+		FeaturesVisitor features = new FeaturesVisitor();
+		features.onVisitStart();
+		((programc) root).acceptInHierarchyOrder(features);
+		features.onVisitEnd();
+		FlatAst flat = FlatAst.of(root);
+		new FlatTypeChecker(flat, ((programc) root).classes).check();
+		SemantErrorsManager.getInstance().validate(true);
+		return TypedProgram.freeze(root, flat);
+	}
+
+	/** Registers the features of the classes of the program down the
+	 * inheritance tree, then type checks the classes, both in
+	 * parallel; exits after reporting the errors if there are any */
+	static void semantParallel(Program root) {
+		Classes classes = ((programc) root).classes;
+		int threads = Runtime.getRuntime().availableProcessors();
+		FeaturesVisitor features = new FeaturesVisitor();
+		features.onVisitStart();
+		new FeaturesWavefront(classes, threads).register(features);
+		features.onVisitEnd();
+		new ParallelTypeChecker(classes, threads).check();
+		SemantErrorsManager.getInstance().validate(true);
+	}
+
+	/** Folds the constants of a checked program, checks the folded
+	 * program, and dumps the original program then the folded one.
+	 * They share the nodes the folding does not change, and the
+	 * original program is dumped after the folded one is checked,
+	 * with the types of its own check. */
+	static void dumpFolded(Program root) {
+		AstTypes types = AstTypes.getInstance();
+		Program folded = ConstantFolder.fold(root);
+		AstTypes foldedTypes = folded == root ? types : recheck(folded);
+		types.use();
+		root.dump_with_types(System.out, 0);
+		foldedTypes.use();
+		folded.dump_with_types(System.out, 0);
+	}
+
+	/** Reads AST from from consosle, or from the files given, and
+	 * outputs the new AST */
 	public static void main(String[] args) {
 		args = Flags.handleFlags(args);
+		newCompilation();
 		try {
-//			InputStream stream = new FileInputStream(args[0]);
-//			ASTLexer lexer = new ASTLexer(new InputStreamReader(stream));
-			ASTLexer lexer = new ASTLexer(System.in);
-			AstCup parser = new AstCup(lexer);
-			Object result = parser.parse().value;
-			Program root = (Program) result;
-			
-			//root.registerVisitor(new ClassesVisitor());
-            root.registerVisitor(new FeaturesVisitor());
-			root.registerVisitor(new TypeCheckerVisitor());
-		    
-			root.semant();
-			root.dump_with_types(System.out, 0);
+			ASTLexer lexer = Flags.pipeline ? textInput() : null;
+			if (lexer != null) {
+				new Pipeline(lexer).run(System.out);
+				return;
+			}
+			Program root = parse(args);
+			if (Flags.flat_ast) {
+				TypedProgram typed = semantFlat(root);
+				if (!Flags.binary_ast && !Flags.fold_constants) {
+					typed.dump(System.out);
+					return;
+				}
+				root = typed.toTree();
+			} else if (Flags.parallel_check) {
+				semantParallel(root);
+			} else {
+				//root.registerVisitor(new ClassesVisitor());
+				root.registerVisitor(new FeaturesVisitor());
+				if (Flags.semant_debug)
+					root.registerVisitor(new SemantStatsVisitor());
+				root.registerVisitor(new TypeCheckerVisitor());
+				root.semant();
+			}
+			if (Flags.fold_constants) {
+				dumpFolded(root);
+			} else if (Flags.binary_ast) {
+				new AstBinaryWriter().write(root, System.out);
+			} else {
+				root.dump_with_types(System.out, 0);
+			}
 		} catch (Exception ex) {
 			ex.printStackTrace(System.err);
 		}
@@ -30,8 +30,8 @@ class StringSymbol extends AbstractSymbol {
      * 
      * @see AbstractSymbol
      * */
-    public StringSymbol(String str, int len, int index) {
-	super(str, len, index);
+    public StringSymbol(AbstractTable table, int index) {
+	super(table, index);
     }
 
     /** Generates code for the string constant definition.  This method
@@ -42,6 +42,7 @@ class StringSymbol extends AbstractSymbol {
      *
      * */
     public void codeDef(int stringclasstag, PrintStream s) {
+	String str = getString();
 	IntSymbol lensym = (IntSymbol)AbstractTable.inttable.addInt(str.length());
 	
 	// Add -1 eye catcher
@@ -70,7 +71,7 @@ class StringSymbol extends AbstractSymbol {
 
     /** Returns a copy of this symbol */
     public Object clone() {
-	return new StringSymbol(str, str.length(), index);
+	return new StringSymbol(table, index);
     }
 }
 
@@ -22,12 +22,25 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 import java.io.PrintStream;
 
 class StringTable extends AbstractTable {
+    /** Creates an empty table. */
+    public StringTable() {
+	super(null);
+    }
+
+    /** Creates an empty table layered over base.
+     *
+     * @see AbstractTable#newCompilation()
+     * */
+    public StringTable(StringTable base) {
+	super(base);
+    }
+
     /** Creates a new StringSymbol object.
      * 
      * @see StringSymbol
      * */
-    protected AbstractSymbol getNewSymbol(String s, int len, int index) {
-	return new StringSymbol(s, len, index);
+    protected AbstractSymbol getNewSymbol(int index) {
+	return new StringSymbol(this, index);
     }
 
     /** Generates code for all string constants in the string table.  
@@ -35,13 +48,8 @@ class StringTable extends AbstractTable {
      * @param s the output stream
      * */
     public void codeStringTable(int stringclasstag, PrintStream s) {
-	StringSymbol sym = null;
-	for (int i = tbl.size() - 1; i >= 0; i--) {
-	    try {
-		sym = (StringSymbol)tbl.elementAt(i);
-	    } catch (ArrayIndexOutOfBoundsException ex) {
-		Utilities.fatalError("Unexpected exception: " + ex);
-	    }
+	for (int i = size() - 1; i >= 0; i--) {
+	    StringSymbol sym = (StringSymbol)lookup(i);
 	    sym.codeDef(stringclasstag, s);
 	}
     }
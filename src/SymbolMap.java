@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** A map from symbols to values, keyed by the symbol index.
+ *
+ * <p>
+ *
+ * Entries are kept in insertion order in parallel arrays, and an open
+ * addressing table of integers maps symbol indices to positions in
+ * those arrays.  Looking up a symbol therefore neither allocates nor
+ * calls <code>hashCode</code>, and iterating over the keys or values
+ * always visits them in the order they were first added.  A key may be
+ * mapped to <code>null</code>; use containsKey to tell such a key from
+ * a missing one.
+ *
+ * <p>
+ *
+ * As for symbol equality, it is only meaningful to use symbols from
+ * the same string table as keys of one map.
+ *
+ * @see AbstractSymbol
+ * @see SymbolSet
+ * */
+class SymbolMap<V> {
+    /** Keys in insertion order */
+    private AbstractSymbol[] keys;
+
+    /** Values, parallel to keys */
+    private Object[] vals;
+
+    /** Number of entries */
+    private int size;
+
+    /** Open addressing table of entry positions + 1; zero marks an
+     * empty slot */
+    private int[] slots;
+
+    /** Creates an empty map. */
+    public SymbolMap() {
+	this(4);
+    }
+
+    /** Creates an empty map with room for the given number of entries.
+     *
+     * @param capacity the expected number of entries
+     * */
+    public SymbolMap(int capacity) {
+	int n = 4;
+	while (n < capacity) {
+	    n <<= 1;
+	}
+	keys = new AbstractSymbol[n];
+	vals = new Object[n];
+	slots = new int[2 * n];
+    }
+
+    /** Returns the number of entries in this map. */
+    public int size() {
+	return size;
+    }
+
+    /** Tests if this map has no entries. */
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    /** Tests if the symbol is a key of this map.
+     *
+     * @param sym the symbol
+     * @return true if sym has been added to this map
+     * */
+    public boolean containsKey(AbstractSymbol sym) {
+	return find(sym.index) >= 0;
+    }
+
+    /** Returns the value associated with the symbol.
+     *
+     * @param sym the symbol
+     * @return the value, or null if sym is not a key of this map
+     * */
+    @SuppressWarnings("unchecked")
+    public V get(AbstractSymbol sym) {
+	int p = find(sym.index);
+	return p >= 0 ? (V)vals[p] : null;
+    }
+
+    /** Associates a value with the symbol, replacing any previous
+     * value.  A replaced key keeps its place in the iteration order.
+     *
+     * @param sym the symbol
+     * @param value the value
+     * @return the previous value, or null if sym was not a key
+     * */
+    @SuppressWarnings("unchecked")
+    public V put(AbstractSymbol sym, V value) {
+	int mask = slots.length - 1;
+	int q = slot(sym.index, mask);
+	for (int id; (id = slots[q]) != 0; q = (q + 1) & mask) {
+	    if (keys[id - 1].index == sym.index) {
+		V old = (V)vals[id - 1];
+		vals[id - 1] = value;
+		return old;
+	    }
+	}
+	if (size == keys.length) {
+	    grow();
+	    mask = slots.length - 1;
+	    q = slot(sym.index, mask);
+	    while (slots[q] != 0) {
+		q = (q + 1) & mask;
+	    }
+	}
+	keys[size] = sym;
+	vals[size] = value;
+	slots[q] = ++size;
+	return null;
+    }
+
+    /** Removes all entries from this map. */
+    public void clear() {
+	Arrays.fill(keys, 0, size, null);
+	Arrays.fill(vals, 0, size, null);
+	Arrays.fill(slots, 0);
+	size = 0;
+    }
+
+    /** Returns the key of the i-th entry in insertion order. */
+    public AbstractSymbol keyAt(int i) {
+	if (i >= size) {
+	    throw new IndexOutOfBoundsException(i + " >= " + size);
+	}
+	return keys[i];
+    }
+
+    /** Returns the value of the i-th entry in insertion order. */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int i) {
+	if (i >= size) {
+	    throw new IndexOutOfBoundsException(i + " >= " + size);
+	}
+	return (V)vals[i];
+    }
+
+    /** Returns the keys of this map in insertion order. */
+    public Iterable<AbstractSymbol> keys() {
+	return new Iterable<AbstractSymbol>() {
+	    public Iterator<AbstractSymbol> iterator() {
+		return new Entries<AbstractSymbol>(keys);
+	    }
+	};
+    }
+
+    /** Returns the values of this map in insertion order. */
+    public Iterable<V> values() {
+	return new Iterable<V>() {
+	    public Iterator<V> iterator() {
+		return new Entries<V>(vals);
+	    }
+	};
+    }
+
+    /** Gets the string representation of this map.
+     *
+     * @return the string rep
+     * */
+    public String toString() {
+	StringBuilder res = new StringBuilder("{");
+	for (int i = 0; i < size; i++) {
+	    if (i > 0) {
+		res.append(", ");
+	    }
+	    res.append(keys[i]).append('=').append(vals[i]);
+	}
+	return res.append('}').toString();
+    }
+
+    /** Returns the position of the entry for the index, or -1 */
+    private int find(int index) {
+	int mask = slots.length - 1;
+	for (int q = slot(index, mask); ; q = (q + 1) & mask) {
+	    int id = slots[q];
+	    if (id == 0) {
+		return -1;
+	    }
+	    if (keys[id - 1].index == index) {
+		return id - 1;
+	    }
+	}
+    }
+
+    /** Symbol indices are dense, so multiplying by an odd constant is
+     * enough to spread them over the slots. */
+    private static int slot(int index, int mask) {
+	int h = index * 0x9E3779B9;
+	return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** Doubles the entry arrays and rebuilds the slot table */
+    private void grow() {
+	int n = keys.length * 2;
+	keys = Arrays.copyOf(keys, n);
+	vals = Arrays.copyOf(vals, n);
+	slots = new int[2 * n];
+	int mask = slots.length - 1;
+	for (int i = 0; i < size; i++) {
+	    int q = slot(keys[i].index, mask);
+	    while (slots[q] != 0) {
+		q = (q + 1) & mask;
+	    }
+	    slots[q] = i + 1;
+	}
+    }
+
+    /** Iterates over the first size elements of one of the entry
+     * arrays.  Entries must not be added while iterating. */
+    private class Entries<E> implements Iterator<E> {
+	private final Object[] elems;
+	private int next;
+
+	Entries(Object[] elems) {
+	    this.elems = elems;
+	}
+
+	public boolean hasNext() {
+	    return next < size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E next() {
+	    if (next >= size) {
+		throw new NoSuchElementException();
+	    }
+	    return (E)elems[next++];
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
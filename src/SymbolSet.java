@@ -0,0 +1,79 @@
+import java.util.Iterator;
+
+/** A set of symbols, keyed by the symbol index.
+ *
+ * <p>
+ *
+ * This is a SymbolMap without values: membership tests neither
+ * allocate nor call <code>hashCode</code>, and iteration visits the
+ * symbols in the order they were first added.
+ *
+ * @see SymbolMap
+ * */
+class SymbolSet implements Iterable<AbstractSymbol> {
+    private final SymbolMap<Object> map;
+
+    /** Creates an empty set. */
+    public SymbolSet() {
+	map = new SymbolMap<Object>();
+    }
+
+    /** Creates a set holding the given symbols.
+     *
+     * @param syms the symbols
+     * */
+    public SymbolSet(AbstractSymbol... syms) {
+	map = new SymbolMap<Object>(syms.length);
+	for (AbstractSymbol sym : syms) {
+	    add(sym);
+	}
+    }
+
+    /** Returns the number of symbols in this set. */
+    public int size() {
+	return map.size();
+    }
+
+    /** Tests if the symbol is in this set. */
+    public boolean contains(AbstractSymbol sym) {
+	return map.containsKey(sym);
+    }
+
+    /** Adds the symbol to this set.
+     *
+     * @param sym the symbol
+     * @return true if sym was not in the set before
+     * */
+    public boolean add(AbstractSymbol sym) {
+	if (map.containsKey(sym)) {
+	    return false;
+	}
+	map.put(sym, null);
+	return true;
+    }
+
+    /** Removes all symbols from this set. */
+    public void clear() {
+	map.clear();
+    }
+
+    /** Returns the symbols of this set in insertion order. */
+    public Iterator<AbstractSymbol> iterator() {
+	return map.keys().iterator();
+    }
+
+    /** Gets the string representation of this set.
+     *
+     * @return the string rep
+     * */
+    public String toString() {
+	StringBuilder res = new StringBuilder("{");
+	for (int i = 0; i < map.size(); i++) {
+	    if (i > 0) {
+		res.append(", ");
+	    }
+	    res.append(map.keyAt(i));
+	}
+	return res.append('}').toString();
+    }
+}
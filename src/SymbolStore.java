@@ -0,0 +1,293 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** Compact storage for the strings of a string table.
+
+    <p>
+
+    Instead of keeping one <code>String</code> object per entry, the
+    characters of all entries are copied into a few large byte arenas,
+    and each entry is described by three integers (the arena holding
+    it, its offset and its length) in arrays addressed by the entry
+    index.  Entries whose characters all fit in one byte (which is the
+    case for every identifier and integer constant, and for string
+    constants written with the escapes the lexer understands) take one
+    byte per character; other entries take two.  The hashed index from
+    strings to entry indices is an open addressing table of integers,
+    so that no per-entry objects other than the symbols themselves are
+    needed.
+
+    <p>
+
+    The store is split into a fixed number of stripes, selected by the
+    hash of a string.  Each stripe owns its arena and its part of the
+    hashed index.  Looking up a string that is already stored never
+    locks; storing a new string locks its stripe only.  Indices are
+    handed out densely across all stripes.
+
+    @see AbstractTable */
+class SymbolStore {
+    /** Number of stripes (a power of two) */
+    private static final int STRIPES = 64;
+
+    /** log2 of the number of entries described by one metadata chunk */
+    private static final int CHUNK_BITS = 10;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** Number of integers describing one entry: stripe, offset, length */
+    private static final int META_WIDTH = 3;
+
+    /** Flag in the length of an entry stored with two bytes per char */
+    private static final int WIDE = 0x80000000;
+
+    /** A stripe: an arena and the part of the hashed index for strings
+     * whose hash selects this stripe.  Both are replaced by bigger
+     * copies when they fill up; readers that still hold the old copy
+     * see every entry that was complete before it was replaced. */
+    private static final class Stripe {
+	/** Characters of the entries of this stripe */
+	volatile byte[] arena = new byte[64];
+
+	/** Number of bytes used in the arena */
+	int used;
+
+	/** Open addressing table of (hash, index + 1) pairs; an index of
+	 * zero marks an empty slot */
+	volatile AtomicIntegerArray slots = new AtomicIntegerArray(2 * 8);
+
+	/** Number of occupied slots */
+	int entries;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /** Entry descriptions in chunks of CHUNK_SIZE entries */
+    private volatile int[][] meta = new int[16][];
+
+    /** Number of indices handed out so far */
+    private final AtomicInteger count = new AtomicInteger();
+
+    SymbolStore() {
+	for (int i = 0; i < STRIPES; i++) {
+	    stripes[i] = new Stripe();
+	}
+    }
+
+    /** Returns the number of entries in this store */
+    int size() {
+	return count.get();
+    }
+
+    /** Returns the index of the given string, adding it if necessary. */
+    int intern(String s) {
+	int hash = s.hashCode();
+	int i = find(s, null, 0, s.length(), hash);
+	return i >= 0 ? i : insert(s, null, 0, s.length(), hash);
+    }
+
+    /** Returns the index of the string held in buf[off .. off+len),
+     * adding it if necessary.  The characters are copied only if the
+     * string is not in the store yet. */
+    int intern(char[] buf, int off, int len) {
+	int hash = hash(buf, off, len);
+	int i = find(null, buf, off, len, hash);
+	return i >= 0 ? i : insert(null, buf, off, len, hash);
+    }
+
+    /** Returns the index of the given string, or -1 if it is not in the
+     * store. */
+    int indexOf(String s) {
+	return find(s, null, 0, s.length(), s.hashCode());
+    }
+
+    /** Returns the index of the string held in buf[off .. off+len), or
+     * -1 if it is not in the store. */
+    int indexOf(char[] buf, int off, int len) {
+	return find(null, buf, off, len, hash(buf, off, len));
+    }
+
+    /** Returns the characters of the entry with the given index as a new
+     * string. */
+    String stringAt(int index) {
+	int[] m = meta[index >>> CHUNK_BITS];
+	int p = (index & (CHUNK_SIZE - 1)) * META_WIDTH;
+	byte[] arena = stripes[m[p]].arena;
+	int start = m[p + 1];
+	int len = m[p + 2];
+	if ((len & WIDE) == 0) {
+	    return new String(arena, start, len, StandardCharsets.ISO_8859_1);
+	}
+	len &= ~WIDE;
+	char[] chars = new char[len];
+	for (int k = 0; k < len; k++) {
+	    chars[k] = wideCharAt(arena, start, k);
+	}
+	return new String(chars);
+    }
+
+    /** Tests whether the entry with the given index holds the first len
+     * characters of s. */
+    boolean equalsAt(int index, String s, int len) {
+	return matches(index, s, null, 0, len);
+    }
+
+    /** Same polynomial as String.hashCode, so that both intern paths
+     * agree on the hash of a string. */
+    private static int hash(char[] buf, int off, int len) {
+	int h = 0;
+	for (int k = off; k < off + len; k++) {
+	    h = 31 * h + buf[k];
+	}
+	return h;
+    }
+
+    /** Spreads the hash so that stripe and slot use independent bits */
+    private static int spread(int hash) {
+	return hash ^ (hash >>> 16);
+    }
+
+    /** Looks the string up without locking.  The string is given either
+     * as s or as buf[off .. off+len). */
+    private int find(String s, char[] buf, int off, int len, int hash) {
+	int h = spread(hash);
+	AtomicIntegerArray t = stripes[h & (STRIPES - 1)].slots;
+	int mask = (t.length() >> 1) - 1;
+	for (int p = (h >>> 6) & mask; ; p = (p + 1) & mask) {
+	    int id = t.get(2 * p + 1);
+	    if (id == 0) {
+		return -1;
+	    }
+	    if (t.get(2 * p) == hash && matches(id - 1, s, buf, off, len)) {
+		return id - 1;
+	    }
+	}
+    }
+
+    private boolean matches(int index, String s, char[] buf, int off, int len) {
+	int[] m = meta[index >>> CHUNK_BITS];
+	int p = (index & (CHUNK_SIZE - 1)) * META_WIDTH;
+	boolean wide = m[p + 2] < 0;
+	if ((m[p + 2] & ~WIDE) != len) {
+	    return false;
+	}
+	byte[] arena = stripes[m[p]].arena;
+	int start = m[p + 1];
+	for (int k = 0; k < len; k++) {
+	    char c = s != null ? s.charAt(k) : buf[off + k];
+	    char d = wide ? wideCharAt(arena, start, k)
+			  : (char)(arena[start + k] & 0xff);
+	    if (d != c) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static char wideCharAt(byte[] arena, int start, int k) {
+	return (char)(((arena[start + 2 * k] & 0xff) << 8)
+		      | (arena[start + 2 * k + 1] & 0xff));
+    }
+
+    /** Adds a string that was not found by find(), unless another thread
+     * added it in the meantime. */
+    private int insert(String s, char[] buf, int off, int len, int hash) {
+	int h = spread(hash);
+	int si = h & (STRIPES - 1);
+	Stripe st = stripes[si];
+	synchronized (st) {
+	    int i = find(s, buf, off, len, hash);
+	    if (i >= 0) {
+		return i;
+	    }
+	    i = count.getAndIncrement();
+
+	    boolean wide = false;
+	    for (int k = 0; k < len && !wide; k++) {
+		wide = (s != null ? s.charAt(k) : buf[off + k]) > 0xff;
+	    }
+	    int bytes = wide ? 2 * len : len;
+	    byte[] arena = st.arena;
+	    if (st.used + bytes > arena.length) {
+		byte[] bigger = new byte[Math.max(arena.length * 2, st.used + bytes)];
+		System.arraycopy(arena, 0, bigger, 0, st.used);
+		arena = bigger;
+	    }
+	    for (int k = 0; k < len; k++) {
+		char c = s != null ? s.charAt(k) : buf[off + k];
+		if (wide) {
+		    arena[st.used + 2 * k] = (byte)(c >>> 8);
+		    arena[st.used + 2 * k + 1] = (byte)c;
+		} else {
+		    arena[st.used + k] = (byte)c;
+		}
+	    }
+	    st.arena = arena;
+
+	    int[] m = metaChunk(i >>> CHUNK_BITS);
+	    int p = (i & (CHUNK_SIZE - 1)) * META_WIDTH;
+	    m[p] = si;
+	    m[p + 1] = st.used;
+	    m[p + 2] = wide ? len | WIDE : len;
+	    st.used += bytes;
+
+	    AtomicIntegerArray t = st.slots;
+	    if (2 * (st.entries + 1) > (t.length() >> 1)) {
+		t = rehash(t);
+		st.slots = t;
+	    }
+	    int mask = (t.length() >> 1) - 1;
+	    int q = (h >>> 6) & mask;
+	    while (t.get(2 * q + 1) != 0) {
+		q = (q + 1) & mask;
+	    }
+	    t.set(2 * q, hash);
+	    // publishes the arena and metadata written above
+	    t.set(2 * q + 1, i + 1);
+	    st.entries++;
+	    return i;
+	}
+    }
+
+    /** Copies a stripe's slots into a table twice as big */
+    private static AtomicIntegerArray rehash(AtomicIntegerArray t) {
+	int n = t.length() >> 1;
+	AtomicIntegerArray bigger = new AtomicIntegerArray(4 * n);
+	int mask = 2 * n - 1;
+	for (int p = 0; p < n; p++) {
+	    int id = t.get(2 * p + 1);
+	    if (id != 0) {
+		int hash = t.get(2 * p);
+		int q = (spread(hash) >>> 6) & mask;
+		while (bigger.get(2 * q + 1) != 0) {
+		    q = (q + 1) & mask;
+		}
+		bigger.set(2 * q, hash);
+		bigger.set(2 * q + 1, id);
+	    }
+	}
+	return bigger;
+    }
+
+    /** Returns metadata chunk c, allocating it if needed */
+    private int[] metaChunk(int c) {
+	int[][] dir = meta;
+	if (c < dir.length && dir[c] != null) {
+	    return dir[c];
+	}
+	synchronized (this) {
+	    dir = meta;
+	    if (c >= dir.length) {
+		int[][] bigger = new int[Math.max(dir.length * 2, c + 1)][];
+		System.arraycopy(dir, 0, bigger, 0, dir.length);
+		dir = bigger;
+	    }
+	    if (dir[c] == null) {
+		dir[c] = new int[CHUNK_SIZE * META_WIDTH];
+	    }
+	    meta = dir;
+	    return dir[c];
+	}
+    }
+}
@@ -20,7 +20,6 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 */
 
 import java.util.Stack;
-import java.util.Hashtable;
 
 /** Implements the symbol table data abstraction.
  *
@@ -48,28 +47,29 @@ import java.util.Hashtable;
  *
  * <p>
  *
- * Cool symbol tables are implemented using Java hashtables.  Each
- * hashtable represents a scope and associates a symbol with some
+ * Cool symbol tables are implemented using symbol maps.  Each
+ * SymbolMap represents a scope and associates a symbol with some
  * data. The ``data'' is whatever data the programmer wishes to
  * associate with each identifier.  An example illustrating the use of
  * symbol tables is in the file SymtabExample.java.
  *
  * @see AbstractSymbol
+ * @see SymbolMap
  * @see SymtabExample
  * */
 class SymbolTable <T> {
-    private Stack<Hashtable<AbstractSymbol, T>> tbl;
+    private Stack<SymbolMap<T>> tbl;
     
     /** Creates an empty symbol table. */
     public SymbolTable() {
-	tbl = new Stack<Hashtable<AbstractSymbol, T>>();
+	tbl = new Stack<SymbolMap<T>>();
     }
     
     /** Enters a new scope. A scope must be entered before anything
      * can be added to the table.
      * */
     public void enterScope() {
-	tbl.push(new Hashtable<AbstractSymbol, T>());
+	tbl.push(new SymbolMap<T>());
     }
 
     /** Exits the most recently entered scope. */
@@ -21,6 +21,7 @@ PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 
 import java.io.PrintStream;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** The base class for all AST nodes. 
 
@@ -224,6 +225,42 @@ Here is a complete use of one member:
     <code>cool-tree.java</code> file to add functions to the class of
     the appropriate phylum or constructor.
 
+    <h3>Changing a Tree</h3>
+
+    The components of a node are final: a tree does not change once it
+    is built, so subtrees may be shared between trees.  To change a
+    program, build new nodes along the path from the root to the change
+    and reuse all the others, e.g. to give the jth feature of the ith
+    class a new body:
+
+<pre>
+ class_c c = (class_c)classes.getNth(i);
+ method m = (method)c.getFeatures().getNth(j);
+ Program q = p.withClasses(classes.withNth(i,
+                 c.withFeatures(c.getFeatures().withNth(j, m.withExpr(body)))));
+</pre>
+
+    which copies one class, one method and two lists, whatever the size
+    of the program.  Expressions are changed the same way, by calling
+    their constructors with the children to keep.  <code>copy()</code>,
+    which copies the whole subtree, is not needed for this.
+
+    <p>
+
+    The types the checker finds are not kept in the nodes either, but
+    in an <a href="AstTypes.html">AstTypes</a> table of the check, by
+    node index, so checking a changed program does not change the types
+    of the nodes it shares with the original one.  To check a changed
+    program, register its classes again and check it with a table of
+    its own; the tables of both programs can then be used to dump them:
+
+<pre>
+ AstTypes types = AstTypes.getInstance();
+ Semant.recheck(q);
+ types.use();
+ p.dump_with_types(out, 0);
+</pre>
+
     <h3>Tips on Using the Tree Package</h3>
 
     There are a few common errors people make using a tree package.
@@ -248,9 +285,18 @@ Here is a complete use of one member:
 
 */
 abstract class TreeNode extends Decorator implements IVisitable {
+    /** The number of nodes built in the current compilation */
+    private static final AtomicInteger nodes = new AtomicInteger();
+
     /** line in the source file from which this node came. */
     protected int lineNumber;
 
+    /** The index of this node among the nodes built in its compilation,
+     * by which side tables such as AstTypes keep what they know about
+     * it.  The numbering starts again with each compilation, so a tree
+     * is checked in the compilation that built it. */
+    final int index = nodes.getAndIncrement();
+
     /** Builds a new tree node
      *
      * @param lineNumber the line in the source file from which this node came.
@@ -259,6 +305,19 @@ abstract class TreeNode extends Decorator implements IVisitable {
 	this.lineNumber = lineNumber;
     }
 
+    /** Returns the number of nodes built in the current compilation,
+     * which is above the index of any of them */
+    static int count() {
+	return nodes.get();
+    }
+
+    /** Numbers the nodes built from now on from 0, so that the tables
+     * indexed by node are the size of the program being compiled.
+     * @see Semant#newCompilation */
+    static void newCompilation() {
+	nodes.set(0);
+    }
+
     /** Creates a copy of this node.
      *
      * @return a copy of this node
@@ -275,12 +334,22 @@ abstract class TreeNode extends Decorator implements IVisitable {
 	return this;
     }
 
-    /** Retreives the line number from which this node came.
+    /** Retreives the line number from which this node came.  A leaf
+     * shared by several places of the program gives the line of the
+     * first of them; a walk of its class gives that of each.
      *
      * @return the line number
+     * @see AstLeaves.Lines
      * */
     public int getLineNumber() {
-	return lineNumber;
+	return lineNumber >= 0 ? lineNumber : AstLeaves.unshare(lineNumber);
+    }
+
+    /** Returns whether this node is a leaf shared by several places of
+     * the program, whose lines are kept by the classes it is in
+     * @see AstLeaves */
+    boolean isSharedLeaf() {
+	return lineNumber < 0;
     }
 
     /** Pretty-prints this node to this output stream.
@@ -290,6 +359,71 @@ abstract class TreeNode extends Decorator implements IVisitable {
      * */
     public abstract void dump(PrintStream out, int n);
 
+    /** Passes a visitor over this node and its subtree.
+     *
+     * The walk is done by a TreeWalker, which keeps its stack on the
+     * heap, so that it does not depend on how deep the tree is.
+     *
+     * @param visitor the visitor
+     * @return what this node returns to its parent
+     * @see #acceptStep
+     * */
+    public Object accept(ITreeVisitor visitor) {
+	return TreeWalker.accept(visitor, this);
+    }
+
+    /** Does the kth step of accept: what this node does before its
+     * (k+1)th child, returning that child, or after its last child,
+     * returning null.  A node sets what it returns to its parent with
+     * w.setResult() in its last step, and reads what a child returned
+     * with w.last() in the step after the child.
+     *
+     * @param visitor the visitor
+     * @param k the step, from 0
+     * @param w the walker
+     * @return the next child to visit, or null once this node is done
+     * */
+    abstract TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w);
+
+    /** Pretty-prints this node and its subtree with their types.
+     *
+     * @param out the output stream
+     * @param n the number of spaces to indent the output
+     * @see #dumpStep
+     * */
+    public void dump_with_types(PrintStream out, int n) {
+	TreeWalker.dump(out, n, this);
+    }
+
+    /** Does the kth step of dump_with_types, the way acceptStep does
+     * the kth step of accept.  The children are dumped at n + 2.
+     *
+     * @param out the output stream
+     * @param n the number of spaces to indent the output
+     * @param k the step, from 0
+     * @return the next child to dump, or null once this node is done
+     * */
+    abstract TreeNode dumpStep(PrintStream out, int n, int k);
+
+    /** Writes this node and its subtree in the binary AST format.
+     *
+     * @param out the writer
+     * @see #binaryStep
+     * @see AstBinaryWriter
+     * */
+    public void dump_binary(AstBinaryWriter out) {
+	TreeWalker.writeBinary(out, this);
+    }
+
+    /** Does the kth step of dump_binary, the way acceptStep does the
+     * kth step of accept.
+     *
+     * @param out the writer
+     * @param k the step, from 0
+     * @return the next child to write, or null once this node is done
+     * */
+    abstract TreeNode binaryStep(AstBinaryWriter out, int k);
+
     /** Copies a boolean value.
      * 
      * This method is used internally by the generated AST classes
@@ -326,10 +460,15 @@ abstract class TreeNode extends Decorator implements IVisitable {
 
     /** Dumps a printable representation of current line number
      * 
-     * This method is used internally by the generated AST classes
+     * This method is used internally by the generated AST classes.  A
+     * shared leaf has a line per occurrence: the walker dumps that of
+     * the occurrence.
+     * @see AstLeaves
      * */
     protected void dump_line(PrintStream out, int n) {
-	out.println(Utilities.pad(n) + "#" + lineNumber);
+	if (!isSharedLeaf()) {
+	    out.println(Utilities.pad(n) + "#" + lineNumber);
+	}
     }
     
    
@@ -0,0 +1,164 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/** Walks a tree without recursion, keeping the nodes it is in on a
+    stack of its own.
+
+    <p>
+
+    accept(), dump_with_types() and dump_binary() used to call
+    themselves on the children of each node, so the depth of a tree was
+    bounded by the size of the thread stack: a long chain of lets or of
+    additions, as generated programs have, overflowed it.  They now hand
+    the tree to a walker, and each node describes its part of the walk
+    as a sequence of steps: acceptStep(visitor, k, walker),
+    dumpStep(out, n, k) and binaryStep(out, k) do what the node does
+    before its (k+1)th child, and return that
+    child, or do what it does after the last one and return null.  The
+    walker calls step 0 of the root, descends into the child it gets,
+    and calls the next step of a node once the child returned by the
+    previous one is done.  Its stack grows on the heap, so the depth of
+    a tree is only bounded by the memory.
+
+    <p>
+
+    What a node returns from accept is passed to its parent: the
+    parent reads it with last() in the step after the child, and a node
+    sets its own with setResult() in its last step.  A node that needs
+    to keep something from one step to the next keeps it in the state
+    of its frame.
+
+    @see TreeNode#acceptStep
+    @see TreeNode#dumpStep
+    @see TreeNode#binaryStep */
+class TreeWalker {
+    private TreeNode[] nodes = new TreeNode[64];
+
+    /** Next step of each node */
+    private int[] steps = new int[64];
+
+    /** Indentation of each node, for dumps */
+    private int[] indents = new int[64];
+
+    /** State kept by each node between its steps */
+    private Object[] states = new Object[64];
+
+    /** Index of the top frame */
+    private int top = -1;
+
+    /** Result of the node whose step is running */
+    private Object result;
+
+    /** Result of the last node done */
+    private Object last;
+
+    /** Walks a tree with a visitor.
+     *
+     * @param visitor the visitor
+     * @param root the root of the tree
+     * @return what the root returns to its parent
+     * */
+    static Object accept(ITreeVisitor visitor, TreeNode root) {
+	TreeWalker w = new TreeWalker();
+	w.push(root, 0);
+	while (w.top >= 0) {
+	    TreeNode n = w.nodes[w.top];
+	    w.result = null;
+	    TreeNode child = n.acceptStep(visitor, w.steps[w.top]++, w);
+	    if (child != null) {
+		w.push(child, 0);
+	    } else {
+		w.last = w.result;
+		w.pop();
+	    }
+	}
+	return w.last;
+    }
+
+    /** Dumps a tree with its types.
+     *
+     * @param out the stream
+     * @param n the indentation of the root
+     * @param root the root of the tree
+     * */
+    static void dump(PrintStream out, int n, TreeNode root) {
+	TreeWalker w = new TreeWalker();
+	AstLeaves.Lines lines = new AstLeaves.Lines();
+	w.push(root, n);
+	while (w.top >= 0) {
+	    int indent = w.indents[w.top];
+	    TreeNode node = w.nodes[w.top];
+	    if (w.steps[w.top] == 0) {
+		// a shared leaf has the line of its occurrence
+		if (node instanceof class_c) {
+		    lines.enter((class_c)node);
+		} else if (node.isSharedLeaf()) {
+		    out.println(Utilities.pad(indent) + "#" + lines.line(node));
+		}
+	    }
+	    TreeNode child = node.dumpStep(out, indent, w.steps[w.top]++);
+	    if (child != null) {
+		w.push(child, indent + 2);
+	    } else {
+		w.pop();
+	    }
+	}
+    }
+
+    /** Writes a tree in the binary format.
+     *
+     * @param out the writer
+     * @param root the root of the tree
+     * */
+    static void writeBinary(AstBinaryWriter out, TreeNode root) {
+	TreeWalker w = new TreeWalker();
+	w.push(root, 0);
+	while (w.top >= 0) {
+	    TreeNode child = w.nodes[w.top].binaryStep(out, w.steps[w.top]++);
+	    if (child != null) {
+		w.push(child, 0);
+	    } else {
+		w.pop();
+	    }
+	}
+    }
+
+    /** Returns what the last child done returned from accept */
+    Object last() {
+	return last;
+    }
+
+    /** Sets what the node returns from accept */
+    void setResult(Object r) {
+	result = r;
+    }
+
+    /** Returns the state the node kept, or null */
+    Object state() {
+	return states[top];
+    }
+
+    /** Keeps a state for the next steps of the node */
+    void setState(Object s) {
+	states[top] = s;
+    }
+
+    private void push(TreeNode n, int indent) {
+	if (++top == nodes.length) {
+	    int len = 2 * nodes.length;
+	    nodes = Arrays.copyOf(nodes, len);
+	    steps = Arrays.copyOf(steps, len);
+	    indents = Arrays.copyOf(indents, len);
+	    states = Arrays.copyOf(states, len);
+	}
+	nodes[top] = n;
+	steps[top] = 0;
+	indents[top] = indent;
+    }
+
+    private void pop() {
+	nodes[top] = null;
+	states[top] = null;
+	top--;
+    }
+}
@@ -0,0 +1,612 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A checked program that does not change, and that any number of
+    threads may read at the same time.
+
+    <p>
+
+    The results of semantic analysis are spread over the tree, whose
+    nodes the next check of a changed copy may retype, and over the
+    ClassTable and SemantState singletons, which the next compilation
+    resets.  freeze() copies what they hold into arrays of its own,
+    filled once by the constructor and only read afterwards; since they
+    are all reached through final fields, a thread that is handed the
+    snapshot sees them complete, without locks.
+
+    <p>
+
+    The snapshot holds:
+
+    <ul>
+      <li>the classes, numbered with the basic classes first (Object,
+          IO, Int, Bool, String) and then those of the program in
+          source order, with the number of their parent and their depth
+          in the hierarchy;
+      <li>the methods, numbered in the order of the classes and of
+          their features, with their class, name, formals and return
+          type; and for each class the methods its objects dispatch to,
+          in the order they are first defined along the inheritance
+          chain, an override taking the slot of the method it overrides;
+      <li>the attributes, numbered the same way, and for each class
+          those of its objects, inherited ones first;
+      <li>the nodes of the program as FlatAst numbers them, with their
+          kind, line, children, symbols and types.
+    </ul>
+
+    Symbols keep their strings in the string tables, which are not
+    frozen: the strings of the symbols of a snapshot never change, but
+    adding to the tables while other threads read them is not safe.
+
+    <p>
+
+    The -F flag checks a flat copy of the program and dumps it from the
+    snapshot of the copy, with the types the snapshot holds.
+
+    @see FlatAst
+    @see Semant#semantFlat */
+class TypedProgram {
+    /** The basic classes, which come first */
+    private static final AbstractSymbol[] BASIC_CLASSES = {
+	TreeConstants.Object_, TreeConstants.IO, TreeConstants.Int, TreeConstants.Bool, TreeConstants.Str
+    };
+
+    /** Names of the classes, by class number */
+    private final AbstractSymbol[] className;
+
+    /** Number of the parent of each class, or -1 for Object */
+    private final int[] parent;
+
+    /** Depth of each class in the hierarchy, 0 for Object */
+    private final int[] depth;
+
+    /** Class numbers by name */
+    private final SymbolMap<Integer> classes;
+
+    /** Class, name, formal names and types and return type of each
+     * method, by method number */
+    private final int[] methodClass;
+    private final AbstractSymbol[] methodName;
+    private final AbstractSymbol[][] formalName;
+    private final AbstractSymbol[][] formalType;
+    private final AbstractSymbol[] returnType;
+
+    /** Methods of the objects of each class, by slot */
+    private final int[][] dispatch;
+
+    /** Class, name and type of each attribute, by attribute number */
+    private final int[] attrClass;
+    private final AbstractSymbol[] attrName;
+    private final AbstractSymbol[] attrType;
+
+    /** Attributes of the objects of each class */
+    private final int[][] attrs;
+
+    /** Node of each method and attribute, or FlatAst.NONE for those of
+     * the basic classes */
+    private final int[] methodNode;
+    private final int[] attrNode;
+
+    /** The nodes, which are not handed out, as their store may be
+     * written */
+    private final FlatAst ast;
+
+    /** Takes a snapshot of a program that passed semantic analysis.
+     *
+     * @param program the checked program
+     * @return the snapshot
+     * */
+    static TypedProgram freeze(Program program) {
+	return new TypedProgram((programc)program, FlatAst.of(program));
+    }
+
+    /** Takes a snapshot of a program whose flat copy passed semantic
+     * analysis.  The snapshot takes the copy over, and nothing may
+     * write it afterwards.
+     *
+     * @param program the program
+     * @param ast the checked flat copy of the program
+     * @return the snapshot
+     * */
+    static TypedProgram freeze(Program program, FlatAst ast) {
+	return new TypedProgram((programc)program, ast);
+    }
+
+    private TypedProgram(programc program, FlatAst ast) {
+	List<Class_> all = new ArrayList<Class_>();
+	for (AbstractSymbol basic : BASIC_CLASSES) {
+	    all.add(ClassTable.getInstance().lookup(basic));
+	}
+	for (int i = 0; i < program.classes.getLength(); i++) {
+	    all.add(program.classes.getNth(i));
+	}
+	int n = all.size();
+	className = new AbstractSymbol[n];
+	classes = new SymbolMap<Integer>();
+	for (int c = 0; c < n; c++) {
+	    className[c] = all.get(c).getName();
+	    classes.put(className[c], c);
+	}
+	parent = new int[n];
+	for (int c = 0; c < n; c++) {
+	    parent[c] = c == 0 ? -1 : classes.get(all.get(c).getParent());
+	}
+	depth = new int[n];
+	for (int c = 0; c < n; c++) {
+	    for (int p = parent[c]; p != -1; p = parent[p]) {
+		depth[c]++;
+	    }
+	}
+
+	this.ast = ast;
+	int[] featureNode = new int[0];
+	int featureCount = 0;
+	int classList = ast.child(0);
+	for (int cn = ast.child(classList); cn != FlatAst.NONE; cn = ast.next(cn)) {
+	    for (int f = ast.child(ast.child(cn)); f != FlatAst.NONE; f = ast.next(f)) {
+		if (featureCount == featureNode.length) {
+		    featureNode = Arrays.copyOf(featureNode, Math.max(16, 2 * featureCount));
+		}
+		featureNode[featureCount++] = f;
+	    }
+	}
+
+	List<method> methods = new ArrayList<method>();
+	List<attr> attributes = new ArrayList<attr>();
+	List<Integer> mNodes = new ArrayList<Integer>();
+	List<Integer> aNodes = new ArrayList<Integer>();
+	int[] firstMethod = new int[n + 1];
+	int[] firstAttr = new int[n + 1];
+	int next = 0;
+	for (int c = 0; c < n; c++) {
+	    firstMethod[c] = methods.size();
+	    firstAttr[c] = attributes.size();
+	    Features features = all.get(c).getFeatures();
+	    for (int i = 0; i < features.getLength(); i++) {
+		Feature f = features.getNth(i);
+		int node = c < BASIC_CLASSES.length ? FlatAst.NONE : featureNode[next++];
+		if (f instanceof method) {
+		    methods.add((method)f);
+		    mNodes.add(node);
+		} else {
+		    attributes.add((attr)f);
+		    aNodes.add(node);
+		}
+	    }
+	}
+	firstMethod[n] = methods.size();
+	firstAttr[n] = attributes.size();
+
+	int m = methods.size();
+	methodClass = new int[m];
+	methodName = new AbstractSymbol[m];
+	formalName = new AbstractSymbol[m][];
+	formalType = new AbstractSymbol[m][];
+	returnType = new AbstractSymbol[m];
+	methodNode = new int[m];
+	for (int c = 0; c < n; c++) {
+	    for (int k = firstMethod[c]; k < firstMethod[c + 1]; k++) {
+		method mt = methods.get(k);
+		methodClass[k] = c;
+		methodName[k] = mt.getName();
+		returnType[k] = mt.getReturnType();
+		Formals formals = mt.getFormals();
+		formalName[k] = new AbstractSymbol[formals.getLength()];
+		formalType[k] = new AbstractSymbol[formals.getLength()];
+		for (int i = 0; i < formals.getLength(); i++) {
+		    formalName[k][i] = formals.getNth(i).getName();
+		    formalType[k][i] = formals.getNth(i).getTypeDecl();
+		}
+		methodNode[k] = mNodes.get(k);
+	    }
+	}
+	int a = attributes.size();
+	attrClass = new int[a];
+	attrName = new AbstractSymbol[a];
+	attrType = new AbstractSymbol[a];
+	attrNode = new int[a];
+	for (int c = 0; c < n; c++) {
+	    for (int k = firstAttr[c]; k < firstAttr[c + 1]; k++) {
+		attr at = attributes.get(k);
+		attrClass[k] = c;
+		attrName[k] = at.getFeatureName();
+		attrType[k] = at.getReturnType();
+		attrNode[k] = aNodes.get(k);
+	    }
+	}
+
+	/* a parent may come after its children in source order, so the
+	 * tables are filled in order of depth */
+	int[] start = new int[n + 1];
+	for (int c = 0; c < n; c++) {
+	    start[depth[c] + 1]++;
+	}
+	for (int d = 0; d < n; d++) {
+	    start[d + 1] += start[d];
+	}
+	int[] byDepth = new int[n];
+	for (int c = 0; c < n; c++) {
+	    byDepth[start[depth[c]]++] = c;
+	}
+	dispatch = new int[n][];
+	attrs = new int[n][];
+	for (int c : byDepth) {
+	    int[] slots = parent[c] == -1 ? new int[0] : dispatch[parent[c]];
+	    int size = slots.length;
+	    slots = Arrays.copyOf(slots, size + firstMethod[c + 1] - firstMethod[c]);
+	    for (int k = firstMethod[c]; k < firstMethod[c + 1]; k++) {
+		int s = 0;
+		while (s < size && !methodName[slots[s]].equals(methodName[k])) {
+		    s++;
+		}
+		slots[s] = k;
+		if (s == size) {
+		    size++;
+		}
+	    }
+	    dispatch[c] = Arrays.copyOf(slots, size);
+
+	    int[] inherited = parent[c] == -1 ? new int[0] : attrs[parent[c]];
+	    int[] own = Arrays.copyOf(inherited, inherited.length + firstAttr[c + 1] - firstAttr[c]);
+	    for (int k = firstAttr[c]; k < firstAttr[c + 1]; k++) {
+		own[inherited.length + k - firstAttr[c]] = k;
+	    }
+	    attrs[c] = own;
+	}
+    }
+
+    /** Returns the number of classes */
+    int classCount() {
+	return className.length;
+    }
+
+    /** Returns the number of a class, or -1 if there is none of this
+     * name */
+    int classNumber(AbstractSymbol name) {
+	Integer c = classes.get(name);
+	return c == null ? -1 : c;
+    }
+
+    AbstractSymbol className(int c) {
+	return className[c];
+    }
+
+    /** Returns the number of the parent of a class, or -1 for Object */
+    int parent(int c) {
+	return parent[c];
+    }
+
+    /** Returns whether a class is a subclass of another, or the same */
+    boolean isSubClass(int c, int p) {
+	while (depth[c] > depth[p]) {
+	    c = parent[c];
+	}
+	return c == p;
+    }
+
+    /** Returns the closest class both classes inherit from */
+    int leastUpperBound(int c, int d) {
+	while (depth[c] > depth[d]) {
+	    c = parent[c];
+	}
+	while (depth[d] > depth[c]) {
+	    d = parent[d];
+	}
+	while (c != d) {
+	    c = parent[c];
+	    d = parent[d];
+	}
+	return c;
+    }
+
+    /** Returns the number of methods of the objects of a class */
+    int methodCount(int c) {
+	return dispatch[c].length;
+    }
+
+    /** Returns the method in a slot of the objects of a class */
+    int method(int c, int slot) {
+	return dispatch[c][slot];
+    }
+
+    /** Returns the method a name dispatches to on the objects of a
+     * class, or -1 if there is none */
+    int lookupMethod(int c, AbstractSymbol name) {
+	int[] slots = dispatch[c];
+	for (int s = 0; s < slots.length; s++) {
+	    if (methodName[slots[s]].equals(name)) {
+		return slots[s];
+	    }
+	}
+	return -1;
+    }
+
+    /** Returns the class that defines a method */
+    int methodClass(int m) {
+	return methodClass[m];
+    }
+
+    AbstractSymbol methodName(int m) {
+	return methodName[m];
+    }
+
+    int formalCount(int m) {
+	return formalType[m].length;
+    }
+
+    AbstractSymbol formalName(int m, int k) {
+	return formalName[m][k];
+    }
+
+    AbstractSymbol formalType(int m, int k) {
+	return formalType[m][k];
+    }
+
+    AbstractSymbol returnType(int m) {
+	return returnType[m];
+    }
+
+    /** Returns the node of a method, or FlatAst.NONE for a method of a
+     * basic class */
+    int methodNode(int m) {
+	return methodNode[m];
+    }
+
+    /** Returns the number of attributes of the objects of a class */
+    int attrCount(int c) {
+	return attrs[c].length;
+    }
+
+    /** Returns the k-th attribute of the objects of a class, inherited
+     * ones first */
+    int attr(int c, int k) {
+	return attrs[c][k];
+    }
+
+    /** Returns the attribute a name stands for in the objects of a
+     * class, or -1 if there is none */
+    int lookupAttr(int c, AbstractSymbol name) {
+	int[] list = attrs[c];
+	for (int k = 0; k < list.length; k++) {
+	    if (attrName[list[k]].equals(name)) {
+		return list[k];
+	    }
+	}
+	return -1;
+    }
+
+    /** Returns the class that defines an attribute */
+    int attrClass(int a) {
+	return attrClass[a];
+    }
+
+    AbstractSymbol attrName(int a) {
+	return attrName[a];
+    }
+
+    AbstractSymbol attrType(int a) {
+	return attrType[a];
+    }
+
+    /** Returns the node of an attribute, or FlatAst.NONE for an
+     * attribute of a basic class */
+    int attrNode(int a) {
+	return attrNode[a];
+    }
+
+    /** Returns the number of nodes; node 0 is the program */
+    int nodeCount() {
+	return ast.size();
+    }
+
+    /** Returns the kind of a node, as FlatAst.kind */
+    int kind(int n) {
+	return ast.kind(n);
+    }
+
+    int line(int n) {
+	return ast.line(n);
+    }
+
+    /** Returns the first child of a node, or FlatAst.NONE */
+    int child(int n) {
+	return ast.child(n);
+    }
+
+    /** Returns the next sibling of a node, or FlatAst.NONE */
+    int next(int n) {
+	return ast.next(n);
+    }
+
+    /** Returns the k-th symbol of a node */
+    AbstractSymbol symbol(int n, int k) {
+	return ast.symbol(n, k);
+    }
+
+    /** Returns the value of a boolean constant */
+    boolean bool(int n) {
+	return ast.bool(n);
+    }
+
+    /** Returns the type of an expression node */
+    AbstractSymbol type(int n) {
+	return ast.type(n);
+    }
+
+    /** Returns the type dump_with_types shows for an expression node */
+    AbstractSymbol dumpType(int n) {
+	AbstractSymbol rt = ast.rtype(n);
+	return rt != null ? rt : ast.type(n);
+    }
+    /** Builds a tree of the program, with the types of the snapshot,
+     * for the writers that need one.  The classes are not registered in
+     * the class table. */
+    Program toTree() {
+	return ast.toTree();
+    }
+
+    /** Dumps the program as dump_with_types dumps a tree, with the
+     * types of the snapshot.  The nodes are walked with a stack of
+     * their own, as TreeWalker walks a tree.
+     *
+     * @param out the stream
+     * */
+    void dump(PrintStream out) {
+	int[] nodes = new int[64];
+	int[] indents = new int[64];
+	int[] steps = new int[64];
+	/* the next child of each node to dump */
+	int[] next = new int[64];
+	int top = 0;
+	nodes[0] = 0;
+	next[0] = ast.child(0);
+	while (top >= 0) {
+	    int n = nodes[top];
+	    int indent = indents[top];
+	    int c = next[top];
+	    dumpBefore(out, n, indent, steps[top]++);
+	    if (c == FlatAst.NONE) {
+		dumpAfter(out, n, indent);
+		top--;
+		continue;
+	    }
+	    next[top] = ast.next(c);
+	    if (++top == nodes.length) {
+		nodes = Arrays.copyOf(nodes, 2 * top);
+		indents = Arrays.copyOf(indents, 2 * top);
+		steps = Arrays.copyOf(steps, 2 * top);
+		next = Arrays.copyOf(next, 2 * top);
+	    }
+	    nodes[top] = c;
+	    // the elements of a list are dumped as children of its parent
+	    indents[top] = ast.kind(c) >= FlatAst.CLASSES ? indent : indent + 2;
+	    steps[top] = 0;
+	    next[top] = ast.child(c);
+	}
+    }
+
+    /** Dumps what comes before the kth child of a node, or before its
+     * end if it has k children */
+    private void dumpBefore(PrintStream out, int n, int indent, int k) {
+	int kind = ast.kind(n);
+	if (k == 1) {
+	    if (kind == ASTConstants.METHOD) {
+		dumpSymbol(out, indent + 2, symbol(n, 1));
+	    } else if (kind == ASTConstants.STATIC_DISPATCH) {
+		dumpSymbol(out, indent + 2, symbol(n, 0));
+		dumpSymbol(out, indent + 2, symbol(n, 1));
+		out.println(Utilities.pad(indent + 2) + "(");
+	    } else if (kind == ASTConstants.DISPATCH) {
+		dumpSymbol(out, indent + 2, symbol(n, 0));
+		out.println(Utilities.pad(indent + 2) + "(");
+	    }
+	}
+	if (k != 0 || kind >= FlatAst.CLASSES) {
+	    return;
+	}
+	out.println(Utilities.pad(indent) + "#" + ast.line(n));
+	out.println(Utilities.pad(indent) + "_" + NAMES[kind]);
+	switch (kind) {
+	case ASTConstants.CLASS:
+	    dumpSymbol(out, indent + 2, symbol(n, 0));
+	    dumpSymbol(out, indent + 2, symbol(n, 1));
+	    out.print(Utilities.pad(indent + 2) + "\"");
+	    Utilities.printEscapedString(out, symbol(n, 2).getString());
+	    out.println("\"\n" + Utilities.pad(indent + 2) + "(");
+	    break;
+	case ASTConstants.METHOD:
+	case ASTConstants.ASSIGN:
+	case ASTConstants.INT:
+	case ASTConstants.NEW:
+	case ASTConstants.OBJECT:
+	    dumpSymbol(out, indent + 2, symbol(n, 0));
+	    break;
+	case ASTConstants.ATTR:
+	case ASTConstants.FORMAL:
+	case ASTConstants.BRANCH:
+	case ASTConstants.LET:
+	    dumpSymbol(out, indent + 2, symbol(n, 0));
+	    dumpSymbol(out, indent + 2, symbol(n, 1));
+	    break;
+	case ASTConstants.BOOL:
+	    out.println(Utilities.pad(indent + 2) + (bool(n) ? "1" : "0"));
+	    break;
+	case ASTConstants.STR:
+	    out.print(Utilities.pad(indent + 2) + "\"");
+	    Utilities.printEscapedString(out, symbol(n, 0).getString());
+	    out.println("\"");
+	    break;
+	default:
+	    break;
+	}
+    }
+
+    /** Dumps what comes after the children of a node */
+    private void dumpAfter(PrintStream out, int n, int indent) {
+	switch (ast.kind(n)) {
+	case ASTConstants.PROGRAM:
+	case ASTConstants.METHOD:
+	case ASTConstants.ATTR:
+	case ASTConstants.FORMAL:
+	case ASTConstants.BRANCH:
+	case FlatAst.CLASSES:
+	case FlatAst.FEATURES:
+	case FlatAst.FORMALS:
+	case FlatAst.EXPRESSIONS:
+	case FlatAst.CASES:
+	    return;
+	case ASTConstants.CLASS:
+	    out.println(Utilities.pad(indent + 2) + ")");
+	    return;
+	case ASTConstants.STATIC_DISPATCH:
+	case ASTConstants.DISPATCH:
+	    out.println(Utilities.pad(indent + 2) + ")");
+	    break;
+	default:
+	    break;
+	}
+	AbstractSymbol type = dumpType(n);
+	out.println(Utilities.pad(indent) + ": " + (type != null ? type.getString() : "_no_type"));
+    }
+
+    private static void dumpSymbol(PrintStream out, int indent, AbstractSymbol sym) {
+	out.println(Utilities.pad(indent) + sym.getString());
+    }
+
+    /** The names of the kinds of nodes in the dump, by kind */
+    private static final String[] NAMES = new String[FlatAst.CLASSES];
+    static {
+	NAMES[ASTConstants.PROGRAM] = "program";
+	NAMES[ASTConstants.CLASS] = "class";
+	NAMES[ASTConstants.METHOD] = "method";
+	NAMES[ASTConstants.ATTR] = "attr";
+	NAMES[ASTConstants.FORMAL] = "formal";
+	NAMES[ASTConstants.BRANCH] = "branch";
+	NAMES[ASTConstants.ASSIGN] = "assign";
+	NAMES[ASTConstants.STATIC_DISPATCH] = "static_dispatch";
+	NAMES[ASTConstants.DISPATCH] = "dispatch";
+	NAMES[ASTConstants.COND] = "cond";
+	NAMES[ASTConstants.LOOP] = "loop";
+	NAMES[ASTConstants.TYPCASE] = "typcase";
+	NAMES[ASTConstants.BLOCK] = "block";
+	NAMES[ASTConstants.LET] = "let";
+	NAMES[ASTConstants.PLUS] = "plus";
+	NAMES[ASTConstants.SUB] = "sub";
+	NAMES[ASTConstants.MUL] = "mul";
+	NAMES[ASTConstants.DIVIDE] = "divide";
+	NAMES[ASTConstants.NEG] = "neg";
+	NAMES[ASTConstants.LT] = "lt";
+	NAMES[ASTConstants.EQ] = "eq";
+	NAMES[ASTConstants.LEQ] = "leq";
+	NAMES[ASTConstants.COMP] = "comp";
+	NAMES[ASTConstants.INT] = "int";
+	NAMES[ASTConstants.STR] = "string";
+	NAMES[ASTConstants.BOOL] = "bool";
+	NAMES[ASTConstants.NEW] = "new";
+	NAMES[ASTConstants.ISVOID] = "isvoid";
+	NAMES[ASTConstants.NO_EXPR] = "no_expr";
+	NAMES[ASTConstants.OBJECT] = "object";
+    }
+}
@@ -9,10 +9,7 @@
 
 
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.io.PrintStream;
-import java.util.Vector;
 
 
 /** Defines simple phylum Program */
@@ -21,7 +18,6 @@ abstract class Program extends TreeNode {
     protected Program(int lineNumber) {
         super(lineNumber);
     }
-    public abstract void dump_with_types(PrintStream out, int n);
     public abstract void semant();
     public abstract void cgen(PrintStream s);
     
@@ -36,12 +32,15 @@ abstract class Class_ extends TreeNode implements IVisitable {
 	protected Class_(int lineNumber) {
 		super(lineNumber);
 	}
-	public abstract void dump_with_types(PrintStream out, int n);
 	public abstract AbstractSymbol getName();
 	public abstract AbstractSymbol getParent();
 	public abstract AbstractSymbol getFilename();
 	public abstract Features getFeatures();
 	public abstract FeaturesTable getFeaturesTable();
+
+	/** Number of scopes the type checker opened for the class */
+	public int getNumScopes() { return AstTypes.getInstance().numScopes(this); }
+	public void setNumScopes(int n) { AstTypes.getInstance().setNumScopes(this, n); }
 }
 
 
@@ -54,7 +53,7 @@ class Classes extends ListNode {
 	public Class getElementClass() {
 		return elementClass;
 	}
-	protected Classes(int lineNumber, Vector elements) {
+	protected Classes(int lineNumber, TreeNode[] elements) {
 		super(lineNumber, elements);
 	}
 	/** Creates an empty "Classes" list */
@@ -66,17 +65,21 @@ class Classes extends ListNode {
 		addElement(elem);
 		return this;
 	}
+	/** Retreives nth element of this list */
+	public Class_ getNth(int n) {
+		return (Class_)super.getNth(n);
+	}
+	/** Returns a copy of this list with its nth element replaced,
+	 * sharing the other elements */
+	public Classes withNth(int n, Class_ elem) {
+		return new Classes(lineNumber, replaceNth(n, elem));
+	}
 	public TreeNode copy() {
 		return new Classes(lineNumber, copyElements());
 	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		for (Enumeration e = getElements(); e.hasMoreElements(); )
-		{
-			Class_ itm = (Class_) e.nextElement();
-			itm.accept(visitor);
-		}
-		return null;
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		return k < getLength() ? getNth(k) : null;
 	}
 
 }
@@ -87,7 +90,6 @@ abstract class Feature extends TreeNode {
 	protected Feature(int lineNumber) {
 		super(lineNumber);
 	}
-	public abstract void dump_with_types(PrintStream out, int n);
 	
 	public abstract AbstractSymbol getFeatureName();
 
@@ -104,7 +106,7 @@ class Features extends ListNode {
 	public Class getElementClass() {
 		return elementClass;
 	}
-	protected Features(int lineNumber, Vector elements) {
+	protected Features(int lineNumber, TreeNode[] elements) {
 		super(lineNumber, elements);
 	}
 	/** Creates an empty "Features" list */
@@ -116,17 +118,21 @@ class Features extends ListNode {
 		addElement(elem);
 		return this;
 	}
+	/** Retreives nth element of this list */
+	public Feature getNth(int n) {
+		return (Feature)super.getNth(n);
+	}
+	/** Returns a copy of this list with its nth element replaced,
+	 * sharing the other elements */
+	public Features withNth(int n, Feature elem) {
+		return new Features(lineNumber, replaceNth(n, elem));
+	}
 	public TreeNode copy() {
 		return new Features(lineNumber, copyElements());
 	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		for (Enumeration e = getElements(); e.hasMoreElements(); )
-		{
-			Feature itm = (Feature) e.nextElement();
-			itm.accept(visitor);
-		}
-		return null;
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		return k < getLength() ? getNth(k) : null;
 	}
 }
 
@@ -136,7 +142,6 @@ abstract class Formal extends TreeNode {
 	protected Formal(int lineNumber) {
 		super(lineNumber);
 	}
-	public abstract void dump_with_types(PrintStream out, int n);
 	public abstract AbstractSymbol getName();
 	public abstract AbstractSymbol getTypeDecl();
 }
@@ -151,7 +156,7 @@ class Formals extends ListNode {
 	public Class getElementClass() {
 		return elementClass;
 	}
-	protected Formals(int lineNumber, Vector elements) {
+	protected Formals(int lineNumber, TreeNode[] elements) {
 		super(lineNumber, elements);
 	}
 	/** Creates an empty "Formals" list */
@@ -163,39 +168,59 @@ class Formals extends ListNode {
 		addElement(elem);
 		return this;
 	}
+	/** Retreives nth element of this list */
+	public Formal getNth(int n) {
+		return (Formal)super.getNth(n);
+	}
+	/** Returns a copy of this list with its nth element replaced,
+	 * sharing the other elements */
+	public Formals withNth(int n, Formal elem) {
+		return new Formals(lineNumber, replaceNth(n, elem));
+	}
 	public TreeNode copy() {
 		return new Formals(lineNumber, copyElements());
 	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		for (Enumeration e = getElements(); e.hasMoreElements(); )
-		{
-			Formal itm = (Formal) e.nextElement();
-			itm.accept(visitor);
-		}
-		return null;
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		return k < getLength() ? getNth(k) : null;
 	}
 }
 
 
 /** Defines simple phylum Expression */
 abstract class Expression extends TreeNode {
-	protected Expression(int lineNumber) {
+	/** The kind of the node, e.g. ASTConstants.PLUS */
+	final int kind;
+
+	/** Builds an expression node
+	 *
+	 * @param lineNumber the line in the source file from which this node came.
+	 * @param kind the ASTConstants terminal of its keyword in the text format
+	 * */
+	protected Expression(int lineNumber, int kind) {
 		super(lineNumber);
-	}
-	private AbstractSymbol type = null;                                 
-	public AbstractSymbol get_type() { return type; }           
-	public Expression set_type(AbstractSymbol s) { type = s; return this; } 
-	public abstract void dump_with_types(PrintStream out, int n);
+		this.kind = kind;
+	}
+	public AbstractSymbol get_type() { return AstTypes.getInstance().type(this); }
+	public Expression set_type(AbstractSymbol s) { AstTypes.getInstance().setType(this, s); return this; }
+	/** False once the type checker found that the type of this
+	 * expression is undefined */
+	public boolean isValidType() { return AstTypes.getInstance().isValidType(this); }
+	public void setValidType(boolean b) { AstTypes.getInstance().setValidType(this, b); }
 	public void dump_type(PrintStream out, int n) {
-		Object rt = getData("rt");
-		AbstractSymbol tmp = (AbstractSymbol) ((rt != null) ? rt : type);
+		AbstractSymbol rt = getRt();
+		AbstractSymbol tmp = (rt != null) ? rt : get_type();
 		if (tmp != null)
 		{ out.println(Utilities.pad(n) + ": " + tmp.getString()); }
 		else
 		{ out.println(Utilities.pad(n) + ": _no_type"); }
 	}
 	public abstract void code(PrintStream s);
+	/** Returns the kind of the node: the ASTConstants terminal of its
+	 * keyword in the text format, e.g. ASTConstants.PLUS */
+	public final int getKind() {
+		return kind;
+	}
 
 }
 
@@ -209,7 +234,7 @@ class Expressions extends ListNode {
 	public Class getElementClass() {
 		return elementClass;
 	}
-	protected Expressions(int lineNumber, Vector elements) {
+	protected Expressions(int lineNumber, TreeNode[] elements) {
 		super(lineNumber, elements);
 	}
 	/** Creates an empty "Expressions" list */
@@ -221,21 +246,26 @@ class Expressions extends ListNode {
 		addElement(elem);
 		return this;
 	}
+	/** Retreives nth element of this list */
+	public Expression getNth(int n) {
+		return (Expression)super.getNth(n);
+	}
+	/** Returns a copy of this list with its nth element replaced,
+	 * sharing the other elements */
+	public Expressions withNth(int n, Expression elem) {
+		return new Expressions(lineNumber, replaceNth(n, elem));
+	}
 	public TreeNode copy() {
 		return new Expressions(lineNumber, copyElements());
 	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		for (Enumeration e = getElements(); e.hasMoreElements(); )
-		{
-			Expression itm = (Expression) e.nextElement();
-			itm.accept(visitor);
-		}
-		/*
-		
-		 */
-		return visitor.onVisitPostOrder(this);
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		if (k == 0)
+			visitor.onVisitPreOrder(this);
+		if (k < getLength())
+			return getNth(k);
+		w.setResult(visitor.onVisitPostOrder(this));
+		return null;
 	}
 }
 
@@ -245,10 +275,10 @@ abstract class Case extends TreeNode {
 	protected Case(int lineNumber) {
 		super(lineNumber);
 	}
-	public abstract void dump_with_types(PrintStream out, int n);
 
 	public abstract AbstractSymbol getName();
 	public abstract AbstractSymbol getTypeDecl();
+	public abstract AbstractSymbol getBranchType();
 }
 
 
@@ -257,11 +287,13 @@ abstract class Case extends TreeNode {
     See <a href="ListNode.html">ListNode</a> for full documentation. */
 class Cases extends ListNode {
 	public final static Class elementClass = Case.class;
+	/** The types of the branches, once checked */
+	public AbstractSymbol[] getTypeList() { return AstTypes.getInstance().typeList(this); }
 	/** Returns class of this lists's elements */
 	public Class getElementClass() {
 		return elementClass;
 	}
-	protected Cases(int lineNumber, Vector elements) {
+	protected Cases(int lineNumber, TreeNode[] elements) {
 		super(lineNumber, elements);
 	}
 	/** Creates an empty "Cases" list */
@@ -273,83 +305,97 @@ class Cases extends ListNode {
 		addElement(elem);
 		return this;
 	}
+	/** Retreives nth element of this list */
+	public Case getNth(int n) {
+		return (Case)super.getNth(n);
+	}
+	/** Returns a copy of this list with its nth element replaced,
+	 * sharing the other elements */
+	public Cases withNth(int n, Case elem) {
+		return new Cases(lineNumber, replaceNth(n, elem));
+	}
 	public TreeNode copy() {
 		return new Cases(lineNumber, copyElements());
 	}
+	/** What acceptStep keeps from one branch to the next */
+	private static class Walk {
+		final SymbolSet branches = new SymbolSet();
+		final ArrayList<AbstractSymbol> lub = new ArrayList<AbstractSymbol>();
+		final ArrayList<AbstractSymbol> lubRT = new ArrayList<AbstractSymbol>();
+		boolean containsNULL = false;
+		int howManySelfType = 0;
+	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		
-		AbstractSymbol[] lubArray = new AbstractSymbol[getLength()];
-		AbstractSymbol[] lubRTArray = new AbstractSymbol[getLength()];
-
-		
-		HashMap<AbstractSymbol, Boolean> branches = new HashMap<AbstractSymbol, Boolean>();
-		
-		ArrayList<AbstractSymbol> lub = new ArrayList<AbstractSymbol>();
-		ArrayList<AbstractSymbol> lubRT = new ArrayList<AbstractSymbol>();
-		
-		boolean validRT = false, containsNULL = false;
-		int howManySelfType = 0, size = 0;
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		if (k == 0)
+		{
+			visitor.onVisitPreOrder(this);
+			w.setState(new Walk());
+		}
+		Walk s = (Walk) w.state();
 		
-		for (Enumeration e = getElements(); e.hasMoreElements(); size++)
+		if (k > 0)
 		{
-			Case itm = (Case) e.nextElement();
-			AbstractSymbol abs = (AbstractSymbol) itm.accept(visitor);
+			Case itm = getNth(k - 1);
+			AbstractSymbol abs = (AbstractSymbol) w.last();
 			AbstractSymbol toAdd = itm.getTypeDecl();
 			
-			AbstractSymbol rt = (AbstractSymbol) itm.getData("rt");
+			AbstractSymbol rt = itm.getRt();
 			
 			if (rt != null) 
 			{
-				//validRT = true;
 				if (rt.equals(TreeConstants.SELF_TYPE))
-					howManySelfType++;
+					s.howManySelfType++;
 			}
 			else
-				containsNULL = true;
+				s.containsNULL = true;
 			
-			lubRT.add(rt);
+			s.lubRT.add(rt);
 			
 			/* toAdd is always null in the first visit */
-			if(toAdd != null && branches.containsKey(toAdd))
+			if(toAdd != null && s.branches.contains(toAdd))
 			{
 				SemantErrorsManager.getInstance().semantError(itm, "Duplicate branch %s in case statement.", toAdd);
 				SemantErrorsManager.getInstance().validate(true);
 			}				
 			else if (toAdd != null)
 			{
-				branches.put(toAdd, true);
-				lub.add(abs);
+				s.branches.add(toAdd);
+				s.lub.add(abs);
 			}
 		}
+		if (k < getLength())
+			return getNth(k);
 		
-		lub.toArray(lubArray);
-		lubRT.toArray(lubRTArray);
+		AbstractSymbol[] lubArray = new AbstractSymbol[getLength()];
+		AbstractSymbol[] lubRTArray = new AbstractSymbol[getLength()];
+		s.lub.toArray(lubArray);
+		s.lubRT.toArray(lubRTArray);
 
-		if (!containsNULL) 
+		if (!s.containsNULL) 
 		{
-			if (howManySelfType == size)
+			if (s.howManySelfType == getLength())
 			{
-				decorate("rt", TreeConstants.SELF_TYPE);
+				setRt(TreeConstants.SELF_TYPE);
 			}
 			else
 			{
-				if (howManySelfType == 0)
+				if (s.howManySelfType == 0)
 				{
-					decorate("rt", ClassTable.getInstance().leastUpperBound(lubRTArray));
+					setRt(ClassTable.getInstance().leastUpperBound(lubRTArray));
 				}
 				else
 				{
-					decorate("rt", ClassTable.getInstance().leastUpperBound(TypeCheckerHelper.inferSelfType(lubRTArray)));
+					setRt(ClassTable.getInstance().leastUpperBound(TypeCheckerHelper.inferSelfType(lubRTArray)));
 				}
 			}
 		}
-		decorate("type_list", lubArray);
+		AstTypes.getInstance().setTypeList(this, lubArray);
 		/*
 		 * calcolare il lub di tutti i branch e restituirlo
 		 */
-		return visitor.onVisitPostOrder(this);
+		w.setResult(visitor.onVisitPostOrder(this));
+		return null;
 	}
 }
 
@@ -358,7 +404,7 @@ class Cases extends ListNode {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class programc extends Program {
-	protected Classes classes;
+	protected final Classes classes;
 	protected ClassTable class_table;
 
 	/**
@@ -374,10 +420,17 @@ class programc extends Program {
     public programc(int lineNumber, Classes a1) {
         super(lineNumber);
         classes = a1;
+        classes.trim();
         
     	/* ClassTable constructor may do some semantic analysis */
     	class_table = ClassTable.getInstance();
     }
+    /** Returns a copy of this program with other classes, sharing the
+     * classes that are in both lists */
+    public programc withClasses(Classes a1) {
+        return new programc(lineNumber, a1);
+    }
+
     public TreeNode copy() {
         return new programc(lineNumber, (Classes)classes.copy());
     }
@@ -393,20 +446,41 @@ class programc extends Program {
     	visitors.add(tv);
     }
     
-    public void dump_with_types(PrintStream out, int n) {
+    TreeNode dumpStep(PrintStream out, int n, int k) {
+        if (k == 0) {
+            dump_header_with_types(out, n);
+        }
+        return k < classes.getLength() ? classes.getNth(k) : null;
+    }
+
+    /** Dumps what dump_with_types prints before the classes */
+    void dump_header_with_types(PrintStream out, int n) {
         dump_line(out, n);
         out.println(Utilities.pad(n) + "_program");
-        for (Enumeration e = classes.getElements(); e.hasMoreElements(); ) {
-	    ((Class_)e.nextElement()).dump_with_types(out, n + 2);
+    }
+
+    TreeNode binaryStep(AstBinaryWriter out, int k) {
+        if (k == 0) {
+            out.writeNode(ASTConstants.PROGRAM, this);
+            out.writeLength(classes);
         }
+        return k < classes.getLength() ? classes.getNth(k) : null;
     }
 
+	/**
+	 * Runs the registered visitors, in as few walks of the tree as
+	 * their dependencies allow
+	 * @see FusedVisitor#schedule
+	 */
 	public void semant() {
     	
-		for (ITreeVisitor visitor : visitors)
+		for (ITreeVisitor visitor : FusedVisitor.schedule(visitors))
 		{
 			visitor.onVisitStart();
-			accept(visitor);
+			if (FusedVisitor.inHierarchyOrder(visitor))
+				acceptInHierarchyOrder(visitor);
+			else
+				accept(visitor);
 			visitor.onVisitEnd();
 		}
 
@@ -414,6 +488,20 @@ class programc extends Program {
 		
 	}
 
+	/**
+	 * Walks the program as accept does, but through its classes in
+	 * hierarchy order, each after its parent, in a single walk
+	 * @param visitor a visitor whose onVisitStart validated the class table
+	 * @see ClassTable#inHierarchyOrder
+	 * @see IHierarchyVisitor
+	 */
+	public Object acceptInHierarchyOrder(ITreeVisitor visitor) {
+		visitor.onVisitPreOrder(this);
+		for (Class_ cls : ClassTable.getInstance().inHierarchyOrder(classes))
+			cls.accept(visitor);
+		return visitor.onVisitPostOrder(this);
+	}
+
 	/** This method is the entry point to the code generator.  All of the work
 	 * of the code generator takes place within CgenClassTable constructor.
 	 * @param s the output stream 
@@ -423,14 +511,18 @@ class programc extends Program {
 		CgenClassTable codegen_classtable = new CgenClassTable(classes, s);
 	}
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * controllare che la classe Main sia definita
 		 */
-		visitor.onVisitPreOrder(this);
-		classes.accept(visitor);
-		visitor.onVisitPostOrder(this);
-		return null;
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return classes;
+		default:
+			visitor.onVisitPostOrder(this);
+			return null;
+		}
 	}
 	@Override
 	public ClassTable getClassTable() {
@@ -444,11 +536,14 @@ class programc extends Program {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class class_c extends Class_ {
-	protected AbstractSymbol name;
-	protected AbstractSymbol parent;
-	protected Features features;
-	protected AbstractSymbol filename;
-	protected FeaturesTable featuresTable;
+	protected final AbstractSymbol name;
+	protected final AbstractSymbol parent;
+	protected final Features features;
+	protected final AbstractSymbol filename;
+	/** The lines of the occurrences of shared leaves in the class, in
+	 * the order of a walk of it, or null if it has none
+	 * @see AstLeaves */
+	private int[] leafLines;
 	/** Creates "class_c" AST node. 
 	 *
 	 * @param lineNumber the line in the source file from which this node came.
@@ -458,16 +553,57 @@ class class_c extends Class_ {
 	 * @param a3 initial value for filename
 	 */
 	public class_c(int lineNumber, AbstractSymbol a1, AbstractSymbol a2, Features a3, AbstractSymbol a4) {
+		this(lineNumber, a1, a2, a3, a4, true);
+	}
+
+	/** Creates "class_c" AST node, registering it in the class table
+	 * only if asked to.  Readers that build classes out of source order
+	 * register them afterwards, in source order, so that errors about
+	 * duplicate classes come out as with the sequential parser.
+	 *
+	 * @param register whether to register the class now
+	 */
+	class_c(int lineNumber, AbstractSymbol a1, AbstractSymbol a2, Features a3, AbstractSymbol a4, boolean register) {
 		super(lineNumber);
 		name = a1;
 		parent = a2;
 		features = a3;
+		features.trim();
 		filename = a4;
-		ClassTable.getInstance().registerClass(this);
-		featuresTable = new FeaturesTable(this);
+		if (register)
+			ClassTable.getInstance().registerClass(this);
 	}
 	public TreeNode copy() {
-		return new class_c(lineNumber, copy_AbstractSymbol(name), copy_AbstractSymbol(parent), (Features)features.copy(), copy_AbstractSymbol(filename));
+		class_c c = new class_c(lineNumber, copy_AbstractSymbol(name), copy_AbstractSymbol(parent), (Features)features.copy(), copy_AbstractSymbol(filename), false);
+		c.setLeafLines(leafLines);
+		return c;
+	}
+
+	/** Returns a copy of this class with other features, sharing
+	 * everything else.  The copy is not registered in the class table:
+	 * ClassTable.reregister registers the classes of a changed program.
+	 * Nor does it have the lines of the shared leaves of the features,
+	 * which the caller sets if there are any.
+	 *
+	 * @param a3 the new features
+	 */
+	public class_c withFeatures(Features a3) {
+		return new class_c(lineNumber, name, parent, a3, filename, false);
+	}
+
+	/** Sets the lines of the occurrences of shared leaves in the class,
+	 * once it is built
+	 * @param lines the lines, or null if there are none
+	 * @see AstLeaves#takeLines
+	 */
+	void setLeafLines(int[] lines) {
+		leafLines = lines;
+	}
+
+	/** Returns the lines of the occurrences of shared leaves in the
+	 * class, or null */
+	int[] getLeafLines() {
+		return leafLines;
 	}
 	public void dump(PrintStream out, int n) {
 		out.print(Utilities.pad(n) + "class_c\n");
@@ -477,18 +613,35 @@ class class_c extends Class_ {
 		dump_AbstractSymbol(out, n+2, filename);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_class");
-		dump_AbstractSymbol(out, n + 2, name);
-		dump_AbstractSymbol(out, n + 2, parent);
-		out.print(Utilities.pad(n + 2) + "\"");
-		Utilities.printEscapedString(out, filename.getString());
-		out.println("\"\n" + Utilities.pad(n + 2) + "(");
-		for (Enumeration e = features.getElements(); e.hasMoreElements();) {
-			((Feature)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_class");
+			dump_AbstractSymbol(out, n + 2, name);
+			dump_AbstractSymbol(out, n + 2, parent);
+			out.print(Utilities.pad(n + 2) + "\"");
+			Utilities.printEscapedString(out, filename.getString());
+			out.println("\"\n" + Utilities.pad(n + 2) + "(");
+		}
+		if (k < features.getLength()) {
+			return features.getNth(k);
 		}
 		out.println(Utilities.pad(n + 2) + ")");
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.CLASS, this);
+			out.writeId(name);
+			out.writeId(parent);
+			out.writeString(filename);
+			out.writeLength(features);
+		}
+		if (k < features.getLength()) {
+			return features.getNth(k);
+		}
+		return null;
 	}
 
 	public AbstractSymbol getName()     { return name; }
@@ -497,26 +650,26 @@ class class_c extends Class_ {
 	public Features getFeatures()       { return features; }
 
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * controllare che se la classe e' Main allora deve avere main senza parametri formali
 		 * main deve essere presente e non ereditato
 		 */
-		SemantState.getInstance().setCurrentClass(this);
-		visitor.onVisitPreOrder(this);
-		features.accept(visitor);
-		visitor.onVisitPostOrder(this);
-		SemantState.getInstance().setCurrentClass(null);
-		return null;
+		switch (k) {
+		case 0:
+			SemantState.getInstance().setCurrentClass(this);
+			visitor.onVisitPreOrder(this);
+			return features;
+		default:
+			visitor.onVisitPostOrder(this);
+			SemantState.getInstance().setCurrentClass(null);
+			return null;
+		}
 	}
 	
 	@Override
 	public FeaturesTable getFeaturesTable() {
-		
-		if ( featuresTable == null )
-			featuresTable = new FeaturesTable(this);
-		
-		return featuresTable;
+		return ClassTable.getInstance().getFeaturesTable(this);
 	}
 
 }
@@ -526,10 +679,10 @@ class class_c extends Class_ {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class method extends Feature {
-	protected AbstractSymbol name;
-	protected Formals formals;
-	protected AbstractSymbol return_type;
-	protected Expression expr;
+	protected final AbstractSymbol name;
+	protected final Formals formals;
+	protected final AbstractSymbol return_type;
+	protected final Expression expr;
 
 	/** Creates "method" AST node. 
 	 *
@@ -543,6 +696,7 @@ class method extends Feature {
 		super(lineNumber);
 		name = a1;
 		formals = a2;
+		formals.trim();
 		return_type = a3;
 		expr = a4;
 	}
@@ -551,34 +705,30 @@ class method extends Feature {
 		return name;
 	}
 
-	public void setName(AbstractSymbol name) {
-		this.name = name;
-	}
-
 	public Formals getFormals() {
 		return formals;
 	}
 
-	public void setFormals(Formals formals) {
-		this.formals = formals;
-	}
-
-	public void setReturn_type(AbstractSymbol return_type) {
-		this.return_type = return_type;
-	}
-
 	public Expression getExpr() {
 		return expr;
 	}
 
-	public void setExpr(Expression expr) {
-		this.expr = expr;
-	}
-
 	public AbstractSymbol getReturnType() {
 		return return_type;
 	}
 
+	/** Returns a copy of this method with another body, sharing the
+	 * formals */
+	public method withExpr(Expression a4) {
+		return new method(lineNumber, name, formals, return_type, a4);
+	}
+
+	/** Returns a copy of this method with other formals, sharing the
+	 * body */
+	public method withFormals(Formals a2) {
+		return new method(lineNumber, name, a2, return_type, expr);
+	}
+
 	public TreeNode copy() {
 		return new method(lineNumber, copy_AbstractSymbol(name), (Formals)formals.copy(), copy_AbstractSymbol(return_type), (Expression)expr.copy());
 	}
@@ -592,36 +742,64 @@ class method extends Feature {
 	}
 
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_method");
-		dump_AbstractSymbol(out, n + 2, name);
-		for (Enumeration e = formals.getElements(); e.hasMoreElements();) {
-			((Formal)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_method");
+			dump_AbstractSymbol(out, n + 2, name);
 		}
-		dump_AbstractSymbol(out, n + 2, return_type);
-		expr.dump_with_types(out, n + 2);
+		if (k < formals.getLength()) {
+			return formals.getNth(k);
+		}
+		if (k == formals.getLength()) {
+			dump_AbstractSymbol(out, n + 2, return_type);
+			return expr;
+		}
+		return null;
 	}
 
-	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		formals.accept(visitor);
-		
-		Object last_ret = expr.accept(visitor);
-		/*
-		 * chiamare visitor.visit(this) per 
-		 * registrare il nome del metodo in M
-		 * validare il return_type
-		 * inserire controllo sul lub del tipo restituito da exprr e return_type [modularizzare]
-		 * 
-		 */
-		
-		decorate("dyn_return_type", last_ret);
-		Object obj = visitor.onVisitPostOrder(this);
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.METHOD, this);
+			out.writeId(name);
+			out.writeLength(formals);
+		}
+		if (k < formals.getLength()) {
+			return formals.getNth(k);
+		}
+		if (k == formals.getLength()) {
+			out.writeId(return_type);
+			return expr;
+		}
 		return null;
 	}
 
+	/** Returns the type of the body, once checked */
+	public AbstractSymbol getDynReturnType() {
+		return expr.get_type();
+	}
+
+	@Override
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return formals;
+		case 1:
+			return expr;
+		default:
+			/*
+			 * chiamare visitor.visit(this) per 
+			 * registrare il nome del metodo in M
+			 * validare il return_type
+			 * inserire controllo sul lub del tipo restituito da exprr e return_type [modularizzare]
+			 * 
+			 */
+			visitor.onVisitPostOrder(this);
+			return null;
+		}
+	}
+
 	@Override
 	public AbstractSymbol getFeatureName()
 	{
@@ -635,9 +813,9 @@ class method extends Feature {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class attr extends Feature {
-	protected AbstractSymbol name;
-	protected AbstractSymbol type_decl;
-	protected Expression init;
+	protected final AbstractSymbol name;
+	protected final AbstractSymbol type_decl;
+	protected final Expression init;
 
 	/** Creates "attr" AST node. 
 	 *
@@ -657,6 +835,11 @@ class attr extends Feature {
 		return new attr(lineNumber, copy_AbstractSymbol(name), copy_AbstractSymbol(type_decl), (Expression)init.copy());
 	}
 
+	/** Returns a copy of this attribute with another initialization */
+	public attr withInit(Expression a3) {
+		return new attr(lineNumber, name, type_decl, a3);
+	}
+
 	public void dump(PrintStream out, int n) {
 		out.print(Utilities.pad(n) + "attr\n");
 		dump_AbstractSymbol(out, n+2, name);
@@ -664,27 +847,48 @@ class attr extends Feature {
 		init.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_attr");
-		dump_AbstractSymbol(out, n + 2, name);
-		dump_AbstractSymbol(out, n + 2, type_decl);
-		init.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_attr");
+			dump_AbstractSymbol(out, n + 2, name);
+			dump_AbstractSymbol(out, n + 2, type_decl);
+			return init;
+		}
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.ATTR, this);
+			out.writeId(name);
+			out.writeId(type_decl);
+			return init;
+		}
+		return null;
+	}
+
+	/** Returns the type of the initialization, once checked */
+	public AbstractSymbol getInitType() {
+		return init.get_type();
 	}
 
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * chiamare visitor.visit(this) per 
 		 * verificare tipo dichiarato
 		 * validare tipo init
 		 * lub
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_init = init.accept(visitor);
-		decorate("init_type", ret_init);
-		visitor.onVisitPostOrder(this);
-		return null;
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return init;
+		default:
+			visitor.onVisitPostOrder(this);
+			return null;
+		}
 	}
 	
 	@Override
@@ -705,8 +909,8 @@ class attr extends Feature {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class formalc extends Formal {
-	protected AbstractSymbol name;
-	protected AbstractSymbol type_decl;
+	protected final AbstractSymbol name;
+	protected final AbstractSymbol type_decl;
 
 	/** Creates "formalc" AST node. 
 	 *
@@ -724,18 +928,10 @@ class formalc extends Formal {
 		return name;
 	}
 
-	public void setName(AbstractSymbol name) {
-		this.name = name;
-	}
-
 	public AbstractSymbol getTypeDecl() {
 		return type_decl;
 	}
 
-	public void setTypeDecl(AbstractSymbol type_decl) {
-		this.type_decl = type_decl;
-	}
-	
 	public TreeNode copy() {
 		return new formalc(lineNumber, copy_AbstractSymbol(name), copy_AbstractSymbol(type_decl));
 	}
@@ -746,15 +942,23 @@ class formalc extends Formal {
 		dump_AbstractSymbol(out, n+2, type_decl);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_formal");
 		dump_AbstractSymbol(out, n + 2, name);
 		dump_AbstractSymbol(out, n + 2, type_decl);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.FORMAL, this);
+		out.writeId(name);
+		out.writeId(type_decl);
+		return null;
 	}
 
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * chiamare visitor.visit(this) per 
 		 * verificare che type_decl esista,
@@ -772,9 +976,9 @@ class formalc extends Formal {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class branch extends Case {
-	protected AbstractSymbol name;
-	protected AbstractSymbol type_decl;
-	protected Expression expr;
+	protected final AbstractSymbol name;
+	protected final AbstractSymbol type_decl;
+	protected final Expression expr;
 
 	/** Creates "branch" AST node. 
 	 *
@@ -801,27 +1005,49 @@ class branch extends Case {
 		expr.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_branch");
-		dump_AbstractSymbol(out, n + 2, name);
-		dump_AbstractSymbol(out, n + 2, type_decl);
-		expr.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_branch");
+			dump_AbstractSymbol(out, n + 2, name);
+			dump_AbstractSymbol(out, n + 2, type_decl);
+			return expr;
+		}
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.BRANCH, this);
+			out.writeId(name);
+			out.writeId(type_decl);
+			return expr;
+		}
+		return null;
+	}
+
+	/** Returns the type of the branch expression, once checked */
+	public AbstractSymbol getBranchType() {
+		return expr.get_type();
 	}
 
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * validare type_decl e name
 		 * aggiungere type_decl/name in O e passare su expr con il visitor
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_expr = expr.accept(visitor);
-		decorate("branch_type", ret_expr);
-		
-		AbstractSymbol returnsym =(AbstractSymbol) visitor.onVisitPostOrder(this);
-		decorate("rt", ret_expr);
-		return returnsym;
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return expr;
+		default:
+			AbstractSymbol ret_expr = (AbstractSymbol) w.last();
+			AbstractSymbol returnsym = (AbstractSymbol) visitor.onVisitPostOrder(this);
+			setRt(ret_expr);
+			w.setResult(returnsym);
+			return null;
+		}
 	}
 
 	@Override
@@ -841,8 +1067,8 @@ class branch extends Case {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class assign extends Expression {
-	protected AbstractSymbol name;
-	protected Expression expr;
+	protected final AbstractSymbol name;
+	protected final Expression expr;
 
 	/** Creates "assign" AST node. 
 	 *
@@ -851,7 +1077,7 @@ class assign extends Expression {
 	 * @param a1 initial value for expr
 	 */
 	public assign(int lineNumber, AbstractSymbol a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.ASSIGN);
 		name = a1;
 		expr = a2;
 	}
@@ -870,12 +1096,25 @@ class assign extends Expression {
 		expr.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_assign");
-		dump_AbstractSymbol(out, n + 2, name);
-		expr.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_assign");
+			dump_AbstractSymbol(out, n + 2, name);
+			return expr;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.ASSIGN, this);
+			out.writeId(name);
+			return expr;
+		}
+		out.writeType(this);
+		return null;
 	}
 
 	/** Generates code for this expression.  This method is to be completed 
@@ -891,15 +1130,23 @@ class assign extends Expression {
 		return expr;
 	}
 
-	@Override
-	public Object accept(ITreeVisitor visitor) {
+	/** Returns the type of the assigned expression, once checked */
+	public AbstractSymbol getExprType() {
+		return expr.get_type();
+	}
 
-		visitor.onVisitPreOrder(this);
-		Object ret_expr = expr.accept(visitor);
-		decorate("expr", ret_expr);
-		
-		visitor.onVisitPostOrder(this);
-		return get_type();
+
+	@Override
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return expr;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -911,10 +1158,10 @@ class assign extends Expression {
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class static_dispatch extends Expression {
 
-	protected Expression expr;
-	protected AbstractSymbol type_name;
-	protected AbstractSymbol name;
-	protected Expressions actual;
+	protected final Expression expr;
+	protected final AbstractSymbol type_name;
+	protected final AbstractSymbol name;
+	protected final Expressions actual;
 
 	/** Creates "static_dispatch" AST node. 
 	 *
@@ -925,11 +1172,12 @@ class static_dispatch extends Expression {
 	 * @param a3 initial value for actual
 	 */
 	public static_dispatch(int lineNumber, Expression a1, AbstractSymbol a2, AbstractSymbol a3, Expressions a4) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.STATIC_DISPATCH);
 		expr = a1;
 		type_name = a2;
 		name = a3;
 		actual = a4;
+		actual.trim();
 	}
 
 	public TreeNode copy() {
@@ -944,18 +1192,40 @@ class static_dispatch extends Expression {
 		actual.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_static_dispatch");
-		expr.dump_with_types(out, n + 2);
-		dump_AbstractSymbol(out, n + 2, type_name);
-		dump_AbstractSymbol(out, n + 2, name);
-		out.println(Utilities.pad(n + 2) + "(");
-		for (Enumeration e = actual.getElements(); e.hasMoreElements();) {
-			((Expression)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_static_dispatch");
+			return expr;
+		}
+		if (k == 1) {
+			dump_AbstractSymbol(out, n + 2, type_name);
+			dump_AbstractSymbol(out, n + 2, name);
+			out.println(Utilities.pad(n + 2) + "(");
+		}
+		if (k - 1 < actual.getLength()) {
+			return actual.getNth(k - 1);
 		}
 		out.println(Utilities.pad(n + 2) + ")");
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.STATIC_DISPATCH, this);
+			return expr;
+		}
+		if (k == 1) {
+			out.writeId(type_name);
+			out.writeId(name);
+			out.writeLength(actual);
+		}
+		if (k - 1 < actual.getLength()) {
+			return actual.getNth(k - 1);
+		}
+		out.writeType(this);
+		return null;
 	}
 
 	/** Generates code for this expression.  This method is to be completed 
@@ -966,8 +1236,14 @@ class static_dispatch extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the receiver, once checked */
+	public AbstractSymbol getExprType() {
+		return expr.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * expr@TYPE.method(params)
 		 * valutare il tipo di expr, tradurre self in SELF_TYPE
@@ -979,14 +1255,17 @@ class static_dispatch extends Expression {
 		 * assegnare il tipo al nodo
 		 * 
 		 */
-		visitor.onVisitPreOrder(this);
-		AbstractSymbol expr_type = (AbstractSymbol)expr.accept(visitor);
-		
-		actual.accept(visitor);
-		decorate("expr_type", expr_type);
-		
-		visitor.onVisitPostOrder(this);
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return expr;
+		case 1:
+			return actual;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 	public Expression getExpr() {
@@ -1013,9 +1292,9 @@ class static_dispatch extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class dispatch extends Expression {
-	protected Expression expr;
-	protected AbstractSymbol name;
-	protected Expressions actual;
+	protected final Expression expr;
+	protected final AbstractSymbol name;
+	protected final Expressions actual;
 	/** Creates "dispatch" AST node. 
 	 *
 	 * @param lineNumber the line in the source file from which this node came.
@@ -1024,10 +1303,11 @@ class dispatch extends Expression {
 	 * @param a2 initial value for actual
 	 */
 	public dispatch(int lineNumber, Expression a1, AbstractSymbol a2, Expressions a3) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.DISPATCH);
 		expr = a1;
 		name = a2;
 		actual = a3;
+		actual.trim();
 	}
 	public TreeNode copy() {
 		return new dispatch(lineNumber, (Expression)expr.copy(), copy_AbstractSymbol(name), (Expressions)actual.copy());
@@ -1040,17 +1320,38 @@ class dispatch extends Expression {
 	}
 
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_dispatch");
-		expr.dump_with_types(out, n + 2);
-		dump_AbstractSymbol(out, n + 2, name);
-		out.println(Utilities.pad(n + 2) + "(");
-		for (Enumeration e = actual.getElements(); e.hasMoreElements();) {
-			((Expression)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_dispatch");
+			return expr;
+		}
+		if (k == 1) {
+			dump_AbstractSymbol(out, n + 2, name);
+			out.println(Utilities.pad(n + 2) + "(");
+		}
+		if (k - 1 < actual.getLength()) {
+			return actual.getNth(k - 1);
 		}
 		out.println(Utilities.pad(n + 2) + ")");
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.DISPATCH, this);
+			return expr;
+		}
+		if (k == 1) {
+			out.writeId(name);
+			out.writeLength(actual);
+		}
+		if (k - 1 < actual.getLength()) {
+			return actual.getNth(k - 1);
+		}
+		out.writeType(this);
+		return null;
 	}
 	/** Generates code for this expression.  This method is to be completed 
 	 * in programming assignment 5.  (You may add or remove parameters as
@@ -1059,8 +1360,14 @@ class dispatch extends Expression {
 	 * */
 	public void code(PrintStream s) {
 	}
+	/** Returns the type of the receiver, once checked */
+	public AbstractSymbol getExprType() {
+		return expr.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * expr.method(params)
 		 * valutare il tipo di expr
@@ -1069,13 +1376,17 @@ class dispatch extends Expression {
 		 * vedere se per ogni param matcha con la dichiarazione del metodo
 		 * 
 		 */
-		visitor.onVisitPreOrder(this);
-		AbstractSymbol expr_type = (AbstractSymbol) expr.accept(visitor); 
-		actual.accept(visitor);
-//		System.out.println("expr type -> " + expr_type);
-		decorate("expr_type", expr_type); // save the expr type
-		visitor.onVisitPostOrder(this);
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return expr;
+		case 1:
+			return actual;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 	
 	public Expression getExpr() {
@@ -1099,9 +1410,9 @@ class dispatch extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class cond extends Expression {
-	protected Expression pred;
-	protected Expression then_exp;
-	protected Expression else_exp;
+	protected final Expression pred;
+	protected final Expression then_exp;
+	protected final Expression else_exp;
 	/** Creates "cond" AST node. 
 	 *
 	 * @param lineNumber the line in the source file from which this node came.
@@ -1110,7 +1421,7 @@ class cond extends Expression {
 	 * @param a2 initial value for else_exp
 	 */
 	public cond(int lineNumber, Expression a1, Expression a2, Expression a3) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.COND);
 		pred = a1;
 		then_exp = a2;
 		else_exp = a3;
@@ -1134,13 +1445,35 @@ class cond extends Expression {
 		else_exp.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_cond");
-		pred.dump_with_types(out, n + 2);
-		then_exp.dump_with_types(out, n + 2);
-		else_exp.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_cond");
+			return pred;
+		}
+		if (k == 1) {
+			return then_exp;
+		}
+		if (k == 2) {
+			return else_exp;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.COND, this);
+			return pred;
+		}
+		if (k == 1) {
+			return then_exp;
+		}
+		if (k == 2) {
+			return else_exp;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1151,23 +1484,41 @@ class cond extends Expression {
 	public void code(PrintStream s) {
 	}
 	
-	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_pred = pred.accept(visitor);
-		Object ret_then_exp = then_exp.accept(visitor);
-		Object ret_else_exp = else_exp.accept(visitor);
-		
-		/*
-		 * valutare che ret_pred sia di sottotipo di Bool oppure metterlo Object
-		 * valutare le expr, calcolarne il lub ed impostare il tipo di ritorno
-		 */
-		decorate("ret_pred", ret_pred);
-		decorate("ret_then_exp", ret_then_exp);
-		decorate("ret_else_exp", ret_else_exp);
-		visitor.onVisitPostOrder(this);
+	/** Returns the type of the predicate, once checked */
+	public AbstractSymbol getPredType() {
+		return pred.get_type();
+	}
+
+	/** Returns the type of the then branch, once checked */
+	public AbstractSymbol getThenType() {
+		return then_exp.get_type();
+	}
 
-		return get_type();
+	/** Returns the type of the else branch, once checked */
+	public AbstractSymbol getElseType() {
+		return else_exp.get_type();
+	}
+
+
+	@Override
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return pred;
+		case 1:
+			return then_exp;
+		case 2:
+			return else_exp;
+		default:
+			/*
+			 * valutare che ret_pred sia di sottotipo di Bool oppure metterlo Object
+			 * valutare le expr, calcolarne il lub ed impostare il tipo di ritorno
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1178,8 +1529,8 @@ class cond extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class loop extends Expression {
-	protected Expression pred;
-	protected Expression body;
+	protected final Expression pred;
+	protected final Expression body;
 	
 	/** Creates "loop" AST node. 
 	 *
@@ -1188,7 +1539,7 @@ class loop extends Expression {
 	 * @param a1 initial value for body
 	 */
 	public loop(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.LOOP);
 		pred = a1;
 		body = a2;
 	}
@@ -1203,12 +1554,29 @@ class loop extends Expression {
 		body.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_loop");
-		pred.dump_with_types(out, n + 2);
-		body.dump_with_types(out, n + 2);
-		dump_type(out, n);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_loop");
+			return pred;
+		}
+		if (k == 1) {
+			return body;
+		}
+		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.LOOP, this);
+			return pred;
+		}
+		if (k == 1) {
+			return body;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1219,21 +1587,29 @@ class loop extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the type of the predicate, once checked */
+	public AbstractSymbol getPredType() {
+		return pred.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * controllare che il tipo di pred sia  Bool
 		 * assegnare Object a loop
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_pred = pred.accept(visitor);
-		Object ret_body = body.accept(visitor);
-		
-		decorate("pred", ret_pred);
-
-		visitor.onVisitPostOrder(this);
-
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return pred;
+		case 1:
+			return body;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1244,8 +1620,10 @@ class loop extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class typcase extends Expression {
-	protected Expression expr;
-	protected Cases cases;
+	protected final Expression expr;
+	protected final Cases cases;
+	/** The least upper bound of the branch types, once checked */
+	private AbstractSymbol lub;
 	
 	/** Creates "typcase" AST node. 
 	 *
@@ -1254,9 +1632,10 @@ class typcase extends Expression {
 	 * @param a1 initial value for cases
 	 */
 	public typcase(int lineNumber, Expression a1, Cases a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.TYPCASE);
 		expr = a1;
 		cases = a2;
+		cases.trim();
 	}
 	
 	public TreeNode copy() {
@@ -1269,14 +1648,32 @@ class typcase extends Expression {
 		cases.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_typcase");
-		expr.dump_with_types(out, n + 2);
-		for (Enumeration e = cases.getElements(); e.hasMoreElements();) {
-			((Case)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_typcase");
+			return expr;
+		}
+		if (k - 1 < cases.getLength()) {
+			return cases.getNth(k - 1);
 		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.TYPCASE, this);
+			return expr;
+		}
+		if (k == 1) {
+			out.writeLength(cases);
+		}
+		if (k - 1 < cases.getLength()) {
+			return cases.getNth(k - 1);
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1287,21 +1684,33 @@ class typcase extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the least upper bound of the branch types, once checked */
+	public AbstractSymbol getLub() {
+		return lub;
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * valutare expr e cases
 		 * i branch non possono essere di tipo SELF_TYPE, i nomi non possono essere self
 		 * validare i tipi
 		 * calcolare il lub ed assegnarlo come tipo di ritorno
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_expr = expr.accept(visitor);
-		Object ret_cases = cases.accept(visitor); // this is the least upper bound
-		decorate("lub", ret_cases);
-		decorate("rt", cases.getData("rt"));
-		visitor.onVisitPostOrder(this);
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return expr;
+		case 1:
+			return cases;
+		default:
+			lub = (AbstractSymbol) w.last(); // this is the least upper bound
+			setRt(cases.getRt());
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1312,7 +1721,7 @@ class typcase extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class block extends Expression {
-	protected Expressions body;
+	protected final Expressions body;
 	
 	/** Creates "block" AST node. 
 	 *
@@ -1320,8 +1729,9 @@ class block extends Expression {
 	 * @param a0 initial value for body
 	 */
 	public block(int lineNumber, Expressions a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.BLOCK);
 		body = a1;
+		body.trim();
 	}
 	
 	public TreeNode copy() {
@@ -1333,13 +1743,28 @@ class block extends Expression {
 		body.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_block");
-		for (Enumeration e = body.getElements(); e.hasMoreElements();) {
-			((Expression)e.nextElement()).dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_block");
+		}
+		if (k < body.getLength()) {
+			return body.getNth(k);
 		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.BLOCK, this);
+			out.writeLength(body);
+		}
+		if (k < body.getLength()) {
+			return body.getNth(k);
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1350,18 +1775,29 @@ class block extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the type of the last expression of the block, once
+	 * checked */
+	public AbstractSymbol getBodyType() {
+		int size = body.getLength();
+		return size > 0 ? body.getNth(size - 1).get_type() : null;
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * impostare il tipo 
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_block = body.accept(visitor);
-		decorate("ret_block", ret_block);
-		
-		visitor.onVisitPostOrder(this);
-		decorate("rt", body.getData("rt"));
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return body;
+		default:
+			visitor.onVisitPostOrder(this);
+			setRt(body.getRt());
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1372,10 +1808,10 @@ class block extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class let extends Expression {
-	protected AbstractSymbol identifier;
-	protected AbstractSymbol type_decl;
-	protected Expression init;
-	protected Expression body;
+	protected final AbstractSymbol identifier;
+	protected final AbstractSymbol type_decl;
+	protected final Expression init;
+	protected final Expression body;
 	
 	/** Creates "let" AST node. 
 	 *
@@ -1386,7 +1822,7 @@ class let extends Expression {
 	 * @param a3 initial value for body
 	 */
 	public let(int lineNumber, AbstractSymbol a1, AbstractSymbol a2, Expression a3, Expression a4) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.LET);
 		identifier = a1;
 		type_decl = a2;
 		init = a3;
@@ -1421,14 +1857,33 @@ class let extends Expression {
 		body.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_let");
-		dump_AbstractSymbol(out, n + 2, identifier);
-		dump_AbstractSymbol(out, n + 2, type_decl);
-		init.dump_with_types(out, n + 2);
-		body.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_let");
+			dump_AbstractSymbol(out, n + 2, identifier);
+			dump_AbstractSymbol(out, n + 2, type_decl);
+			return init;
+		}
+		if (k == 1) {
+			return body;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.LET, this);
+			out.writeId(identifier);
+			out.writeId(type_decl);
+			return init;
+		}
+		if (k == 1) {
+			return body;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1439,19 +1894,30 @@ class let extends Expression {
 	public void code(PrintStream s) {
 	}
 	
-	@Override
-	public Object accept(ITreeVisitor visitor) {
+	/** Returns the type of the initialization, once checked */
+	public AbstractSymbol getInitType() {
+		return init.get_type();
+	}
 
-		Object ret_init = init.accept(visitor);
-		decorate("ret_init", ret_init);
+	/** Returns the type of the body, once checked */
+	public AbstractSymbol getBodyType() {
+		return body.get_type();
+	}
 
-		visitor.onVisitPreOrder(this);
-		
-		Object ret_body = body.accept(visitor);
-		
-		decorate("ret_body", ret_body );
-		visitor.onVisitPostOrder(this);
-		return get_type();
+
+	@Override
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			return init;
+		case 1:
+			visitor.onVisitPreOrder(this);
+			return body;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1462,8 +1928,8 @@ class let extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class plus extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "plus" AST node. 
 	 *
@@ -1472,7 +1938,7 @@ class plus extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public plus(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.PLUS);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1487,12 +1953,29 @@ class plus extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_plus");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_plus");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.PLUS, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1503,18 +1986,33 @@ class plus extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -1525,8 +2023,8 @@ class plus extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class sub extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "sub" AST node. 
 	 *
@@ -1535,7 +2033,7 @@ class sub extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public sub(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.SUB);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1550,12 +2048,29 @@ class sub extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_sub");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_sub");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.SUB, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1566,18 +2081,33 @@ class sub extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1587,8 +2117,8 @@ class sub extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class mul extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "mul" AST node. 
 	 *
@@ -1597,7 +2127,7 @@ class mul extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public mul(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.MUL);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1612,12 +2142,29 @@ class mul extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_mul");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_mul");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.MUL, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1628,18 +2175,33 @@ class mul extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1649,8 +2211,8 @@ class mul extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class divide extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "divide" AST node. 
 	 *
@@ -1659,7 +2221,7 @@ class divide extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public divide(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.DIVIDE);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1674,12 +2236,29 @@ class divide extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_divide");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_divide");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.DIVIDE, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1690,18 +2269,33 @@ class divide extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1711,7 +2305,7 @@ class divide extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class neg extends Expression {
-	protected Expression e1;
+	protected final Expression e1;
 	
 	/** Creates "neg" AST node. 
 	 *
@@ -1719,7 +2313,7 @@ class neg extends Expression {
 	 * @param a0 initial value for e1
 	 */
 	public neg(int lineNumber, Expression a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.NEG);
 		e1 = a1;
 	}
 	
@@ -1732,11 +2326,23 @@ class neg extends Expression {
 		e1.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_neg");
-		e1.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_neg");
+			return e1;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.NEG, this);
+			return e1;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1747,16 +2353,26 @@ class neg extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the operand, once checked */
+	public AbstractSymbol getChildType() {
+		return e1.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		/*
-		 * valutare che sia intero e assegnare il tipo al nodo
-		 */
-		decorate("child", ret_e1);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		default:
+			/*
+			 * valutare che sia intero e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1766,8 +2382,8 @@ class neg extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class lt extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "lt" AST node. 
 	 *
@@ -1776,7 +2392,7 @@ class lt extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public lt(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.LT);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1791,12 +2407,29 @@ class lt extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_lt");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_lt");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.LT, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1807,18 +2440,33 @@ class lt extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo (Bool)
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo (Bool)
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1828,8 +2476,8 @@ class lt extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class eq extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "eq" AST node. 
 	 *
@@ -1838,7 +2486,7 @@ class eq extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public eq(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.EQ);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1853,12 +2501,29 @@ class eq extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_eq");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_eq");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.EQ, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1869,19 +2534,34 @@ class eq extends Expression {
 	public void code(PrintStream s) {
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi|stringhe| e assegnare il tipo al nodo
-		 * return visitor.visit(this);
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi|stringhe| e assegnare il tipo al nodo
+			 * return visitor.visit(this);
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1891,8 +2571,8 @@ class eq extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class leq extends Expression {
-	protected Expression e1;
-	protected Expression e2;
+	protected final Expression e1;
+	protected final Expression e2;
 	
 	/** Creates "leq" AST node. 
 	 *
@@ -1901,7 +2581,7 @@ class leq extends Expression {
 	 * @param a1 initial value for e2
 	 */
 	public leq(int lineNumber, Expression a1, Expression a2) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.LEQ);
 		e1 = a1;
 		e2 = a2;
 	}
@@ -1916,12 +2596,29 @@ class leq extends Expression {
 		e2.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_leq");
-		e1.dump_with_types(out, n + 2);
-		e2.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_leq");
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.LEQ, this);
+			return e1;
+		}
+		if (k == 1) {
+			return e2;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1933,18 +2630,33 @@ class leq extends Expression {
 
 	}
 
+	/** Returns the type of the left operand, once checked */
+	public AbstractSymbol getLeftType() {
+		return e1.get_type();
+	}
+
+	/** Returns the type of the right operand, once checked */
+	public AbstractSymbol getRightType() {
+		return e2.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		Object ret_e2 = e2.accept(visitor);
-		/*
-		 * valutare che siano interi e assegnare il tipo al nodo
-		 */
-		decorate("left", ret_e1);
-		decorate("right", ret_e2);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		case 1:
+			return e2;
+		default:
+			/*
+			 * valutare che siano interi e assegnare il tipo al nodo
+			 */
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 }
@@ -1954,7 +2666,7 @@ class leq extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class comp extends Expression {
-	protected Expression e1;
+	protected final Expression e1;
 	
 	/** Creates "comp" AST node. 
 	 *
@@ -1962,7 +2674,7 @@ class comp extends Expression {
 	 * @param a0 initial value for e1
 	 */
 	public comp(int lineNumber, Expression a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.COMP);
 		e1 = a1;
 	}
 	
@@ -1975,11 +2687,23 @@ class comp extends Expression {
 		e1.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_comp");
-		e1.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_comp");
+			return e1;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.COMP, this);
+			return e1;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -1990,16 +2714,26 @@ class comp extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the type of the operand, once checked */
+	public AbstractSymbol getChildType() {
+		return e1.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * valutare e1 (bool) ed assegnare il tipo (bool)
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);	
-		decorate("child", ret_e1);
-		visitor.onVisitPostOrder(this);
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -2010,7 +2744,7 @@ class comp extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class int_const extends Expression {
-	protected AbstractSymbol token;
+	protected final AbstractSymbol token;
 	
 	/** Creates "int_const" AST node. 
 	 *
@@ -2018,7 +2752,7 @@ class int_const extends Expression {
 	 * @param a0 initial value for token
 	 */
 	public int_const(int lineNumber, AbstractSymbol a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.INT);
 		token = a1;
 	}
 	
@@ -2031,11 +2765,19 @@ class int_const extends Expression {
 		dump_AbstractSymbol(out, n+2, token);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_int");
 		dump_AbstractSymbol(out, n + 2, token);
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.INT, this);
+		out.writeInt(token);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method method is provided
@@ -2047,11 +2789,13 @@ class int_const extends Expression {
 				(IntSymbol)AbstractTable.inttable.lookup(token.getString()), s);
 	}
 	
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		visitor.onVisitPreOrder(this);
-		visitor.onVisitPostOrder(this); //set_type(TreeConstants.Int);
-		return get_type();
+		visitor.onVisitPostOrder(this);
+		w.setResult(get_type());
+		return null;
 	}
 
 }
@@ -2061,7 +2805,7 @@ class int_const extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class bool_const extends Expression {
-	protected Boolean val;
+	protected final Boolean val;
 	
 	/** Creates "bool_const" AST node. 
 	 *
@@ -2069,7 +2813,7 @@ class bool_const extends Expression {
 	 * @param a0 initial value for val
 	 */
 	public bool_const(int lineNumber, Boolean a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.BOOL);
 		val = a1;
 	}
 	
@@ -2082,11 +2826,19 @@ class bool_const extends Expression {
 		dump_Boolean(out, n+2, val);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_bool");
 		dump_Boolean(out, n + 2, val);
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.BOOL, this);
+		out.writeBoolean(val);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method method is provided
@@ -2097,11 +2849,13 @@ class bool_const extends Expression {
 		CgenSupport.emitLoadBool(CgenSupport.ACC, new BoolConst(val), s);
 	}
 
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		visitor.onVisitPreOrder(this);
 		visitor.onVisitPostOrder(this);
-		return get_type();
+		w.setResult(get_type());
+		return null;
 	}
 }
 
@@ -2110,7 +2864,7 @@ class bool_const extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class string_const extends Expression {
-	protected AbstractSymbol token;
+	protected final AbstractSymbol token;
 	
 	/** Creates "string_const" AST node. 
 	 *
@@ -2118,7 +2872,7 @@ class string_const extends Expression {
 	 * @param a0 initial value for token
 	 */
 	public string_const(int lineNumber, AbstractSymbol a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.STR);
 		token = a1;
 	}
 	
@@ -2131,13 +2885,21 @@ class string_const extends Expression {
 		dump_AbstractSymbol(out, n+2, token);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_string");
 		out.print(Utilities.pad(n + 2) + "\"");
 		Utilities.printEscapedString(out, token.getString());
 		out.println("\"");
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.STR, this);
+		out.writeString(token);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method method is provided
@@ -2149,11 +2911,13 @@ class string_const extends Expression {
 				(StringSymbol)AbstractTable.stringtable.lookup(token.getString()), s);
 	}
 
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		visitor.onVisitPreOrder(this);
-		visitor.onVisitPostOrder(this); 
-		return get_type();
+		visitor.onVisitPostOrder(this);
+		w.setResult(get_type());
+		return null;
 	}
 
 }
@@ -2165,7 +2929,7 @@ class string_const extends Expression {
 class new_ extends Expression {
 	
 
-	protected AbstractSymbol type_name;
+	protected final AbstractSymbol type_name;
 	
 	/** Creates "new_" AST node. 
 	 *
@@ -2173,7 +2937,7 @@ class new_ extends Expression {
 	 * @param a0 initial value for type_name
 	 */
 	public new_(int lineNumber, AbstractSymbol a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.NEW);
 		type_name = a1;
 	}
 	
@@ -2190,11 +2954,19 @@ class new_ extends Expression {
 		return type_name;
 	}
 	
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_new");
 		dump_AbstractSymbol(out, n + 2, type_name);
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.NEW, this);
+		out.writeId(type_name);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -2205,15 +2977,17 @@ class new_ extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * verificare che type_name sia valido
 		 * restituirlo
 		 */
 		visitor.onVisitPreOrder(this);
 		visitor.onVisitPostOrder(this);
-		return get_type();
+		w.setResult(get_type());
+		return null;
 	}
 
 
@@ -2224,7 +2998,7 @@ class new_ extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class isvoid extends Expression {
-	protected Expression e1;
+	protected final Expression e1;
 	
 	/** Creates "isvoid" AST node. 
 	 *
@@ -2232,7 +3006,7 @@ class isvoid extends Expression {
 	 * @param a0 initial value for e1
 	 */
 	public isvoid(int lineNumber, Expression a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.ISVOID);
 		e1 = a1;
 	}
 	
@@ -2245,11 +3019,23 @@ class isvoid extends Expression {
 		e1.dump(out, n+2);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
-		dump_line(out, n);
-		out.println(Utilities.pad(n) + "_isvoid");
-		e1.dump_with_types(out, n + 2);
+	TreeNode dumpStep(PrintStream out, int n, int k) {
+		if (k == 0) {
+			dump_line(out, n);
+			out.println(Utilities.pad(n) + "_isvoid");
+			return e1;
+		}
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		if (k == 0) {
+			out.writeNode(ASTConstants.ISVOID, this);
+			return e1;
+		}
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -2260,17 +3046,26 @@ class isvoid extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+	/** Returns the type of the operand, once checked */
+	public AbstractSymbol getChildType() {
+		return e1.get_type();
+	}
+
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/**
 		 * valutare e1
 		 */
-		visitor.onVisitPreOrder(this);
-		Object ret_e1 = e1.accept(visitor);
-		decorate("child", ret_e1);
-		visitor.onVisitPostOrder(this);
-		//		set_type(TreeConstants.Bool);
-		return get_type();
+		switch (k) {
+		case 0:
+			visitor.onVisitPreOrder(this);
+			return e1;
+		default:
+			visitor.onVisitPostOrder(this);
+			w.setResult(get_type());
+			return null;
+		}
 	}
 
 
@@ -2287,7 +3082,7 @@ class no_expr extends Expression {
 	 * @param lineNumber the line in the source file from which this node came.
 	 */
 	public no_expr(int lineNumber) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.NO_EXPR);
 	}
 	
 	public TreeNode copy() {
@@ -2298,10 +3093,17 @@ class no_expr extends Expression {
 		out.print(Utilities.pad(n) + "no_expr\n");
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_no_expr");
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.NO_EXPR, this);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -2312,11 +3114,13 @@ class no_expr extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		visitor.onVisitPreOrder(this);
 		visitor.onVisitPostOrder(this);
-		return get_type();
+		w.setResult(get_type());
+		return null;
 	}
 
 
@@ -2327,7 +3131,7 @@ class no_expr extends Expression {
     <p>
     See <a href="TreeNode.html">TreeNode</a> for full documentation. */
 class object extends Expression {
-	protected AbstractSymbol name;
+	protected final AbstractSymbol name;
 	
 	/** Creates "object" AST node. 
 	 *
@@ -2335,7 +3139,7 @@ class object extends Expression {
 	 * @param a0 initial value for name
 	 */
 	public object(int lineNumber, AbstractSymbol a1) {
-		super(lineNumber);
+		super(lineNumber, ASTConstants.OBJECT);
 		name = a1;
 	}
 	
@@ -2353,11 +3157,19 @@ class object extends Expression {
 		dump_AbstractSymbol(out, n+2, name);
 	}
 
-	public void dump_with_types(PrintStream out, int n) {
+	TreeNode dumpStep(PrintStream out, int n, int k) {
 		dump_line(out, n);
 		out.println(Utilities.pad(n) + "_object");
 		dump_AbstractSymbol(out, n + 2, name);
 		dump_type(out, n);
+		return null;
+	}
+
+	TreeNode binaryStep(AstBinaryWriter out, int k) {
+		out.writeNode(ASTConstants.OBJECT, this);
+		out.writeId(name);
+		out.writeType(this);
+		return null;
 	}
 	
 	/** Generates code for this expression.  This method is to be completed 
@@ -2368,15 +3180,16 @@ class object extends Expression {
 	public void code(PrintStream s) {
 	}
 	
+
 	@Override
-	public Object accept(ITreeVisitor visitor) {
+	TreeNode acceptStep(ITreeVisitor visitor, int k, TreeWalker w) {
 		/*
 		 * fare il lookup nello scope corrente ed assegnare il tipo
 		 */
 		visitor.onVisitPreOrder(this);
 		visitor.onVisitPostOrder(this);
-//		System.out.println("object " +  get_type());
-		return get_type();
+		w.setResult(get_type());
+		return null;
 	}
 
 